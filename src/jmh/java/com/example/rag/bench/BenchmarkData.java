@@ -0,0 +1,71 @@
+package com.example.rag.bench;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试数据生成
+ *
+ * 使用固定随机种子，保证不同版本间的基准输入一致，结果可对比
+ * 词表混合中文短语与英文术语，接近知识库文档的实际分布
+ */
+public final class BenchmarkData {
+
+    public static final long SEED = 20240601L;
+
+    private static final String[] WORDS = {
+            "入库", "切分", "向量", "检索", "全文", "索引", "缓存", "重排", "提示词", "模型",
+            "文档", "版本", "标签", "来源", "分片", "嵌入", "召回", "融合", "得分", "阈值",
+            "配置", "并发", "限流", "超时", "日志", "监控", "部署", "权限", "审批", "流程",
+            "RAG", "Lucene", "BM25", "RRF", "Chroma", "Ollama", "embedding", "rerank", "token", "cache"
+    };
+
+    private static final String[] VERSIONS = {"v1", "v2", "v3"};
+
+    private BenchmarkData() {
+    }
+
+    // 生成约 length 个字符的文本
+    public static String text(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length + 16);
+        while (sb.length() < length) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+            sb.append(random.nextInt(8) == 0 ? "。" : " ");
+        }
+        return sb.substring(0, length);
+    }
+
+    // 带 source/version/tags 元数据的分片，与入库后的分片结构一致
+    public static List<TextSegment> segments(Random random, int count, int length) {
+        List<TextSegment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Metadata metadata = new Metadata()
+                    .put("source", "doc-" + (i % 1000) + ".md")
+                    .put("path", "/kb/doc-" + (i % 1000) + ".md")
+                    .put("version", VERSIONS[i % VERSIONS.length])
+                    .put("tags", WORDS[i % 10] + "," + WORDS[10 + i % 10]);
+            segments.add(TextSegment.from(text(random, length), metadata));
+        }
+        return segments;
+    }
+
+    public static List<String> texts(Random random, int count, int length) {
+        List<String> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            texts.add(text(random, length));
+        }
+        return texts;
+    }
+
+    public static List<String> keywords(Random random, int count) {
+        List<String> keywords = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keywords.add(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return keywords;
+    }
+}
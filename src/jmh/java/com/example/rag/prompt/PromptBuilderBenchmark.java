@@ -0,0 +1,64 @@
+package com.example.rag.prompt;
+
+import com.example.rag.bench.BenchmarkData;
+import com.example.rag.config.RagProperties;
+import dev.langchain4j.data.message.ChatMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 提示词构建：不打包 / 按Token预算打包（近似计数器，避免加载分词器）
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptBuilderBenchmark {
+
+    @Param({"5", "20"})
+    public int evidenceCount;
+
+    @Param({"200", "800"})
+    public int textLength;
+
+    @Param({"STABLE_PREFIX", "LEGACY"})
+    public RagProperties.Prompt.Layout layout;
+
+    private PromptBuilder plainBuilder;
+    private PromptBuilder packingBuilder;
+    private String question;
+    private List<String> evidence;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        plainBuilder = new PromptBuilder(layout, "未找到相关资料", null);
+        packingBuilder = new PromptBuilder(layout, "未找到相关资料",
+                new PromptPacker(TokenCounter.approximate(), 2048, 32));
+        question = BenchmarkData.text(random, 30);
+        evidence = BenchmarkData.texts(random, evidenceCount, textLength);
+    }
+
+    @Benchmark
+    public List<ChatMessage> build() {
+        return plainBuilder.build(question, evidence);
+    }
+
+    @Benchmark
+    public List<ChatMessage> buildPacked() {
+        return packingBuilder.build(question, evidence);
+    }
+}
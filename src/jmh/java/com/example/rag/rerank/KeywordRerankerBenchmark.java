@@ -0,0 +1,69 @@
+package com.example.rag.rerank;
+
+import com.example.rag.bench.BenchmarkData;
+import com.example.rag.retrieval.RetrievalCandidate;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 关键字重排：候选数与分片长度对耗时的影响
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordRerankerBenchmark {
+
+    @Param({"20", "100", "500"})
+    public int candidates;
+
+    @Param({"200", "800"})
+    public int textLength;
+
+    @Param({"3", "10"})
+    public int keywordCount;
+
+    private final KeywordReranker reranker = new KeywordReranker();
+    private List<KeywordReranker.CandidateSegment> segments;
+    private List<RetrievalCandidate> retrievalCandidates;
+    private List<String> keywords;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        segments = new ArrayList<>(candidates);
+        retrievalCandidates = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++) {
+            String text = BenchmarkData.text(random, textLength);
+            double score = random.nextDouble();
+            segments.add(new KeywordReranker.CandidateSegment(text, score));
+            retrievalCandidates.add(RetrievalCandidate.vector("id-" + i, TextSegment.from(text), score));
+        }
+        keywords = BenchmarkData.keywords(random, keywordCount);
+    }
+
+    @Benchmark
+    public List<KeywordReranker.RerankedSegment> rerank() {
+        return reranker.rerank(segments, keywords, 0.1);
+    }
+
+    @Benchmark
+    public List<RetrievalCandidate> rerankCandidates() {
+        return reranker.rerankCandidates(retrievalCandidates, keywords, 0.1);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.rag.retrieval;
+
+import com.example.rag.bench.BenchmarkData;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.filter.MetadataFilterBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// 平铺向量库暴力扫描：384维随机向量，对比标量与 Vector API 点积、单线程与并行扫描、float 与 int8 量化扫描
+// （向量只在Trial开始时写入一次）
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g", "--add-modules=jdk.incubator.vector"})
+public class FlatVectorSearchBenchmark {
+
+    private static final int DIMENSION = 384;
+    private static final int WRITE_BATCH = 10_000;
+
+    @Param({"100000", "500000"})
+    public int vectorCount;
+
+    @Param({"scalar", "simd"})
+    public String scorer;
+
+    // 0 表示CPU核数
+    @Param({"1", "0"})
+    public int parallelism;
+
+    @Param({"10"})
+    public int topK;
+
+    // int8：扫描量化编码取 topK×5 个候选再精确重排
+    @Param({"none", "int8"})
+    public String quantization;
+
+    private Path dir;
+    private FlatEmbeddingStore store;
+    private List<Embedding> queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void buildStore() {
+        try {
+            dir = Files.createTempDirectory("rag-bench-flat");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        VectorScorer vectorScorer = "simd".equals(scorer) ? VectorScorer.create() : new ScalarVectorScorer();
+        store = new FlatEmbeddingStore(dir, DIMENSION, parallelism, 1, "int8".equals(quantization), 5, 1000,
+                vectorScorer);
+        Random random = new Random(BenchmarkData.SEED);
+        for (int written = 0; written < vectorCount; written += WRITE_BATCH) {
+            int count = Math.min(WRITE_BATCH, vectorCount - written);
+            List<TextSegment> segments = BenchmarkData.segments(random, count, 20);
+            List<Embedding> embeddings = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                embeddings.add(randomEmbedding(random));
+            }
+            store.addAll(embeddings, segments);
+        }
+        queries = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            queries.add(randomEmbedding(random));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStore() throws IOException {
+        store.close();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public List<EmbeddingMatch<TextSegment>> search() {
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(nextQuery())
+                .maxResults(topK)
+                .minScore(0.0)
+                .build()).matches();
+    }
+
+    @Benchmark
+    public List<EmbeddingMatch<TextSegment>> searchWithFilter() {
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(nextQuery())
+                .maxResults(topK)
+                .minScore(0.0)
+                .filter(MetadataFilterBuilder.metadataKey("version").isEqualTo("v1"))
+                .build()).matches();
+    }
+
+    private Embedding nextQuery() {
+        Embedding query = queries.get(next);
+        next = (next + 1) % queries.size();
+        return query;
+    }
+
+    private static Embedding randomEmbedding(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return Embedding.from(vector);
+    }
+}
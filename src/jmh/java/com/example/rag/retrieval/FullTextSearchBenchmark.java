@@ -0,0 +1,105 @@
+package com.example.rag.retrieval;
+
+import com.example.rag.bench.BenchmarkData;
+import com.example.rag.config.RagProperties;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Lucene全文检索：在生成的 10万/100万 分片索引上测试查询耗时（索引只在Trial开始时构建一次）
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class FullTextSearchBenchmark {
+
+    // 分批写入，避免一次性生成全部分片占用过多内存
+    private static final int INDEX_BATCH = 50_000;
+
+    @Param({"100000", "1000000"})
+    public int segmentCount;
+
+    @Param({"200"})
+    public int textLength;
+
+    @Param({"10", "50"})
+    public int topK;
+
+    private Path indexPath;
+    private FullTextSearchService service;
+    private List<String> queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void buildIndex() throws IOException {
+        indexPath = Files.createTempDirectory("rag-bench-fulltext");
+        RagProperties properties = new RagProperties();
+        properties.getFulltext().setEnabled(true);
+        properties.getFulltext().setIndexPath(indexPath.toString());
+        service = new FullTextSearchService(properties);
+        Random random = new Random(BenchmarkData.SEED);
+        for (int written = 0; written < segmentCount; written += INDEX_BATCH) {
+            List<TextSegment> batch = BenchmarkData.segments(random, Math.min(INDEX_BATCH, segmentCount - written),
+                    textLength);
+            if (written == 0) {
+                service.rebuildIndex(batch);
+            } else {
+                service.indexSegments(batch);
+            }
+        }
+        queries = BenchmarkData.texts(random, 64, 12);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteIndex() throws IOException {
+        service.close();
+        try (Stream<Path> paths = Files.walk(indexPath)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public List<RetrievalCandidate> search() {
+        return service.searchCandidates(nextQuery(), null, topK);
+    }
+
+    @Benchmark
+    public List<RetrievalCandidate> searchWithFilter() {
+        return service.searchCandidates(nextQuery(), new FullTextFilter(null, "v1", List.of()), topK);
+    }
+
+    private String nextQuery() {
+        String query = queries.get(next);
+        next = (next + 1) % queries.size();
+        return query;
+    }
+}
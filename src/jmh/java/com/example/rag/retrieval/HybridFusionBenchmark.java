@@ -0,0 +1,62 @@
+package com.example.rag.retrieval;
+
+import com.example.rag.bench.BenchmarkData;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// RRF融合：两路各 candidates 个候选，overlap 为两路重叠比例
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HybridFusionBenchmark {
+
+    @Param({"20", "100", "500"})
+    public int candidates;
+
+    @Param({"200", "800"})
+    public int textLength;
+
+    @Param({"0.3"})
+    public double overlap;
+
+    private List<RetrievalCandidate> vector;
+    private List<RetrievalCandidate> fullText;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        List<TextSegment> segments = BenchmarkData.segments(random, candidates * 2, textLength);
+        int shared = (int) (candidates * overlap);
+        vector = new ArrayList<>(candidates);
+        fullText = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++) {
+            vector.add(RetrievalCandidate.vector("id-" + i, segments.get(i), 1.0 - (double) i / candidates));
+            // 前 shared 个与向量路命中同一分片，其余为全文独有
+            TextSegment segment = i < shared ? segments.get(i) : segments.get(candidates + i);
+            fullText.add(RetrievalCandidate.fullText(segment, 20.0 - i * 0.01));
+        }
+    }
+
+    @Benchmark
+    public List<RetrievalCandidate> fuse() {
+        return HybridRetrievalService.fuse(vector, fullText, 10);
+    }
+}
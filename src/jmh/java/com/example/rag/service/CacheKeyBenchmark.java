@@ -0,0 +1,48 @@
+package com.example.rag.service;
+
+import com.example.rag.bench.BenchmarkData;
+import com.example.rag.service.dto.RagRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 结果缓存Key构建：每次问答与检索请求都会执行
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheKeyBenchmark {
+
+    @Param({"20", "200"})
+    public int questionLength;
+
+    @Param({"0", "5", "20"})
+    public int keywordCount;
+
+    private RagRequest request;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        request = new RagRequest(BenchmarkData.text(random, questionLength), 5, 0.3, "v1",
+                BenchmarkData.keywords(random, 3), "handbook.md", BenchmarkData.keywords(random, keywordCount));
+    }
+
+    @Benchmark
+    public String buildCacheKey() {
+        return RagService.buildCacheKey(request, 0L);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.rag.service;
+
+import com.example.rag.bench.BenchmarkData;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 批量入库的切分与分批开销：嵌入模型与向量库为空实现，只测框架内耗时
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentSplitBenchmark {
+
+    @Param({"10000", "100000"})
+    public int documentLength;
+
+    @Param({"800"})
+    public int chunkSize;
+
+    @Param({"120"})
+    public int chunkOverlap;
+
+    @Param({"32"})
+    public int batchSize;
+
+    private BatchEmbeddingIngestor ingestor;
+    private List<Document> documents;
+
+    @Setup
+    public void setUp() {
+        Embedding embedding = Embedding.from(new float[384]);
+        EmbeddingModel embeddingModel = segments -> Response.from(Collections.nCopies(segments.size(), embedding));
+        ingestor = new BatchEmbeddingIngestor(DocumentSplitters.recursive(chunkSize, chunkOverlap),
+                embeddingModel, new DiscardingStore(), batchSize, null);
+        documents = List.of(Document.from(BenchmarkData.text(new Random(BenchmarkData.SEED), documentLength)));
+    }
+
+    @Benchmark
+    public int ingest() {
+        return ingestor.ingest(documents);
+    }
+
+    private static final class DiscardingStore implements EmbeddingStore<TextSegment> {
+
+        @Override
+        public String add(Embedding embedding) {
+            return null;
+        }
+
+        @Override
+        public void add(String id, Embedding embedding) {
+        }
+
+        @Override
+        public String add(Embedding embedding, TextSegment embedded) {
+            return null;
+        }
+
+        @Override
+        public List<String> addAll(List<Embedding> embeddings) {
+            return List.of();
+        }
+
+        @Override
+        public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+        }
+
+        @Override
+        public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.rag.loadtest;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.scoring.ScoringModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 替代交叉编码器：耗时与（问题, 分片）对数成正比，得分为问题字符在分片中出现的比例
+class CostScoringModel implements ScoringModel {
+
+    private final LoadTestProperties.Scoring properties;
+
+    CostScoringModel(LoadTestProperties.Scoring properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public Response<List<Double>> scoreAll(List<TextSegment> segments, String query) {
+        LoadTestModels.sleep(properties.getCostPerPair().multipliedBy(segments.size()));
+        List<Double> scores = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            scores.add(overlap(query, segment.text()));
+        }
+        return Response.from(scores);
+    }
+
+    private double overlap(String query, String text) {
+        if (query == null || query.isEmpty()) {
+            return 0.0;
+        }
+        int hits = 0;
+        for (int i = 0; i < query.length(); i++) {
+            if (text.indexOf(query.charAt(i)) >= 0) {
+                hits++;
+            }
+        }
+        return (double) hits / query.length();
+    }
+}
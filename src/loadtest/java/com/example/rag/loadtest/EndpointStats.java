@@ -0,0 +1,71 @@
+package com.example.rag.loadtest;
+
+import java.util.Arrays;
+
+// 单个接口的结果统计：状态计数与延迟样本（纳秒，完成回调线程并发写入）
+class EndpointStats {
+
+    private final String endpoint;
+    private long[] latencies = new long[1024];
+    private int size;
+    private long sent;
+    private long ok;
+    private long rejected;
+    private long errors;
+    private long dropped;
+
+    EndpointStats(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    synchronized void sent() {
+        sent++;
+    }
+
+    // 客户端在途数超过上限，未发送
+    synchronized void dropped() {
+        dropped++;
+    }
+
+    // status 为 -1 表示连接失败或超时
+    synchronized void record(int status, long latencyNanos) {
+        if (status == 200) {
+            ok++;
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = latencyNanos;
+        } else if (status == 429) {
+            rejected++;
+        } else {
+            errors++;
+        }
+    }
+
+    synchronized LoadReport.EndpointReport toReport(double seconds) {
+        long[] sorted = Arrays.copyOf(latencies, size);
+        Arrays.sort(sorted);
+        long completed = ok + rejected + errors;
+        return new LoadReport.EndpointReport(
+                endpoint,
+                sent,
+                ok,
+                rejected,
+                errors,
+                dropped,
+                seconds <= 0 ? 0.0 : ok / seconds,
+                completed == 0 ? 0.0 : (double) rejected / completed,
+                percentileMs(sorted, 0.50),
+                percentileMs(sorted, 0.95),
+                percentileMs(sorted, 0.99),
+                sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1_000_000.0);
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+}
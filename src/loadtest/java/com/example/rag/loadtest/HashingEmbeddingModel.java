@@ -0,0 +1,57 @@
+package com.example.rag.loadtest;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 替代嵌入模型：字符二元组哈希到定长向量并归一化，相近文本得到相近向量；每次调用按配置耗时
+class HashingEmbeddingModel implements EmbeddingModel {
+
+    private final LoadTestProperties.Embedding properties;
+
+    HashingEmbeddingModel(LoadTestProperties.Embedding properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        LoadTestModels.sleep(properties.getLatency());
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            embeddings.add(Embedding.from(vectorOf(segment.text())));
+        }
+        return Response.from(embeddings);
+    }
+
+    @Override
+    public int dimension() {
+        return properties.getDimension();
+    }
+
+    private float[] vectorOf(String text) {
+        int dimension = properties.getDimension();
+        float[] vector = new float[dimension];
+        for (int i = 0; i + 1 < text.length(); i++) {
+            int hash = text.charAt(i) * 31 + text.charAt(i + 1);
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            vector[Math.floorMod(hash, dimension)] += (hash & 0x10000) == 0 ? 1f : -1f;
+        }
+        double norm = 0.0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float inv = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < dimension; i++) {
+                vector[i] *= inv;
+            }
+        }
+        return vector;
+    }
+}
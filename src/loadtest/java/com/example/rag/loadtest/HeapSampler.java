@@ -0,0 +1,70 @@
+package com.example.rag.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 周期采样堆内存使用峰值，并统计采样期间的GC次数与耗时
+class HeapSampler implements AutoCloseable {
+
+    private static final long MB = 1024 * 1024;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final AtomicLong peakUsed = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+    private final long gcCountAtStart;
+    private final long gcTimeAtStart;
+
+    private HeapSampler() {
+        this.gcCountAtStart = gcCount();
+        this.gcTimeAtStart = gcTime();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-heap");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::sample, 0, 100, TimeUnit.MILLISECONDS);
+    }
+
+    static HeapSampler start() {
+        return new HeapSampler();
+    }
+
+    private void sample() {
+        peakUsed.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+    }
+
+    LoadReport.HeapReport toReport() {
+        sample();
+        return new LoadReport.HeapReport(
+                peakUsed.get() / MB,
+                memory.getHeapMemoryUsage().getMax() / MB,
+                gcCount() - gcCountAtStart,
+                gcTime() - gcTimeAtStart);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
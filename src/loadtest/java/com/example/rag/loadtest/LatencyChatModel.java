@@ -0,0 +1,37 @@
+package com.example.rag.loadtest;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+
+import java.time.Duration;
+
+// 替代 Ollama：首Token延迟 + answerTokens / tokensPerSecond 的生成耗时，调用线程阻塞等待
+class LatencyChatModel implements ChatModel {
+
+    private final LoadTestProperties.Chat properties;
+
+    LatencyChatModel(LoadTestProperties.Chat properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public ChatResponse doChat(ChatRequest request) {
+        LoadTestModels.sleep(properties.getFirstTokenLatency().plus(generationTime(properties)));
+        return ChatResponse.builder()
+                .aiMessage(AiMessage.from(answer(properties)))
+                .build();
+    }
+
+    static Duration generationTime(LoadTestProperties.Chat properties) {
+        if (properties.getTokensPerSecond() <= 0) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos((long) (properties.getAnswerTokens() * 1_000_000_000L / properties.getTokensPerSecond()));
+    }
+
+    static String answer(LoadTestProperties.Chat properties) {
+        return "模拟回答".repeat(Math.max(1, properties.getAnswerTokens() / 4));
+    }
+}
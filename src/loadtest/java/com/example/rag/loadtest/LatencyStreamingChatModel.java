@@ -0,0 +1,47 @@
+package com.example.rag.loadtest;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 替代 Ollama 流式接口：在独立线程上按Token速率逐个推送
+class LatencyStreamingChatModel implements StreamingChatModel {
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "loadtest-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LoadTestProperties.Chat properties;
+
+    LatencyStreamingChatModel(LoadTestProperties.Chat properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void doChat(ChatRequest request, StreamingChatResponseHandler handler) {
+        EXECUTOR.execute(() -> {
+            try {
+                LoadTestModels.sleep(properties.getFirstTokenLatency());
+                int tokens = Math.max(1, properties.getAnswerTokens());
+                Duration perToken = LatencyChatModel.generationTime(properties).dividedBy(tokens);
+                for (int i = 0; i < tokens; i++) {
+                    handler.onPartialResponse("字");
+                    LoadTestModels.sleep(perToken);
+                }
+                handler.onCompleteResponse(ChatResponse.builder()
+                        .aiMessage(AiMessage.from("字".repeat(tokens)))
+                        .build());
+            } catch (RuntimeException e) {
+                handler.onError(e);
+            }
+        });
+    }
+}
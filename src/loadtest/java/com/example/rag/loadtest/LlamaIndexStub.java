@@ -0,0 +1,93 @@
+package com.example.rag.loadtest;
+
+import com.example.rag.llamaindex.LlamaIndexDtos.LlamaIndexIngestResponse;
+import com.example.rag.llamaindex.LlamaIndexDtos.LlamaIndexQueryItem;
+import com.example.rag.llamaindex.LlamaIndexDtos.LlamaIndexQueryRequest;
+import com.example.rag.llamaindex.LlamaIndexDtos.LlamaIndexQueryResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * LlamaIndex 侧车的本地HTTP替身
+ *
+ * 接口：
+ * - POST /query：按配置延迟后返回 items 条固定分片
+ * - POST /ingest、/ingest/urls：读取并丢弃请求体，返回入库成功
+ */
+class LlamaIndexStub implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LoadTestProperties.Sidecar properties;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private LlamaIndexStub(LoadTestProperties.Sidecar properties) throws IOException {
+        this.properties = properties;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-sidecar");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/query", this::query);
+        server.createContext("/ingest", this::ingest);
+    }
+
+    static LlamaIndexStub start(LoadTestProperties.Sidecar properties) throws IOException {
+        LlamaIndexStub stub = new LlamaIndexStub(properties);
+        stub.server.start();
+        return stub;
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void query(HttpExchange exchange) throws IOException {
+        LlamaIndexQueryRequest request;
+        try (InputStream body = exchange.getRequestBody()) {
+            request = objectMapper.readValue(body, LlamaIndexQueryRequest.class);
+        }
+        LoadTestModels.sleep(properties.getLatency());
+        List<LlamaIndexQueryItem> items = new ArrayList<>(properties.getItems());
+        for (int i = 0; i < properties.getItems(); i++) {
+            items.add(new LlamaIndexQueryItem("侧车分片" + i + "：" + request.question(), 0.8 - i * 0.05,
+                    Map.of("source", "llamaindex-stub", "version", "v1")));
+        }
+        respond(exchange, new LlamaIndexQueryResponse(items));
+    }
+
+    private void ingest(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            body.transferTo(OutputStream.nullOutputStream());
+        }
+        respond(exchange, new LlamaIndexIngestResponse(1, 1, List.of()));
+    }
+
+    private void respond(HttpExchange exchange, Object body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.rag.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 开环压测客户端
+ *
+ * - 按 qps 计算每个请求的计划发送时刻，发送不等待响应，服务变慢时请求持续堆积（反映真实突发）
+ * - 延迟从计划发送时刻起算，调度线程落后时等待时间也计入延迟
+ * - 预热期请求照常发送但不计入统计
+ * - 状态码：200 成功，429 限流拒绝（QueryLimiter），其他或连接失败计为错误
+ */
+class LoadGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final String[] WORDS = {
+            "入库", "切分", "向量", "检索", "全文", "索引", "缓存", "重排", "提示词", "模型",
+            "文档", "版本", "标签", "来源", "分片", "嵌入", "召回", "融合", "得分", "阈值",
+            "配置", "并发", "限流", "超时", "日志", "监控", "部署", "权限", "审批", "流程"
+    };
+    private static final long SEED = 20240601L;
+    private static final int SEED_BATCH = 20;
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(60);
+
+    private final URI baseUri;
+    private final LoadTestProperties properties;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final List<String> questions;
+
+    LoadGenerator(URI baseUri, LoadTestProperties properties, ObjectMapper objectMapper) {
+        this.baseUri = baseUri;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(executor)
+                .build();
+        Random random = new Random(SEED);
+        this.questions = new ArrayList<>(properties.getQuestionPool());
+        for (int i = 0; i < Math.max(1, properties.getQuestionPool()); i++) {
+            questions.add(text(random, 4) + "是什么？");
+        }
+    }
+
+    // 预先上传语料，保证问答时向量库与全文索引中有数据
+    void seedCorpus() throws Exception {
+        Random random = new Random(SEED + 1);
+        int total = properties.getCorpusDocuments();
+        for (int start = 0; start < total; start += SEED_BATCH) {
+            int count = Math.min(SEED_BATCH, total - start);
+            List<String> documents = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                documents.add(text(random, properties.getDocumentLength()));
+            }
+            HttpResponse<String> response = client.send(uploadRequest(start, documents),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("预置语料上传失败: status=" + response.statusCode()
+                        + ", body=" + response.body());
+            }
+        }
+        log.info("预置语料上传完成, documents={}", total);
+    }
+
+    LoadReport run(List<String> arguments, Supplier<Map<String, Double>> cacheHitRates) throws InterruptedException {
+        EndpointStats qa = new EndpointStats("qa");
+        EndpointStats upload = new EndpointStats("upload");
+        AtomicInteger inFlight = new AtomicInteger();
+        Random random = new Random(SEED + 2);
+        long intervalNanos = (long) (1_000_000_000L / Math.max(0.001, properties.getQps()));
+        long start = System.nanoTime();
+        long measureStart = start + properties.getWarmup().toNanos();
+        long end = measureStart + properties.getDuration().toNanos();
+        log.info("开始压测, qps={}, warmup={}, duration={}", properties.getQps(), properties.getWarmup(),
+                properties.getDuration());
+
+        HeapSampler heap = null;
+        for (long i = 0; ; i++) {
+            long scheduled = start + i * intervalNanos;
+            if (scheduled >= end) {
+                break;
+            }
+            parkUntil(scheduled);
+            boolean measured = scheduled >= measureStart;
+            if (measured && heap == null) {
+                heap = HeapSampler.start();
+            }
+            boolean isUpload = random.nextDouble() < properties.getUploadRatio();
+            EndpointStats stats = isUpload ? upload : qa;
+            if (inFlight.get() >= properties.getMaxInFlight()) {
+                if (measured) {
+                    stats.dropped();
+                }
+                continue;
+            }
+            HttpRequest request = isUpload
+                    ? uploadRequest(i, List.of(text(random, properties.getDocumentLength())))
+                    : qaRequest(questions.get(random.nextInt(questions.size())));
+            if (measured) {
+                stats.sent();
+            }
+            inFlight.incrementAndGet();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        inFlight.decrementAndGet();
+                        if (measured) {
+                            stats.record(response == null ? -1 : response.statusCode(), System.nanoTime() - scheduled);
+                        }
+                    });
+        }
+        drain(inFlight);
+        double seconds = properties.getDuration().toNanos() / 1_000_000_000.0;
+        LoadReport.HeapReport heapReport = heap == null ? new LoadReport.HeapReport(0, 0, 0, 0) : heap.toReport();
+        if (heap != null) {
+            heap.close();
+        }
+        List<LoadReport.EndpointReport> endpoints = new ArrayList<>();
+        endpoints.add(qa.toReport(seconds));
+        if (properties.getUploadRatio() > 0) {
+            endpoints.add(upload.toReport(seconds));
+        }
+        return new LoadReport(properties.getQps(), seconds, endpoints, heapReport, cacheHitRates.get(), arguments);
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+
+    // 等待在途请求结束，超时后不再等待（未完成的请求不计入结果）
+    private void drain(AtomicInteger inFlight) throws InterruptedException {
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        if (inFlight.get() > 0) {
+            log.warn("等待在途请求超时, inFlight={}", inFlight.get());
+        }
+    }
+
+    private void parkUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private HttpRequest qaRequest(String question) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(Map.of("question", question));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化问答请求失败", e);
+        }
+        return HttpRequest.newBuilder(baseUri.resolve("/api/qa"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private HttpRequest uploadRequest(long sequence, List<String> documents) {
+        String boundary = "loadtest-" + sequence;
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int i = 0; i < documents.size(); i++) {
+            write(body, "--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"files\"; filename=\"doc-" + sequence + "-" + i + ".md\"\r\n"
+                    + "Content-Type: text/markdown\r\n\r\n"
+                    + documents.get(i) + "\r\n");
+        }
+        write(body, "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"source\"\r\n\r\n"
+                + "loadtest\r\n"
+                + "--" + boundary + "--\r\n");
+        return HttpRequest.newBuilder(baseUri.resolve("/api/ingest/upload"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+    }
+
+    private static void write(ByteArrayOutputStream out, String text) {
+        out.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length + 8);
+        while (sb.length() < length) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+            if (random.nextInt(8) == 0) {
+                sb.append("。");
+            }
+        }
+        return sb.substring(0, length);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.rag.loadtest;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 压测报告（同时输出到控制台与 JSON 文件）
+ *
+ * - endpoints：各接口的吞吐、延迟分位与拒绝率，延迟从计划发送时刻起算（避免协调遗漏）
+ * - heap：压测期间堆内存峰值与GC次数/耗时（压测客户端与服务同进程，包含客户端开销）
+ * - cacheHitRates：统计窗口结束时各缓存的累计命中率
+ * - arguments：本次运行的命令行参数，便于对照 rag.concurrency.* / rag.cache.* 配置
+ */
+public record LoadReport(
+        double targetQps,
+        double measuredSeconds,
+        List<EndpointReport> endpoints,
+        HeapReport heap,
+        Map<String, Double> cacheHitRates,
+        List<String> arguments
+) {
+
+    public record EndpointReport(
+            String endpoint,
+            long sent,
+            long ok,
+            long rejected,
+            long errors,
+            long dropped,
+            double throughput,
+            double rejectionRate,
+            double p50Ms,
+            double p95Ms,
+            double p99Ms,
+            double maxMs
+    ) {
+    }
+
+    public record HeapReport(
+            long peakUsedMb,
+            long maxMb,
+            long gcCount,
+            long gcTimeMs
+    ) {
+    }
+
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("targetQps=%.1f measuredSeconds=%.1f%n", targetQps, measuredSeconds));
+        sb.append(String.format("%-8s %8s %8s %8s %8s %8s %10s %8s %9s %9s %9s %9s%n",
+                "endpoint", "sent", "ok", "rejected", "errors", "dropped", "ok/s", "reject%",
+                "p50ms", "p95ms", "p99ms", "maxms"));
+        for (EndpointReport e : endpoints) {
+            sb.append(String.format("%-8s %8d %8d %8d %8d %8d %10.1f %8.2f %9.1f %9.1f %9.1f %9.1f%n",
+                    e.endpoint(), e.sent(), e.ok(), e.rejected(), e.errors(), e.dropped(), e.throughput(),
+                    e.rejectionRate() * 100, e.p50Ms(), e.p95Ms(), e.p99Ms(), e.maxMs()));
+        }
+        sb.append(String.format("heap peakUsedMb=%d maxMb=%d gcCount=%d gcTimeMs=%d%n",
+                heap.peakUsedMb(), heap.maxMb(), heap.gcCount(), heap.gcTimeMs()));
+        cacheHitRates.forEach((cache, rate) -> sb.append(String.format("cache %s hitRate=%.4f%n", cache, rate)));
+        return sb.toString();
+    }
+}
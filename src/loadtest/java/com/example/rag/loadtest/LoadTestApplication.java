@@ -0,0 +1,111 @@
+package com.example.rag.loadtest;
+
+import com.example.rag.RagApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 端到端压测入口
+ *
+ * 在同一进程内启动完整的 Web 服务，外部依赖全部替换为本地替身：
+ * - Chroma → InMemoryEmbeddingStore；Ollama → LatencyChatModel；交叉编码器 → CostScoringModel
+ * - LlamaIndex 侧车 → LlamaIndexStub（本地HTTP服务）
+ * - 元数据库使用内存H2，全文索引与上传目录使用临时目录，不影响 data/ 下的数据
+ *
+ * 流程：预置语料（上传）→ 预热 → 按目标QPS开环压测 /api/qa 与 /api/ingest/upload → 输出报告
+ *
+ * 参数：--loadtest.* 见 {@link LoadTestProperties}，其余 --rag.* / --server.* 等直接作用于服务，例如
+ * --loadtest.qps=200 --rag.concurrency.mode=adaptive --rag.cache.semantic.enabled=true
+ */
+public class LoadTestApplication {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestProperties properties = bind(args);
+        Path workDir = Files.createTempDirectory("rag-loadtest");
+        try (LlamaIndexStub sidecar = LlamaIndexStub.start(properties.getSidecar())) {
+            // 系统属性优先级高于 application.yml、低于命令行参数，命令行仍可覆盖
+            setDefault("server.port", "0");
+            setDefault("spring.datasource.url", "jdbc:h2:mem:loadtest;MODE=MYSQL;DATABASE_TO_UPPER=false");
+            setDefault("spring.main.allow-bean-definition-overriding", "true");
+            setDefault("rag.fulltext.index-path", workDir.resolve("fulltext").toString());
+            setDefault("rag.ingest.upload-dir", workDir.resolve("uploads").toString());
+            setDefault("rag.llamaindex.base-url", sidecar.baseUrl());
+
+            try (ConfigurableApplicationContext ctx = new SpringApplicationBuilder(RagApplication.class,
+                    LoadTestModels.class)
+                    .initializers(context -> context.getBeanFactory()
+                            .registerSingleton("loadTestProperties", properties))
+                    .run(args)) {
+                int port = ctx.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+                ObjectMapper objectMapper = ctx.getBean(ObjectMapper.class);
+                MeterRegistry registry = ctx.getBean(MeterRegistry.class);
+                LoadGenerator generator = new LoadGenerator(URI.create("http://127.0.0.1:" + port), properties,
+                        objectMapper);
+                try {
+                    generator.seedCorpus();
+                    LoadReport report = generator.run(Arrays.asList(args), () -> cacheHitRates(registry));
+                    System.out.print(report.format());
+                    Path reportPath = Path.of(properties.getReport());
+                    if (reportPath.getParent() != null) {
+                        Files.createDirectories(reportPath.getParent());
+                    }
+                    objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportPath.toFile(), report);
+                    System.out.println("report=" + reportPath.toAbsolutePath());
+                } finally {
+                    generator.close();
+                }
+            }
+        }
+        // 限流线程池等非守护线程不随上下文关闭退出，压测结束后直接结束进程
+        System.exit(0);
+    }
+
+    private static LoadTestProperties bind(String[] args) {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        return Binder.get(environment)
+                .bind("loadtest", LoadTestProperties.class)
+                .orElseGet(LoadTestProperties::new);
+    }
+
+    private static void setDefault(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    // 各缓存累计命中率：cache.gets{cache, result=hit|miss}
+    private static Map<String, Double> cacheHitRates(MeterRegistry registry) {
+        Map<String, double[]> counts = new TreeMap<>();
+        for (FunctionCounter counter : registry.find("cache.gets").functionCounters()) {
+            String cache = counter.getId().getTag("cache");
+            String result = counter.getId().getTag("result");
+            double[] hitAndMiss = counts.computeIfAbsent(cache, key -> new double[2]);
+            if ("hit".equals(result)) {
+                hitAndMiss[0] += counter.count();
+            } else if ("miss".equals(result)) {
+                hitAndMiss[1] += counter.count();
+            }
+        }
+        Map<String, Double> rates = new TreeMap<>();
+        counts.forEach((cache, hitAndMiss) -> {
+            double total = hitAndMiss[0] + hitAndMiss[1];
+            rates.put(cache, total == 0 ? 0.0 : hitAndMiss[0] / total);
+        });
+        return rates;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.rag.loadtest;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.scoring.ScoringModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压测用的本地替身，按同名Bean覆盖 LangChainConfig 中依赖外部服务的模型与向量库
+ *
+ * 不加 @Configuration：本包位于 com.example.rag 下，加注解会被组件扫描提前注册，
+ * 无法保证晚于 LangChainConfig 覆盖；作为启动源显式传入时以 lite 模式注册
+ *
+ * @see LoadTestApplication 压测入口
+ */
+public class LoadTestModels {
+
+    @Bean
+    public EmbeddingModel embeddingModel(LoadTestProperties loadTestProperties) {
+        return new HashingEmbeddingModel(loadTestProperties.getEmbedding());
+    }
+
+    @Bean
+    public EmbeddingStore<TextSegment> embeddingStore() {
+        return new InMemoryEmbeddingStore<>();
+    }
+
+    @Bean
+    public ChatModel chatModel(LoadTestProperties loadTestProperties) {
+        return new LatencyChatModel(loadTestProperties.getChat());
+    }
+
+    @Bean
+    public StreamingChatModel streamingChatModel(LoadTestProperties loadTestProperties) {
+        return new LatencyStreamingChatModel(loadTestProperties.getChat());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "rag.retrieval.rerank.cross-encoder", name = "enabled", havingValue = "true")
+    public ScoringModel scoringModel(LoadTestProperties loadTestProperties) {
+        return new CostScoringModel(loadTestProperties.getScoring());
+    }
+
+    // 模拟耗时，中断时恢复中断标记并提前返回
+    static void sleep(Duration duration) {
+        if (duration == null || duration.isZero() || duration.isNegative()) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(duration.toNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
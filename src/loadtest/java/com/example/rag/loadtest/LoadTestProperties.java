@@ -0,0 +1,209 @@
+package com.example.rag.loadtest;
+
+import java.time.Duration;
+
+/**
+ * 压测配置（前缀 loadtest，通过命令行 --loadtest.xxx=yyy 覆盖）
+ *
+ * 负载：
+ * - qps：目标请求速率（开环发送，不因服务变慢而降速）
+ * - duration / warmup：统计时长与预热时长（预热期间的请求不计入结果）
+ * - uploadRatio：上传入库请求占比，其余为 /api/qa
+ * - questionPool：问题池大小，池越小重复问题越多，结果缓存命中率越高
+ * - maxInFlight：客户端在途上限，超出后直接计为客户端丢弃，防止压测进程自身耗尽内存
+ *
+ * 模拟依赖：
+ * - chat：首Token延迟 + 按Token速率生成，模拟 Ollama
+ * - embedding：每次嵌入调用的固定耗时
+ * - scoring：交叉编码器每个（问题, 分片）对的耗时
+ * - sidecar：LlamaIndex 侧车的查询耗时与返回条数
+ */
+public class LoadTestProperties {
+
+    private double qps = 20;
+    private Duration duration = Duration.ofSeconds(30);
+    private Duration warmup = Duration.ofSeconds(5);
+    private double uploadRatio = 0.0;
+    private int questionPool = 500;
+    private int maxInFlight = 10_000;
+    // 启动后预先上传的语料文档数与每篇长度（字符）
+    private int corpusDocuments = 200;
+    private int documentLength = 2000;
+    private String report = "target/loadtest-report.json";
+    private final Chat chat = new Chat();
+    private final Embedding embedding = new Embedding();
+    private final Scoring scoring = new Scoring();
+    private final Sidecar sidecar = new Sidecar();
+
+    public double getQps() {
+        return qps;
+    }
+
+    public void setQps(double qps) {
+        this.qps = qps;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public void setDuration(Duration duration) {
+        this.duration = duration;
+    }
+
+    public Duration getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(Duration warmup) {
+        this.warmup = warmup;
+    }
+
+    public double getUploadRatio() {
+        return uploadRatio;
+    }
+
+    public void setUploadRatio(double uploadRatio) {
+        this.uploadRatio = uploadRatio;
+    }
+
+    public int getQuestionPool() {
+        return questionPool;
+    }
+
+    public void setQuestionPool(int questionPool) {
+        this.questionPool = questionPool;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getCorpusDocuments() {
+        return corpusDocuments;
+    }
+
+    public void setCorpusDocuments(int corpusDocuments) {
+        this.corpusDocuments = corpusDocuments;
+    }
+
+    public int getDocumentLength() {
+        return documentLength;
+    }
+
+    public void setDocumentLength(int documentLength) {
+        this.documentLength = documentLength;
+    }
+
+    public String getReport() {
+        return report;
+    }
+
+    public void setReport(String report) {
+        this.report = report;
+    }
+
+    public Chat getChat() {
+        return chat;
+    }
+
+    public Embedding getEmbedding() {
+        return embedding;
+    }
+
+    public Scoring getScoring() {
+        return scoring;
+    }
+
+    public Sidecar getSidecar() {
+        return sidecar;
+    }
+
+    public static class Chat {
+        private Duration firstTokenLatency = Duration.ofMillis(300);
+        private double tokensPerSecond = 40;
+        private int answerTokens = 120;
+
+        public Duration getFirstTokenLatency() {
+            return firstTokenLatency;
+        }
+
+        public void setFirstTokenLatency(Duration firstTokenLatency) {
+            this.firstTokenLatency = firstTokenLatency;
+        }
+
+        public double getTokensPerSecond() {
+            return tokensPerSecond;
+        }
+
+        public void setTokensPerSecond(double tokensPerSecond) {
+            this.tokensPerSecond = tokensPerSecond;
+        }
+
+        public int getAnswerTokens() {
+            return answerTokens;
+        }
+
+        public void setAnswerTokens(int answerTokens) {
+            this.answerTokens = answerTokens;
+        }
+    }
+
+    public static class Embedding {
+        private Duration latency = Duration.ofMillis(5);
+        private int dimension = 384;
+
+        public Duration getLatency() {
+            return latency;
+        }
+
+        public void setLatency(Duration latency) {
+            this.latency = latency;
+        }
+
+        public int getDimension() {
+            return dimension;
+        }
+
+        public void setDimension(int dimension) {
+            this.dimension = dimension;
+        }
+    }
+
+    public static class Scoring {
+        private Duration costPerPair = Duration.ofMillis(2);
+
+        public Duration getCostPerPair() {
+            return costPerPair;
+        }
+
+        public void setCostPerPair(Duration costPerPair) {
+            this.costPerPair = costPerPair;
+        }
+    }
+
+    public static class Sidecar {
+        private Duration latency = Duration.ofMillis(50);
+        private int items = 5;
+
+        public Duration getLatency() {
+            return latency;
+        }
+
+        public void setLatency(Duration latency) {
+            this.latency = latency;
+        }
+
+        public int getItems() {
+            return items;
+        }
+
+        public void setItems(int items) {
+            this.items = items;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.rag.loadtest;
+
+import com.example.rag.perf.QueryLog;
+import com.example.rag.perf.QueryLogRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 查询日志回放工具
+ *
+ * 读取服务端查询日志（rag.query-log.*），向运行中的实例重放 /api/qa 请求：
+ * - speed > 0：按原始请求间隔（除以 speed）开环发送，重现真实流量的突发与问题分布，用于压测
+ * - speed = 0：闭环并发尽快发送，用于发布后预热结果缓存与嵌入缓存
+ *
+ * 延迟从计划发送时刻起算（与 {@link LoadGenerator} 一致），结果输出到控制台与 JSON 报告
+ *
+ * 运行：mvn -Ploadtest compile exec:exec@loadtest -Dloadtest.main=com.example.rag.loadtest.QueryLogReplay
+ *       -Dloadtest.args="--replay.target=http://host:8080 --replay.input=data/query-log --replay.speed=2"
+ */
+public class QueryLogReplay {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryLogReplay.class);
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(120);
+
+    private final ReplayProperties properties;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final URI endpoint;
+
+    QueryLogReplay(ReplayProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "replay-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(executor)
+                .build();
+        this.endpoint = URI.create(properties.getTarget()).resolve("/api/qa");
+    }
+
+    public static void main(String[] args) throws Exception {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        ReplayProperties properties = Binder.get(environment)
+                .bind("replay", ReplayProperties.class)
+                .orElseGet(ReplayProperties::new);
+        ObjectMapper objectMapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        QueryLogReplay replay = new QueryLogReplay(properties, objectMapper);
+        try {
+            Map<String, Object> report = replay.run(Arrays.asList(args));
+            Path reportPath = Path.of(properties.getReport());
+            if (reportPath.getParent() != null) {
+                Files.createDirectories(reportPath.getParent());
+            }
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportPath.toFile(), report);
+            System.out.println("report=" + reportPath.toAbsolutePath());
+        } finally {
+            replay.close();
+        }
+    }
+
+    Map<String, Object> run(List<String> arguments) throws IOException, InterruptedException {
+        List<Path> files = inputFiles(Path.of(properties.getInput()));
+        if (files.isEmpty()) {
+            throw new IllegalStateException("未找到查询日志: " + properties.getInput());
+        }
+        boolean closedLoop = properties.getSpeed() <= 0;
+        Semaphore permits = new Semaphore(Math.max(1, closedLoop ? properties.getConcurrency()
+                : properties.getMaxInFlight()));
+        EndpointStats stats = new EndpointStats("qa");
+        AtomicInteger inFlight = new AtomicInteger();
+        log.info("开始回放, files={}, target={}, speed={}", files.size(), endpoint, properties.getSpeed());
+
+        long start = System.nanoTime();
+        long firstTimestamp = -1;
+        long lastOffset = 0;
+        long replayed = 0;
+        outer:
+        for (Path file : files) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    if (properties.getLimit() > 0 && replayed >= properties.getLimit()) {
+                        break outer;
+                    }
+                    QueryLogRecord record = objectMapper.readValue(line, QueryLogRecord.class);
+                    if (firstTimestamp < 0) {
+                        firstTimestamp = record.timestamp();
+                    }
+                    // 记录按完成顺序写入，时间戳可能轻微乱序，取单调值
+                    lastOffset = Math.max(lastOffset, record.timestamp() - firstTimestamp);
+                    long scheduled;
+                    if (closedLoop) {
+                        permits.acquire();
+                        scheduled = System.nanoTime();
+                    } else {
+                        scheduled = start + (long) (TimeUnit.MILLISECONDS.toNanos(lastOffset) / properties.getSpeed());
+                        parkUntil(scheduled);
+                        if (!permits.tryAcquire()) {
+                            stats.dropped();
+                            replayed++;
+                            continue;
+                        }
+                    }
+                    stats.sent();
+                    inFlight.incrementAndGet();
+                    long sentAt = scheduled;
+                    client.sendAsync(request(record), HttpResponse.BodyHandlers.discarding())
+                            .whenComplete((response, error) -> {
+                                inFlight.decrementAndGet();
+                                permits.release();
+                                stats.record(response == null ? -1 : response.statusCode(), System.nanoTime() - sentAt);
+                            });
+                    replayed++;
+                }
+            }
+        }
+        drain(inFlight);
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        LoadReport.EndpointReport qa = stats.toReport(seconds);
+        System.out.printf("records=%d recordedSeconds=%.1f replaySeconds=%.1f%n", replayed, lastOffset / 1000.0,
+                seconds);
+        System.out.printf("qa sent=%d ok=%d rejected=%d errors=%d dropped=%d ok/s=%.1f p50ms=%.1f p95ms=%.1f "
+                        + "p99ms=%.1f maxms=%.1f%n", qa.sent(), qa.ok(), qa.rejected(), qa.errors(), qa.dropped(),
+                qa.throughput(), qa.p50Ms(), qa.p95Ms(), qa.p99Ms(), qa.maxMs());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("target", endpoint.toString());
+        report.put("input", properties.getInput());
+        report.put("speed", properties.getSpeed());
+        report.put("records", replayed);
+        report.put("recordedSeconds", lastOffset / 1000.0);
+        report.put("replaySeconds", seconds);
+        report.put("qa", qa);
+        report.put("arguments", arguments);
+        return report;
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private HttpRequest request(QueryLogRecord record) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("question", record.question());
+        body.put("topK", record.topK());
+        body.put("minScore", record.minScore());
+        body.put("version", record.version());
+        body.put("tags", record.tags());
+        body.put("source", record.source());
+        body.put("keywords", record.keywords());
+        byte[] bytes;
+        try {
+            bytes = objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化回放请求失败", e);
+        }
+        return HttpRequest.newBuilder(endpoint)
+                .header("Content-Type", "application/json")
+                .timeout(properties.getRequestTimeout())
+                .POST(HttpRequest.BodyPublishers.ofByteArray(bytes))
+                .build();
+    }
+
+    private static List<Path> inputFiles(Path input) {
+        if (Files.isRegularFile(input)) {
+            return List.of(input);
+        }
+        return QueryLog.listFiles(input);
+    }
+
+    private void drain(AtomicInteger inFlight) throws InterruptedException {
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        if (inFlight.get() > 0) {
+            log.warn("等待在途请求超时, inFlight={}", inFlight.get());
+        }
+    }
+
+    private static void parkUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
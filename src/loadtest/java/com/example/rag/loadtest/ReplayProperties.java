@@ -0,0 +1,89 @@
+package com.example.rag.loadtest;
+
+import java.time.Duration;
+
+/**
+ * 查询日志回放配置（前缀 replay，通过命令行 --replay.xxx=yyy 覆盖）
+ *
+ * - target：被测服务地址，回放请求发送到 {target}/api/qa
+ * - input：查询日志文件或目录（目录下按文件名顺序读取 queries-*.ndjson）
+ * - speed：相对原始速度的倍数，按记录时间间隔除以 speed 调度（开环）；0 表示不等待，
+ *   以 concurrency 个并发尽快发送（闭环），用于缓存预热
+ * - maxInFlight：开环回放的客户端在途上限，超出后计为丢弃
+ * - limit：最多回放的记录数，0 表示全部
+ */
+public class ReplayProperties {
+
+    private String target = "http://127.0.0.1:8080";
+    private String input = "data/query-log";
+    private double speed = 1.0;
+    private int concurrency = 16;
+    private int maxInFlight = 10_000;
+    private long limit = 0;
+    private Duration requestTimeout = Duration.ofSeconds(120);
+    private String report = "target/replay-report.json";
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public void setInput(String input) {
+        this.input = input;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public String getReport() {
+        return report;
+    }
+
+    public void setReport(String report) {
+        this.report = report;
+    }
+}
@@ -6,6 +6,7 @@ import com.example.rag.eval.EvaluationReport;
 import com.example.rag.eval.EvaluationService;
 import com.example.rag.service.RagService;
 import com.example.rag.service.dto.RagRequest;
+import com.example.rag.service.dto.RetrievedSegment;
 import dev.langchain4j.data.segment.TextSegment;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.WebApplicationType;
@@ -33,8 +34,11 @@ public class EvaluationApplication {
             EvaluationDataset dataset = new EvaluationDatasetLoader().load(Path.of(datasetPath));
             EvaluationReport report = evaluationService.evaluate(dataset, (question, k) -> {
                 RagRequest request = new RagRequest(question, k, null, null, null, null, null);
-                List<String> evidence = ragService.ask(request).evidence();
-                return evidence.stream().map(TextSegment::from).toList();
+                // 评测只关心召回，走仅检索接口，避免逐条调用LLM生成
+                return ragService.retrieve(request).segments().stream()
+                        .map(RetrievedSegment::text)
+                        .map(TextSegment::from)
+                        .toList();
             }, topK);
             System.out.printf("total=%d hit=%d hitRate=%.4f recall@k=%.4f%n",
                     report.total(), report.hitCount(), report.hitRate(), report.recallAtK());
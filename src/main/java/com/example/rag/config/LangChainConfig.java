@@ -1,27 +1,46 @@
 package com.example.rag.config;
 
+import com.example.rag.perf.AdaptiveLimiter;
+import com.example.rag.perf.PersistentEmbeddingCache;
+import com.example.rag.perf.QueryLog;
 import com.example.rag.perf.QueryLimiter;
+import com.example.rag.prompt.HuggingFaceTokenCounter;
+import com.example.rag.prompt.TokenCounter;
 import com.example.rag.perf.RagCache;
+import com.example.rag.perf.RagMetrics;
+import com.example.rag.perf.RetrievalExecutor;
 import com.example.rag.rerank.DjlCrossEncoderScoringModel;
+import com.example.rag.retrieval.FlatEmbeddingStore;
 import com.example.rag.retrieval.FullTextSearchService;
+import com.example.rag.retrieval.LuceneEmbeddingStore;
 import com.example.rag.service.BatchEmbeddingIngestor;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.model.ollama.OllamaChatRequestParameters;
+import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
 import dev.langchain4j.model.scoring.ScoringModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import dev.langchain4j.store.embedding.chroma.ChromaApiVersion;
 import dev.langchain4j.store.embedding.chroma.ChromaEmbeddingStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.Nullable;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 
@@ -29,13 +48,29 @@ import java.time.Duration;
 @EnableConfigurationProperties(RagProperties.class)
 public class LangChainConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(LangChainConfig.class);
+
     @Bean
     public EmbeddingModel embeddingModel() {
         return new AllMiniLmL6V2EmbeddingModel();
     }
 
+    // 向量库：默认远程 Chroma；lucene 为进程内 HNSW 索引，flat 为内存映射暴力扫描（关闭方法由Spring推断）
     @Bean
     public EmbeddingStore<TextSegment> embeddingStore(RagProperties properties) {
+        RagProperties.Vector vector = properties.getVector();
+        if (vector.getStore() == RagProperties.Vector.Store.FLAT) {
+            RagProperties.Vector.Flat flat = vector.getFlat();
+            return new FlatEmbeddingStore(Path.of(flat.getPath()), flat.getDimension(), flat.getParallelism(),
+                    flat.getParallelThreshold(), flat.getQuantization() == RagProperties.Vector.Flat.Quantization.INT8,
+                    flat.getOversample(), flat.getCalibrationSample());
+        }
+        if (vector.getStore() == RagProperties.Vector.Store.LUCENE) {
+            RagProperties.Vector.Lucene lucene = vector.getLucene();
+            log.info("使用Lucene向量库, indexPath={}", lucene.getIndexPath());
+            return new LuceneEmbeddingStore(Path.of(lucene.getIndexPath()), lucene.getMaxConnections(),
+                    lucene.getBeamWidth(), lucene.getNumCandidates());
+        }
         RagProperties.Chroma chroma = properties.getChroma();
         return ChromaEmbeddingStore.builder()
                 .apiVersion(ChromaApiVersion.V2)
@@ -53,10 +88,31 @@ public class LangChainConfig {
         return OllamaChatModel.builder()
                 .baseUrl(ollama.getBaseUrl())
                 .modelName(ollama.getModelName())
+                .defaultRequestParameters(ollamaParameters(ollama))
                 .timeout(Duration.ofSeconds(60))
                 .build();
     }
 
+    @Bean
+    public StreamingChatModel streamingChatModel(RagProperties properties) {
+        RagProperties.Ollama ollama = properties.getOllama();
+        return OllamaStreamingChatModel.builder()
+                .baseUrl(ollama.getBaseUrl())
+                .modelName(ollama.getModelName())
+                .defaultRequestParameters(ollamaParameters(ollama))
+                .timeout(ollama.getStreamTimeout())
+                .build();
+    }
+
+    // keep_alive 与 num_ctx：保持模型常驻并固定上下文窗口，前缀 KV Cache 才能跨请求复用
+    private OllamaChatRequestParameters ollamaParameters(RagProperties.Ollama ollama) {
+        return OllamaChatRequestParameters.builder()
+                .modelName(ollama.getModelName())
+                .keepAlive(ollama.getKeepAlive() == null ? null : (int) ollama.getKeepAlive().toSeconds())
+                .numCtx(ollama.getNumCtx())
+                .build();
+    }
+
     @Bean
     public DocumentSplitter documentSplitter(RagProperties properties) {
         RagProperties.Ingest ingest = properties.getIngest();
@@ -78,9 +134,11 @@ public class LangChainConfig {
     public BatchEmbeddingIngestor batchEmbeddingIngestor(DocumentSplitter splitter,
                                                          EmbeddingModel embeddingModel,
                                                          EmbeddingStore<TextSegment> embeddingStore,
-                                                         RagProperties properties) {
+                                                         RagProperties properties,
+                                                         @Nullable @Qualifier("chunkEmbeddingCache")
+                                                         PersistentEmbeddingCache chunkEmbeddingCache) {
         return new BatchEmbeddingIngestor(splitter, embeddingModel, embeddingStore,
-                properties.getIngest().getBatchSize());
+                properties.getIngest().getBatchSize(), chunkEmbeddingCache);
     }
 
     @Bean
@@ -88,23 +146,108 @@ public class LangChainConfig {
         return new FullTextSearchService(properties);
     }
 
+    // 二级持久化嵌入缓存：问题向量（RagCache）与入库分片向量（BatchEmbeddingIngestor）分文件存放，
+    // 文件由这里的 Bean 负责关闭，使用方不关闭
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "rag.cache.embedding.persistent", name = "enabled", havingValue = "true")
+    public PersistentEmbeddingCache questionEmbeddingCache(RagProperties properties) {
+        RagProperties.Cache.Embedding.Persistent persistent = properties.getCache().getEmbedding().getPersistent();
+        return new PersistentEmbeddingCache(Path.of(persistent.getQuestions().getPath()), persistent.getModelId(),
+                persistent.getQuestions().getMaxEntries(), persistent.getWays());
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "rag.cache.embedding.persistent", name = "enabled", havingValue = "true")
+    public PersistentEmbeddingCache chunkEmbeddingCache(RagProperties properties) {
+        RagProperties.Cache.Embedding.Persistent persistent = properties.getCache().getEmbedding().getPersistent();
+        return new PersistentEmbeddingCache(Path.of(persistent.getChunks().getPath()), persistent.getModelId(),
+                persistent.getChunks().getMaxEntries(), persistent.getWays());
+    }
+
     @Bean
-    public RagCache ragCache(RagProperties properties) {
-        return new RagCache(properties);
+    public RagCache ragCache(RagProperties properties,
+                             @Nullable @Qualifier("questionEmbeddingCache")
+                             PersistentEmbeddingCache questionEmbeddingCache) {
+        return new RagCache(properties, questionEmbeddingCache);
+    }
+
+    // 查询日志：请求线程只写环形缓冲区，后台线程落盘
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "rag.query-log", name = "enabled", havingValue = "true")
+    public QueryLog queryLog(RagProperties properties, ObjectMapper objectMapper) {
+        RagProperties.QueryLog queryLog = properties.getQueryLog();
+        return new QueryLog(Path.of(queryLog.getDir()), queryLog.getBufferSize(),
+                queryLog.getMaxFileSize().toBytes(), queryLog.getMaxFiles(), objectMapper);
     }
 
+    // 管线阶段耗时与入库计数；缓存与限流器指标由各自的 MeterBinder 注册
     @Bean
+    public RagMetrics ragMetrics(MeterRegistry meterRegistry) {
+        return new RagMetrics(meterRegistry);
+    }
+
+    @Bean(destroyMethod = "close")
     public QueryLimiter queryLimiter(RagProperties properties) {
         RagProperties.Concurrency concurrency = properties.getConcurrency();
         if (!concurrency.isEnabled()) {
             return QueryLimiter.disabled();
         }
+        if (concurrency.getMode() == RagProperties.Concurrency.Mode.ADAPTIVE) {
+            RagProperties.Concurrency.Adaptive adaptive = concurrency.getAdaptive();
+            return QueryLimiter.adaptive(concurrency.getName(), new AdaptiveLimiter(concurrency.getName(),
+                    adaptive.getInitialLimit(),
+                    adaptive.getMinLimit(),
+                    adaptive.getMaxLimit(),
+                    adaptive.getSmoothing(),
+                    adaptive.getBackoffRatio(),
+                    adaptive.getQueueWaitBudget()));
+        }
+        if (concurrency.getMode() == RagProperties.Concurrency.Mode.SEMAPHORE) {
+            return QueryLimiter.semaphore(concurrency.getName(), concurrency.getMaxSize(), concurrency.getMaxWait());
+        }
         return QueryLimiter.threadPool(concurrency.getName(),
                 concurrency.getCoreSize(),
                 concurrency.getMaxSize(),
                 concurrency.getQueueCapacity());
     }
 
+    // 仅检索接口的独立舱壁，与问答限流线程池互不影响
+    @Bean(destroyMethod = "close")
+    public QueryLimiter retrievalLimiter(RagProperties properties) {
+        RagProperties.Concurrency.Pool pool = properties.getConcurrency().getRetrieval();
+        if (!pool.isEnabled()) {
+            return QueryLimiter.disabled();
+        }
+        return QueryLimiter.threadPool(pool.getName(),
+                pool.getCoreSize(),
+                pool.getMaxSize(),
+                pool.getQueueCapacity());
+    }
+
+    @Bean(destroyMethod = "close")
+    public RetrievalExecutor retrievalExecutor(RagProperties properties) {
+        RagProperties.Retrieval.Parallel parallel = properties.getRetrieval().getParallel();
+        if (!parallel.isEnabled()) {
+            return RetrievalExecutor.direct();
+        }
+        return RetrievalExecutor.threadPool(parallel.getName(), parallel.getPoolSize(), parallel.getQueueCapacity());
+    }
+
+    // 批量问答逐条并行的线程池，与检索分支线程池分开，避免嵌套等待耗尽线程
+    @Bean(destroyMethod = "close")
+    public RetrievalExecutor batchExecutor(RagProperties properties) {
+        RagProperties.Batch batch = properties.getBatch();
+        return RetrievalExecutor.threadPool(batch.getName(), batch.getParallelism(), batch.getMaxItems());
+    }
+
+    // 有截止时间的同步生成在该线程池中执行，调用线程按剩余预算等待；并发已受问答限流约束，大小不应小于限流并发数
+    @Bean(destroyMethod = "close")
+    public RetrievalExecutor generationExecutor(RagProperties properties) {
+        RagProperties.Deadline deadline = properties.getDeadline();
+        return RetrievalExecutor.threadPool("rag-generation", deadline.getGenerationPoolSize(),
+                deadline.getGenerationPoolSize());
+    }
+
     @Bean
     @ConditionalOnProperty(prefix = "rag.retrieval.rerank.cross-encoder", name = "enabled", havingValue = "true")
     public ScoringModel scoringModel(RagProperties properties) {
@@ -118,4 +261,38 @@ public class LangChainConfig {
                 crossEncoder.isIncludeTokenTypes(),
                 crossEncoder.isSigmoid());
     }
+
+    // 提示词打包使用所服务模型的分词器：优先本地 tokenizer-path，其次显式配置的 tokenizer-id；
+    // 都不可用时退回近似计数并输出错误日志，此时 Token 预算只是估算值
+    @Bean
+    @ConditionalOnProperty(prefix = "rag.prompt", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public TokenCounter tokenCounter(RagProperties properties) {
+        RagProperties.Prompt prompt = properties.getPrompt();
+        String tokenizerPath = prompt.getTokenizerPath();
+        String tokenizerId = prompt.getTokenizerId();
+        boolean pathConfigured = tokenizerPath != null && !tokenizerPath.isBlank();
+        boolean idConfigured = tokenizerId != null && !tokenizerId.isBlank();
+        if (!pathConfigured && !idConfigured) {
+            log.info("未配置提示词分词器，Token预算使用近似计数；配置 rag.prompt.tokenizer-path 后按模型分词器精确计数");
+            return TokenCounter.approximate();
+        }
+        try {
+            if (pathConfigured && Files.isRegularFile(Path.of(tokenizerPath))) {
+                log.info("提示词分词器已加载, tokenizerPath={}", tokenizerPath);
+                return new HuggingFaceTokenCounter(Path.of(tokenizerPath));
+            }
+            if (idConfigured) {
+                log.warn("本地分词器不存在, tokenizerPath={}，改为从 HuggingFace 加载 tokenizerId={}", tokenizerPath, tokenizerId);
+                return new HuggingFaceTokenCounter(tokenizerId);
+            }
+            log.error("未找到所服务模型 {} 的分词器, tokenizerPath={}，提示词Token预算改用近似计数，"
+                            + "实际提示词可能超出 max-tokens，请配置 rag.prompt.tokenizer-path",
+                    properties.getOllama().getModelName(), tokenizerPath);
+        } catch (IllegalStateException e) {
+            log.error("分词器加载失败, tokenizerPath={}, tokenizerId={}，提示词Token预算改用近似计数，"
+                            + "实际提示词可能超出 max-tokens",
+                    tokenizerPath, tokenizerId, e.getCause() == null ? e : e.getCause());
+        }
+        return TokenCounter.approximate();
+    }
 }
@@ -1,8 +1,11 @@
 package com.example.rag.config;
 
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 
 import java.time.Duration;
@@ -13,11 +16,16 @@ import java.util.List;
 public class RagProperties {
 
     private final Chroma chroma = new Chroma();
+    private final Vector vector = new Vector();
     private final Ollama ollama = new Ollama();
     private final Retrieval retrieval = new Retrieval();
     private final FullText fulltext = new FullText();
     private final Cache cache = new Cache();
     private final Concurrency concurrency = new Concurrency();
+    private final Batch batch = new Batch();
+    private final Deadline deadline = new Deadline();
+    private final Prompt prompt = new Prompt();
+    private final QueryLog queryLog = new QueryLog();
     private final Ingest ingest = new Ingest();
     private final LlamaIndex llamaindex = new LlamaIndex();
 
@@ -25,6 +33,10 @@ public class RagProperties {
         return chroma;
     }
 
+    public Vector getVector() {
+        return vector;
+    }
+
     public Ollama getOllama() {
         return ollama;
     }
@@ -45,6 +57,22 @@ public class RagProperties {
         return concurrency;
     }
 
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    public Prompt getPrompt() {
+        return prompt;
+    }
+
+    public QueryLog getQueryLog() {
+        return queryLog;
+    }
+
     public Ingest getIngest() {
         return ingest;
     }
@@ -94,11 +122,173 @@ public class RagProperties {
         }
     }
 
+    public static class Vector {
+        private Store store = Store.CHROMA;
+        private final Lucene lucene = new Lucene();
+        private final Flat flat = new Flat();
+
+        public Store getStore() {
+            return store;
+        }
+
+        public void setStore(Store store) {
+            this.store = store;
+        }
+
+        public Lucene getLucene() {
+            return lucene;
+        }
+
+        public Flat getFlat() {
+            return flat;
+        }
+
+        public enum Store {
+            CHROMA,
+            LUCENE,
+            FLAT
+        }
+
+        public static class Lucene {
+            @NotBlank
+            private String indexPath = "data/vector-lucene";
+            // HNSW 每个节点的最大连接数（M）
+            @Min(2)
+            private int maxConnections = 16;
+            // 构图时的候选队列大小（efConstruction）
+            @Min(1)
+            private int beamWidth = 100;
+            // 检索时的候选队列大小（efSearch），不小于 topK
+            @Min(1)
+            private int numCandidates = 100;
+
+            public String getIndexPath() {
+                return indexPath;
+            }
+
+            public void setIndexPath(String indexPath) {
+                this.indexPath = indexPath;
+            }
+
+            public int getMaxConnections() {
+                return maxConnections;
+            }
+
+            public void setMaxConnections(int maxConnections) {
+                this.maxConnections = maxConnections;
+            }
+
+            public int getBeamWidth() {
+                return beamWidth;
+            }
+
+            public void setBeamWidth(int beamWidth) {
+                this.beamWidth = beamWidth;
+            }
+
+            public int getNumCandidates() {
+                return numCandidates;
+            }
+
+            public void setNumCandidates(int numCandidates) {
+                this.numCandidates = numCandidates;
+            }
+        }
+
+        public static class Flat {
+            @NotBlank
+            private String path = "data/vector-flat";
+            // 需与嵌入模型一致（AllMiniLmL6V2 为384）
+            @Min(1)
+            private int dimension = 384;
+            // 扫描线程数，0 表示CPU核数
+            @Min(0)
+            private int parallelism = 0;
+            // 行数达到该值才并行扫描，小集合单线程更快
+            @Min(1)
+            private int parallelThreshold = 20000;
+            // int8 时另存量化编码，先扫描编码取候选再用原始向量重排
+            private Quantization quantization = Quantization.NONE;
+            // 量化扫描的候选数为 topK 的倍数，越大召回越接近精确扫描
+            @Min(1)
+            private int oversample = 5;
+            // int8 标定的样本行数：有效行数达到该值时按已有行的范围标定一次，之后只编码新行
+            @Min(1)
+            private int calibrationSample = 1000;
+
+            public String getPath() {
+                return path;
+            }
+
+            public void setPath(String path) {
+                this.path = path;
+            }
+
+            public int getDimension() {
+                return dimension;
+            }
+
+            public void setDimension(int dimension) {
+                this.dimension = dimension;
+            }
+
+            public int getParallelism() {
+                return parallelism;
+            }
+
+            public void setParallelism(int parallelism) {
+                this.parallelism = parallelism;
+            }
+
+            public int getParallelThreshold() {
+                return parallelThreshold;
+            }
+
+            public void setParallelThreshold(int parallelThreshold) {
+                this.parallelThreshold = parallelThreshold;
+            }
+
+            public Quantization getQuantization() {
+                return quantization;
+            }
+
+            public void setQuantization(Quantization quantization) {
+                this.quantization = quantization;
+            }
+
+            public int getOversample() {
+                return oversample;
+            }
+
+            public void setOversample(int oversample) {
+                this.oversample = oversample;
+            }
+
+            public int getCalibrationSample() {
+                return calibrationSample;
+            }
+
+            public void setCalibrationSample(int calibrationSample) {
+                this.calibrationSample = calibrationSample;
+            }
+
+            public enum Quantization {
+                NONE,
+                INT8
+            }
+        }
+    }
+
     public static class Ollama {
         @NotBlank
         private String baseUrl = "http://localhost:11434";
         @NotBlank
         private String modelName = "llama3.1";
+        private Duration streamTimeout = Duration.ofMinutes(2);
+        // 模型常驻时长，避免空闲卸载后重新加载与前缀 KV Cache 失效
+        private Duration keepAlive = Duration.ofMinutes(30);
+        // 上下文窗口大小（num_ctx），为空时使用模型默认值
+        private Integer numCtx = 4096;
 
         public String getBaseUrl() {
             return baseUrl;
@@ -115,6 +305,30 @@ public class RagProperties {
         public void setModelName(String modelName) {
             this.modelName = modelName;
         }
+
+        public Duration getStreamTimeout() {
+            return streamTimeout;
+        }
+
+        public void setStreamTimeout(Duration streamTimeout) {
+            this.streamTimeout = streamTimeout;
+        }
+
+        public Duration getKeepAlive() {
+            return keepAlive;
+        }
+
+        public void setKeepAlive(Duration keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+
+        public Integer getNumCtx() {
+            return numCtx;
+        }
+
+        public void setNumCtx(Integer numCtx) {
+            this.numCtx = numCtx;
+        }
     }
 
     public static class Retrieval {
@@ -126,6 +340,8 @@ public class RagProperties {
         private int candidateSize = 20;
         private final Hybrid hybrid = new Hybrid();
         private final Rerank rerank = new Rerank();
+        private final Parallel parallel = new Parallel();
+        private final Dedup dedup = new Dedup();
 
         public int getTopK() {
             return topK;
@@ -159,6 +375,14 @@ public class RagProperties {
             return rerank;
         }
 
+        public Parallel getParallel() {
+            return parallel;
+        }
+
+        public Dedup getDedup() {
+            return dedup;
+        }
+
         public static class Hybrid {
             private boolean enabled = true;
             @Min(1)
@@ -181,6 +405,75 @@ public class RagProperties {
             }
         }
 
+        public static class Parallel {
+            private boolean enabled = true;
+            @Min(1)
+            private int poolSize = 16;
+            // 等待队列容量，满时新分支直接降级为空结果
+            @Min(1)
+            private int queueCapacity = 256;
+            private String name = "rag-retrieval";
+            private Duration vectorTimeout = Duration.ofSeconds(5);
+            private Duration fullTextTimeout = Duration.ofSeconds(2);
+            private Duration llamaIndexTimeout = Duration.ofSeconds(8);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getPoolSize() {
+                return poolSize;
+            }
+
+            public void setPoolSize(int poolSize) {
+                this.poolSize = poolSize;
+            }
+
+            public int getQueueCapacity() {
+                return queueCapacity;
+            }
+
+            public void setQueueCapacity(int queueCapacity) {
+                this.queueCapacity = queueCapacity;
+            }
+
+            public String getName() {
+                return name;
+            }
+
+            public void setName(String name) {
+                this.name = name;
+            }
+
+            public Duration getVectorTimeout() {
+                return vectorTimeout;
+            }
+
+            public void setVectorTimeout(Duration vectorTimeout) {
+                this.vectorTimeout = vectorTimeout;
+            }
+
+            public Duration getFullTextTimeout() {
+                return fullTextTimeout;
+            }
+
+            public void setFullTextTimeout(Duration fullTextTimeout) {
+                this.fullTextTimeout = fullTextTimeout;
+            }
+
+            public Duration getLlamaIndexTimeout() {
+                return llamaIndexTimeout;
+            }
+
+            public void setLlamaIndexTimeout(Duration llamaIndexTimeout) {
+                this.llamaIndexTimeout = llamaIndexTimeout;
+            }
+        }
+
         public static class Rerank {
             private boolean keywordEnabled = true;
             @Min(0)
@@ -265,6 +558,49 @@ public class RagProperties {
                 this.sigmoid = sigmoid;
             }
         }
+
+        // 近重复证据过滤（SimHash），在重排前与双路合并后执行
+        public static class Dedup {
+            private boolean enabled = true;
+            @Min(0)
+            private int maxHammingDistance = 6;
+            @Min(1)
+            private int shingleSize = 3;
+            @Min(1)
+            private int cacheSize = 10000;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getMaxHammingDistance() {
+                return maxHammingDistance;
+            }
+
+            public void setMaxHammingDistance(int maxHammingDistance) {
+                this.maxHammingDistance = maxHammingDistance;
+            }
+
+            public int getShingleSize() {
+                return shingleSize;
+            }
+
+            public void setShingleSize(int shingleSize) {
+                this.shingleSize = shingleSize;
+            }
+
+            public int getCacheSize() {
+                return cacheSize;
+            }
+
+            public void setCacheSize(int cacheSize) {
+                this.cacheSize = cacheSize;
+            }
+        }
     }
 
     public static class FullText {
@@ -320,8 +656,11 @@ public class RagProperties {
 
     public static class Cache {
         private boolean enabled = true;
-        private final Spec embedding = new Spec();
-        private final Spec result = new Spec();
+        private boolean singleFlight = true;
+        private final Embedding embedding = new Embedding();
+        private final Result result = new Result();
+        private final Spec retrieval = new Spec();
+        private final Semantic semantic = new Semantic();
 
         public boolean isEnabled() {
             return enabled;
@@ -331,14 +670,30 @@ public class RagProperties {
             this.enabled = enabled;
         }
 
-        public Spec getEmbedding() {
+        public boolean isSingleFlight() {
+            return singleFlight;
+        }
+
+        public void setSingleFlight(boolean singleFlight) {
+            this.singleFlight = singleFlight;
+        }
+
+        public Embedding getEmbedding() {
             return embedding;
         }
 
-        public Spec getResult() {
+        public Result getResult() {
             return result;
         }
 
+        public Spec getRetrieval() {
+            return retrieval;
+        }
+
+        public Semantic getSemantic() {
+            return semantic;
+        }
+
         public static class Spec {
             @Min(1)
             private int maxSize = 1000;
@@ -360,6 +715,155 @@ public class RagProperties {
                 this.ttl = ttl;
             }
         }
+
+        // 嵌入缓存：堆内 Caffeine 为一级，可选内存映射文件为二级，重启后仍可复用
+        public static class Embedding extends Spec {
+            private final Persistent persistent = new Persistent();
+
+            public Persistent getPersistent() {
+                return persistent;
+            }
+
+            // 问题向量与入库分片向量分文件存放，各自限额，批量入库不会挤掉热点问题
+            public static class Persistent {
+                private boolean enabled = false;
+                // 嵌入模型标识，变更后旧文件自动重建
+                private String modelId = "all-minilm-l6-v2";
+                @Min(1)
+                private int ways = 8;
+                private final CacheFile questions = new CacheFile("data/embedding-cache-questions.bin", 50_000);
+                private final CacheFile chunks = new CacheFile("data/embedding-cache-chunks.bin", 200_000);
+
+                public boolean isEnabled() {
+                    return enabled;
+                }
+
+                public void setEnabled(boolean enabled) {
+                    this.enabled = enabled;
+                }
+
+                public String getModelId() {
+                    return modelId;
+                }
+
+                public void setModelId(String modelId) {
+                    this.modelId = modelId;
+                }
+
+                public int getWays() {
+                    return ways;
+                }
+
+                public void setWays(int ways) {
+                    this.ways = ways;
+                }
+
+                public CacheFile getQuestions() {
+                    return questions;
+                }
+
+                public CacheFile getChunks() {
+                    return chunks;
+                }
+
+                public static class CacheFile {
+                    private String path;
+                    @Min(1)
+                    private int maxEntries;
+
+                    public CacheFile(String path, int maxEntries) {
+                        this.path = path;
+                        this.maxEntries = maxEntries;
+                    }
+
+                    public String getPath() {
+                        return path;
+                    }
+
+                    public void setPath(String path) {
+                        this.path = path;
+                    }
+
+                    public int getMaxEntries() {
+                        return maxEntries;
+                    }
+
+                    public void setMaxEntries(int maxEntries) {
+                        this.maxEntries = maxEntries;
+                    }
+                }
+            }
+        }
+
+        // 结果缓存按序列化后的字节数限额；maxMemory 未配置时退回按条数（maxSize）限额
+        public static class Result extends Spec {
+            private DataSize maxMemory = DataSize.ofMegabytes(64);
+            private Compression compression = Compression.DEFLATE;
+            // 编码后不足该大小的结果不压缩
+            private DataSize compressThreshold = DataSize.ofBytes(512);
+
+            public DataSize getMaxMemory() {
+                return maxMemory;
+            }
+
+            public void setMaxMemory(DataSize maxMemory) {
+                this.maxMemory = maxMemory;
+            }
+
+            public Compression getCompression() {
+                return compression;
+            }
+
+            public void setCompression(Compression compression) {
+                this.compression = compression;
+            }
+
+            public DataSize getCompressThreshold() {
+                return compressThreshold;
+            }
+
+            public void setCompressThreshold(DataSize compressThreshold) {
+                this.compressThreshold = compressThreshold;
+            }
+
+            public enum Compression {
+                NONE,
+                DEFLATE
+            }
+        }
+
+        public static class Semantic extends Spec {
+            private boolean enabled = false;
+            @DecimalMin("0.0")
+            @DecimalMax("1.0")
+            private double threshold = 0.95;
+            // 按编码后结果与查询向量的字节数限额，未配置时按 max-size 条数限额
+            private DataSize maxMemory = DataSize.ofMegabytes(16);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public double getThreshold() {
+                return threshold;
+            }
+
+            public void setThreshold(double threshold) {
+                this.threshold = threshold;
+            }
+
+            public DataSize getMaxMemory() {
+                return maxMemory;
+            }
+
+            public void setMaxMemory(DataSize maxMemory) {
+                this.maxMemory = maxMemory;
+            }
+        }
     }
 
     public static class Concurrency {
@@ -371,6 +875,14 @@ public class RagProperties {
         @Min(0)
         private int queueCapacity = 64;
         private String name = "rag-ask";
+        // thread-pool：线程池隔离；semaphore：信号量隔离（同步在调用线程执行，异步优先使用虚拟线程）
+        private Mode mode = Mode.THREAD_POOL;
+        // 信号量模式下获取许可的最长等待时间
+        private Duration maxWait = Duration.ZERO;
+        // 自适应模式参数
+        private final Adaptive adaptive = new Adaptive();
+        // 仅检索接口使用独立舱壁，不与LLM生成争抢槽位
+        private final Pool retrieval = new Pool();
 
         public boolean isEnabled() {
             return enabled;
@@ -411,6 +923,371 @@ public class RagProperties {
         public void setName(String name) {
             this.name = name;
         }
+    
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public void setMode(Mode mode) {
+            this.mode = mode;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+
+        public Adaptive getAdaptive() {
+            return adaptive;
+        }
+
+        public Pool getRetrieval() {
+            return retrieval;
+        }
+
+        public enum Mode {
+            THREAD_POOL,
+            SEMAPHORE,
+            ADAPTIVE
+        }
+
+        public static class Adaptive {
+            @Min(1)
+            private int initialLimit = 4;
+            @Min(1)
+            private int minLimit = 1;
+            @Min(1)
+            private int maxLimit = 32;
+            @DecimalMin("0.0")
+            @DecimalMax("1.0")
+            private double smoothing = 0.2;
+            @DecimalMin("0.1")
+            @DecimalMax("1.0")
+            private double backoffRatio = 0.9;
+            // 预估排队时间超过该预算时提前拒绝
+            private Duration queueWaitBudget = Duration.ofSeconds(10);
+
+            public int getInitialLimit() {
+                return initialLimit;
+            }
+
+            public void setInitialLimit(int initialLimit) {
+                this.initialLimit = initialLimit;
+            }
+
+            public int getMinLimit() {
+                return minLimit;
+            }
+
+            public void setMinLimit(int minLimit) {
+                this.minLimit = minLimit;
+            }
+
+            public int getMaxLimit() {
+                return maxLimit;
+            }
+
+            public void setMaxLimit(int maxLimit) {
+                this.maxLimit = maxLimit;
+            }
+
+            public double getSmoothing() {
+                return smoothing;
+            }
+
+            public void setSmoothing(double smoothing) {
+                this.smoothing = smoothing;
+            }
+
+            public double getBackoffRatio() {
+                return backoffRatio;
+            }
+
+            public void setBackoffRatio(double backoffRatio) {
+                this.backoffRatio = backoffRatio;
+            }
+
+            public Duration getQueueWaitBudget() {
+                return queueWaitBudget;
+            }
+
+            public void setQueueWaitBudget(Duration queueWaitBudget) {
+                this.queueWaitBudget = queueWaitBudget;
+            }
+        }
+
+        public static class Pool {
+            private boolean enabled = true;
+            @Min(1)
+            private int coreSize = 8;
+            @Min(1)
+            private int maxSize = 16;
+            @Min(0)
+            private int queueCapacity = 128;
+            private String name = "rag-retrieve";
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getCoreSize() {
+                return coreSize;
+            }
+
+            public void setCoreSize(int coreSize) {
+                this.coreSize = coreSize;
+            }
+
+            public int getMaxSize() {
+                return maxSize;
+            }
+
+            public void setMaxSize(int maxSize) {
+                this.maxSize = maxSize;
+            }
+
+            public int getQueueCapacity() {
+                return queueCapacity;
+            }
+
+            public void setQueueCapacity(int queueCapacity) {
+                this.queueCapacity = queueCapacity;
+            }
+
+            public String getName() {
+                return name;
+            }
+
+            public void setName(String name) {
+                this.name = name;
+            }
+        }
+    }
+
+    public static class Batch {
+        @Min(1)
+        private int maxItems = 1000;
+        @Min(1)
+        private int parallelism = 8;
+        private String name = "rag-batch";
+
+        public int getMaxItems() {
+            return maxItems;
+        }
+
+        public void setMaxItems(int maxItems) {
+            this.maxItems = maxItems;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    // 查询日志：问答请求写入环形缓冲区，后台线程追加到按大小滚动的 NDJSON 文件
+    public static class QueryLog {
+        private boolean enabled = false;
+        private String dir = "data/query-log";
+        // 环形缓冲区容量（向上取整为2的幂），写满时新记录直接丢弃
+        @Min(1)
+        private int bufferSize = 8192;
+        private DataSize maxFileSize = DataSize.ofMegabytes(64);
+        // 保留的日志文件数，超出后删除最旧的文件
+        @Min(1)
+        private int maxFiles = 20;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDir() {
+            return dir;
+        }
+
+        public void setDir(String dir) {
+            this.dir = dir;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public DataSize getMaxFileSize() {
+            return maxFileSize;
+        }
+
+        public void setMaxFileSize(DataSize maxFileSize) {
+            this.maxFileSize = maxFileSize;
+        }
+
+        public int getMaxFiles() {
+            return maxFiles;
+        }
+
+        public void setMaxFiles(int maxFiles) {
+            this.maxFiles = maxFiles;
+        }
+    }
+
+    public static class Deadline {
+        // 默认端到端预算，可被请求头 X-Request-Timeout-Ms 覆盖；0 表示不设截止
+        private Duration defaultTimeout = Duration.ofSeconds(60);
+        // 请求头可申请的最大预算，超出时按该值截断；0 表示不限制
+        private Duration maxTimeout = Duration.ofSeconds(120);
+        // 剩余预算低于该值时跳过 Cross-Encoder 重排
+        private Duration crossEncoderMinBudget = Duration.ofSeconds(2);
+        // 剩余预算低于该值时跳过 DUAL 模式的 LlamaIndex 侧车检索
+        private Duration sidecarMinBudget = Duration.ofSeconds(3);
+        // 剩余预算低于该值时不再发起 LLM 生成
+        private Duration generationMinBudget = Duration.ofSeconds(1);
+        // 同步生成线程池大小：LLM 调用在其中执行以便按剩余预算超时，不应小于问答限流并发数
+        @Min(1)
+        private int generationPoolSize = 32;
+
+        public Duration getDefaultTimeout() {
+            return defaultTimeout;
+        }
+
+        public void setDefaultTimeout(Duration defaultTimeout) {
+            this.defaultTimeout = defaultTimeout;
+        }
+
+        public Duration getMaxTimeout() {
+            return maxTimeout;
+        }
+
+        public void setMaxTimeout(Duration maxTimeout) {
+            this.maxTimeout = maxTimeout;
+        }
+
+        public Duration getCrossEncoderMinBudget() {
+            return crossEncoderMinBudget;
+        }
+
+        public void setCrossEncoderMinBudget(Duration crossEncoderMinBudget) {
+            this.crossEncoderMinBudget = crossEncoderMinBudget;
+        }
+
+        public Duration getSidecarMinBudget() {
+            return sidecarMinBudget;
+        }
+
+        public void setSidecarMinBudget(Duration sidecarMinBudget) {
+            this.sidecarMinBudget = sidecarMinBudget;
+        }
+
+        public Duration getGenerationMinBudget() {
+            return generationMinBudget;
+        }
+
+        public void setGenerationMinBudget(Duration generationMinBudget) {
+            this.generationMinBudget = generationMinBudget;
+        }
+
+        public int getGenerationPoolSize() {
+            return generationPoolSize;
+        }
+
+        public void setGenerationPoolSize(int generationPoolSize) {
+            this.generationPoolSize = generationPoolSize;
+        }
+    }
+
+    public static class Prompt {
+        private boolean enabled = true;
+        // 提示词Token上限（指令+问题+证据）
+        @Min(128)
+        private int maxTokens = 3072;
+        // 截断后的证据片段低于该Token数时丢弃
+        @Min(1)
+        private int minChunkTokens = 32;
+        // 所服务模型的本地 tokenizer.json，必须与 rag.ollama.model-name 对应的模型一致；未配置时使用近似计数
+        private String tokenizerPath;
+        // 可选：本地文件不存在时按名称从 HuggingFace 下载，默认不联网
+        private String tokenizerId;
+        // stable-prefix：固定指令作为 system 消息，便于复用前缀 KV Cache；legacy：旧版单条消息
+        private Layout layout = Layout.STABLE_PREFIX;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxTokens() {
+            return maxTokens;
+        }
+
+        public void setMaxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+        }
+
+        public int getMinChunkTokens() {
+            return minChunkTokens;
+        }
+
+        public void setMinChunkTokens(int minChunkTokens) {
+            this.minChunkTokens = minChunkTokens;
+        }
+
+        public String getTokenizerId() {
+            return tokenizerId;
+        }
+
+        public void setTokenizerId(String tokenizerId) {
+            this.tokenizerId = tokenizerId;
+        }
+
+        public String getTokenizerPath() {
+            return tokenizerPath;
+        }
+
+        public void setTokenizerPath(String tokenizerPath) {
+            this.tokenizerPath = tokenizerPath;
+        }
+
+        public Layout getLayout() {
+            return layout;
+        }
+
+        public void setLayout(Layout layout) {
+            this.layout = layout;
+        }
+
+        public enum Layout {
+            STABLE_PREFIX,
+            LEGACY
+        }
     }
 
     public static class Ingest {
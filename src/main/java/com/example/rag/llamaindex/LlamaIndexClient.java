@@ -73,7 +73,7 @@ public class LlamaIndexClient {
     public LlamaIndexIngestResponse ingestUploads(List<MultipartFile> files, UploadOptions options) {
         List<Resource> resources = files == null ? List.of() : files.stream()
                 .filter(file -> file != null && !file.isEmpty())
-                .map(this::toResource)
+                .<Resource>map(this::toResource)
                 .toList();
         return ingestResources(resources, options);
     }
@@ -0,0 +1,183 @@
+package com.example.rag.perf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 自适应并发限制
+ *
+ * 原理：参考 Netflix concurrency-limits 的 Gradient 算法，根据实测阶段耗时动态调整允许的并发数
+ * - longRtt：耗时的长期指数平均，代表“正常”耗时
+ * - gradient = longRtt / 本次耗时，限制在 [0.5, 1.0]：耗时变长说明下游开始排队，并发按比例收缩
+ * - newLimit = limit * gradient + sqrt(limit)：耗时平稳时按 sqrt(limit) 缓慢探测更高并发
+ * - 下游过载信号（LLM超时、限流或服务不可用）按 backoffRatio 乘性减小（AIMD 的 MD 部分）；
+ *   与负载无关的失败（客户端截止时间、参数错误等）只归还许可，不计入样本
+ * - 实际在途数不足 limit 一半时不再上调，避免空闲时 limit 无限增长
+ *
+ * 排队与提前拒绝：
+ * - 许可不足时进入 FIFO 等待队列
+ * - 预估排队时间 = (排队数 + 1) * longRtt / limit（Little 定律），超过 queueWaitBudget 时立即拒绝
+ * - 已入队的请求等待超过 queueWaitBudget 同样按拒绝处理
+ *
+ * @see QueryLimiter#adaptive 限流器入口
+ */
+public class AdaptiveLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveLimiter.class);
+
+    // 长期平均耗时的平滑窗口（样本数）
+    private static final int LONG_WINDOW = 100;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double backoffRatio;
+    private final long queueWaitBudgetNanos;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    private double limit;
+    private double longRttNanos;
+    private int inFlight;
+
+    public AdaptiveLimiter(String name,
+                           int initialLimit,
+                           int minLimit,
+                           int maxLimit,
+                           double smoothing,
+                           double backoffRatio,
+                           Duration queueWaitBudget) {
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = Math.max(minLimit, maxLimit);
+        this.smoothing = smoothing;
+        this.backoffRatio = backoffRatio;
+        this.queueWaitBudgetNanos = queueWaitBudget.toNanos();
+        this.limit = Math.max(minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    // 申请许可：有空闲许可立即完成；否则排队，预估等待超预算时直接以拒绝异常结束
+    public CompletableFuture<Void> acquire() {
+        CompletableFuture<Void> waiter;
+        synchronized (this) {
+            if (inFlight < currentLimit()) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            long estimatedWait = estimatedQueueWaitNanos();
+            if (estimatedWait > queueWaitBudgetNanos) {
+                return CompletableFuture.failedFuture(new QueryRejectedException(
+                        "预估排队时间超过预算，拒绝请求: name=" + name
+                                + ", estimatedWaitMs=" + TimeUnit.NANOSECONDS.toMillis(estimatedWait)
+                                + ", limit=" + currentLimit()));
+            }
+            waiter = new CompletableFuture<>();
+            waiters.addLast(waiter);
+        }
+        return waiter.orTimeout(queueWaitBudgetNanos, TimeUnit.NANOSECONDS)
+                .exceptionallyCompose(error -> {
+                    if (error instanceof TimeoutException) {
+                        synchronized (this) {
+                            waiters.remove(waiter);
+                        }
+                        return CompletableFuture.failedFuture(new QueryRejectedException(
+                                "排队等待超过预算，拒绝请求: name=" + name));
+                    }
+                    return CompletableFuture.failedFuture(error);
+                });
+    }
+
+    // 归还许可并记录本次耗时样本，dropped 表示下游过载（超时或拒绝）
+    public void release(long rttNanos, boolean dropped) {
+        synchronized (this) {
+            int inFlightAtStart = inFlight;
+            inFlight--;
+            onSample(rttNanos, inFlightAtStart, dropped);
+            wakeWaiters();
+        }
+    }
+
+    // 只归还许可，不调整 limit（失败原因与下游负载无关）
+    public void releaseWithoutSample() {
+        synchronized (this) {
+            inFlight--;
+            wakeWaiters();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized int getLimit() {
+        return currentLimit();
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    public synchronized Duration getLongRtt() {
+        return Duration.ofNanos((long) longRttNanos);
+    }
+
+    private void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        if (rttNanos <= 0) {
+            return;
+        }
+        longRttNanos = longRttNanos == 0
+                ? rttNanos
+                : longRttNanos + (rttNanos - longRttNanos) / LONG_WINDOW;
+
+        double newLimit;
+        if (dropped) {
+            newLimit = limit * backoffRatio;
+        } else {
+            double gradient = Math.max(0.5, Math.min(1.0, longRttNanos / rttNanos));
+            newLimit = limit * gradient + Math.sqrt(limit);
+            // 未打满时不上调
+            if (inFlightAtStart < limit / 2 && newLimit > limit) {
+                newLimit = limit;
+            }
+        }
+        newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+        newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        if ((int) newLimit != (int) limit) {
+            log.debug("自适应并发限制调整, name={}, limit={} -> {}, rttMs={}, longRttMs={}",
+                    name, (int) limit, (int) newLimit,
+                    TimeUnit.NANOSECONDS.toMillis(rttNanos), TimeUnit.NANOSECONDS.toMillis((long) longRttNanos));
+        }
+        limit = newLimit;
+    }
+
+    // 按当前 limit 唤醒排队请求，已超时的等待者跳过
+    private void wakeWaiters() {
+        while (inFlight < currentLimit() && !waiters.isEmpty()) {
+            if (waiters.pollFirst().complete(null)) {
+                inFlight++;
+            }
+        }
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    private long estimatedQueueWaitNanos() {
+        if (longRttNanos == 0) {
+            return 0;
+        }
+        return (long) ((waiters.size() + 1) * longRttNanos / Math.max(1, currentLimit()));
+    }
+}
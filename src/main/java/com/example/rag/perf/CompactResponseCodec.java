@@ -0,0 +1,199 @@
+package com.example.rag.perf;
+
+import com.example.rag.service.dto.RagResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 结果缓存的紧凑编码
+ *
+ * 格式：[标志位][原始长度 varint][正文]，标志位 bit0 表示正文经 Deflate 压缩
+ * 正文：answer、evidence、sources 依次写入；字符串为 varint(字节数+1) + UTF-8，列表为 varint(元素数+1) + 元素，0 表示 null
+ *
+ * - 中文证据按 UTF-8 存储，比 String 对象（UTF-16 + 对象头）更省内存；Deflate 对重复度高的证据文本通常还能再减半
+ * - 编码后不足 compressThreshold 或压缩后不变小时保留原文，避免小结果白白解压
+ * - timings 为单次请求的调试信息，不编码
+ */
+public final class CompactResponseCodec {
+
+    private static final int FLAG_DEFLATE = 1;
+
+    private final boolean compress;
+    private final int compressThreshold;
+
+    public CompactResponseCodec(boolean compress, int compressThreshold) {
+        this.compress = compress;
+        this.compressThreshold = Math.max(0, compressThreshold);
+    }
+
+    public byte[] encode(RagResponse response) {
+        Writer body = new Writer();
+        body.writeString(response.answer());
+        body.writeList(response.evidence());
+        body.writeList(response.sources());
+        byte[] raw = body.toByteArray();
+
+        byte[] payload = raw;
+        int flags = 0;
+        if (compress && raw.length >= compressThreshold) {
+            byte[] deflated = deflate(raw);
+            if (deflated.length < raw.length) {
+                payload = deflated;
+                flags |= FLAG_DEFLATE;
+            }
+        }
+        Writer out = new Writer();
+        out.write(flags);
+        out.writeVarInt(raw.length);
+        out.write(payload, 0, payload.length);
+        return out.toByteArray();
+    }
+
+    public RagResponse decode(byte[] bytes) {
+        Reader header = new Reader(bytes, 0);
+        int flags = header.read();
+        int rawLength = header.readVarInt();
+        byte[] raw = (flags & FLAG_DEFLATE) != 0
+                ? inflate(bytes, header.position, rawLength)
+                : Arrays.copyOfRange(bytes, header.position, header.position + rawLength);
+        Reader body = new Reader(raw, 0);
+        String answer = body.readString();
+        List<String> evidence = body.readList();
+        List<String> sources = body.readList();
+        return new RagResponse(answer, evidence, sources);
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            byte[] buffer = new byte[Math.min(raw.length + 16, 8192)];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int offset, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            byte[] raw = new byte[rawLength];
+            int filled = 0;
+            while (filled < rawLength) {
+                int n = inflater.inflate(raw, filled, rawLength - filled);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                filled += n;
+            }
+            if (filled != rawLength) {
+                throw new IllegalStateException("缓存结果解压长度不一致: expected=" + rawLength + ", actual=" + filled);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("缓存结果解压失败", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+
+        Writer() {
+            super(256);
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length + 1);
+            write(utf8, 0, utf8.length);
+        }
+
+        void writeList(List<String> values) {
+            if (values == null) {
+                writeVarInt(0);
+                return;
+            }
+            writeVarInt(values.size() + 1);
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        int read() {
+            return bytes[position++] & 0xff;
+        }
+
+        int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = read();
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        String readString() {
+            int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        List<String> readList() {
+            int size = readVarInt() - 1;
+            if (size < 0) {
+                return null;
+            }
+            List<String> values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                values.add(readString());
+            }
+            return Collections.unmodifiableList(values);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.rag.perf;
+
+import java.time.Duration;
+
+/**
+ * 请求截止时间
+ *
+ * 功能：请求入口确定端到端截止时间，各阶段据此读取剩余预算
+ * - 检索分支超时取“分支配置超时”与“剩余预算”的较小值
+ * - 剩余预算不足时跳过可选阶段（Cross-Encoder重排、DUAL模式侧车检索）
+ * - 预算耗尽时不再发起LLM生成，直接失败，避免做无用功
+ *
+ * @see RagProperties.Deadline 配置项
+ */
+public final class Deadline {
+
+    private static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    // 从当前时刻起计算截止时间，timeout为空或非正数时不设截止
+    public static Deadline after(Duration timeout) {
+        if (timeout == null || timeout.isZero() || timeout.isNegative()) {
+            return NONE;
+        }
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    public static Deadline none() {
+        return NONE;
+    }
+
+    public boolean isBounded() {
+        return this != NONE;
+    }
+
+    // 剩余预算，不设截止时返回null
+    public Duration remaining() {
+        if (!isBounded()) {
+            return null;
+        }
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return isBounded() && System.nanoTime() >= deadlineNanos;
+    }
+
+    // 剩余预算是否不少于budget
+    public boolean hasAtLeast(Duration budget) {
+        return !isBounded() || budget == null || remaining().compareTo(budget) >= 0;
+    }
+
+    // 阶段超时：取配置超时与剩余预算的较小值
+    public Duration cap(Duration timeout) {
+        if (!isBounded()) {
+            return timeout;
+        }
+        // 预算已耗尽时返回1纳秒而不是0，保证分支立即超时而不是被当作“不设超时”
+        Duration remaining = Duration.ofNanos(Math.max(1, remaining().toNanos()));
+        if (timeout == null || timeout.isZero() || timeout.isNegative()) {
+            return remaining;
+        }
+        return remaining.compareTo(timeout) < 0 ? remaining : timeout;
+    }
+
+    // 预算耗尽时抛出异常，stage为阶段名
+    public void check(String stage) {
+        if (isExpired()) {
+            throw new DeadlineExceededException("请求已超过截止时间，终止于阶段: " + stage);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.rag.perf;
+
+// 请求剩余预算耗尽
+public class DeadlineExceededException extends IllegalStateException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.rag.perf;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 索引代数（按版本/来源范围计数）
+ *
+ * 每次入库、重建或删除后递增对应范围的代数，查询时把代数拼进缓存Key：
+ * 数据变化后旧Key不会再被命中，过期条目随TTL或容量淘汰，因此结果缓存可以使用较长TTL
+ *
+ * 计数层级（一次递增同时更新以下全部计数）：
+ * - 全局：不带版本/来源过滤的查询使用
+ * - 版本、来源：只带其中一个过滤条件的查询使用
+ * - 版本+来源：两个过滤条件都带的查询使用
+ *
+ * 重建索引等影响全部范围的操作调用 {@link #bumpAll()}，所有查询的代数都会变化
+ * 版本与来源按去空格、小写归一化，大小写不同的值视为同一范围（只会多失效，不会漏失效）
+ */
+public class IndexGenerations {
+
+    private static final String ANY = "*";
+
+    private final AtomicLong epoch = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    // 查询使用的代数：按过滤条件选择最具体的计数，再叠加全量代数
+    public long current(String version, String source) {
+        AtomicLong counter = counters.get(scope(normalize(version), normalize(source)));
+        long scoped = counter == null ? 0 : counter.get();
+        // 全量代数放在高位，与范围代数组合后仍然单调递增
+        return (epoch.get() << 32) + scoped;
+    }
+
+    // 某个版本/来源的数据发生变化（入库或删除）
+    public void bump(String version, String source) {
+        String v = normalize(version);
+        String s = normalize(source);
+        increment(scope(ANY, ANY));
+        increment(scope(v, ANY));
+        increment(scope(ANY, s));
+        increment(scope(v, s));
+    }
+
+    // 全部范围失效（全量重建、清空索引）
+    public void bumpAll() {
+        epoch.incrementAndGet();
+    }
+
+    private void increment(String scope) {
+        counters.computeIfAbsent(scope, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    private static String scope(String version, String source) {
+        return version + "|" + source;
+    }
+
+    private static String normalize(String value) {
+        if (value == null || value.isBlank()) {
+            return ANY;
+        }
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.rag.perf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * 多生产者单消费者无锁环形缓冲区
+ *
+ * - 生产者通过 CAS 抢占序号后写入槽位，缓冲区满时 offer 立即返回false（调用方计为丢弃），从不阻塞
+ * - 单个消费者按序号顺序读取，遇到已抢占但尚未写入的槽位时停止，下次继续
+ * - 容量向上取整为2的幂，序号按位与取槽位下标
+ */
+public class MpscRingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // 只由消费者线程写入，生产者读取以判断是否已满
+    private volatile long head;
+
+    public MpscRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("环形缓冲区容量超出范围: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public boolean offer(T item) {
+        if (item == null) {
+            throw new IllegalArgumentException("环形缓冲区不接受null");
+        }
+        while (true) {
+            long sequence = tail.get();
+            if (sequence - head > mask) {
+                return false;
+            }
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                slots.lazySet((int) (sequence & mask), item);
+                return true;
+            }
+        }
+    }
+
+    // 取出当前可读的全部元素，返回取出数量（仅限单个消费者线程调用）
+    public int drain(Consumer<T> consumer) {
+        long current = head;
+        int drained = 0;
+        while (true) {
+            int index = (int) (current & mask);
+            T item = slots.get(index);
+            if (item == null) {
+                break;
+            }
+            slots.lazySet(index, null);
+            current++;
+            head = current;
+            drained++;
+            consumer.accept(item);
+        }
+        return drained;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+}
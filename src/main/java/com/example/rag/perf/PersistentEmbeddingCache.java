@@ -0,0 +1,395 @@
+package com.example.rag.perf;
+
+import dev.langchain4j.data.embedding.Embedding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * 持久化嵌入缓存（内存映射文件，作为 Caffeine 嵌入缓存的二级缓存）
+ *
+ * 文件布局：
+ * - 文件头（64字节）：魔数、格式版本、向量维度、组相联路数、组数、模型标识哈希、访问时钟
+ * - 槽位（定长）：Key 哈希高64位、低64位、最近访问时钟、校验和（CRC32C，覆盖 Key 与向量）、float[维度]
+ *
+ * 索引：文本的128位哈希（{@link CacheKey}）决定所在组，组内 ways 个槽位线性探测（开放寻址，探测长度固定）
+ * 淘汰：组内没有空槽时替换最近访问时钟最旧的槽位（组内 LRU），文件大小固定，不需要整理
+ *
+ * 生命周期：
+ * - 构造时不打开文件；首次读写时才映射，映射只建立虚拟地址，页面由操作系统按需加载，不占用堆
+ * - 文件不存在时首次写入才创建，向量维度取自首个写入的向量
+ * - 文件头与配置（模型标识、容量）或写入向量的维度不一致时重建文件，旧模型的向量不会被读出
+ * - close() 把时钟写回文件头并刷盘；未 close 时只有已由操作系统写回的页面会保留，断电或内核崩溃可能丢失最近写入
+ * - 页面按任意顺序落盘，槽位可能只写了一部分：读取时校验和不一致的槽位按未命中处理并清空，不会读出残缺向量
+ *
+ * 并发：按组分段加锁，读写同组槽位互斥，避免读到写了一半的向量
+ */
+public class PersistentEmbeddingCache implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistentEmbeddingCache.class);
+
+    private static final int MAGIC = 0x52454D42;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+    private static final int HEADER_CLOCK = 40;
+    // 槽位头：高64位、低64位、访问时钟、校验和
+    private static final int SLOT_HEADER_BYTES = 24;
+    private static final int SLOT_CLOCK = 16;
+    private static final int SLOT_CHECKSUM = 20;
+    private static final int LOCK_STRIPES = 64;
+    // 单个映射段上限（MappedByteBuffer 按 int 寻址）
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final Path path;
+    private final long modelHash;
+    private final int ways;
+    private final long sets;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final AtomicLong clock = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // 以下字段在 this 锁内初始化与重建
+    private volatile Mapping mapping;
+    private boolean opened;
+
+    public PersistentEmbeddingCache(Path path, String modelId, int maxEntries, int ways) {
+        if (maxEntries < 1 || ways < 1) {
+            throw new IllegalArgumentException("持久化嵌入缓存容量与路数必须大于0");
+        }
+        this.path = path;
+        this.modelHash = CacheKey.of(modelId == null ? "" : modelId).high();
+        this.ways = ways;
+        this.sets = (maxEntries + ways - 1L) / ways;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // 读取文本对应的向量，未命中返回null
+    public Embedding get(String text) {
+        Mapping current = open();
+        if (current == null) {
+            misses.increment();
+            return null;
+        }
+        CacheKey key = keyOf(text);
+        long set = setOf(key);
+        synchronized (lockOf(set)) {
+            long slot = find(current, set, key);
+            if (slot < 0) {
+                misses.increment();
+                return null;
+            }
+            if (current.getInt(slot + SLOT_CHECKSUM) != current.checksum(slot)) {
+                log.warn("持久化嵌入缓存槽位校验失败，按未命中处理, path={}", path);
+                current.putLong(slot, 0L);
+                current.putLong(slot + 8, 0L);
+                misses.increment();
+                return null;
+            }
+            current.putInt(slot + SLOT_CLOCK, (int) clock.incrementAndGet());
+            float[] vector = new float[current.dimension];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = current.getFloat(slot + SLOT_HEADER_BYTES + (long) i * Float.BYTES);
+            }
+            hits.increment();
+            return Embedding.from(vector);
+        }
+    }
+
+    // 写入文本对应的向量；维度与文件不一致时重建文件
+    public void put(String text, Embedding embedding) {
+        if (embedding == null) {
+            return;
+        }
+        float[] vector = embedding.vector();
+        Mapping current = openForWrite(vector.length);
+        CacheKey key = keyOf(text);
+        long set = setOf(key);
+        synchronized (lockOf(set)) {
+            long slot = find(current, set, key);
+            if (slot < 0) {
+                slot = victim(current, set);
+            }
+            // 先清除Key再写向量，最后写回Key与校验和；崩溃导致的半写槽位在读取时校验失败
+            current.putLong(slot, 0L);
+            current.putLong(slot + 8, 0L);
+            for (int i = 0; i < vector.length; i++) {
+                current.putFloat(slot + SLOT_HEADER_BYTES + (long) i * Float.BYTES, vector[i]);
+            }
+            current.putInt(slot + SLOT_CLOCK, (int) clock.incrementAndGet());
+            current.putLong(slot, key.high());
+            current.putLong(slot + 8, key.low());
+            current.putInt(slot + SLOT_CHECKSUM, current.checksum(slot));
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    @Override
+    public synchronized void close() {
+        Mapping current = mapping;
+        if (current == null) {
+            return;
+        }
+        current.header.putLong(HEADER_CLOCK, clock.get());
+        current.force();
+        mapping = null;
+        opened = false;
+    }
+
+    // 在组内查找Key，返回槽位偏移，未找到返回-1
+    private long find(Mapping current, long set, CacheKey key) {
+        for (int way = 0; way < ways; way++) {
+            long slot = current.slotOffset(set, way);
+            if (current.getLong(slot) == key.high() && current.getLong(slot + 8) == key.low()) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    // 选择写入槽位：优先空槽，否则替换访问时钟最旧的槽位
+    private long victim(Mapping current, long set) {
+        int now = (int) clock.get();
+        long oldest = -1;
+        long oldestAge = -1;
+        for (int way = 0; way < ways; way++) {
+            long slot = current.slotOffset(set, way);
+            if (current.getLong(slot) == 0L && current.getLong(slot + 8) == 0L) {
+                return slot;
+            }
+            // 时钟按32位回绕，用无符号差值比较新旧
+            long age = Integer.toUnsignedLong(now - current.getInt(slot + SLOT_CLOCK));
+            if (age > oldestAge) {
+                oldestAge = age;
+                oldest = slot;
+            }
+        }
+        return oldest;
+    }
+
+    private Object lockOf(long set) {
+        return locks[(int) (set & (LOCK_STRIPES - 1))];
+    }
+
+    private long setOf(CacheKey key) {
+        return Long.remainderUnsigned(key.high(), sets);
+    }
+
+    // 空槽位以全0的Key表示，真实Key恰好为0时改写最低位
+    private static CacheKey keyOf(String text) {
+        CacheKey key = CacheKey.of(text);
+        if (key.high() == 0L && key.low() == 0L) {
+            return new CacheKey(0L, 1L);
+        }
+        return key;
+    }
+
+    // 首次访问时打开已有文件；文件不存在或不兼容时返回null（等待首次写入创建）
+    private Mapping open() {
+        Mapping current = mapping;
+        if (current != null || opened) {
+            return current;
+        }
+        synchronized (this) {
+            if (!opened) {
+                mapping = mapExisting();
+                opened = true;
+            }
+            return mapping;
+        }
+    }
+
+    private Mapping openForWrite(int dimension) {
+        Mapping current = open();
+        if (current != null && current.dimension == dimension) {
+            return current;
+        }
+        synchronized (this) {
+            current = mapping;
+            if (current == null || current.dimension != dimension) {
+                if (current != null) {
+                    log.warn("嵌入维度变化，重建持久化嵌入缓存, path={}, dimension={} -> {}", path,
+                            current.dimension, dimension);
+                }
+                mapping = create(dimension);
+            }
+            return mapping;
+        }
+    }
+
+    private Mapping mapExisting() {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_BYTES) {
+                log.warn("持久化嵌入缓存文件不完整，将在首次写入时重建, path={}", path);
+                return null;
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            int dimension = header.getInt(8);
+            boolean compatible = header.getInt(0) == MAGIC
+                    && header.getInt(4) == FORMAT_VERSION
+                    && dimension > 0
+                    && header.getInt(12) == ways
+                    && header.getLong(16) == sets
+                    && header.getLong(24) == modelHash
+                    && channel.size() == fileSize(dimension);
+            if (!compatible) {
+                log.warn("持久化嵌入缓存文件与当前配置不一致，将在首次写入时重建, path={}", path);
+                return null;
+            }
+            clock.set(header.getLong(HEADER_CLOCK));
+            log.info("打开持久化嵌入缓存, path={}, dimension={}, capacity={}", path, dimension, sets * ways);
+            return new Mapping(channel, header, dimension);
+        } catch (IOException e) {
+            throw new IllegalStateException("打开持久化嵌入缓存失败: " + path, e);
+        }
+    }
+
+    private Mapping create(int dimension) {
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.deleteIfExists(path);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // 稀疏文件：只写最后一个字节确定大小，未写入的槽位读出为0（空槽）
+                long size = fileSize(dimension);
+                channel.write(ByteBuffer.allocate(1), size - 1);
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(0, MAGIC);
+                header.putInt(4, FORMAT_VERSION);
+                header.putInt(8, dimension);
+                header.putInt(12, ways);
+                header.putLong(16, sets);
+                header.putLong(24, modelHash);
+                header.putLong(HEADER_CLOCK, clock.get());
+                log.info("创建持久化嵌入缓存, path={}, dimension={}, capacity={}, bytes={}", path, dimension,
+                        sets * ways, size);
+                return new Mapping(channel, header, dimension);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("创建持久化嵌入缓存失败: " + path, e);
+        }
+    }
+
+    private long fileSize(int dimension) {
+        return HEADER_BYTES + sets * ways * slotBytes(dimension);
+    }
+
+    private static long slotBytes(int dimension) {
+        return SLOT_HEADER_BYTES + (long) dimension * Float.BYTES;
+    }
+
+    // 文件映射：按组切分为多个不超过1GB的段，同一组的槽位不会跨段
+    private final class Mapping {
+        private final MappedByteBuffer header;
+        private final List<MappedByteBuffer> segments = new ArrayList<>();
+        private final int dimension;
+        private final long slotBytes;
+        private final long setsPerSegment;
+
+        private Mapping(FileChannel channel, MappedByteBuffer header, int dimension) throws IOException {
+            this.header = header;
+            this.dimension = dimension;
+            this.slotBytes = slotBytes(dimension);
+            long setBytes = slotBytes * ways;
+            if (setBytes > MAX_SEGMENT_BYTES) {
+                throw new IllegalStateException("持久化嵌入缓存单组过大: " + setBytes);
+            }
+            this.setsPerSegment = MAX_SEGMENT_BYTES / setBytes;
+            // 映射后关闭通道不影响已映射的缓冲区
+            for (long first = 0; first < sets; first += setsPerSegment) {
+                long count = Math.min(setsPerSegment, sets - first);
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_BYTES + first * setBytes, count * setBytes);
+                segment.order(ByteOrder.LITTLE_ENDIAN);
+                segments.add(segment);
+            }
+        }
+
+        // 槽位的全局偏移：高位为段号，低位为段内偏移
+        long slotOffset(long set, int way) {
+            long segment = set / setsPerSegment;
+            long local = (set % setsPerSegment) * slotBytes * ways + way * slotBytes;
+            return (segment << 32) | local;
+        }
+
+        long getLong(long offset) {
+            return segment(offset).getLong(local(offset));
+        }
+
+        int getInt(long offset) {
+            return segment(offset).getInt(local(offset));
+        }
+
+        float getFloat(long offset) {
+            return segment(offset).getFloat(local(offset));
+        }
+
+        void putLong(long offset, long value) {
+            segment(offset).putLong(local(offset), value);
+        }
+
+        void putInt(long offset, int value) {
+            segment(offset).putInt(local(offset), value);
+        }
+
+        void putFloat(long offset, float value) {
+            segment(offset).putFloat(local(offset), value);
+        }
+
+        // 槽位校验和：覆盖 Key 与向量，不含访问时钟（读取时会更新）
+        int checksum(long offset) {
+            MappedByteBuffer segment = segment(offset);
+            int local = local(offset);
+            CRC32C crc = new CRC32C();
+            crc.update(segment.slice(local, 16));
+            crc.update(segment.slice(local + SLOT_HEADER_BYTES, dimension * Float.BYTES));
+            return (int) crc.getValue();
+        }
+
+        void force() {
+            header.force();
+            segments.forEach(MappedByteBuffer::force);
+        }
+
+        private MappedByteBuffer segment(long offset) {
+            return segments.get((int) (offset >>> 32));
+        }
+
+        private int local(long offset) {
+            return (int) offset;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.rag.perf;
+
+// RAG 管线阶段，tag 为指标标签与调试输出中的名称
+public enum PipelineStage {
+
+    EMBEDDING("embedding"),
+    VECTOR_SEARCH("vector_search"),
+    FULLTEXT_SEARCH("fulltext_search"),
+    FUSION("fusion"),
+    DEDUP("dedup"),
+    KEYWORD_RERANK("keyword_rerank"),
+    CROSS_ENCODER("cross_encoder"),
+    LLAMAINDEX("llamaindex"),
+    GENERATION("generation");
+
+    private final String tag;
+
+    PipelineStage(String tag) {
+        this.tag = tag;
+    }
+
+    public String tag() {
+        return tag;
+    }
+}
@@ -1,37 +1,81 @@
 package com.example.rag.perf;
 
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.RateLimitException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
 import io.github.resilience4j.bulkhead.BulkheadFullException;
 import io.github.resilience4j.bulkhead.ThreadPoolBulkhead;
 import io.github.resilience4j.bulkhead.ThreadPoolBulkheadConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 /**
  * 并发限流服务
- * 
+ *
  * 功能：限制同时执行的问答请求数量，防止突发流量压垮系统
- * 
- * 实现：Resilience4j ThreadPoolBulkhead（线程池隔离）
- * - coreSize：核心线程数
- * - maxSize：最大线程数
- * - queueCapacity：队列容量，超出后拒绝请求
- * 
+ *
+ * 模式：
+ * - threadPool：Resilience4j ThreadPoolBulkhead（线程池隔离）
+ *   - coreSize：核心线程数
+ *   - maxSize：最大线程数
+ *   - queueCapacity：队列容量，超出后拒绝请求
+ * - semaphore：Resilience4j Bulkhead（信号量隔离）
+ *   - execute 直接在调用线程执行，不额外占用线程
+ *   - executeAsync 在 JDK 21+ 上使用虚拟线程执行，低版本退回守护线程池；许可在执行线程上获取
+ *   - maxWait：获取许可的最长等待时间，超时后拒绝请求（同步与异步调用一致）
+ * - adaptive：自适应并发限制（AdaptiveLimiter），按实测耗时调整并发数，预估排队超预算时提前拒绝
+ *   - 执行线程与 semaphore 模式相同
+ * - disabled：不限流
+ *
+ * 调用方式：
+ * - execute：同步执行，调用线程等待结果
+ * - executeAsync：立即返回 CompletableFuture，调用线程（如 Tomcat 线程）不被占用
+ *
+ * 关闭（close）：关闭异步执行线程池与线程池舱壁，由Spring容器在销毁Bean时调用
+ *
+ * 指标（MeterBinder）：rag.limiter.active / rag.limiter.queued / rag.limiter.limit{name, mode}
+ * - semaphore 模式无法观测等待者，不注册 queued
+ *
  * 适用场景：
  * - LLM响应慢，需要控制并发
  * - 防止Ollama/Chroma被压垮
  * - 保护下游依赖服务
- * 
+ *
  * @see RagProperties.Concurrency 配置项
  */
-public class QueryLimiter {
+public class QueryLimiter implements MeterBinder, AutoCloseable {
 
-    private final ThreadPoolBulkhead bulkhead;
-    private final boolean enabled;
+    private static final Logger log = LoggerFactory.getLogger(QueryLimiter.class);
 
-    private QueryLimiter(ThreadPoolBulkhead bulkhead, boolean enabled) {
-        this.bulkhead = bulkhead;
-        this.enabled = enabled;
+    private final ThreadPoolBulkhead threadPoolBulkhead;
+    private final Bulkhead semaphoreBulkhead;
+    private final AdaptiveLimiter adaptiveLimiter;
+    private final ExecutorService asyncExecutor;
+
+    private QueryLimiter(ThreadPoolBulkhead threadPoolBulkhead,
+                         Bulkhead semaphoreBulkhead,
+                         AdaptiveLimiter adaptiveLimiter,
+                         ExecutorService asyncExecutor) {
+        this.threadPoolBulkhead = threadPoolBulkhead;
+        this.semaphoreBulkhead = semaphoreBulkhead;
+        this.adaptiveLimiter = adaptiveLimiter;
+        this.asyncExecutor = asyncExecutor;
     }
 
     public static QueryLimiter threadPool(String name, int coreSize, int maxSize, int queueCapacity) {
@@ -40,20 +84,97 @@ public class QueryLimiter {
                 .maxThreadPoolSize(maxSize)
                 .queueCapacity(queueCapacity)
                 .build();
-        return new QueryLimiter(ThreadPoolBulkhead.of(name, config), true);
+        return new QueryLimiter(ThreadPoolBulkhead.of(name, config), null, null, null);
+    }
+
+    public static QueryLimiter semaphore(String name, int maxConcurrent, Duration maxWait) {
+        BulkheadConfig config = BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrent)
+                .maxWaitDuration(maxWait == null ? Duration.ZERO : maxWait)
+                .build();
+        return new QueryLimiter(null, Bulkhead.of(name, config), null, asyncExecutor(name));
+    }
+
+    public static QueryLimiter adaptive(String name, AdaptiveLimiter adaptiveLimiter) {
+        return new QueryLimiter(null, null, adaptiveLimiter, asyncExecutor(name));
     }
 
     public static QueryLimiter disabled() {
-        return new QueryLimiter(null, false);
+        return new QueryLimiter(null, null, null, null);
+    }
+
+    // 可同时执行的任务数（线程池为最大线程数，信号量为许可数，自适应为当前限制），不限流时为Integer.MAX_VALUE
+    // 批量问答据此限制同时提交的条数，避免超出舱壁的条目被直接拒绝
+    public int maxConcurrency() {
+        if (adaptiveLimiter != null) {
+            return adaptiveLimiter.getLimit();
+        }
+        if (semaphoreBulkhead != null) {
+            return semaphoreBulkhead.getBulkheadConfig().getMaxConcurrentCalls();
+        }
+        if (threadPoolBulkhead != null) {
+            return threadPoolBulkhead.getBulkheadConfig().getMaxThreadPoolSize();
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    // 自适应模式下的限制器，其他模式返回null
+    public AdaptiveLimiter getAdaptiveLimiter() {
+        return adaptiveLimiter;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (threadPoolBulkhead != null) {
+            ThreadPoolBulkhead.Metrics metrics = threadPoolBulkhead.getMetrics();
+            String name = threadPoolBulkhead.getName();
+            gauge(registry, "rag.limiter.active", name, "thread_pool", metrics, ThreadPoolBulkhead.Metrics::getActiveThreadCount);
+            gauge(registry, "rag.limiter.queued", name, "thread_pool", metrics, ThreadPoolBulkhead.Metrics::getQueueDepth);
+            gauge(registry, "rag.limiter.limit", name, "thread_pool", metrics,
+                    ThreadPoolBulkhead.Metrics::getMaximumThreadPoolSize);
+        } else if (semaphoreBulkhead != null) {
+            Bulkhead.Metrics metrics = semaphoreBulkhead.getMetrics();
+            String name = semaphoreBulkhead.getName();
+            gauge(registry, "rag.limiter.active", name, "semaphore", metrics,
+                    m -> m.getMaxAllowedConcurrentCalls() - m.getAvailableConcurrentCalls());
+            gauge(registry, "rag.limiter.limit", name, "semaphore", metrics, Bulkhead.Metrics::getMaxAllowedConcurrentCalls);
+        } else if (adaptiveLimiter != null) {
+            String name = adaptiveLimiter.getName();
+            gauge(registry, "rag.limiter.active", name, "adaptive", adaptiveLimiter, AdaptiveLimiter::getInFlight);
+            gauge(registry, "rag.limiter.queued", name, "adaptive", adaptiveLimiter, AdaptiveLimiter::getQueued);
+            gauge(registry, "rag.limiter.limit", name, "adaptive", adaptiveLimiter, AdaptiveLimiter::getLimit);
+        }
+    }
+
+    private static <S> void gauge(MeterRegistry registry, String metric, String name, String mode,
+                                  S source, ToIntFunction<S> value) {
+        Gauge.builder(metric, source, s -> value.applyAsInt(s))
+                .tag("name", name)
+                .tag("mode", mode)
+                .register(registry);
     }
 
     // 执行受限流保护的任务
     public <T> T execute(Supplier<T> supplier) {
-        if (!enabled) {
+        if (adaptiveLimiter != null) {
+            try {
+                adaptiveLimiter.acquire().join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw e;
+            }
+            return runMeasured(supplier);
+        }
+        if (semaphoreBulkhead != null) {
+            return semaphoreBulkhead.executeSupplier(supplier);
+        }
+        if (threadPoolBulkhead == null) {
             return supplier.get();
         }
         try {
-            return bulkhead.executeSupplier(supplier)
+            return threadPoolBulkhead.executeSupplier(supplier)
                     .toCompletableFuture()
                     .join();
         } catch (CompletionException e) {
@@ -67,4 +188,112 @@ public class QueryLimiter {
             throw e;
         }
     }
+
+    // 异步执行受限流保护的任务，拒绝与失败均以异常结束的Future返回
+    public <T> CompletableFuture<T> executeAsync(Supplier<T> supplier) {
+        if (adaptiveLimiter != null) {
+            return adaptiveLimiter.acquire()
+                    .thenApplyAsync(ignored -> runMeasured(supplier), asyncExecutor);
+        }
+        if (semaphoreBulkhead != null) {
+            return executeOnSemaphore(supplier);
+        }
+        if (threadPoolBulkhead == null) {
+            try {
+                return CompletableFuture.completedFuture(supplier.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        try {
+            return threadPoolBulkhead.executeSupplier(supplier).toCompletableFuture();
+        } catch (BulkheadFullException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // 在执行线程上获取许可（最多等待maxWait），调用线程不阻塞
+    private <T> CompletableFuture<T> executeOnSemaphore(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(() -> semaphoreBulkhead.executeSupplier(supplier), asyncExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // 执行任务并把耗时反馈给自适应限制器：只有下游过载信号计为丢弃样本，其余失败只归还许可
+    private <T> T runMeasured(Supplier<T> supplier) {
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = supplier.get();
+        } catch (RuntimeException | Error e) {
+            if (isOverload(e)) {
+                adaptiveLimiter.release(System.nanoTime() - start, true);
+            } else {
+                adaptiveLimiter.releaseWithoutSample();
+            }
+            throw e;
+        }
+        adaptiveLimiter.release(System.nanoTime() - start, false);
+        return result;
+    }
+
+    // 下游过载：LLM/HTTP 调用超时、被限流（429）或服务不可用（503），以及下游舱壁拒绝
+    // 客户端截止时间（DeadlineExceededException）、参数校验等失败与负载无关，不计入
+    static boolean isOverload(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DeadlineExceededException) {
+                return false;
+            }
+            if (cause instanceof dev.langchain4j.exception.TimeoutException
+                    || cause instanceof RateLimitException
+                    || cause instanceof java.util.concurrent.TimeoutException
+                    || cause instanceof SocketTimeoutException
+                    || cause instanceof HttpTimeoutException
+                    || cause instanceof RejectedExecutionException
+                    || cause instanceof BulkheadFullException) {
+                return true;
+            }
+            if (cause instanceof HttpException http && (http.statusCode() == 429 || http.statusCode() == 503)) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown();
+        }
+        if (threadPoolBulkhead != null) {
+            try {
+                threadPoolBulkhead.close();
+            } catch (Exception e) {
+                log.warn("关闭限流线程池失败: {}", e.toString());
+            }
+        }
+    }
+
+    // JDK 21+ 使用虚拟线程（每任务一个），否则使用守护线程的缓存线程池
+    private static ExecutorService asyncExecutor(String name) {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            log.info("限流异步执行使用虚拟线程, name={}", name);
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
 }
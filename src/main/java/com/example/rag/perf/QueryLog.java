@@ -0,0 +1,225 @@
+package com.example.rag.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * 查询日志（回放压测与缓存预热的数据来源）
+ *
+ * 写入路径：
+ * - 请求线程只把 {@link QueryLogRecord} 放入 {@link MpscRingBuffer}，不做序列化与磁盘IO，缓冲区满时丢弃并计数
+ * - 单个后台线程批量取出记录，序列化为 NDJSON 追加到当前文件，空闲时刷盘
+ *
+ * 文件：
+ * - 目录下 queries-时间戳-序号.ndjson，文件名按时间排序
+ * - 当前文件超过 maxFileBytes 后滚动到新文件，只保留最新的 maxFiles 个文件
+ *
+ * 指标：rag.querylog.records{result=written|dropped|failed}
+ */
+public class QueryLog implements MeterBinder, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryLog.class);
+
+    static final String FILE_PREFIX = "queries-";
+    static final String FILE_SUFFIX = ".ndjson";
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long CLOSE_TIMEOUT_MILLIS = 5_000;
+
+    private final Path dir;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final ObjectMapper objectMapper;
+    private final MpscRingBuffer<QueryLogRecord> buffer;
+    private final Thread writer;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean running = true;
+
+    // 以下字段只由写线程访问
+    private OutputStream out;
+    private long fileBytes;
+    private boolean dirty;
+    private int fileSequence;
+
+    public QueryLog(Path dir, int bufferSize, long maxFileBytes, int maxFiles, ObjectMapper objectMapper) {
+        this.dir = dir;
+        this.maxFileBytes = Math.max(1, maxFileBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+        this.objectMapper = objectMapper;
+        this.buffer = new MpscRingBuffer<>(bufferSize);
+        this.writer = new Thread(this::runWriter, "rag-query-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // 记录一次查询；不阻塞，缓冲区满时返回false
+    public boolean record(QueryLogRecord record) {
+        if (!running || !buffer.offer(record)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public Path dir() {
+        return dir;
+    }
+
+    // 停止接收新记录，写完缓冲区中剩余记录后关闭文件
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rag.querylog.records", written, AtomicLong::get)
+                .description("查询日志记录数")
+                .tag("result", "written")
+                .register(registry);
+        FunctionCounter.builder("rag.querylog.records", dropped, AtomicLong::get)
+                .description("查询日志记录数")
+                .tag("result", "dropped")
+                .register(registry);
+        FunctionCounter.builder("rag.querylog.records", failed, AtomicLong::get)
+                .description("查询日志记录数")
+                .tag("result", "failed")
+                .register(registry);
+    }
+
+    private void runWriter() {
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            log.warn("创建查询日志目录失败, dir={}, error={}", dir, e.toString());
+        }
+        while (true) {
+            boolean stopping = !running;
+            int drained = buffer.drain(this::write);
+            if (drained == 0) {
+                flush();
+                if (stopping) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        closeFile();
+    }
+
+    private void write(QueryLogRecord record) {
+        try {
+            byte[] line = objectMapper.writeValueAsBytes(record);
+            if (out == null || fileBytes + line.length + 1 > maxFileBytes && fileBytes > 0) {
+                rotate();
+            }
+            out.write(line);
+            out.write('\n');
+            fileBytes += line.length + 1;
+            dirty = true;
+            written.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            log.warn("写入查询日志失败: {}", e.toString());
+        }
+    }
+
+    private void flush() {
+        if (!dirty || out == null) {
+            return;
+        }
+        try {
+            out.flush();
+            dirty = false;
+        } catch (IOException e) {
+            log.warn("刷新查询日志失败: {}", e.toString());
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeFile();
+        Path file = dir.resolve(FILE_PREFIX + LocalDateTime.now().format(FILE_TIME)
+                + String.format("-%04d", fileSequence++ % 10_000) + FILE_SUFFIX);
+        out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND), 64 * 1024);
+        fileBytes = Files.size(file);
+        prune();
+    }
+
+    // 只保留最新的 maxFiles 个文件（含当前文件）
+    private void prune() {
+        List<Path> files = listFiles(dir);
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            try {
+                Files.deleteIfExists(files.get(i));
+            } catch (IOException e) {
+                log.warn("删除旧查询日志失败, file={}, error={}", files.get(i), e.toString());
+            }
+        }
+    }
+
+    private void closeFile() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warn("关闭查询日志失败: {}", e.toString());
+        }
+        out = null;
+        dirty = false;
+    }
+
+    // 目录下的查询日志文件，按文件名（即创建时间）升序
+    public static List<Path> listFiles(Path dir) {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> stream = Files.list(dir)) {
+            return stream
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new IllegalStateException("读取查询日志目录失败: " + dir, e);
+        }
+    }
+}
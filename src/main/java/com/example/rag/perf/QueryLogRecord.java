@@ -0,0 +1,43 @@
+package com.example.rag.perf;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 查询日志记录（NDJSON 一行一条）
+ *
+ * @param timestamp      请求完成时间（毫秒时间戳），回放时按相邻记录的间隔调度
+ * @param question       归一化后的问题（去空格、小写，与结果缓存Key一致）
+ * @param version        版本过滤条件（原值，回放时原样发送）
+ * @param source         来源过滤条件
+ * @param tags           标签过滤条件
+ * @param keywords       关键字
+ * @param topK           TopK
+ * @param minScore       最低得分
+ * @param mode           入口：ask / async / stream / batch
+ * @param cache          缓存结果：result（精确命中）/ semantic（语义命中）/ miss
+ * @param totalNanos     服务端总耗时
+ * @param stageNanos     各阶段耗时（纳秒）
+ * @param queueWaitNanos 限流器排队等待时间
+ * @param evidenceIds    证据标识（证据文本128位哈希的高64位，十六进制），用于对比回放前后的检索结果
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public record QueryLogRecord(
+        long timestamp,
+        String question,
+        String version,
+        String source,
+        List<String> tags,
+        List<String> keywords,
+        Integer topK,
+        Double minScore,
+        String mode,
+        String cache,
+        long totalNanos,
+        Map<String, Long> stageNanos,
+        Long queueWaitNanos,
+        List<String> evidenceIds
+) {
+}
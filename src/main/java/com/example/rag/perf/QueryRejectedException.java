@@ -0,0 +1,9 @@
+package com.example.rag.perf;
+
+// 限流器提前拒绝：预估或实际排队时间超过预算
+public class QueryRejectedException extends IllegalStateException {
+
+    public QueryRejectedException(String message) {
+        super(message);
+    }
+}
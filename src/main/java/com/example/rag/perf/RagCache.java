@@ -2,11 +2,23 @@ package com.example.rag.perf;
 
 import com.example.rag.config.RagProperties;
 import com.example.rag.service.dto.RagResponse;
+import com.example.rag.service.dto.RetrieveResponse;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import dev.langchain4j.data.embedding.Embedding;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.util.unit.DataSize;
 
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Supplier;
 
 /**
@@ -17,26 +29,68 @@ import java.util.function.Supplier;
  *      - 缓存查询向量的Embedding计算结果
  *      - 避免重复调用Embedding模型
  *      - 默认TTL：30分钟
+ *      - 可选二级持久化缓存（{@link PersistentEmbeddingCache}）：一级未命中时读取内存映射文件，重启后仍可命中
+ *      - 一级与二级使用同一个Key：去掉首尾空白并转小写的问题文本，与结果缓存Key的问题部分一致
+ *      - 持久化缓存由创建方负责关闭，本类不关闭
  * 
  *   2. 结果缓存（Result Cache）
  *      - 缓存完整问答结果
  *      - 重复问题直接返回缓存
- *      - 默认TTL：10分钟
+ *      - Key 为原始Key的128位哈希（{@link CacheKey}），值为紧凑编码的字节数组（{@link CompactResponseCodec}），命中时解码
+ *      - 按字节数限额（max-memory，默认64MB），条目大小差异大时内存占用仍可预测
+ *      - Key 中包含索引代数（{@link IndexGenerations}），入库/重建后旧结果不再命中，TTL 可以放长
+ *      - 默认TTL：24小时
+ * 
+ *   3. 检索结果缓存（Retrieval Cache）
+ *      - 缓存仅检索接口的分片结果，与问答结果分开存放
+ *      - 与结果缓存相同，Key 中包含索引代数
+ *      - 默认TTL：1小时
+ * 
+ *   4. 语义结果缓存（Semantic Cache，可选）
+ *      - 按查询向量相似度复用已缓存答案，范围限定在相同过滤条件内
+ *      - 相似度阈值可配置，默认关闭
+ * 
+ *   5. 在途合并（Single-Flight）
+ *      - 相同Key的并发请求只执行一次，其余请求等待并共享结果
+ *      - 结果产出后即移除，不占用缓存容量
  * 
  * 实现：Caffeine（高性能Java缓存，基于W-TinyLFU算法）
  * 
+ * 失效：IngestService 入库完成后调用 {@link #invalidate(String, String)} 或 {@link #invalidateAll()}，
+ * 递增对应范围的索引代数；RagService 构建缓存Key时通过 {@link #generation(String, String)} 读取
+ * 
+ * 指标（MeterBinder）：各级缓存的 cache.gets{cache, result=hit|miss} 等 Caffeine 统计，
+ * 语义缓存与持久化嵌入缓存的命中/未命中计数，结果缓存占用字节数 rag.cache.result.bytes，以及在途合并数 rag.cache.inflight
+ * 
  * @see RagProperties.Cache 配置项
  */
-public class RagCache {
+public class RagCache implements MeterBinder {
 
     private final RagProperties.Cache properties;
     private final Cache<String, Embedding> embeddingCache;
-    private final Cache<String, RagResponse> resultCache;
+    private final PersistentEmbeddingCache persistentEmbeddings;
+    // 条目固定开销估算：Caffeine节点、CacheKey对象与byte[]对象头
+    private static final int RESULT_ENTRY_OVERHEAD = 96;
+
+    private final Cache<CacheKey, byte[]> resultCache;
+    private final CompactResponseCodec resultCodec;
+    private final Cache<String, RetrieveResponse> retrievalCache;
+    private final SemanticResultCache semanticCache;
+    private final IndexGenerations generations = new IndexGenerations();
+    private final ConcurrentMap<String, CompletableFuture<RagResponse>> inFlight = new ConcurrentHashMap<>();
 
     public RagCache(RagProperties properties) {
+        this(properties, null);
+    }
+
+    public RagCache(RagProperties properties, PersistentEmbeddingCache persistentEmbeddings) {
         this.properties = properties.getCache();
+        this.persistentEmbeddings = persistentEmbeddings;
         this.embeddingCache = buildEmbeddingCache();
+        this.resultCodec = buildResultCodec();
         this.resultCache = buildResultCache();
+        this.retrievalCache = buildRetrievalCache();
+        this.semanticCache = buildSemanticCache();
     }
 
     // 获取或加载查询向量
@@ -44,7 +98,35 @@ public class RagCache {
         if (!properties.isEnabled()) {
             return loader.get();
         }
-        return embeddingCache.get(key, k -> loader.get());
+        return embeddingCache.get(embeddingKey(key), k -> loadEmbedding(k, loader));
+    }
+
+    // 仅读取嵌入缓存，未命中返回null；二级命中时回填一级
+    public Embedding getEmbeddingIfPresent(String key) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        String normalized = embeddingKey(key);
+        Embedding embedding = embeddingCache.getIfPresent(normalized);
+        if (embedding == null && persistentEmbeddings != null) {
+            embedding = persistentEmbeddings.get(normalized);
+            if (embedding != null) {
+                embeddingCache.put(normalized, embedding);
+            }
+        }
+        return embedding;
+    }
+
+    // 写入嵌入缓存（批量嵌入后回填）
+    public void putEmbedding(String key, Embedding embedding) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        String normalized = embeddingKey(key);
+        embeddingCache.put(normalized, embedding);
+        if (persistentEmbeddings != null) {
+            persistentEmbeddings.put(normalized, embedding);
+        }
     }
 
     // 读取结果缓存
@@ -52,7 +134,8 @@ public class RagCache {
         if (!properties.isEnabled()) {
             return null;
         }
-        return resultCache.getIfPresent(key);
+        byte[] bytes = resultCache.getIfPresent(CacheKey.of(key));
+        return bytes == null ? null : resultCodec.decode(bytes);
     }
 
     // 读取或计算结果缓存
@@ -60,7 +143,16 @@ public class RagCache {
         if (!properties.isEnabled()) {
             return loader.get();
         }
-        return resultCache.get(key, k -> loader.get());
+        CacheKey cacheKey = CacheKey.of(key);
+        byte[] bytes = resultCache.getIfPresent(cacheKey);
+        if (bytes != null) {
+            return resultCodec.decode(bytes);
+        }
+        RagResponse response = loader.get();
+        if (response != null) {
+            resultCache.put(cacheKey, resultCodec.encode(response));
+        }
+        return response;
     }
 
     // 写入结果缓存
@@ -68,7 +160,193 @@ public class RagCache {
         if (!properties.isEnabled()) {
             return;
         }
-        resultCache.put(key, response);
+        if (response == null) {
+            return;
+        }
+        resultCache.put(CacheKey.of(key), resultCodec.encode(response));
+    }
+
+    // 读取检索结果缓存
+    public RetrieveResponse getRetrieval(String key) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        return retrievalCache.getIfPresent(key);
+    }
+
+    // 写入检索结果缓存
+    public void putRetrieval(String key, RetrieveResponse response) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        retrievalCache.put(key, response);
+    }
+
+    // 当前索引代数，拼入结果/检索/语义缓存的Key
+    public long generation(String version, String source) {
+        return generations.current(version, source);
+    }
+
+    // 某个版本/来源的数据变化：该范围及包含它的更宽范围的缓存Key随之变化
+    public void invalidate(String version, String source) {
+        generations.bump(version, source);
+    }
+
+    // 全部范围失效（全量重建索引）
+    public void invalidateAll() {
+        generations.bumpAll();
+    }
+
+    public boolean isSemanticEnabled() {
+        return semanticCache != null;
+    }
+
+    // 读取语义缓存：在同一过滤范围内查找相似问题的答案
+    public RagResponse getSimilarResult(String scope, Embedding embedding) {
+        if (semanticCache == null) {
+            return null;
+        }
+        return semanticCache.get(scope, embedding);
+    }
+
+    // 写入语义缓存
+    public void putSimilarResult(String key, String scope, Embedding embedding, RagResponse response) {
+        if (semanticCache == null) {
+            return;
+        }
+        semanticCache.put(key, scope, embedding, response);
+    }
+
+    // 语义缓存统计：查询数、命中数、命中率与阈值
+    public SemanticResultCache.Stats semanticStats() {
+        if (semanticCache == null) {
+            return new SemanticResultCache.Stats(0, 0, 0.0, properties.getSemantic().getThreshold(), 0);
+        }
+        return semanticCache.stats();
+    }
+
+    // 合并相同Key的在途请求：首个请求执行loader，并发到达的请求等待同一结果
+    public RagResponse singleFlight(String key, Supplier<RagResponse> loader) {
+        if (!properties.isSingleFlight()) {
+            return loader.get();
+        }
+        CompletableFuture<RagResponse> flight = new CompletableFuture<>();
+        CompletableFuture<RagResponse> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            RagResponse response = loader.get();
+            flight.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    // 异步版本的在途合并：首个请求启动loader，并发到达的请求拿到同一结果的副本
+    public CompletableFuture<RagResponse> singleFlightAsync(String key,
+                                                            Supplier<CompletableFuture<RagResponse>> loader) {
+        if (!properties.isSingleFlight()) {
+            return loader.get();
+        }
+        CompletableFuture<RagResponse> flight = new CompletableFuture<>();
+        CompletableFuture<RagResponse> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            // 返回副本，避免某个调用方取消时影响其他等待者
+            return existing.copy();
+        }
+        CompletableFuture<RagResponse> source;
+        try {
+            source = loader.get();
+        } catch (RuntimeException e) {
+            source = CompletableFuture.failedFuture(e);
+        }
+        source.whenComplete((response, error) -> {
+            inFlight.remove(key, flight);
+            if (error != null) {
+                flight.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause()
+                        : error);
+            } else {
+                flight.complete(response);
+            }
+        });
+        return flight.copy();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, embeddingCache, "rag-embedding");
+        CaffeineCacheMetrics.monitor(registry, resultCache, "rag-result");
+        CaffeineCacheMetrics.monitor(registry, retrievalCache, "rag-retrieval");
+        if (semanticCache != null) {
+            FunctionCounter.builder("cache.gets", semanticCache, cache -> cache.stats().hits())
+                    .tag("cache", "rag-semantic")
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("cache.gets", semanticCache,
+                            cache -> cache.stats().lookups() - cache.stats().hits())
+                    .tag("cache", "rag-semantic")
+                    .tag("result", "miss")
+                    .register(registry);
+            Gauge.builder("rag.cache.semantic.threshold", semanticCache, cache -> cache.stats().threshold())
+                    .description("语义缓存命中的余弦相似度阈值")
+                    .register(registry);
+        }
+        if (persistentEmbeddings != null) {
+            FunctionCounter.builder("cache.gets", persistentEmbeddings, PersistentEmbeddingCache::hits)
+                    .tag("cache", "rag-embedding-persistent")
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("cache.gets", persistentEmbeddings, PersistentEmbeddingCache::misses)
+                    .tag("cache", "rag-embedding-persistent")
+                    .tag("result", "miss")
+                    .register(registry);
+        }
+        resultCache.policy().eviction().ifPresent(eviction -> {
+            if (eviction.isWeighted()) {
+                Gauge.builder("rag.cache.result.bytes", eviction, e -> e.weightedSize().orElse(0L))
+                        .description("结果缓存占用字节数（估算）")
+                        .baseUnit("bytes")
+                        .register(registry);
+            }
+        });
+        Gauge.builder("rag.cache.inflight", inFlight, ConcurrentMap::size)
+                .description("在途合并中的请求Key数")
+                .register(registry);
+    }
+
+    // 嵌入缓存Key：问题文本去掉首尾空白并转小写（嵌入模型不区分大小写）
+    private static String embeddingKey(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // 一级未命中：先查二级持久化缓存，仍未命中再调用模型并写入二级
+    private Embedding loadEmbedding(String key, Supplier<Embedding> loader) {
+        if (persistentEmbeddings == null) {
+            return loader.get();
+        }
+        Embedding embedding = persistentEmbeddings.get(key);
+        if (embedding == null) {
+            embedding = loader.get();
+            persistentEmbeddings.put(key, embedding);
+        }
+        return embedding;
+    }
+
+    private RagResponse await(CompletableFuture<RagResponse> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
     }
 
     private Cache<String, Embedding> buildEmbeddingCache() {
@@ -76,15 +354,47 @@ public class RagCache {
         return buildCache(spec.getMaxSize(), spec.getTtl());
     }
 
-    private Cache<String, RagResponse> buildResultCache() {
-        RagProperties.Cache.Spec spec = properties.getResult();
+    private Cache<CacheKey, byte[]> buildResultCache() {
+        RagProperties.Cache.Result spec = properties.getResult();
+        DataSize maxMemory = spec.getMaxMemory();
+        if (maxMemory == null || maxMemory.toBytes() <= 0) {
+            return buildCache(spec.getMaxSize(), spec.getTtl());
+        }
+        return Caffeine.newBuilder()
+                .maximumWeight(maxMemory.toBytes())
+                .weigher((CacheKey key, byte[] value) -> RESULT_ENTRY_OVERHEAD + value.length)
+                .expireAfterWrite(spec.getTtl())
+                .recordStats()
+                .build();
+    }
+
+    private CompactResponseCodec buildResultCodec() {
+        RagProperties.Cache.Result spec = properties.getResult();
+        DataSize threshold = spec.getCompressThreshold();
+        return new CompactResponseCodec(spec.getCompression() == RagProperties.Cache.Result.Compression.DEFLATE,
+                threshold == null ? 0 : (int) Math.min(Integer.MAX_VALUE, threshold.toBytes()));
+    }
+
+    private Cache<String, RetrieveResponse> buildRetrievalCache() {
+        RagProperties.Cache.Spec spec = properties.getRetrieval();
         return buildCache(spec.getMaxSize(), spec.getTtl());
     }
 
-    private <T> Cache<String, T> buildCache(int maxSize, Duration ttl) {
+    private SemanticResultCache buildSemanticCache() {
+        RagProperties.Cache.Semantic spec = properties.getSemantic();
+        if (!properties.isEnabled() || !spec.isEnabled()) {
+            return null;
+        }
+        DataSize maxMemory = spec.getMaxMemory();
+        return new SemanticResultCache(maxMemory == null ? 0 : maxMemory.toBytes(), spec.getMaxSize(), spec.getTtl(),
+                spec.getThreshold(), resultCodec);
+    }
+
+    private <K, V> Cache<K, V> buildCache(int maxSize, Duration ttl) {
         return Caffeine.newBuilder()
                 .maximumSize(maxSize)
                 .expireAfterWrite(ttl)
+                .recordStats()
                 .build();
     }
 }
@@ -0,0 +1,118 @@
+package com.example.rag.perf;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * RAG 管线指标（Micrometer）
+ *
+ * 阶段耗时：rag.stage.duration{stage, outcome}
+ * - stage：见 {@link PipelineStage}
+ * - outcome：success / error
+ * - 发布直方图桶，Prometheus 侧用 histogram_quantile 计算分位数
+ *
+ * 入库计数：rag.ingest.documents / rag.ingest.segments{mode}，按时间窗口求 rate 即入库吞吐
+ *
+ * 单请求明细：withTrace 返回绑定 {@link RequestTrace} 的视图，同一次计时同时写入指标与请求明细
+ *
+ * 缓存命中与限流器队列深度分别由 {@link RagCache}、{@link QueryLimiter} 作为 MeterBinder 注册
+ */
+public class RagMetrics {
+
+    public static final String STAGE_TIMER = "rag.stage.duration";
+
+    private static final PipelineStage[] STAGES = PipelineStage.values();
+
+    private final MeterRegistry registry;
+    private final Timer[] successTimers;
+    private final Timer[] errorTimers;
+    private final RequestTrace trace;
+
+    public RagMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.successTimers = new Timer[STAGES.length];
+        this.errorTimers = new Timer[STAGES.length];
+        this.trace = RequestTrace.NOOP;
+        if (registry != null) {
+            // 启动时注册全部阶段，热路径上只做数组下标访问
+            for (PipelineStage stage : STAGES) {
+                successTimers[stage.ordinal()] = stageTimer(registry, stage, "success");
+                errorTimers[stage.ordinal()] = stageTimer(registry, stage, "error");
+            }
+        }
+    }
+
+    private RagMetrics(RagMetrics parent, RequestTrace trace) {
+        this.registry = parent.registry;
+        this.successTimers = parent.successTimers;
+        this.errorTimers = parent.errorTimers;
+        this.trace = trace;
+    }
+
+    // 不记录指标（单元测试或未引入Actuator时）
+    public static RagMetrics disabled() {
+        return new RagMetrics(null);
+    }
+
+    // 绑定单请求明细；未开启调试时返回自身，不额外分配
+    public RagMetrics withTrace(RequestTrace requestTrace) {
+        return requestTrace == null || !requestTrace.isEnabled() ? this : new RagMetrics(this, requestTrace);
+    }
+
+    // 执行并记录阶段耗时，异常计入 outcome=error
+    public <T> T time(PipelineStage stage, Supplier<T> supplier) {
+        if (registry == null && !trace.isEnabled()) {
+            return supplier.get();
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = supplier.get();
+            success = true;
+            return result;
+        } finally {
+            record(stage, System.nanoTime() - start, success);
+        }
+    }
+
+    // 记录已测得的阶段耗时（如流式生成在完成回调中记录）
+    public void record(PipelineStage stage, long nanos, boolean success) {
+        trace.addStage(stage, nanos);
+        if (registry == null) {
+            return;
+        }
+        (success ? successTimers : errorTimers)[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // 入库计数：文档数与分片数（分片数未知时传负数跳过）
+    public void countIngest(String mode, int documents, int segments) {
+        if (registry == null) {
+            return;
+        }
+        Counter.builder("rag.ingest.documents")
+                .description("已入库文档数")
+                .tag("mode", mode)
+                .register(registry)
+                .increment(documents);
+        if (segments >= 0) {
+            Counter.builder("rag.ingest.segments")
+                    .description("已入库分片数")
+                    .tag("mode", mode)
+                    .register(registry)
+                    .increment(segments);
+        }
+    }
+
+    private static Timer stageTimer(MeterRegistry registry, PipelineStage stage, String outcome) {
+        return Timer.builder(STAGE_TIMER)
+                .description("RAG 管线各阶段耗时")
+                .tag("stage", stage.tag())
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.rag.perf;
+
+import com.example.rag.service.dto.RequestTimings;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 单请求耗时明细（调试模式或查询日志）
+ *
+ * 采集内容：各阶段纳秒耗时、各阶段输出候选数、缓存命中情况、限流排队等待、提示词Token数
+ *
+ * 实现：
+ * - 按 {@link PipelineStage} 下标写入定长数组，采集过程不产生额外对象
+ * - 并行分支写入各自的阶段槽位，汇合（join）后读取；超时被丢弃的分支仍可能继续执行，
+ *   阶段写入与 toTimings() 互斥，输出后到达的写入直接忽略，不会读到写了一半的值
+ * - 未开启调试且未启用查询日志时使用 NOOP，所有写入直接忽略
+ * - 仅为查询日志采集时 isDebug() 为false，明细只写入日志，不返回给客户端
+ * - 仅在请求结束时转换为 {@link RequestTimings} 输出
+ */
+public final class RequestTrace {
+
+    public static final RequestTrace NOOP = new RequestTrace(false, false);
+
+    private static final PipelineStage[] STAGES = PipelineStage.values();
+    private static final int UNKNOWN = -1;
+
+    private final boolean enabled;
+    private final boolean debug;
+    private final long startNanos;
+    private final long[] stageNanos;
+    private final int[] candidates;
+    private Boolean resultCacheHit;
+    private Boolean semanticCacheHit;
+    private long queueWaitNanos = UNKNOWN;
+    private int promptTokens = UNKNOWN;
+    // toTimings() 后置为true，之后的阶段写入（超时分支迟到的结果）被丢弃
+    private boolean closed;
+
+    private RequestTrace(boolean enabled, boolean debug) {
+        this.enabled = enabled;
+        this.debug = debug;
+        this.startNanos = enabled ? System.nanoTime() : 0L;
+        this.stageNanos = enabled ? new long[STAGES.length] : null;
+        this.candidates = enabled ? new int[STAGES.length] : null;
+        if (enabled) {
+            Arrays.fill(candidates, UNKNOWN);
+        }
+    }
+
+    public static RequestTrace start() {
+        return new RequestTrace(true, true);
+    }
+
+    // debug为true时开始采集，否则返回NOOP
+    public static RequestTrace of(Boolean debug) {
+        return of(debug, false);
+    }
+
+    // capture为true时即使非调试请求也采集（查询日志需要阶段耗时），但不返回给客户端
+    public static RequestTrace of(Boolean debug, boolean capture) {
+        if (Boolean.TRUE.equals(debug)) {
+            return start();
+        }
+        return capture ? new RequestTrace(true, false) : NOOP;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // 是否在响应中返回耗时明细
+    public boolean isDebug() {
+        return debug;
+    }
+
+    // 阶段耗时累加（同一阶段可能执行多次，如语义缓存与检索各计算一次嵌入）
+    public void addStage(PipelineStage stage, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (!closed) {
+                stageNanos[stage.ordinal()] += nanos;
+            }
+        }
+    }
+
+    public void candidates(PipelineStage stage, int count) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (!closed) {
+                candidates[stage.ordinal()] = count;
+            }
+        }
+    }
+
+    public void resultCache(boolean hit) {
+        if (enabled) {
+            resultCacheHit = hit;
+        }
+    }
+
+    public void semanticCache(boolean hit) {
+        if (enabled) {
+            semanticCacheHit = hit;
+        }
+    }
+
+    public void queueWait(long nanos) {
+        if (enabled) {
+            queueWaitNanos = nanos;
+        }
+    }
+
+    public void promptTokens(int tokens) {
+        if (enabled) {
+            promptTokens = tokens;
+        }
+    }
+
+    // 转换为输出对象，只包含实际执行过的阶段；调用后不再接受阶段写入
+    public RequestTimings toTimings() {
+        if (!enabled) {
+            return null;
+        }
+        Map<String, Long> stages = new LinkedHashMap<>();
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        synchronized (this) {
+            closed = true;
+            for (PipelineStage stage : STAGES) {
+                int index = stage.ordinal();
+                if (stageNanos[index] > 0) {
+                    stages.put(stage.tag(), stageNanos[index]);
+                }
+                if (candidates[index] != UNKNOWN) {
+                    counts.put(stage.tag(), candidates[index]);
+                }
+            }
+        }
+        Map<String, Boolean> cacheHits = new LinkedHashMap<>();
+        if (resultCacheHit != null) {
+            cacheHits.put("result", resultCacheHit);
+        }
+        if (semanticCacheHit != null) {
+            cacheHits.put("semantic", semanticCacheHit);
+        }
+        return new RequestTimings(
+                System.nanoTime() - startNanos,
+                stages,
+                counts,
+                cacheHits,
+                queueWaitNanos == UNKNOWN ? null : queueWaitNanos,
+                promptTokens == UNKNOWN ? null : promptTokens);
+    }
+}
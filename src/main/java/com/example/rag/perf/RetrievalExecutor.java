@@ -0,0 +1,127 @@
+package com.example.rag.perf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 检索并行执行器
+ *
+ * 功能：向量检索、全文检索、LlamaIndex侧车检索同时启动，汇合后再做融合
+ *
+ * 实现：独立的固定大小线程池（与问答限流线程池隔离）
+ * - 有界队列，队列满时拒绝提交，该分支直接降级，避免高负载下任务无限堆积
+ * - 每一路检索单独设置超时，超时后中断仍在执行的任务，及时归还线程
+ * - 因此在本线程池中调用的存储必须能容忍中断（如 FileChannel 被中断关闭后需重新打开，见 FlatEmbeddingStore）
+ * - 失败或超时的分支降级为空结果，不拖垮整个请求
+ *
+ * 模式：
+ * - threadPool：线程池并行执行
+ * - direct：在调用线程同步执行（关闭并行或单元测试时使用）
+ *
+ * @see RagProperties.Retrieval.Parallel 配置项
+ */
+public class RetrievalExecutor implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RetrievalExecutor.class);
+
+    private final ExecutorService executor;
+
+    private RetrievalExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public static RetrievalExecutor threadPool(String name, int poolSize, int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), threadFactory(name),
+                new ThreadPoolExecutor.AbortPolicy());
+        return new RetrievalExecutor(executor);
+    }
+
+    public static RetrievalExecutor direct() {
+        return new RetrievalExecutor(null);
+    }
+
+    // 提交一路检索，超时后Future以TimeoutException结束并中断任务；队列已满时以RejectedExecutionException结束
+    public <T> CompletableFuture<T> submit(Supplier<T> supplier, Duration timeout) {
+        if (executor == null) {
+            try {
+                return CompletableFuture.completedFuture(supplier.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    future.complete(supplier.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (timeout != null && !timeout.isZero() && !timeout.isNegative()) {
+            future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        // 超时或调用方取消时任务可能仍在运行；正常完成时回调在工作线程内执行，此时任务尚未结束，不能取消
+        future.whenComplete((result, error) -> {
+            if (error != null && !task.isDone()) {
+                task.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    // 等待分支结果，失败或超时时丢弃该分支并返回降级值
+    public <T> T join(String branch, CompletableFuture<T> future, T fallback) {
+        try {
+            T result = future.join();
+            return result == null ? fallback : result;
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if (cause instanceof TimeoutException) {
+                log.warn("检索分支超时，已丢弃: branch={}", branch);
+            } else if (cause instanceof RejectedExecutionException) {
+                log.warn("检索线程池队列已满，分支已丢弃: branch={}", branch);
+            } else {
+                log.warn("检索分支失败，已丢弃: branch={}, error={}", branch, cause.toString());
+            }
+            return fallback;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.rag.perf;
+
+import com.example.rag.service.dto.RagResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import dev.langchain4j.data.embedding.Embedding;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 语义结果缓存
+ *
+ * 原理：为每条缓存结果保存归一化后的查询向量，查询时在同一过滤范围
+ * （version/source/tags/keywords/topK/minScore）内查找余弦相似度最高的已缓存问题，
+ * 相似度不低于阈值即复用其答案，使“如何入库文档”与“文档如何入库？”可以互相命中
+ *
+ * 实现：
+ * - 条目存储：Caffeine（按字节数限额 + TTL），答案与证据用结果缓存相同的紧凑编码保存，命中时解码；
+ *   条目权重包含编码后的结果、Key 与查询向量（条目与索引各一份），条目被淘汰时同步移出向量索引
+ * - 向量索引：按过滤范围分组的扁平 float 数组，点积暴力扫描（连续内存，便于JIT向量化）
+ *
+ * @see RagCache 结果缓存入口
+ */
+public class SemanticResultCache {
+
+    public record Stats(long lookups, long hits, double hitRate, double threshold, long size) {
+    }
+
+    private record Entry(String key, String scope, float[] vector, byte[] payload) {
+    }
+
+    // 条目固定开销估算：Caffeine节点、Entry与数组对象头、索引槽位
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final double threshold;
+    private final CompactResponseCodec codec;
+    private final Cache<String, Entry> entries;
+    private final ConcurrentMap<String, ScopeIndex> indexes = new ConcurrentHashMap<>();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    // maxBytes 不大于0时按 maxSize 条数限额
+    public SemanticResultCache(long maxBytes, int maxSize, Duration ttl, double threshold, CompactResponseCodec codec) {
+        this.threshold = threshold;
+        this.codec = codec;
+        Caffeine<Object, Object> builder = Caffeine.newBuilder();
+        if (maxBytes > 0) {
+            builder.maximumWeight(maxBytes).weigher((String key, Entry entry) -> weigh(entry));
+        } else {
+            builder.maximumSize(maxSize);
+        }
+        this.entries = builder
+                .expireAfterWrite(ttl)
+                // 淘汰回调只做索引移除，在调用线程同步执行，保证索引与条目一致
+                .executor(Runnable::run)
+                .removalListener((String key, Entry entry, RemovalCause cause) -> unindex(entry))
+                .build();
+    }
+
+    // 在同一过滤范围内查找最相近的已缓存问题
+    public RagResponse get(String scope, Embedding embedding) {
+        lookups.increment();
+        ScopeIndex index = indexes.get(scope);
+        if (index == null || embedding == null) {
+            return null;
+        }
+        Entry nearest = index.nearest(normalize(embedding.vector()), threshold);
+        if (nearest == null) {
+            return null;
+        }
+        // 条目可能已过期但淘汰回调尚未执行，以Caffeine中的存活条目为准
+        if (entries.getIfPresent(nearest.key()) != nearest) {
+            return null;
+        }
+        hits.increment();
+        return codec.decode(nearest.payload());
+    }
+
+    public void put(String key, String scope, Embedding embedding, RagResponse response) {
+        if (embedding == null || response == null) {
+            return;
+        }
+        Entry entry = new Entry(key, scope, normalize(embedding.vector()), codec.encode(response));
+        indexes.compute(scope, (s, index) -> {
+            ScopeIndex target = index == null ? new ScopeIndex() : index;
+            target.put(entry);
+            return target;
+        });
+        entries.put(key, entry);
+    }
+
+    public Stats stats() {
+        long lookupCount = lookups.sum();
+        long hitCount = hits.sum();
+        double hitRate = lookupCount == 0 ? 0.0 : (double) hitCount / lookupCount;
+        return new Stats(lookupCount, hitCount, hitRate, threshold, entries.estimatedSize());
+    }
+
+    private static int weigh(Entry entry) {
+        long weight = ENTRY_OVERHEAD + 2L * (entry.key().length() + entry.scope().length())
+                + 2L * Float.BYTES * entry.vector().length + entry.payload().length;
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+
+    private void unindex(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        indexes.computeIfPresent(entry.scope(), (s, index) -> {
+            index.remove(entry);
+            return index.isEmpty() ? null : index;
+        });
+    }
+
+    private float[] normalize(float[] vector) {
+        double norm = 0.0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0.0) {
+            return vector.clone();
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * inv;
+        }
+        return normalized;
+    }
+
+    // 单个过滤范围内的扁平向量索引：第i条向量位于 vectors[i*dimension, (i+1)*dimension)
+    private static final class ScopeIndex {
+
+        private final Map<String, Integer> slots = new HashMap<>();
+        private Entry[] items = new Entry[16];
+        private float[] vectors;
+        private int dimension = -1;
+        private int size;
+
+        synchronized void put(Entry entry) {
+            float[] vector = entry.vector();
+            if (dimension < 0) {
+                dimension = vector.length;
+                vectors = new float[dimension * items.length];
+            }
+            if (vector.length != dimension) {
+                return;
+            }
+            Integer slot = slots.get(entry.key());
+            if (slot == null) {
+                if (size == items.length) {
+                    items = Arrays.copyOf(items, size * 2);
+                    vectors = Arrays.copyOf(vectors, dimension * size * 2);
+                }
+                slot = size++;
+                slots.put(entry.key(), slot);
+            }
+            items[slot] = entry;
+            System.arraycopy(vector, 0, vectors, slot * dimension, dimension);
+        }
+
+        // 仅移除同一条目，避免误删被覆盖写入的新条目
+        synchronized void remove(Entry entry) {
+            Integer slot = slots.get(entry.key());
+            if (slot == null || items[slot] != entry) {
+                return;
+            }
+            int last = --size;
+            if (slot != last) {
+                items[slot] = items[last];
+                System.arraycopy(vectors, last * dimension, vectors, slot * dimension, dimension);
+                slots.put(items[slot].key(), slot);
+            }
+            items[last] = null;
+            slots.remove(entry.key());
+        }
+
+        synchronized Entry nearest(float[] query, double threshold) {
+            if (query.length != dimension) {
+                return null;
+            }
+            Entry best = null;
+            double bestScore = threshold;
+            for (int i = 0; i < size; i++) {
+                int base = i * dimension;
+                float dot = 0f;
+                for (int j = 0; j < dimension; j++) {
+                    dot += query[j] * vectors[base + j];
+                }
+                if (dot >= bestScore) {
+                    bestScore = dot;
+                    best = items[i];
+                }
+            }
+            return best;
+        }
+
+        synchronized boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.rag.prompt;
+
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+
+// 基于DJL HuggingFaceTokenizer的真实Token计数（不含特殊Token）
+public class HuggingFaceTokenCounter implements TokenCounter, Closeable {
+
+    private final HuggingFaceTokenizer tokenizer;
+
+    public HuggingFaceTokenCounter(String tokenizerId) {
+        this.tokenizer = load(tokenizerId, null);
+    }
+
+    public HuggingFaceTokenCounter(Path tokenizerPath) {
+        this.tokenizer = load(null, tokenizerPath);
+    }
+
+    @Override
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return tokenizer.encode(text, false, false).getIds().length;
+    }
+
+    @Override
+    public void close() {
+        tokenizer.close();
+    }
+
+    private HuggingFaceTokenizer load(String tokenizerId, Path tokenizerPath) {
+        try {
+            // 关闭截断，保证长文本计数准确
+            return tokenizerPath == null
+                    ? HuggingFaceTokenizer.builder().optTokenizerName(tokenizerId).optTruncation(false).build()
+                    : HuggingFaceTokenizer.builder().optTokenizerPath(tokenizerPath).optTruncation(false).build();
+        } catch (Exception e) {
+            throw new IllegalStateException("加载分词器失败", e);
+        }
+    }
+}
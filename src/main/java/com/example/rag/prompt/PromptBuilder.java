@@ -0,0 +1,85 @@
+package com.example.rag.prompt;
+
+import com.example.rag.config.RagProperties;
+import com.example.rag.perf.RequestTrace;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * 问答提示词构建
+ *
+ * 布局：
+ * - STABLE_PREFIX：固定指令作为 system 消息，资料在前、问题在后放入 user 消息
+ *   所有请求共享完全相同的前缀，Ollama 可复用前缀的 KV Cache，减少每次调用的预填充耗时
+ * - LEGACY：问题在前、资料在后的单条 user 消息（兼容旧版提示词）
+ *
+ * 证据在拼接前经过 PromptPacker 按 Token 预算打包（可选）
+ *
+ * @see RagProperties.Prompt 配置项
+ */
+public class PromptBuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(PromptBuilder.class);
+
+    private final RagProperties.Prompt.Layout layout;
+    private final String noMatch;
+    private final String systemPrompt;
+    private final PromptPacker packer;
+
+    public PromptBuilder(RagProperties.Prompt.Layout layout, String noMatch, PromptPacker packer) {
+        this.layout = layout;
+        this.noMatch = noMatch;
+        this.systemPrompt = "你是企业知识库助手，请仅基于给定资料回答问题。\n如果资料不足，请回答：" + noMatch;
+        this.packer = packer;
+    }
+
+    public List<ChatMessage> build(String question, List<String> evidence) {
+        return build(question, evidence, RequestTrace.NOOP);
+    }
+
+    // trace 记录打包后的提示词Token数（未启用打包时不记录）
+    public List<ChatMessage> build(String question, List<String> evidence, RequestTrace trace) {
+        if (layout == RagProperties.Prompt.Layout.LEGACY) {
+            return List.of(UserMessage.from(buildLegacy(question, evidence, trace)));
+        }
+        String questionPart = "\n问题：" + question;
+        List<String> packed = pack(systemPrompt + "资料：\n" + questionPart, evidence, trace);
+        StringBuilder sb = new StringBuilder("资料：\n");
+        appendEvidence(sb, packed);
+        sb.append(questionPart);
+        return List.of(SystemMessage.from(systemPrompt), UserMessage.from(sb.toString()));
+    }
+
+    private String buildLegacy(String question, List<String> evidence, RequestTrace trace) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("你是企业知识库助手，请仅基于给定资料回答问题。");
+        sb.append("如果资料不足，请回答：").append(noMatch).append("\\n\\n");
+        sb.append("问题：").append(question).append("\n\n");
+        sb.append("资料：\n");
+        appendEvidence(sb, pack(sb.toString(), evidence, trace));
+        return sb.toString();
+    }
+
+    // 证据按Token预算打包：按排序放入，超出部分在句子边界截断或丢弃
+    private List<String> pack(String fixedText, List<String> evidence, RequestTrace trace) {
+        if (packer == null) {
+            return evidence;
+        }
+        PromptPacker.PackedEvidence result = packer.pack(fixedText, evidence);
+        trace.promptTokens(result.tokens());
+        log.info("提示词打包完成, promptTokens={}, evidenceUsed={}, dropped={}, truncated={}",
+                result.tokens(), result.evidence().size(), result.dropped(), result.truncated());
+        return result.evidence();
+    }
+
+    private void appendEvidence(StringBuilder sb, List<String> evidence) {
+        for (int i = 0; i < evidence.size(); i++) {
+            sb.append(PromptPacker.item(i, evidence.get(i)));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.rag.prompt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Token预算感知的提示词打包
+ *
+ * 规则：
+ * - 固定部分（指令与问题）先计入预算
+ * - 每条证据按最终拼接形式（"序号. 内容" 加换行）计数，编号与分隔符同样占用预算
+ * - 证据按排序先后依次放入，放不下的第一条证据在句子边界处截断
+ * - 截断后不足 minChunkTokens 的片段直接丢弃，后续证据不再放入
+ *
+ * 效果：提示词长度有上限，Ollama 预填充耗时随之可控
+ *
+ * @see RagProperties.Prompt 配置项
+ */
+public class PromptPacker {
+
+    private final TokenCounter tokenCounter;
+    private final int maxTokens;
+    private final int minChunkTokens;
+
+    public PromptPacker(TokenCounter tokenCounter, int maxTokens, int minChunkTokens) {
+        this.tokenCounter = tokenCounter;
+        this.maxTokens = maxTokens;
+        this.minChunkTokens = minChunkTokens;
+    }
+
+    /**
+     * 打包结果
+     *
+     * @param evidence   实际放入提示词的证据（最后一条可能被截断）
+     * @param tokens     固定部分与证据合计的Token数
+     * @param dropped    因预算不足未放入的证据条数
+     * @param truncated  是否截断了最后一条证据
+     */
+    public record PackedEvidence(List<String> evidence, int tokens, int dropped, boolean truncated) {
+    }
+
+    // 证据在提示词中的拼接形式，PromptBuilder 与预算计数共用
+    public static String item(int index, String text) {
+        return (index + 1) + ". " + text + "\n";
+    }
+
+    // fixedText为提示词中除证据外的固定部分，用于扣减预算
+    public PackedEvidence pack(String fixedText, List<String> evidence) {
+        int used = tokenCounter.count(fixedText);
+        List<String> packed = new ArrayList<>(evidence.size());
+        boolean truncated = false;
+        int index = 0;
+        for (; index < evidence.size(); index++) {
+            String text = evidence.get(index);
+            int tokens = tokenCounter.count(item(index, text));
+            if (used + tokens <= maxTokens) {
+                packed.add(text);
+                used += tokens;
+                continue;
+            }
+            int remaining = maxTokens - used;
+            if (remaining >= minChunkTokens) {
+                String trimmed = trimToSentence(index, text, remaining);
+                if (!trimmed.isEmpty()) {
+                    int trimmedTokens = tokenCounter.count(item(index, trimmed));
+                    if (trimmedTokens >= minChunkTokens && used + trimmedTokens <= maxTokens) {
+                        packed.add(trimmed);
+                        used += trimmedTokens;
+                        truncated = true;
+                        index++;
+                    }
+                }
+            }
+            break;
+        }
+        return new PackedEvidence(packed, used, evidence.size() - index, truncated);
+    }
+
+    // 在句子边界处截断：二分查找拼接后不超过预算的最长句子前缀
+    private String trimToSentence(int index, String text, int budget) {
+        List<Integer> boundaries = sentenceBoundaries(text);
+        int low = 0;
+        int high = boundaries.size() - 1;
+        int best = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (tokenCounter.count(item(index, text.substring(0, boundaries.get(mid)).trim())) <= budget) {
+                best = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return best < 0 ? "" : text.substring(0, boundaries.get(best)).trim();
+    }
+
+    // 句末位置（不含末尾），中英文句号、问号、叹号、分号与换行均视为边界
+    private List<Integer> sentenceBoundaries(String text) {
+        List<Integer> boundaries = new ArrayList<>();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '。' || c == '！' || c == '？' || c == '；' || c == '\n'
+                    || ((c == '.' || c == '!' || c == '?' || c == ';')
+                    && (i + 1 == text.length() || Character.isWhitespace(text.charAt(i + 1))))) {
+                boundaries.add(i + 1);
+            }
+        }
+        return boundaries;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.rag.prompt;
+
+// 文本Token计数
+public interface TokenCounter {
+
+    int count(String text);
+
+    // 近似计数：CJK字符按1个Token，其余按每4个字符1个Token估算（无法加载分词器时兜底）
+    static TokenCounter approximate() {
+        return text -> {
+            if (text == null || text.isEmpty()) {
+                return 0;
+            }
+            int cjk = 0;
+            int other = 0;
+            for (int i = 0; i < text.length(); i++) {
+                Character.UnicodeScript script = Character.UnicodeScript.of(text.charAt(i));
+                if (script == Character.UnicodeScript.HAN
+                        || script == Character.UnicodeScript.HIRAGANA
+                        || script == Character.UnicodeScript.KATAKANA
+                        || script == Character.UnicodeScript.HANGUL) {
+                    cjk++;
+                } else {
+                    other++;
+                }
+            }
+            return cjk + (other + 3) / 4;
+        };
+    }
+}
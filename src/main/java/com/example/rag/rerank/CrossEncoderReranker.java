@@ -1,5 +1,6 @@
 package com.example.rag.rerank;
 
+import com.example.rag.retrieval.RetrievalCandidate;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.output.Response;
 import dev.langchain4j.model.scoring.ScoringModel;
@@ -26,11 +27,7 @@ public class CrossEncoderReranker {
         if (segments == null || segments.isEmpty()) {
             return List.of();
         }
-        Response<List<Double>> response = scoringModel.scoreAll(segments, query);
-        List<Double> scores = response == null ? List.of() : response.content();
-        if (scores == null || scores.size() != segments.size()) {
-            throw new IllegalStateException("交叉重排评分结果与段落数量不一致");
-        }
+        List<Double> scores = score(query, segments);
         List<ScoredSegment> ranked = new ArrayList<>(segments.size());
         for (int i = 0; i < segments.size(); i++) {
             ranked.add(new ScoredSegment(segments.get(i), scores.get(i)));
@@ -38,4 +35,30 @@ public class CrossEncoderReranker {
         ranked.sort(Comparator.comparingDouble(ScoredSegment::score).reversed());
         return ranked;
     }
+
+    // 对检索候选进行重排，得分写入 crossEncoderScore，保留其余阶段得分
+    public List<RetrievalCandidate> rerankCandidates(String query, List<RetrievalCandidate> candidates) {
+        if (candidates == null || candidates.isEmpty()) {
+            return List.of();
+        }
+        List<TextSegment> segments = candidates.stream()
+                .map(RetrievalCandidate::segment)
+                .toList();
+        List<Double> scores = score(query, segments);
+        List<RetrievalCandidate> ranked = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            ranked.add(candidates.get(i).withCrossEncoderScore(scores.get(i)));
+        }
+        ranked.sort(Comparator.comparingDouble(RetrievalCandidate::crossEncoderScore).reversed());
+        return ranked;
+    }
+
+    private List<Double> score(String query, List<TextSegment> segments) {
+        Response<List<Double>> response = scoringModel.scoreAll(segments, query);
+        List<Double> scores = response == null ? List.of() : response.content();
+        if (scores == null || scores.size() != segments.size()) {
+            throw new IllegalStateException("交叉重排评分结果与段落数量不一致");
+        }
+        return scores;
+    }
 }
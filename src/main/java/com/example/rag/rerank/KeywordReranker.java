@@ -1,5 +1,7 @@
 package com.example.rag.rerank;
 
+import com.example.rag.retrieval.RetrievalCandidate;
+
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
@@ -25,21 +27,12 @@ public class KeywordReranker {
             return passthrough;
         }
 
-        List<String> normalized = keywords.stream()
-                .filter(k -> k != null && !k.isBlank())
-                .map(k -> k.toLowerCase(Locale.ROOT))
-                .toList();
+        List<String> normalized = normalizeKeywords(keywords);
 
         List<RerankedSegment> reranked = new ArrayList<>(segments.size());
         for (CandidateSegment segment : segments) {
             String text = segment.text() == null ? "" : segment.text();
-            String lower = text.toLowerCase(Locale.ROOT);
-            int hits = 0;
-            for (String key : normalized) {
-                if (lower.contains(key)) {
-                    hits++;
-                }
-            }
+            int hits = countHits(text, normalized);
             double score = segment.baseScore() + hits * (1.0 + boost);
             reranked.add(new RerankedSegment(text, score, hits));
         }
@@ -47,4 +40,43 @@ public class KeywordReranker {
         reranked.sort(Comparator.comparingDouble(RerankedSegment::score).reversed());
         return reranked;
     }
+
+    // 对检索候选重排：以候选当前得分为基础分，结果写入 keywordScore，分片引用原样传递
+    public List<RetrievalCandidate> rerankCandidates(List<RetrievalCandidate> candidates,
+                                                     List<String> keywords,
+                                                     double boost) {
+        if (candidates == null || candidates.isEmpty()) {
+            return List.of();
+        }
+        List<String> normalized = keywords == null ? List.of() : normalizeKeywords(keywords);
+        List<RetrievalCandidate> reranked = new ArrayList<>(candidates.size());
+        for (RetrievalCandidate candidate : candidates) {
+            String text = candidate.text() == null ? "" : candidate.text();
+            int hits = countHits(text, normalized);
+            reranked.add(candidate.withKeywordScore(candidate.score() + hits * (1.0 + boost)));
+        }
+        reranked.sort(Comparator.comparingDouble(RetrievalCandidate::keywordScore).reversed());
+        return reranked;
+    }
+
+    private List<String> normalizeKeywords(List<String> keywords) {
+        return keywords.stream()
+                .filter(k -> k != null && !k.isBlank())
+                .map(k -> k.toLowerCase(Locale.ROOT))
+                .toList();
+    }
+
+    private int countHits(String text, List<String> normalizedKeywords) {
+        if (normalizedKeywords.isEmpty()) {
+            return 0;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int hits = 0;
+        for (String key : normalizedKeywords) {
+            if (lower.contains(key)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
 }
@@ -0,0 +1,1246 @@
+package com.example.rag.retrieval;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.ContainsString;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsGreaterThan;
+import dev.langchain4j.store.embedding.filter.comparison.IsGreaterThanOrEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.comparison.IsLessThan;
+import dev.langchain4j.store.embedding.filter.comparison.IsLessThanOrEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import dev.langchain4j.store.embedding.filter.logical.Not;
+import dev.langchain4j.store.embedding.filter.logical.Or;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * 内存映射平铺向量库（rag.vector.store=flat）
+ *
+ * 面向50万分片以内的集合：不建索引、精确召回，检索即全量暴力扫描
+ *
+ * 文件（目录下）：
+ * - vectors.bin：文件头（64字节：魔数、格式版本、维度）+ 按行号顺序存放的原始 float 向量，按64MB分段映射，不占用堆
+ * - records.bin：追加写的记录日志（写入：行号、向量范数、ID、文本与元数据；删除：行号），启动时顺序回放，
+ *   末尾不完整的记录（写入时进程崩溃）会被截掉
+ *
+ * 堆内只保留每行的记录位置、向量范数、删除标记、ID 哈希索引与元数据列（每个键一个 int 数组，值按字典编码），
+ * 每行约数十字节
+ *
+ * int8 量化（quantized=true）：
+ * - codes.bin 另存每行的 int8 编码（每维1字节，为 float 的1/4），calibration.bin 保存每维 min/max
+ * - 编码：按每维 [min, max] 线性映射到 256 级，超出范围的值截断
+ * - 标定由本类完成且只做一次：有效行数达到 calibrationSample 时取已有行的每维范围，两侧各放宽10%跨度后写入
+ *   calibration.bin 并编码这些行；之后每次写入只编码新写入的行，不再重新编码已有行，也不阻塞检索
+ * - 标定之前检索走精确扫描；逐条写入与批量入库都会触发标定，与入库方式无关
+ * - 检索先用 int8 点积扫描 codes.bin 选出 topK×oversample 个候选，再读取原始 float 向量精确重排，
+ *   扫描的内存带宽降为原来的1/4，最终得分与排序仍为精确值
+ *
+ * 检索：
+ * - 过滤条件编译为按行判定：比较条件按列字典对每个不同取值只求值一次，扫描时查表
+ * - 点积由 {@link VectorScorer} 直接对映射缓冲区计算（可用时为 Vector API），行向量不复制到堆；
+ *   行数超过并行阈值时按行区间分给多个线程，各自维护 top-k 小顶堆，最后合并
+ * - 得分为 (1+cos)/2，与 langchain4j 的相关性得分一致
+ *
+ * 删除只追加删除记录并标记行，空间不回收；removeAll() 清空记录日志，向量文件原地复用
+ * 按ID删除经 ID 哈希索引定位候选行，再读取记录核对ID，不扫描全部记录
+ * 同一ID重复写入视为新行，不做去重（入库流程使用随机ID），按ID删除时一并删除
+ */
+public class FlatEmbeddingStore implements EmbeddingStore<TextSegment>, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(FlatEmbeddingStore.class);
+
+    static final String VECTOR_FILE = "vectors.bin";
+    static final String RECORD_FILE = "records.bin";
+    static final String CODE_FILE = "codes.bin";
+    static final String CALIBRATION_FILE = "calibration.bin";
+    private static final int MAGIC = 0x464C4154;
+    private static final int CODE_MAGIC = 0x464C5138;
+    private static final int CALIBRATION_MAGIC = 0x464C5143;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final long CHUNK_BYTES = 64L << 20;
+    // 标定范围在样本范围两侧各放宽的跨度比例，后续数据超出样本范围时多数仍落在标定内
+    private static final float CALIBRATION_MARGIN = 0.1f;
+    private static final int MIN_CAPACITY = 1024;
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_DELETE = 2;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_UUID = 6;
+
+    private final Path dir;
+    private final int dimension;
+    private final int chunkRows;
+    private final int codeChunkRows;
+    private final boolean quantized;
+    private final int oversample;
+    private final int calibrationSample;
+    private final int parallelism;
+    private final int parallelThreshold;
+    private final VectorScorer scorer;
+    private final ExecutorService searchPool;
+    private final FileChannel vectorChannel;
+    // 被中断关闭后由 recordChannel() 重新打开
+    private volatile FileChannel recordChannel;
+    private volatile boolean closed;
+    private final FileChannel codeChannel;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 以下字段在写锁内修改，检索持有读锁
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final List<FloatBuffer> views = new ArrayList<>();
+    private final List<MappedByteBuffer> codeChunks = new ArrayList<>();
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private final IdIndex ids = new IdIndex();
+    private final BitSet deleted = new BitSet();
+    private long[] recordOffsets = new long[0];
+    private int[] recordLengths = new int[0];
+    private float[] norms = new float[0];
+    private int rows;
+    private long recordBytes;
+    // 量化标定（每维最小值与步长），未标定时为null
+    private float[] calibrationMin;
+    private float[] calibrationMax;
+    private float[] steps;
+
+    public FlatEmbeddingStore(Path dir, int dimension, int parallelism, int parallelThreshold) {
+        this(dir, dimension, parallelism, parallelThreshold, false, 1, 1);
+    }
+
+    public FlatEmbeddingStore(Path dir, int dimension, int parallelism, int parallelThreshold,
+                              boolean quantized, int oversample, int calibrationSample) {
+        this(dir, dimension, parallelism, parallelThreshold, quantized, oversample, calibrationSample,
+                VectorScorer.create());
+    }
+
+    FlatEmbeddingStore(Path dir, int dimension, int parallelism, int parallelThreshold, boolean quantized,
+                       int oversample, int calibrationSample, VectorScorer scorer) {
+        if (dimension < 1) {
+            throw new IllegalArgumentException("向量维度必须大于0");
+        }
+        this.dir = dir;
+        this.dimension = dimension;
+        this.chunkRows = (int) Math.max(1, CHUNK_BYTES / rowBytes(dimension));
+        this.codeChunkRows = (int) Math.max(1, CHUNK_BYTES / dimension);
+        this.quantized = quantized;
+        this.oversample = Math.max(1, oversample);
+        this.calibrationSample = Math.max(1, calibrationSample);
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.parallelThreshold = Math.max(1, parallelThreshold);
+        this.scorer = scorer;
+        // 调用线程自己处理一个区间，线程池只需 parallelism-1 个线程
+        this.searchPool = this.parallelism > 1 ? searchPool(this.parallelism - 1) : null;
+        try {
+            Files.createDirectories(dir);
+            this.vectorChannel = FileChannel.open(dir.resolve(VECTOR_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.recordChannel = openRecordChannel();
+            this.codeChannel = quantized ? FileChannel.open(dir.resolve(CODE_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE) : null;
+            openHeader(vectorChannel, MAGIC, VECTOR_FILE);
+            boolean codesCreated = quantized && openHeader(codeChannel, CODE_MAGIC, CODE_FILE);
+            replay();
+            if (quantized) {
+                openCodes(codesCreated);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("打开平铺向量库失败: " + dir, e);
+        }
+        log.info("打开平铺向量库, dir={}, dimension={}, rows={}, deleted={}, scorer={}, parallelism={}, quantized={}",
+                dir, dimension, rows, deleted.cardinality(), scorer.name(), this.parallelism, quantized);
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    // 先写向量再追加记录，记录写入成功后该行才会在重启后被回放
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        if (ids == null || embeddings == null || ids.size() != embeddings.size()) {
+            throw new IllegalStateException("向量ID与向量数量不一致");
+        }
+        if (segments != null && segments.size() != embeddings.size()) {
+            throw new IllegalStateException("向量与分片数量不一致");
+        }
+        for (Embedding embedding : embeddings) {
+            checkDimension(embedding.vector().length);
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(rows + ids.size());
+            ByteArrayOutputStream batch = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(batch);
+            for (int i = 0; i < ids.size(); i++) {
+                int row = rows + i;
+                float[] vector = embeddings.get(i).vector();
+                float norm = norm(vector);
+                TextSegment segment = segments == null ? null : segments.get(i);
+                byte[] payload = encodeAdd(row, norm, ids.get(i), segment);
+                writeVector(row, vector);
+                // 已标定时只编码新行；未标定的行在标定时统一编码
+                if (quantized && calibrationMin != null) {
+                    writeCodes(row, vector);
+                }
+                out.writeInt(payload.length);
+                recordOffsets[row] = recordBytes + batch.size();
+                recordLengths[row] = payload.length;
+                out.write(payload);
+                norms[row] = norm;
+                this.ids.put(ids.get(i), row);
+                if (segment != null) {
+                    indexMetadata(row, segment.metadata().toMap());
+                }
+            }
+            appendRecords(batch.toByteArray());
+            rows += ids.size();
+            if (quantized && calibrationMin == null && rows - deleted.cardinality() >= calibrationSample) {
+                calibrate();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("写入平铺向量库失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    // 按ID删除：哈希索引给出候选行，读取记录核对ID，哈希冲突不会误删
+    @Override
+    public void removeAll(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        Set<String> targets = new HashSet<>(ids);
+        lock.writeLock().lock();
+        try {
+            List<Integer> candidates = new ArrayList<>();
+            for (String id : targets) {
+                this.ids.rows(id, candidates::add);
+            }
+            candidates.sort(null);
+            List<Integer> matched = new ArrayList<>();
+            for (int row : candidates) {
+                if (!deleted.get(row) && targets.contains(decodeId(readRecord(row)))) {
+                    matched.add(row);
+                }
+            }
+            delete(matched);
+        } catch (IOException e) {
+            throw new IllegalStateException("删除平铺向量失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        if (filter == null) {
+            throw new IllegalStateException("删除条件不能为空");
+        }
+        lock.writeLock().lock();
+        try {
+            IntPredicate predicate = compile(filter);
+            List<Integer> matched = new ArrayList<>();
+            for (int row = 0; row < rows; row++) {
+                if (!deleted.get(row) && predicate.test(row)) {
+                    matched.add(row);
+                }
+            }
+            delete(matched);
+        } catch (IOException e) {
+            throw new IllegalStateException("删除平铺向量失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            FileChannel channel = recordChannel();
+            channel.truncate(0);
+            channel.force(false);
+            recordBytes = 0;
+            rows = 0;
+            deleted.clear();
+            columns.clear();
+            ids.clear();
+            if (quantized) {
+                Files.deleteIfExists(dir.resolve(CALIBRATION_FILE));
+                calibrationMin = null;
+                calibrationMax = null;
+                steps = null;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("清空平铺向量库失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] vector = request.queryEmbedding().vector();
+        checkDimension(vector.length);
+        float queryNorm = norm(vector);
+        if (request.maxResults() <= 0 || queryNorm == 0f) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        // 查询向量预先归一化，行向量的范数在写入时算好，扫描时只需一次点积和一次除法
+        float[] query = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            query[i] = vector[i] / queryNorm;
+        }
+        float minCosine = (float) (2 * request.minScore() - 1);
+        lock.readLock().lock();
+        try {
+            IntPredicate filter = request.filter() == null ? null : compile(request.filter());
+            TopK top = quantized && calibrationMin != null
+                    ? searchQuantized(query, request.maxResults(), minCosine, filter)
+                    : scan(Probe.exact(query), request.maxResults(), minCosine, filter);
+            top.sortDescending();
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(top.size());
+            for (int i = 0; i < top.size(); i++) {
+                int row = top.row(i);
+                matches.add(toMatch(row, (1.0 + top.score(i)) / 2.0));
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } catch (IOException e) {
+            throw new IllegalStateException("平铺向量检索失败", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 有效行数（不含已删除）
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows - deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String scorerName() {
+        return scorer.name();
+    }
+
+    public boolean isQuantized() {
+        return quantized;
+    }
+
+    // 当前标定（min 与 max），未标定时返回null
+    public float[][] calibration() {
+        lock.readLock().lock();
+        try {
+            return calibrationMin == null ? null : new float[][]{calibrationMin.clone(), calibrationMax.clone()};
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (searchPool != null) {
+                searchPool.shutdownNow();
+            }
+            chunks.forEach(MappedByteBuffer::force);
+            codeChunks.forEach(MappedByteBuffer::force);
+            FileChannel channel = recordChannel();
+            channel.force(false);
+            closed = true;
+            // 映射后关闭通道不影响已映射的缓冲区
+            vectorChannel.close();
+            channel.close();
+            if (codeChannel != null) {
+                codeChannel.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("关闭平铺向量库失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // int8 扫描选出 k×oversample 个候选，再用原始向量精确重排
+    private TopK searchQuantized(float[] query, int k, float minCosine, IntPredicate filter) {
+        int candidates = (int) Math.min(Integer.MAX_VALUE, (long) k * oversample);
+        TopK coarse = scan(quantizedProbe(query), candidates, Float.NEGATIVE_INFINITY, filter);
+        TopK exact = new TopK(k);
+        for (int i = 0; i < coarse.size(); i++) {
+            int r = coarse.row(i);
+            float cosine = scorer.dot(query, chunks.get(r / chunkRows), vectorOffset(r), dimension) / norms[r];
+            if (cosine >= minCosine) {
+                exact.offer(r, cosine);
+            }
+        }
+        return exact;
+    }
+
+    /*
+     * 量化查询：x ≈ min + step·(code+128)，因此 q·x ≈ Σq·min + 128·Σq·step + Σ(q·step)·code
+     * 前两项对所有行相同；q·step 再按最大绝对值对称量化为 int8，行内只剩一次 int8 点积
+     */
+    private Probe quantizedProbe(float[] query) {
+        float[] weights = new float[dimension];
+        double offset = 0;
+        float maxAbs = 0f;
+        for (int i = 0; i < dimension; i++) {
+            weights[i] = query[i] * steps[i];
+            offset += (double) query[i] * calibrationMin[i] + 128.0 * weights[i];
+            maxAbs = Math.max(maxAbs, Math.abs(weights[i]));
+        }
+        float alpha = maxAbs / 127f;
+        byte[] codes = new byte[dimension];
+        if (alpha > 0f) {
+            for (int i = 0; i < dimension; i++) {
+                codes[i] = (byte) Math.round(weights[i] / alpha);
+            }
+        }
+        return new Probe(query, codes, alpha, (float) offset);
+    }
+
+    // 行数达到并行阈值时按区间并行扫描，调用线程处理第一个区间
+    private TopK scan(Probe query, int k, float minCosine, IntPredicate filter) {
+        int total = rows;
+        if (searchPool == null || total < parallelThreshold) {
+            return scanRange(query, 0, total, k, minCosine, filter);
+        }
+        int step = (total + parallelism - 1) / parallelism;
+        List<Future<TopK>> futures = new ArrayList<>(parallelism - 1);
+        for (int from = step; from < total; from += step) {
+            int start = from;
+            int end = Math.min(total, from + step);
+            futures.add(searchPool.submit(() -> scanRange(query, start, end, k, minCosine, filter)));
+        }
+        TopK merged = scanRange(query, 0, Math.min(step, total), k, minCosine, filter);
+        try {
+            for (Future<TopK> future : futures) {
+                merged.addAll(future.get());
+            }
+            return merged;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("平铺向量检索失败", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("平铺向量检索被中断", e);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private TopK scanRange(Probe query, int from, int to, int k, float minCosine, IntPredicate filter) {
+        TopK top = new TopK(k);
+        for (int r = from; r < to; r++) {
+            if (deleted.get(r) || norms[r] == 0f || filter != null && !filter.test(r)) {
+                continue;
+            }
+            // 直接对映射缓冲区求点积，行向量不复制到堆
+            float cosine;
+            if (query.codes == null) {
+                cosine = scorer.dot(query.vector, chunks.get(r / chunkRows), vectorOffset(r), dimension) / norms[r];
+            } else {
+                int dot = scorer.dot(query.codes, codeChunks.get(r / codeChunkRows), codeOffset(r), dimension);
+                cosine = (query.offset + query.alpha * dot) / norms[r];
+            }
+            if (cosine >= minCosine) {
+                top.offer(r, cosine);
+            }
+        }
+        return top;
+    }
+
+    private EmbeddingMatch<TextSegment> toMatch(int row, double score) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(readRecord(row)));
+        in.readByte();
+        in.readInt();
+        in.readFloat();
+        String id = in.readUTF();
+        TextSegment segment = in.readBoolean() ? readSegment(in) : null;
+        float[] vector = new float[dimension];
+        readVector(row, vector);
+        return new EmbeddingMatch<>(score, id, Embedding.from(vector), segment);
+    }
+
+    // 过滤条件编译为按行判定
+    private IntPredicate compile(Filter filter) {
+        if (filter instanceof And and) {
+            return compile(and.left()).and(compile(and.right()));
+        }
+        if (filter instanceof Or or) {
+            return compile(or.left()).or(compile(or.right()));
+        }
+        if (filter instanceof Not not) {
+            return compile(not.expression()).negate();
+        }
+        String key = comparisonKey(filter);
+        if (key == null) {
+            // 未知条件类型：按行还原元数据后求值
+            return row -> filter.test(metadataOf(row));
+        }
+        Column column = columns.get(key);
+        boolean missing = filter.test(new Metadata());
+        if (column == null) {
+            return row -> missing;
+        }
+        // 每个不同取值只求值一次（编码0表示该行没有这个键）
+        boolean[] accepted = new boolean[column.values.size()];
+        accepted[0] = missing;
+        for (int code = 1; code < accepted.length; code++) {
+            accepted[code] = filter.test(new Metadata(Map.of(key, column.values.get(code))));
+        }
+        int[] codes = column.codes;
+        return row -> accepted[codes[row]];
+    }
+
+    private static String comparisonKey(Filter filter) {
+        if (filter instanceof IsEqualTo f) {
+            return f.key();
+        }
+        if (filter instanceof IsNotEqualTo f) {
+            return f.key();
+        }
+        if (filter instanceof ContainsString f) {
+            return f.key();
+        }
+        if (filter instanceof IsIn f) {
+            return f.key();
+        }
+        if (filter instanceof IsNotIn f) {
+            return f.key();
+        }
+        if (filter instanceof IsGreaterThan f) {
+            return f.key();
+        }
+        if (filter instanceof IsGreaterThanOrEqualTo f) {
+            return f.key();
+        }
+        if (filter instanceof IsLessThan f) {
+            return f.key();
+        }
+        if (filter instanceof IsLessThanOrEqualTo f) {
+            return f.key();
+        }
+        return null;
+    }
+
+    private Metadata metadataOf(int row) {
+        Map<String, Object> values = new HashMap<>();
+        for (Map.Entry<String, Column> entry : columns.entrySet()) {
+            int code = entry.getValue().codes[row];
+            if (code != 0) {
+                values.put(entry.getKey(), entry.getValue().values.get(code));
+            }
+        }
+        return new Metadata(values);
+    }
+
+    private void indexMetadata(int row, Map<String, Object> metadata) {
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            Column column = columns.computeIfAbsent(entry.getKey(), key -> new Column(recordOffsets.length));
+            column.codes[row] = column.code(entry.getValue());
+        }
+    }
+
+    private void delete(List<Integer> matched) throws IOException {
+        if (matched.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(batch);
+        for (int row : matched) {
+            out.writeInt(5);
+            out.writeByte(RECORD_DELETE);
+            out.writeInt(row);
+        }
+        appendRecords(batch.toByteArray());
+        matched.forEach(deleted::set);
+    }
+
+    private void appendRecords(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        FileChannel channel = recordChannel();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, recordBytes + buffer.position());
+        }
+        recordBytes += bytes.length;
+    }
+
+    private byte[] readRecord(int row) throws IOException {
+        try {
+            return readRecord(recordChannel(), row);
+        } catch (ClosedByInterruptException e) {
+            // 当前线程被中断（检索分支超时后被放弃），不再重试
+            throw e;
+        } catch (ClosedChannelException e) {
+            // 其他线程被中断时关闭了通道，重新打开后重试一次
+            return readRecord(recordChannel(), row);
+        }
+    }
+
+    private byte[] readRecord(FileChannel channel, int row) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(recordLengths[row]);
+        long position = recordOffsets[row];
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("平铺向量库记录不完整, row=" + row);
+            }
+        }
+        return buffer.array();
+    }
+
+    // 检索分支超时时 RetrievalExecutor 会中断工作线程，中断落在通道读写中时通道被 JDK 关闭；
+    // 这里发现通道已关闭就重新打开，避免一次超时让整个库在重启前不可用
+    private FileChannel recordChannel() throws IOException {
+        FileChannel channel = recordChannel;
+        if (channel.isOpen() || closed) {
+            return channel;
+        }
+        synchronized (this) {
+            if (!recordChannel.isOpen() && !closed) {
+                log.warn("平铺向量库记录通道被中断关闭，重新打开, dir={}", dir);
+                recordChannel = openRecordChannel();
+            }
+            return recordChannel;
+        }
+    }
+
+    private FileChannel openRecordChannel() throws IOException {
+        return FileChannel.open(dir.resolve(RECORD_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void writeVector(int row, float[] vector) {
+        views.get(row / chunkRows).put((row % chunkRows) * dimension, vector, 0, dimension);
+    }
+
+    private void readVector(int row, float[] target) {
+        views.get(row / chunkRows).get((row % chunkRows) * dimension, target, 0, dimension);
+    }
+
+    private void writeCodes(int row, float[] vector) {
+        byte[] codes = new byte[dimension];
+        for (int i = 0; i < dimension; i++) {
+            int level = steps[i] == 0f ? 0 : Math.round((vector[i] - calibrationMin[i]) / steps[i]);
+            codes[i] = (byte) (Math.max(0, Math.min(255, level)) - 128);
+        }
+        codeChunks.get(row / codeChunkRows).put((row % codeChunkRows) * dimension, codes, 0, dimension);
+    }
+
+    // 行在所属分段内的字节位置
+    private int vectorOffset(int row) {
+        return (row % chunkRows) * dimension * Float.BYTES;
+    }
+
+    private int codeOffset(int row) {
+        return (row % codeChunkRows) * dimension;
+    }
+
+    // 按已有行的范围（放宽 CALIBRATION_MARGIN）标定，并编码这些行；每个库只执行一次（removeAll() 后重新收集样本）
+    private void calibrate() throws IOException {
+        float[][] range = range(rows);
+        for (int i = 0; i < dimension; i++) {
+            float margin = (range[1][i] - range[0][i]) * CALIBRATION_MARGIN;
+            range[0][i] -= margin;
+            range[1][i] += margin;
+        }
+        applyCalibration(range[0], range[1]);
+        encodeAll();
+    }
+
+    // 按当前标定编码全部有效行（标定时与首次开启量化时执行）
+    private void encodeAll() {
+        float[] vector = new float[dimension];
+        for (int row = 0; row < rows; row++) {
+            if (!deleted.get(row)) {
+                readVector(row, vector);
+                writeCodes(row, vector);
+            }
+        }
+        log.info("平铺向量库量化编码完成, dir={}, rows={}", dir, rows);
+    }
+
+    private void applyCalibration(float[] min, float[] max) throws IOException {
+        float[] step = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            step[i] = (max[i] - min[i]) / 255f;
+        }
+        calibrationMin = min;
+        calibrationMax = max;
+        steps = step;
+        // 先写临时文件再原子替换，避免进程崩溃留下半个标定文件
+        ByteBuffer buffer = ByteBuffer.allocate(12 + dimension * 2 * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(CALIBRATION_MAGIC).putInt(FORMAT_VERSION).putInt(dimension);
+        for (float value : min) {
+            buffer.putFloat(value);
+        }
+        for (float value : max) {
+            buffer.putFloat(value);
+        }
+        Path target = dir.resolve(CALIBRATION_FILE);
+        Path temp = dir.resolve(CALIBRATION_FILE + ".tmp");
+        Files.write(temp, buffer.array());
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // 读取标定；已标定但编码文件新建（首次开启量化）时补齐编码；未标定且样本足够时完成标定
+    private void openCodes(boolean codesCreated) throws IOException {
+        Path path = dir.resolve(CALIBRATION_FILE);
+        if (Files.exists(path)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() != 12 + dimension * 2 * Float.BYTES || buffer.getInt() != CALIBRATION_MAGIC
+                    || buffer.getInt() != FORMAT_VERSION || buffer.getInt() != dimension) {
+                throw new IllegalStateException("平铺向量库量化标定文件不匹配: " + path);
+            }
+            float[] min = new float[dimension];
+            float[] max = new float[dimension];
+            buffer.asFloatBuffer().get(min).get(max);
+            calibrationMin = min;
+            calibrationMax = max;
+            steps = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                steps[i] = (max[i] - min[i]) / 255f;
+            }
+        }
+        if (calibrationMin != null) {
+            if (codesCreated && rows > 0) {
+                encodeAll();
+            }
+            return;
+        }
+        if (rows - deleted.cardinality() >= calibrationSample) {
+            calibrate();
+        }
+    }
+
+    // 扩容堆内数组，并按需映射新的向量分段
+    private void ensureCapacity(int required) throws IOException {
+        if (required > recordOffsets.length) {
+            int capacity = Math.max(MIN_CAPACITY, recordOffsets.length);
+            while (capacity < required) {
+                capacity = capacity > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : capacity * 2;
+            }
+            recordOffsets = Arrays.copyOf(recordOffsets, capacity);
+            recordLengths = Arrays.copyOf(recordLengths, capacity);
+            norms = Arrays.copyOf(norms, capacity);
+            for (Column column : columns.values()) {
+                column.codes = Arrays.copyOf(column.codes, capacity);
+            }
+        }
+        while ((long) views.size() * chunkRows < required) {
+            long chunkBytes = (long) chunkRows * rowBytes(dimension);
+            MappedByteBuffer chunk = vectorChannel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_BYTES + views.size() * chunkBytes, chunkBytes);
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+            chunks.add(chunk);
+            views.add(chunk.asFloatBuffer());
+        }
+        while (quantized && (long) codeChunks.size() * codeChunkRows < required) {
+            long chunkBytes = (long) codeChunkRows * dimension;
+            codeChunks.add(codeChannel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_BYTES + codeChunks.size() * chunkBytes, chunkBytes));
+        }
+    }
+
+    // 有效行的每维取值范围：[0] 为最小值，[1] 为最大值
+    private float[][] range(int count) {
+        float[][] range = emptyRange();
+        float[] vector = new float[dimension];
+        for (int row = 0; row < count; row++) {
+            if (!deleted.get(row)) {
+                readVector(row, vector);
+                widen(range, vector);
+            }
+        }
+        return range;
+    }
+
+    private float[][] emptyRange() {
+        float[] min = new float[dimension];
+        float[] max = new float[dimension];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        return new float[][]{min, max};
+    }
+
+    private static void widen(float[][] range, float[] vector) {
+        for (int i = 0; i < vector.length; i++) {
+            range[0][i] = Math.min(range[0][i], vector[i]);
+            range[1][i] = Math.max(range[1][i], vector[i]);
+        }
+    }
+
+    // 写入或校验文件头，返回文件是否为新建
+    private boolean openHeader(FileChannel channel, int magic, String file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if (channel.size() == 0) {
+            header.putInt(0, magic);
+            header.putInt(4, FORMAT_VERSION);
+            header.putInt(8, dimension);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            return true;
+        }
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IllegalStateException("平铺向量文件不完整: " + dir.resolve(file));
+            }
+        }
+        if (header.getInt(0) != magic || header.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalStateException("平铺向量文件格式不匹配: " + dir.resolve(file));
+        }
+        if (header.getInt(8) != dimension) {
+            throw new IllegalStateException("平铺向量库维度与配置不一致, 文件=" + header.getInt(8)
+                    + ", 配置=" + dimension + "，更换嵌入模型后需清空目录重新入库: " + dir);
+        }
+        return false;
+    }
+
+    // 顺序回放记录日志，重建堆内的行索引
+    private void replay() throws IOException {
+        long position = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(dir.resolve(RECORD_FILE)), 64 * 1024))) {
+            while (true) {
+                int length;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                apply(payload, position + 4);
+                position += 4 + length;
+            }
+        }
+        if (position < recordChannel.size()) {
+            log.warn("平铺向量库记录日志末尾不完整，已截断, dir={}, bytes={} -> {}", dir, recordChannel.size(), position);
+            recordChannel.truncate(position);
+        }
+        recordBytes = position;
+    }
+
+    private void apply(byte[] payload, long offset) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        int row = in.readInt();
+        if (type == RECORD_DELETE) {
+            deleted.set(row);
+            return;
+        }
+        if (type != RECORD_ADD || row != rows) {
+            throw new IllegalStateException("平铺向量库记录日志损坏, row=" + row + ", expected=" + rows);
+        }
+        ensureCapacity(row + 1);
+        norms[row] = in.readFloat();
+        ids.put(in.readUTF(), row);
+        recordOffsets[row] = offset;
+        recordLengths[row] = payload.length;
+        if (in.readBoolean()) {
+            indexMetadata(row, readSegment(in).metadata().toMap());
+        }
+        rows++;
+    }
+
+    private static byte[] encodeAdd(int row, float norm, String id, TextSegment segment) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(RECORD_ADD);
+        out.writeInt(row);
+        out.writeFloat(norm);
+        out.writeUTF(id);
+        out.writeBoolean(segment != null);
+        if (segment != null) {
+            writeString(out, segment.text());
+            Map<String, Object> metadata = segment.metadata().toMap();
+            out.writeInt(metadata.size());
+            for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String decodeId(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        in.readByte();
+        in.readInt();
+        in.readFloat();
+        return in.readUTF();
+    }
+
+    private static TextSegment readSegment(DataInputStream in) throws IOException {
+        String text = readString(in);
+        int count = in.readInt();
+        Map<String, Object> metadata = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            metadata.put(key, readValue(in));
+        }
+        return TextSegment.from(text, new Metadata(metadata));
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Integer number) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt(number);
+        } else if (value instanceof Long number) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(number);
+        } else if (value instanceof Float number) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat(number);
+        } else if (value instanceof Double number) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(number);
+        } else if (value instanceof UUID uuid) {
+            out.writeByte(TYPE_UUID);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+            out.writeByte(TYPE_STRING);
+            writeString(out, String.valueOf(value));
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case TYPE_INTEGER -> in.readInt();
+            case TYPE_LONG -> in.readLong();
+            case TYPE_FLOAT -> in.readFloat();
+            case TYPE_DOUBLE -> in.readDouble();
+            case TYPE_UUID -> new UUID(in.readLong(), in.readLong());
+            case TYPE_STRING -> readString(in);
+            default -> throw new IllegalStateException("平铺向量库元数据类型未知: " + type);
+        };
+    }
+
+    // 分片文本可能超过 writeUTF 的64KB上限，使用长度前缀的UTF-8
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void checkDimension(int length) {
+        if (length != dimension) {
+            throw new IllegalStateException("向量维度与平铺向量库不一致, 期望=" + dimension + ", 实际=" + length);
+        }
+    }
+
+    private static float norm(float[] vector) {
+        double sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    private static long rowBytes(int dimension) {
+        return (long) dimension * Float.BYTES;
+    }
+
+    private static ExecutorService searchPool(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "rag-flat-search-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 扫描用查询：精确模式只有归一化向量；量化模式另有 int8 编码、缩放系数与常数项
+    private static final class Probe {
+        private final float[] vector;
+        private final byte[] codes;
+        private final float alpha;
+        private final float offset;
+
+        private Probe(float[] vector, byte[] codes, float alpha, float offset) {
+            this.vector = vector;
+            this.codes = codes;
+            this.alpha = alpha;
+            this.offset = offset;
+        }
+
+        private static Probe exact(float[] vector) {
+            return new Probe(vector, null, 0f, 0f);
+        }
+    }
+
+    // ID 哈希索引：开放寻址表，槽位保存 ID 的 hashCode 与行号（每行约16字节，不保存 ID 字符串）
+    // 同一ID或哈希冲突的多行依次探测得到，调用方读取记录核对；删除的行不移出索引，由调用方按删除标记跳过
+    private static final class IdIndex {
+        private int[] hashes = new int[16];
+        private int[] rows = empty(16);
+        private int size;
+
+        private void put(String id, int row) {
+            if ((size + 1) * 2 > rows.length) {
+                resize(rows.length * 2);
+            }
+            insert(id.hashCode(), row);
+            size++;
+        }
+
+        private void rows(String id, IntConsumer consumer) {
+            int hash = id.hashCode();
+            int mask = rows.length - 1;
+            for (int slot = mix(hash) & mask; rows[slot] >= 0; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash) {
+                    consumer.accept(rows[slot]);
+                }
+            }
+        }
+
+        private void clear() {
+            hashes = new int[16];
+            rows = empty(16);
+            size = 0;
+        }
+
+        private void insert(int hash, int row) {
+            int mask = rows.length - 1;
+            int slot = mix(hash) & mask;
+            while (rows[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            rows[slot] = row;
+        }
+
+        private void resize(int capacity) {
+            int[] oldHashes = hashes;
+            int[] oldRows = rows;
+            hashes = new int[capacity];
+            rows = empty(capacity);
+            for (int i = 0; i < oldRows.length; i++) {
+                if (oldRows[i] >= 0) {
+                    insert(oldHashes[i], oldRows[i]);
+                }
+            }
+        }
+
+        private static int[] empty(int capacity) {
+            int[] slots = new int[capacity];
+            Arrays.fill(slots, -1);
+            return slots;
+        }
+
+        // String.hashCode 低位分布不均，打散后再取槽位
+        private static int mix(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85EBCA6B;
+            return hash ^ (hash >>> 13);
+        }
+    }
+
+    // 元数据列：值按出现顺序编码，编码0保留给“该行没有这个键”
+    private static final class Column {
+        private final Map<Object, Integer> dictionary = new HashMap<>();
+        private final List<Object> values = new ArrayList<>();
+        private int[] codes;
+
+        private Column(int capacity) {
+            this.codes = new int[capacity];
+            values.add(null);
+        }
+
+        private int code(Object value) {
+            return dictionary.computeIfAbsent(value, key -> {
+                values.add(key);
+                return values.size() - 1;
+            });
+        }
+    }
+
+    // 固定容量的小顶堆，堆顶为当前第k名；sortDescending 后按得分降序读取
+    static final class TopK {
+        private final int[] rows;
+        private final float[] scores;
+        private int size;
+
+        TopK(int k) {
+            this.rows = new int[k];
+            this.scores = new float[k];
+        }
+
+        void offer(int row, float score) {
+            if (size < rows.length) {
+                rows[size] = row;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (score > scores[0]) {
+                rows[0] = row;
+                scores[0] = score;
+                siftDown(0, size);
+            }
+        }
+
+        void addAll(TopK other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.rows[i], other.scores[i]);
+            }
+        }
+
+        // 小顶堆原地堆排序，结果为降序
+        void sortDescending() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        int row(int index) {
+            return rows[index];
+        }
+
+        float score(int index) {
+            return scores[index];
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (scores[parent] <= scores[index]) {
+                    break;
+                }
+                swap(parent, index);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index, int limit) {
+            while (true) {
+                int smallest = index;
+                int left = index * 2 + 1;
+                int right = left + 1;
+                if (left < limit && scores[left] < scores[smallest]) {
+                    smallest = left;
+                }
+                if (right < limit && scores[right] < scores[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == index) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int row = rows[a];
+            rows[a] = rows[b];
+            rows[b] = row;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.rag.retrieval;
 
-import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.rag.content.Content;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.query.Query;
@@ -25,12 +24,14 @@ public class FullTextContentRetriever implements ContentRetriever {
     @Override
     // 执行全文检索
     public List<Content> retrieve(Query query) {
-        List<TextSegment> segments = fullTextSearchService.search(query.text(), filter, topK);
-        if (segments == null || segments.isEmpty()) {
-            return List.of();
-        }
-        return segments.stream()
-                .map(Content::from)
+        return search(query).stream()
+                .map(RetrievalCandidate::toContent)
                 .toList();
     }
+
+    // 执行全文检索，保留BM25得分
+    public List<RetrievalCandidate> search(Query query) {
+        List<RetrievalCandidate> candidates = fullTextSearchService.searchCandidates(query.text(), filter, topK);
+        return candidates == null ? List.of() : candidates;
+    }
 }
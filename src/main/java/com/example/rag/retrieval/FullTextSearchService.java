@@ -69,6 +69,13 @@ public class FullTextSearchService implements Closeable {
 
     // 执行全文检索并返回分片
     public List<TextSegment> search(String queryText, FullTextFilter filter, int topK) {
+        return searchCandidates(queryText, filter, topK).stream()
+                .map(RetrievalCandidate::segment)
+                .toList();
+    }
+
+    // 执行全文检索并返回带BM25得分的候选
+    public List<RetrievalCandidate> searchCandidates(String queryText, FullTextFilter filter, int topK) {
         if (!properties.isEnabled()) {
             return List.of();
         }
@@ -83,10 +90,10 @@ public class FullTextSearchService implements Closeable {
                 searcher.setQueryCache(cache);
             }
             TopDocs docs = searcher.search(query, topK);
-            List<TextSegment> results = new ArrayList<>(docs.scoreDocs.length);
+            List<RetrievalCandidate> results = new ArrayList<>(docs.scoreDocs.length);
             for (var scoreDoc : docs.scoreDocs) {
                 Document doc = searcher.doc(scoreDoc.doc);
-                results.add(toSegment(doc));
+                results.add(RetrievalCandidate.fullText(toSegment(doc), scoreDoc.score));
             }
             return results;
         } catch (IndexNotFoundException e) {
@@ -96,8 +103,8 @@ public class FullTextSearchService implements Closeable {
         }
     }
 
-    // 写入索引（rebuild=true会覆盖）
-    private void indexSegments(List<TextSegment> segments, boolean rebuild) {
+    // 写入索引（rebuild=true会覆盖）；同一目录只能有一个IndexWriter持有写锁，并发上传时串行写入
+    private synchronized void indexSegments(List<TextSegment> segments, boolean rebuild) {
         if (!properties.isEnabled()) {
             return;
         }
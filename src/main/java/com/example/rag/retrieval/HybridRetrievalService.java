@@ -1,12 +1,15 @@
 package com.example.rag.retrieval;
 
 import dev.langchain4j.rag.content.Content;
-import dev.langchain4j.rag.content.aggregator.ReciprocalRankFuser;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.query.Query;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -24,6 +27,9 @@ import java.util.Objects;
  */
 public class HybridRetrievalService {
 
+    // RRF 平滑常数
+    private static final int RRF_K = 60;
+
     private final ContentRetriever vectorRetriever;
     private final ContentRetriever fullTextRetriever;
 
@@ -34,28 +40,64 @@ public class HybridRetrievalService {
 
     // 从向量与全文检索中融合结果
     public List<Content> retrieve(Query query, int topK) {
-        List<Content> vector = safeRetrieve(vectorRetriever, query);
-        List<Content> fullText = safeRetrieve(fullTextRetriever, query);
-        return fuse(vector, fullText, topK);
+        return retrieveCandidates(query, topK).fused().stream()
+                .map(RetrievalCandidate::toContent)
+                .toList();
+    }
+
+    // 每路检索只执行一次，同时返回原始候选与融合结果
+    public RetrievalCandidates retrieveCandidates(Query query, int topK) {
+        List<RetrievalCandidate> vector = safeRetrieve(vectorRetriever, query, true);
+        List<RetrievalCandidate> fullText = safeRetrieve(fullTextRetriever, query, false);
+        return fuseCandidates(vector, fullText, topK);
     }
 
-    // 执行RRF融合并裁剪TopK
-    public List<Content> fuse(List<Content> vector, List<Content> fullText, int topK) {
-        List<List<Content>> inputs = new ArrayList<>();
-        if (vector != null && !vector.isEmpty()) {
-            inputs.add(vector);
+    // 基于已检索的原始候选执行融合，不再触发检索；无状态，调用方已并行检索时直接调用，无需构造服务实例
+    public static RetrievalCandidates fuseCandidates(List<RetrievalCandidate> vector,
+                                              List<RetrievalCandidate> fullText,
+                                              int topK) {
+        List<RetrievalCandidate> safeVector = vector == null ? List.of() : vector;
+        List<RetrievalCandidate> safeFullText = fullText == null ? List.of() : fullText;
+        return new RetrievalCandidates(safeVector, safeFullText, fuse(safeVector, safeFullText, topK));
+    }
+
+    // 执行RRF融合并裁剪TopK：同一分片（按文本识别）在两路中的得分合并到同一候选
+    public static List<RetrievalCandidate> fuse(List<RetrievalCandidate> vector, List<RetrievalCandidate> fullText, int topK) {
+        Map<String, RetrievalCandidate> merged = new LinkedHashMap<>();
+        Map<String, Double> rrf = new HashMap<>();
+        accumulate(vector, merged, rrf);
+        accumulate(fullText, merged, rrf);
+        if (merged.isEmpty()) {
+            return List.of();
         }
-        if (fullText != null && !fullText.isEmpty()) {
-            inputs.add(fullText);
+        List<RetrievalCandidate> fused = new ArrayList<>(merged.size());
+        for (Map.Entry<String, RetrievalCandidate> entry : merged.entrySet()) {
+            fused.add(entry.getValue().withRrfScore(rrf.get(entry.getKey())));
         }
-        if (inputs.isEmpty()) {
-            return List.of();
+        fused.sort(Comparator.comparingDouble(RetrievalCandidate::rrfScore).reversed());
+        return fused.size() > topK ? List.copyOf(fused.subList(0, topK)) : fused;
+    }
+
+    private static void accumulate(List<RetrievalCandidate> ranked,
+                            Map<String, RetrievalCandidate> merged,
+                            Map<String, Double> rrf) {
+        if (ranked == null) {
+            return;
+        }
+        for (int i = 0; i < ranked.size(); i++) {
+            RetrievalCandidate candidate = ranked.get(i);
+            merged.merge(candidate.text(), candidate, RetrievalCandidate::mergeHit);
+            rrf.merge(candidate.text(), 1.0 / (RRF_K + i + 1), Double::sum);
         }
-        return ReciprocalRankFuser.fuse(inputs, topK);
     }
 
-    private List<Content> safeRetrieve(ContentRetriever retriever, Query query) {
+    private List<RetrievalCandidate> safeRetrieve(ContentRetriever retriever, Query query, boolean fromVector) {
         List<Content> result = retriever.retrieve(query);
-        return result == null ? List.of() : result;
+        if (result == null) {
+            return List.of();
+        }
+        return result.stream()
+                .map(content -> RetrievalCandidate.fromContent(content, fromVector))
+                .toList();
     }
 }
@@ -0,0 +1,390 @@
+package com.example.rag.retrieval;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.ContainsString;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import dev.langchain4j.store.embedding.filter.logical.Not;
+import dev.langchain4j.store.embedding.filter.logical.Or;
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.lucene95.Lucene95Codec;
+import org.apache.lucene.codecs.lucene95.Lucene95HnswVectorsFormat;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 进程内 Lucene HNSW 向量库（rag.vector.store=lucene）
+ *
+ * 与 Chroma 相比省去每次检索的 HTTP 往返与 JSON 编解码，索引文件位于本地目录，重启后直接复用
+ *
+ * 文档结构：
+ * - id：分片ID（StringField，用于更新与删除）
+ * - vector：KnnFloatVectorField，COSINE 相似度；Lucene 的 COSINE 得分即 (1+cos)/2，与 langchain4j 的相关性得分一致
+ * - m.键：元数据原值（按类型存储，检索时还原）；f.键：元数据关键字字段，供过滤使用
+ *
+ * 过滤：{@link Filter} 转换为 Lucene Query 作为 KNN 的前置过滤（在 HNSW 遍历时只接受命中过滤的文档），
+ * 支持 RagService.buildFilter 产生的等值/包含/与/或条件，以及不等、IN、NOT IN、NOT
+ *
+ * 写入：长期持有一个 IndexWriter，每次写入后提交并刷新 SearcherManager，写入对后续检索立即可见
+ */
+public class LuceneEmbeddingStore implements EmbeddingStore<TextSegment>, Closeable {
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_VECTOR = "vector";
+    private static final String FIELD_TEXT = "text";
+    private static final String STORED_PREFIX = "m.";
+    private static final String FILTER_PREFIX = "f.";
+
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final int numCandidates;
+
+    public LuceneEmbeddingStore(Path indexPath, int maxConnections, int beamWidth, int numCandidates) {
+        this.numCandidates = Math.max(1, numCandidates);
+        try {
+            this.directory = FSDirectory.open(indexPath);
+            IndexWriterConfig config = new IndexWriterConfig();
+            config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+            // 编解码器名称不变，读取时由SPI加载默认实现，图参数只影响写入
+            config.setCodec(new Lucene95Codec() {
+                @Override
+                public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
+                    return new Lucene95HnswVectorsFormat(maxConnections, beamWidth);
+                }
+            });
+            this.writer = new IndexWriter(directory, config);
+            this.searcherManager = new SearcherManager(writer, null);
+        } catch (IOException e) {
+            throw new IllegalStateException("初始化Lucene向量索引失败: " + indexPath, e);
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        if (ids == null || embeddings == null || ids.size() != embeddings.size()) {
+            throw new IllegalStateException("向量ID与向量数量不一致");
+        }
+        if (segments != null && segments.size() != embeddings.size()) {
+            throw new IllegalStateException("向量与分片数量不一致");
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                TextSegment segment = segments == null ? null : segments.get(i);
+                writer.updateDocument(new Term(FIELD_ID, ids.get(i)), toDocument(ids.get(i), embeddings.get(i), segment));
+            }
+            commit();
+        } catch (IOException e) {
+            throw new IllegalStateException("写入Lucene向量索引失败", e);
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        try {
+            Term[] terms = ids.stream().map(id -> new Term(FIELD_ID, id)).toArray(Term[]::new);
+            writer.deleteDocuments(terms);
+            commit();
+        } catch (IOException e) {
+            throw new IllegalStateException("删除Lucene向量失败", e);
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        if (filter == null) {
+            throw new IllegalStateException("删除条件不能为空");
+        }
+        try {
+            writer.deleteDocuments(toQuery(filter));
+            commit();
+        } catch (IOException e) {
+            throw new IllegalStateException("删除Lucene向量失败", e);
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        try {
+            writer.deleteAll();
+            commit();
+        } catch (IOException e) {
+            throw new IllegalStateException("清空Lucene向量索引失败", e);
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        int maxResults = request.maxResults();
+        // k 同时决定HNSW的候选队列大小，取 numCandidates 提高召回，再截取前 maxResults
+        Query query = new KnnFloatVectorQuery(FIELD_VECTOR, request.queryEmbedding().vector(),
+                Math.max(maxResults, numCandidates),
+                request.filter() == null ? null : toQuery(request.filter()));
+        IndexSearcher searcher;
+        try {
+            searcher = searcherManager.acquire();
+        } catch (IOException e) {
+            throw new IllegalStateException("打开Lucene向量索引失败", e);
+        }
+        try {
+            TopDocs docs = searcher.search(query, maxResults);
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(docs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : docs.scoreDocs) {
+                if (scoreDoc.score < request.minScore()) {
+                    continue;
+                }
+                Document doc = searcher.storedFields().document(scoreDoc.doc);
+                matches.add(new EmbeddingMatch<>((double) scoreDoc.score, doc.get(FIELD_ID),
+                        readEmbedding(searcher, scoreDoc.doc), toSegment(doc)));
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } catch (IOException e) {
+            throw new IllegalStateException("Lucene向量检索失败", e);
+        } finally {
+            release(searcher);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            searcherManager.close();
+            writer.close();
+            directory.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("关闭Lucene向量索引失败", e);
+        }
+    }
+
+    private void commit() throws IOException {
+        writer.commit();
+        searcherManager.maybeRefreshBlocking();
+    }
+
+    private void release(IndexSearcher searcher) {
+        try {
+            searcherManager.release(searcher);
+        } catch (IOException e) {
+            throw new IllegalStateException("释放Lucene向量索引失败", e);
+        }
+    }
+
+    private Document toDocument(String id, Embedding embedding, TextSegment segment) {
+        Document doc = new Document();
+        doc.add(new StringField(FIELD_ID, id, Field.Store.YES));
+        doc.add(new KnnFloatVectorField(FIELD_VECTOR, embedding.vector(), VectorSimilarityFunction.COSINE));
+        if (segment == null) {
+            return doc;
+        }
+        doc.add(new StoredField(FIELD_TEXT, segment.text()));
+        for (Map.Entry<String, Object> entry : segment.metadata().toMap().entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (value == null) {
+                continue;
+            }
+            doc.add(storedField(STORED_PREFIX + key, value));
+            doc.add(new StringField(FILTER_PREFIX + key, String.valueOf(value), Field.Store.NO));
+        }
+        return doc;
+    }
+
+    private static StoredField storedField(String name, Object value) {
+        if (value instanceof Integer number) {
+            return new StoredField(name, number);
+        }
+        if (value instanceof Long number) {
+            return new StoredField(name, number);
+        }
+        if (value instanceof Float number) {
+            return new StoredField(name, number);
+        }
+        if (value instanceof Double number) {
+            return new StoredField(name, number);
+        }
+        // UUID 等其余类型按字符串存储
+        return new StoredField(name, value.toString());
+    }
+
+    private static TextSegment toSegment(Document doc) {
+        String text = doc.get(FIELD_TEXT);
+        if (text == null) {
+            return null;
+        }
+        Metadata metadata = new Metadata();
+        for (IndexableField field : doc.getFields()) {
+            if (!field.name().startsWith(STORED_PREFIX)) {
+                continue;
+            }
+            String key = field.name().substring(STORED_PREFIX.length());
+            Number number = field.numericValue();
+            if (number instanceof Integer value) {
+                metadata.put(key, value);
+            } else if (number instanceof Long value) {
+                metadata.put(key, value);
+            } else if (number instanceof Float value) {
+                metadata.put(key, value);
+            } else if (number instanceof Double value) {
+                metadata.put(key, value);
+            } else {
+                metadata.put(key, field.stringValue());
+            }
+        }
+        return TextSegment.from(text, metadata);
+    }
+
+    private static Embedding readEmbedding(IndexSearcher searcher, int docId) throws IOException {
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        FloatVectorValues values = leaf.reader().getFloatVectorValues(FIELD_VECTOR);
+        if (values == null || values.advance(docId - leaf.docBase) != docId - leaf.docBase) {
+            return null;
+        }
+        return Embedding.from(values.vectorValue().clone());
+    }
+
+    // 元数据过滤条件转换为 Lucene Query
+    static Query toQuery(Filter filter) {
+        if (filter instanceof IsEqualTo equalTo) {
+            return new TermQuery(new Term(FILTER_PREFIX + equalTo.key(), String.valueOf(equalTo.comparisonValue())));
+        }
+        if (filter instanceof IsNotEqualTo notEqualTo) {
+            return exclude(new TermQuery(new Term(FILTER_PREFIX + notEqualTo.key(),
+                    String.valueOf(notEqualTo.comparisonValue()))));
+        }
+        if (filter instanceof IsIn in) {
+            return new TermInSetQuery(FILTER_PREFIX + in.key(), toTerms(in.comparisonValues()));
+        }
+        if (filter instanceof IsNotIn notIn) {
+            return exclude(new TermInSetQuery(FILTER_PREFIX + notIn.key(), toTerms(notIn.comparisonValues())));
+        }
+        if (filter instanceof ContainsString contains) {
+            // 与 ContainsString 一致按子串匹配（标签以逗号拼接存储），只在该字段的词典上展开
+            return new WildcardQuery(new Term(FILTER_PREFIX + contains.key(),
+                    "*" + escapeWildcard(contains.comparisonValue()) + "*"));
+        }
+        if (filter instanceof And and) {
+            return new BooleanQuery.Builder()
+                    .add(toQuery(and.left()), BooleanClause.Occur.FILTER)
+                    .add(toQuery(and.right()), BooleanClause.Occur.FILTER)
+                    .build();
+        }
+        if (filter instanceof Or or) {
+            return new BooleanQuery.Builder()
+                    .add(toQuery(or.left()), BooleanClause.Occur.SHOULD)
+                    .add(toQuery(or.right()), BooleanClause.Occur.SHOULD)
+                    .build();
+        }
+        if (filter instanceof Not not) {
+            return exclude(toQuery(not.expression()));
+        }
+        throw new IllegalStateException("Lucene向量库不支持的过滤条件: " + filter.getClass().getSimpleName());
+    }
+
+    // 缺少该键的文档也算不匹配内层条件，与 langchain4j 的 Not/IsNotEqualTo 语义一致
+    private static Query exclude(Query query) {
+        return new BooleanQuery.Builder()
+                .add(new MatchAllDocsQuery(), BooleanClause.Occur.FILTER)
+                .add(query, BooleanClause.Occur.MUST_NOT)
+                .build();
+    }
+
+    private static List<BytesRef> toTerms(Collection<?> values) {
+        return values.stream().map(value -> new BytesRef(String.valueOf(value))).toList();
+    }
+
+    private static String escapeWildcard(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == WildcardQuery.WILDCARD_STRING || c == WildcardQuery.WILDCARD_CHAR
+                    || c == WildcardQuery.WILDCARD_ESCAPE) {
+                builder.append(WildcardQuery.WILDCARD_ESCAPE);
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.rag.retrieval;
+
+import com.example.rag.perf.CacheKey;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * 近重复证据过滤
+ *
+ * 原理：SimHash
+ * - 文本归一化：只保留字母与数字并转小写，忽略空白、标点差异
+ * - 按字符 n-gram（shingle）切分，适配中文无空格分词的场景
+ * - 每个 shingle 计算64位哈希，逐位投票得到64位签名
+ * - 两段文本签名的汉明距离不超过阈值即视为近重复
+ *
+ * 使用：
+ * - 输入按得分从高到低排列，保留先出现的条目，丢弃与已保留条目近重复的后续条目
+ * - 签名按文本的128位 {@link CacheKey} 缓存（Caffeine），同一分片在不同请求中只计算一次，缓存不持有证据原文
+ *
+ * 适用场景：chunk 重叠、同一文档多版本入库、DUAL 模式双路合并带来的近似段落
+ */
+public class NearDuplicateFilter {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int maxHammingDistance;
+    private final int shingleSize;
+    private final Cache<CacheKey, Long> signatures;
+
+    public NearDuplicateFilter(int maxHammingDistance, int shingleSize, int cacheSize) {
+        this.maxHammingDistance = maxHammingDistance;
+        this.shingleSize = Math.max(1, shingleSize);
+        this.signatures = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+    }
+
+    // 按顺序去除近重复条目，textOf 取条目文本
+    public <T> List<T> filter(List<T> items, Function<T, String> textOf) {
+        if (items == null || items.size() < 2) {
+            return items;
+        }
+        List<T> kept = new ArrayList<>(items.size());
+        long[] keptSignatures = new long[items.size()];
+        for (T item : items) {
+            long signature = signature(textOf.apply(item));
+            if (!isNearDuplicate(signature, keptSignatures, kept.size())) {
+                keptSignatures[kept.size()] = signature;
+                kept.add(item);
+            }
+        }
+        return kept.size() == items.size() ? items : kept;
+    }
+
+    public long signature(String text) {
+        String value = text == null ? "" : text;
+        return signatures.get(CacheKey.of(value), key -> simHash(value));
+    }
+
+    public static int hammingDistance(long left, long right) {
+        return Long.bitCount(left ^ right);
+    }
+
+    private boolean isNearDuplicate(long signature, long[] kept, int size) {
+        for (int i = 0; i < size; i++) {
+            if (hammingDistance(signature, kept[i]) <= maxHammingDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long simHash(String text) {
+        String normalized = normalize(text);
+        if (normalized.length() <= shingleSize) {
+            return hash(normalized, 0, normalized.length());
+        }
+        int[] votes = new int[64];
+        for (int start = 0; start + shingleSize <= normalized.length(); start++) {
+            long hash = hash(normalized, start, start + shingleSize);
+            for (int bit = 0; bit < 64; bit++) {
+                votes[bit] += ((hash >>> bit) & 1L) == 1L ? 1 : -1;
+            }
+        }
+        long signature = 0L;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                signature |= 1L << bit;
+            }
+        }
+        return signature;
+    }
+
+    private String normalize(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        text.codePoints()
+                .filter(Character::isLetterOrDigit)
+                .forEach(builder::appendCodePoint);
+        return builder.toString().toLowerCase(Locale.ROOT);
+    }
+
+    // FNV-1a 后接 murmur3 fmix64 混合，保证各位分布均匀
+    private static long hash(String text, int from, int to) {
+        long hash = FNV_OFFSET;
+        for (int i = from; i < to; i++) {
+            hash ^= text.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.rag.retrieval;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 检索候选：贯穿检索、融合与重排的统一类型
+ *
+ * - id：向量库中的分片ID（仅全文命中时为空）
+ * - segment：原始分片引用，文本与元数据在各阶段之间直接传递，不复制
+ * - 各阶段得分：未经过该阶段时为空
+ *   - vectorScore：向量相似度
+ *   - bm25Score：Lucene BM25 得分
+ *   - rrfScore：RRF 融合得分
+ *   - keywordScore：关键词重排得分
+ *   - crossEncoderScore：交叉重排得分
+ */
+public record RetrievalCandidate(
+        String id,
+        TextSegment segment,
+        Double vectorScore,
+        Double bm25Score,
+        Double rrfScore,
+        Double keywordScore,
+        Double crossEncoderScore
+) {
+
+    public static RetrievalCandidate vector(String id, TextSegment segment, double score) {
+        return new RetrievalCandidate(id, segment, score, null, null, null, null);
+    }
+
+    public static RetrievalCandidate fullText(TextSegment segment, double score) {
+        return new RetrievalCandidate(null, segment, null, score, null, null, null);
+    }
+
+    // 从通用 ContentRetriever 结果转换，读取 langchain4j 约定的 SCORE/EMBEDDING_ID 元数据
+    public static RetrievalCandidate fromContent(Content content, boolean fromVector) {
+        Map<ContentMetadata, Object> metadata = content.metadata();
+        Object id = metadata == null ? null : metadata.get(ContentMetadata.EMBEDDING_ID);
+        Double score = metadata != null && metadata.get(ContentMetadata.SCORE) instanceof Number number
+                ? number.doubleValue()
+                : null;
+        return fromVector
+                ? new RetrievalCandidate(id == null ? null : id.toString(), content.textSegment(), score, null, null, null, null)
+                : new RetrievalCandidate(null, content.textSegment(), null, score, null, null, null);
+    }
+
+    public String text() {
+        return segment.text();
+    }
+
+    // 最终排序得分：取最后一个已执行阶段的得分
+    public double score() {
+        if (crossEncoderScore != null) {
+            return crossEncoderScore;
+        }
+        if (keywordScore != null) {
+            return keywordScore;
+        }
+        if (rrfScore != null) {
+            return rrfScore;
+        }
+        if (vectorScore != null) {
+            return vectorScore;
+        }
+        return bm25Score == null ? 0.0 : bm25Score;
+    }
+
+    // 合并另一路对同一分片的命中：保留已有分片与ID，补齐缺失的阶段得分
+    public RetrievalCandidate mergeHit(RetrievalCandidate other) {
+        return new RetrievalCandidate(
+                id != null ? id : other.id,
+                segment,
+                vectorScore != null ? vectorScore : other.vectorScore,
+                bm25Score != null ? bm25Score : other.bm25Score,
+                rrfScore,
+                keywordScore,
+                crossEncoderScore);
+    }
+
+    public RetrievalCandidate withRrfScore(double score) {
+        return new RetrievalCandidate(id, segment, vectorScore, bm25Score, score, keywordScore, crossEncoderScore);
+    }
+
+    public RetrievalCandidate withKeywordScore(double score) {
+        return new RetrievalCandidate(id, segment, vectorScore, bm25Score, rrfScore, score, crossEncoderScore);
+    }
+
+    public RetrievalCandidate withCrossEncoderScore(double score) {
+        return new RetrievalCandidate(id, segment, vectorScore, bm25Score, rrfScore, keywordScore, score);
+    }
+
+    // 适配 ContentRetriever 接口时输出带得分与ID的 Content
+    public Content toContent() {
+        Map<ContentMetadata, Object> metadata = new HashMap<>(2);
+        metadata.put(ContentMetadata.SCORE, score());
+        if (id != null) {
+            metadata.put(ContentMetadata.EMBEDDING_ID, id);
+        }
+        return Content.from(segment, metadata);
+    }
+}
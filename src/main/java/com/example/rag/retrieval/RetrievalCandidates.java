@@ -0,0 +1,17 @@
+package com.example.rag.retrieval;
+
+import java.util.List;
+
+// 单次请求的检索候选：各路原始结果只检索一次，融合与日志共用同一份列表
+public record RetrievalCandidates(List<RetrievalCandidate> vector,
+                                  List<RetrievalCandidate> fullText,
+                                  List<RetrievalCandidate> fused) {
+
+    public static final RetrievalCandidates EMPTY = new RetrievalCandidates(List.of(), List.of(), List.of());
+
+    // 仅向量检索（未启用混合检索）时融合结果即向量结果
+    public static RetrievalCandidates vectorOnly(List<RetrievalCandidate> vector) {
+        List<RetrievalCandidate> safe = vector == null ? List.of() : vector;
+        return new RetrievalCandidates(safe, List.of(), safe);
+    }
+}
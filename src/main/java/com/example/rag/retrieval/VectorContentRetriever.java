@@ -1,6 +1,8 @@
 package com.example.rag.retrieval;
 
 import com.example.rag.perf.RagCache;
+import com.example.rag.perf.PipelineStage;
+import com.example.rag.perf.RagMetrics;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
@@ -24,41 +26,61 @@ public class VectorContentRetriever implements ContentRetriever {
     private final Filter filter;
     private final int topK;
     private final double minScore;
+    private final Embedding queryEmbedding;
+    private final RagMetrics metrics;
 
+    // queryEmbedding非空时直接使用（批量问答已预先计算），不再调用嵌入模型；metrics 分别记录查询嵌入与向量库检索耗时
     public VectorContentRetriever(EmbeddingModel embeddingModel,
                                   EmbeddingStore<TextSegment> embeddingStore,
                                   RagCache ragCache,
                                   Filter filter,
                                   int topK,
-                                  double minScore) {
+                                  double minScore,
+                                  Embedding queryEmbedding,
+                                  RagMetrics metrics) {
         this.embeddingModel = embeddingModel;
         this.embeddingStore = embeddingStore;
         this.ragCache = ragCache;
         this.filter = filter;
         this.topK = topK;
         this.minScore = minScore;
+        this.queryEmbedding = queryEmbedding;
+        this.metrics = metrics;
     }
 
     @Override
     // 执行向量检索
     public List<Content> retrieve(Query query) {
-        Embedding embedding = ragCache == null
-                ? embeddingModel.embed(query.text()).content()
-                : ragCache.getEmbedding(query.text(), () -> embeddingModel.embed(query.text()).content());
+        return search(query).stream()
+                .map(RetrievalCandidate::toContent)
+                .toList();
+    }
+
+    // 执行向量检索，保留分片ID与相似度得分
+    public List<RetrievalCandidate> search(Query query) {
+        Embedding embedding = queryEmbedding != null
+                ? queryEmbedding
+                : ragCache == null
+                ? embed(query)
+                : ragCache.getEmbedding(query.text(), () -> embed(query));
         EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
                 .queryEmbedding(embedding)
                 .maxResults(topK)
                 .minScore(minScore)
                 .filter(filter)
                 .build();
-        EmbeddingSearchResult<TextSegment> result = embeddingStore.search(request);
+        EmbeddingSearchResult<TextSegment> result = metrics.time(PipelineStage.VECTOR_SEARCH,
+                () -> embeddingStore.search(request));
         List<EmbeddingMatch<TextSegment>> matches = result.matches();
         if (matches == null || matches.isEmpty()) {
             return List.of();
         }
         return matches.stream()
-                .map(EmbeddingMatch::embedded)
-                .map(Content::from)
+                .map(match -> RetrievalCandidate.vector(match.embeddingId(), match.embedded(), match.score()))
                 .toList();
     }
+
+    private Embedding embed(Query query) {
+        return metrics.time(PipelineStage.EMBEDDING, () -> embeddingModel.embed(query.text()).content());
+    }
 }
@@ -0,0 +1,37 @@
+package com.example.rag.retrieval;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 向量点积计算（平铺向量库的暴力扫描内核，支持 float 与 int8 量化向量）
+ *
+ * 行向量直接从内存映射缓冲区读取（按绝对位置，不修改缓冲区状态，可多线程共享），扫描时不复制到堆
+ *
+ * 启动参数包含 --add-modules jdk.incubator.vector 时使用 Vector API（{@link SimdVectorScorer}），
+ * 否则类加载失败，退回手工展开的标量循环（{@link ScalarVectorScorer}）
+ */
+interface VectorScorer {
+
+    // a[0..length) 与 b 中从字节位置 byteOffset 开始的 length 个小端 float 的点积
+    float dot(float[] a, ByteBuffer b, int byteOffset, int length);
+
+    // int8 量化向量的点积，b 中从 offset 开始的 length 个字节，按 int 累加（384维时不会溢出）
+    int dot(byte[] a, ByteBuffer b, int offset, int length);
+
+    String name();
+
+    static VectorScorer create() {
+        try {
+            VectorScorer scorer = (VectorScorer) Class.forName("com.example.rag.retrieval.SimdVectorScorer")
+                    .getDeclaredConstructor()
+                    .newInstance();
+            // 孵化模块的 API 随 JDK 版本变化，先调用一次，方法链接失败时在这里退回标量实现
+            scorer.dot(new float[1], ByteBuffer.allocate(Float.BYTES).order(ByteOrder.LITTLE_ENDIAN), 0, 1);
+            scorer.dot(new byte[1], ByteBuffer.allocate(1), 0, 1);
+            return scorer;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarVectorScorer();
+        }
+    }
+}
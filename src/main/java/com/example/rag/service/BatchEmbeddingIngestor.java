@@ -1,5 +1,6 @@
 package com.example.rag.service;
 
+import com.example.rag.perf.PersistentEmbeddingCache;
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
@@ -8,44 +9,82 @@ import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.output.Response;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 
+import java.util.ArrayList;
 import java.util.List;
 
 // 批量嵌入入库器，降低Embedding调用开销
+// 配置持久化嵌入缓存时按分片文本复用已有向量，重复入库相同内容只嵌入新增分片
 public class BatchEmbeddingIngestor {
 
     private final DocumentSplitter splitter;
     private final EmbeddingModel embeddingModel;
     private final EmbeddingStore<TextSegment> embeddingStore;
     private final int batchSize;
+    private final PersistentEmbeddingCache embeddingCache;
 
     public BatchEmbeddingIngestor(DocumentSplitter splitter,
                                  EmbeddingModel embeddingModel,
                                  EmbeddingStore<TextSegment> embeddingStore,
-                                 int batchSize) {
+                                 int batchSize,
+                                 PersistentEmbeddingCache embeddingCache) {
+        this.embeddingCache = embeddingCache;
         this.splitter = splitter;
         this.embeddingModel = embeddingModel;
         this.embeddingStore = embeddingStore;
         this.batchSize = Math.max(1, batchSize);
     }
 
-    // 按批次嵌入并写入向量库
-    public void ingest(List<Document> documents) {
+    // 按批次嵌入并写入向量库，返回写入的分片数
+    public int ingest(List<Document> documents) {
         if (documents == null || documents.isEmpty()) {
-            return;
+            return 0;
         }
         List<TextSegment> segments = splitter.splitAll(documents);
         if (segments.isEmpty()) {
-            return;
+            return 0;
         }
         for (int i = 0; i < segments.size(); i += batchSize) {
             int end = Math.min(i + batchSize, segments.size());
             List<TextSegment> batch = segments.subList(i, end);
-            Response<List<Embedding>> response = embeddingModel.embedAll(batch);
-            List<Embedding> embeddings = response == null ? List.of() : response.content();
-            if (embeddings == null || embeddings.size() != batch.size()) {
-                throw new IllegalStateException("批量嵌入数量与分片不一致");
-            }
+            List<Embedding> embeddings = embed(batch);
             embeddingStore.addAll(embeddings, batch);
         }
+        return segments.size();
+    }
+
+    // 先查持久化缓存，只对未命中的分片调用一次embedAll，结果按原顺序返回
+    private List<Embedding> embed(List<TextSegment> batch) {
+        if (embeddingCache == null) {
+            return embedAll(batch);
+        }
+        List<Embedding> embeddings = new ArrayList<>(batch.size());
+        List<TextSegment> missing = new ArrayList<>();
+        List<Integer> missingIndexes = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Embedding cached = embeddingCache.get(batch.get(i).text());
+            embeddings.add(cached);
+            if (cached == null) {
+                missing.add(batch.get(i));
+                missingIndexes.add(i);
+            }
+        }
+        if (missing.isEmpty()) {
+            return embeddings;
+        }
+        List<Embedding> computed = embedAll(missing);
+        for (int i = 0; i < missing.size(); i++) {
+            embeddings.set(missingIndexes.get(i), computed.get(i));
+            embeddingCache.put(missing.get(i).text(), computed.get(i));
+        }
+        return embeddings;
+    }
+
+    private List<Embedding> embedAll(List<TextSegment> batch) {
+        Response<List<Embedding>> response = embeddingModel.embedAll(batch);
+        List<Embedding> embeddings = response == null ? List.of() : response.content();
+        if (embeddings == null || embeddings.size() != batch.size()) {
+            throw new IllegalStateException("批量嵌入数量与分片不一致");
+        }
+        return embeddings;
     }
 }
@@ -5,6 +5,8 @@ import com.example.rag.ingest.parser.DocxDocumentParser;
 import com.example.rag.ingest.parser.HtmlDocumentParser;
 import com.example.rag.llamaindex.LlamaIndexClient;
 import com.example.rag.llamaindex.LlamaIndexDtos.LlamaIndexIngestResponse;
+import com.example.rag.perf.RagCache;
+import com.example.rag.perf.RagMetrics;
 import com.example.rag.retrieval.FullTextSearchService;
 import com.example.rag.service.dto.UploadOptions;
 import com.example.rag.service.dto.UploadResult;
@@ -19,6 +21,8 @@ import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
@@ -49,6 +53,8 @@ import java.util.stream.Stream;
  *   - 离线入库：ingestAll() 扫描指定目录批量入库
  *   - 上传入库：ingestUploads() API接收上传文件入库
  * 
+ * 缓存失效：写入完成后（含部分失败）递增对应版本/来源的索引代数，已缓存的问答与检索结果不再命中
+ * 
  * @see IngestController 上传入库API入口
  * @see BatchEmbeddingIngestor 批量向量入库
  * @see FullTextSearchService 全文索引服务
@@ -65,14 +71,21 @@ public class IngestService {
     private final DocumentSplitter splitter;
     private final DocumentMetadataService metadataService;
     private final LlamaIndexClient llamaIndexClient;
+    private final RagMetrics metrics;
+    private final RagCache ragCache;
 
+    @Autowired
     public IngestService(RagProperties properties,
                          EmbeddingStoreIngestor ingestor,
                          BatchEmbeddingIngestor batchEmbeddingIngestor,
                          FullTextSearchService fullTextSearchService,
                          DocumentSplitter splitter,
                          DocumentMetadataService metadataService,
-                         LlamaIndexClient llamaIndexClient) {
+                         LlamaIndexClient llamaIndexClient,
+                         @Nullable RagMetrics metrics,
+                         @Nullable RagCache ragCache) {
+        this.metrics = metrics == null ? RagMetrics.disabled() : metrics;
+        this.ragCache = ragCache;
         this.properties = properties;
         this.ingestor = ingestor;
         this.batchEmbeddingIngestor = batchEmbeddingIngestor;
@@ -84,6 +97,15 @@ public class IngestService {
 
     // 执行全量入库
     public void ingestAll() {
+        try {
+            doIngestAll();
+        } finally {
+            // 离线入库可能重建全文索引并覆盖多个来源，全部范围失效
+            invalidateAll();
+        }
+    }
+
+    private void doIngestAll() {
         RagProperties.Ingest ingest = properties.getIngest();
         List<Document> documents = new ArrayList<>();
         RagProperties.LlamaIndex.Mode mode = properties.getLlamaindex().getMode();
@@ -124,13 +146,15 @@ public class IngestService {
         }
 
         // 向量入库支持批量嵌入
+        int segments = -1;
         if (ingest.isBatchEnabled()) {
             log.info("向量入库开始, mode=batch, batchSize={}", ingest.getBatchSize());
-            batchEmbeddingIngestor.ingest(documents);
+            segments = batchEmbeddingIngestor.ingest(documents);
         } else {
             log.info("向量入库开始, mode=single");
             ingestor.ingest(documents);
         }
+        metrics.countIngest("offline", documents.size(), segments);
         log.info("离线入库完成, 文档数={}", documents.size());
     }
 
@@ -139,6 +163,18 @@ public class IngestService {
         if (files == null || files.isEmpty()) {
             return new UploadResult(0, 0, List.of());
         }
+        RagProperties.Ingest ingest = properties.getIngest();
+        String version = resolveVersion(options, ingest);
+        String source = resolveSource(options);
+        try {
+            return doIngestUploads(files, options, version, source);
+        } finally {
+            invalidate(version, source);
+        }
+    }
+
+    private UploadResult doIngestUploads(List<MultipartFile> files, UploadOptions options, String version,
+                                         String source) {
         RagProperties.LlamaIndex.Mode mode = properties.getLlamaindex().getMode();
         if (mode == RagProperties.LlamaIndex.Mode.LLAMAINDEX && llamaIndexClient != null) {
             LlamaIndexIngestResponse response = llamaIndexClient.ingestUploads(files, options);
@@ -148,9 +184,7 @@ public class IngestService {
             llamaIndexClient.ingestUploads(files, options);
         }
         RagProperties.Ingest ingest = properties.getIngest();
-        String version = resolveVersion(options, ingest);
         List<String> tags = resolveTags(options, ingest);
-        String source = resolveSource(options);
         List<String> allowedExtensions = normalizeExtensions(ingest.getAllowedExtensions());
         log.info("上传入库开始, files={}, version={}, tags={}, source={}, allowedExtensions={}",
                 files.size(),
@@ -206,11 +240,13 @@ public class IngestService {
             fullTextSearchService.indexSegments(splitter.splitAll(documents));
         }
 
+        int segments = -1;
         if (ingest.isBatchEnabled()) {
-            batchEmbeddingIngestor.ingest(documents);
+            segments = batchEmbeddingIngestor.ingest(documents);
         } else {
             ingestor.ingest(documents);
         }
+        metrics.countIngest("upload", documents.size(), segments);
 
         log.info("上传入库完成, ingested={}, stored={}, skipped={}",
                 documents.size(),
@@ -219,6 +255,19 @@ public class IngestService {
         return new UploadResult(documents.size(), stored, storedPaths);
     }
 
+    // 递增该版本/来源的索引代数，使相关缓存Key失效
+    private void invalidate(String version, String source) {
+        if (ragCache != null) {
+            ragCache.invalidate(version, source);
+        }
+    }
+
+    private void invalidateAll() {
+        if (ragCache != null) {
+            ragCache.invalidateAll();
+        }
+    }
+
     private void ingestAllWithLlamaIndex(RagProperties.Ingest ingest) {
         List<Resource> pdfResources = toResources(listFiles(ingest.getPdfDir(), List.of("pdf")));
         if (!pdfResources.isEmpty()) {
@@ -263,7 +312,7 @@ public class IngestService {
             return List.of();
         }
         return paths.stream()
-                .map(FileSystemResource::new)
+                .<Resource>map(FileSystemResource::new)
                 .toList();
     }
 
@@ -0,0 +1,9 @@
+package com.example.rag.service;
+
+// 请求参数不合法（如超时请求头、批量数量超限），接口层返回400；内部参数校验失败仍按服务端错误处理
+public class InvalidRequestException extends IllegalArgumentException {
+
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
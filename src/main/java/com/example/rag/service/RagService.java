@@ -4,40 +4,85 @@ import com.example.rag.config.RagProperties;
 import com.example.rag.llamaindex.LlamaIndexClient;
 import com.example.rag.llamaindex.LlamaIndexDtos.LlamaIndexQueryItem;
 import com.example.rag.llamaindex.LlamaIndexDtos.LlamaIndexQueryResponse;
+import com.example.rag.perf.CacheKey;
+import com.example.rag.perf.Deadline;
+import com.example.rag.perf.DeadlineExceededException;
+import com.example.rag.perf.QueryLog;
+import com.example.rag.perf.QueryLogRecord;
 import com.example.rag.perf.QueryLimiter;
+import com.example.rag.perf.QueryRejectedException;
 import com.example.rag.perf.RagCache;
+import com.example.rag.perf.PipelineStage;
+import com.example.rag.perf.RagMetrics;
+import com.example.rag.perf.RequestTrace;
+import com.example.rag.perf.RetrievalExecutor;
+import com.example.rag.perf.SemanticResultCache;
+import com.example.rag.prompt.PromptBuilder;
+import com.example.rag.prompt.PromptPacker;
+import com.example.rag.prompt.TokenCounter;
 import com.example.rag.rerank.CrossEncoderReranker;
 import com.example.rag.rerank.KeywordReranker;
 import com.example.rag.retrieval.FullTextContentRetriever;
 import com.example.rag.retrieval.FullTextFilter;
 import com.example.rag.retrieval.FullTextSearchService;
 import com.example.rag.retrieval.HybridRetrievalService;
+import com.example.rag.retrieval.NearDuplicateFilter;
+import com.example.rag.retrieval.RetrievalCandidate;
+import com.example.rag.retrieval.RetrievalCandidates;
 import com.example.rag.retrieval.VectorContentRetriever;
+import com.example.rag.service.dto.BatchAnswer;
 import com.example.rag.service.dto.RagRequest;
 import com.example.rag.service.dto.RagResponse;
+import com.example.rag.service.dto.RequestTimings;
+import com.example.rag.service.dto.RetrieveResponse;
+import com.example.rag.service.dto.RetrievedSegment;
+import com.example.rag.service.dto.StageScores;
 import com.example.rag.service.dto.UploadOptions;
 import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.scoring.ScoringModel;
-import dev.langchain4j.rag.content.Content;
 import dev.langchain4j.rag.query.Query;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.filter.Filter;
 import dev.langchain4j.store.embedding.filter.MetadataFilterBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * RAG 问答检索服务核心类
@@ -54,6 +99,11 @@ import java.util.stream.Collectors;
  *   - llamaindex：仅使用LlamaIndex侧车检索
  *   - dual：双路并行检索，结果合并
  * 
+ * 并行：LlamaIndex、向量、全文三路检索在独立线程池同时启动，各自超时，
+ *       失败或超时的分支被丢弃，且该次结果不写入缓存
+ * 
+ * 查询日志：配置 {@link QueryLog} 时每个问答请求完成后记录一条（非阻塞），用于回放压测与缓存预热
+ * 
  * @see RagController 问答API入口
  * @see RagRequest 请求参数
  * @see RagResponse 返回结果
@@ -71,20 +121,39 @@ public class RagService {
     private final FullTextSearchService fullTextSearchService;
     private final RagCache ragCache;
     private final QueryLimiter queryLimiter;
+    private final QueryLimiter retrievalLimiter;
     private final ScoringModel scoringModel;
     private final LlamaIndexClient llamaIndexClient;
+    private final RetrievalExecutor retrievalExecutor;
+    private final RetrievalExecutor batchExecutor;
+    private final RetrievalExecutor generationExecutor;
+    private final PromptBuilder promptBuilder;
+    private final StreamingChatModel streamingChatModel;
     private final KeywordReranker keywordReranker = new KeywordReranker();
+    private final NearDuplicateFilter nearDuplicateFilter;
+    private final RagMetrics metrics;
+    private final QueryLog queryLog;
 
+    @Autowired
     public RagService(EmbeddingModel embeddingModel,
                       EmbeddingStore<TextSegment> embeddingStore,
                       ChatModel chatModel,
                       RagProperties properties,
                       FullTextSearchService fullTextSearchService,
                       RagCache ragCache,
-                      QueryLimiter queryLimiter,
+                      @Qualifier("queryLimiter") QueryLimiter queryLimiter,
                       @Nullable ScoringModel scoringModel,
-                      @Nullable LlamaIndexClient llamaIndexClient) {
+                      @Nullable LlamaIndexClient llamaIndexClient,
+                      @Qualifier("retrievalExecutor") RetrievalExecutor retrievalExecutor,
+                      @Nullable StreamingChatModel streamingChatModel,
+                      @Qualifier("retrievalLimiter") QueryLimiter retrievalLimiter,
+                      @Qualifier("batchExecutor") RetrievalExecutor batchExecutor,
+                      @Qualifier("generationExecutor") RetrievalExecutor generationExecutor,
+                      @Nullable TokenCounter tokenCounter,
+                      @Nullable RagMetrics metrics,
+                      @Nullable QueryLog queryLog) {
         this.embeddingModel = embeddingModel;
+        this.queryLog = queryLog;
         this.embeddingStore = embeddingStore;
         this.chatModel = chatModel;
         this.properties = properties;
@@ -93,10 +162,54 @@ public class RagService {
         this.queryLimiter = queryLimiter;
         this.scoringModel = scoringModel;
         this.llamaIndexClient = llamaIndexClient;
+        this.retrievalExecutor = retrievalExecutor;
+        this.streamingChatModel = streamingChatModel;
+        this.retrievalLimiter = retrievalLimiter;
+        this.batchExecutor = batchExecutor;
+        this.generationExecutor = generationExecutor;
+        this.metrics = metrics == null ? RagMetrics.disabled() : metrics;
+        RagProperties.Prompt prompt = properties.getPrompt();
+        PromptPacker promptPacker = prompt.isEnabled()
+                ? new PromptPacker(tokenCounter == null ? TokenCounter.approximate() : tokenCounter,
+                prompt.getMaxTokens(), prompt.getMinChunkTokens())
+                : null;
+        this.promptBuilder = new PromptBuilder(prompt.getLayout(), NO_MATCH, promptPacker);
+        RagProperties.Retrieval.Dedup dedup = properties.getRetrieval().getDedup();
+        this.nearDuplicateFilter = dedup.isEnabled()
+                ? new NearDuplicateFilter(dedup.getMaxHammingDistance(), dedup.getShingleSize(), dedup.getCacheSize())
+                : null;
+    }
+
+    // 仅检索入口：返回带得分与元数据的分片，不调用LLM，使用独立缓存与舱壁
+    public RetrieveResponse retrieve(RagRequest request) {
+        return retrieve(request, defaultDeadline());
     }
 
-    // 对外问答入口：先查结果缓存，再进入限流执行
+    public RetrieveResponse retrieve(RagRequest request, Deadline deadline) {
+        String cacheKey = buildCacheKey(request, generation(request));
+        RetrieveResponse cached = ragCache.getRetrieval(cacheKey);
+        if (cached != null) {
+            log.info("命中检索缓存");
+            return cached;
+        }
+        return retrievalLimiter.execute(() -> {
+            EvidenceOutcome outcome = retrieveEvidence(request, null, deadline, RequestTrace.NOOP);
+            RetrieveResponse response = new RetrieveResponse(outcome.segments(), outcome.sources());
+            if (!outcome.degraded()) {
+                ragCache.putRetrieval(cacheKey, response);
+            }
+            log.info("检索请求完成, segmentSize={}, sourceSize={}", response.segments().size(),
+                    response.sources().size());
+            return response;
+        });
+    }
+
+    // 对外问答入口：先查结果缓存，再合并在途请求，最后进入限流执行
     public RagResponse ask(RagRequest request) {
+        return ask(request, defaultDeadline());
+    }
+
+    public RagResponse ask(RagRequest request, Deadline deadline) {
         // 入口日志：只记录关键统计信息，避免日志污染
         log.info("问答请求开始, questionLen={}, version={}, source={}, tags={}, keywords={}",
                 request.question() == null ? 0 : request.question().length(),
@@ -104,31 +217,440 @@ public class RagService {
                 normalize(request.source()),
                 normalizeList(request.tags()),
                 normalizeList(request.keywords()));
-        String cacheKey = buildCacheKey(request);
+        RequestTrace trace = startTrace(request);
+        String cacheKey = buildCacheKey(request, generation(request));
         RagResponse cached = ragCache.getResult(cacheKey);
+        trace.resultCache(cached != null);
         if (cached != null) {
             log.info("命中结果缓存");
-            return cached;
+            return complete(request, "ask", cached, trace);
         }
-        return queryLimiter.execute(() -> {
-            // 二次检查缓存，减少并发抖动
-            RagResponse secondCheck = ragCache.getResult(cacheKey);
-            if (secondCheck != null) {
-                log.info("命中结果缓存（二次检查）");
-                return secondCheck;
+        long enqueued = System.nanoTime();
+        RagResponse response = ragCache.singleFlight(cacheKey, () -> queryLimiter.execute(() -> {
+            trace.queueWait(System.nanoTime() - enqueued);
+            // 语义缓存需要计算查询向量，与异步入口一样放在限流许可内执行
+            RagResponse similar = getSimilarResult(request, trace);
+            if (similar != null) {
+                return similar;
+            }
+            return answerWithinLimit(request, cacheKey, null, deadline, trace);
+        }));
+        return complete(request, "ask", response, trace);
+    }
+
+    // 异步问答入口：调用线程只做精确缓存检查，其余工作在限流器中执行，可直接交给MVC异步返回
+    public CompletableFuture<RagResponse> askAsync(RagRequest request) {
+        return askAsync(request, defaultDeadline());
+    }
+
+    public CompletableFuture<RagResponse> askAsync(RagRequest request, Deadline deadline) {
+        log.info("异步问答请求开始, questionLen={}, version={}, source={}",
+                request.question() == null ? 0 : request.question().length(),
+                normalize(request.version()),
+                normalize(request.source()));
+        RequestTrace trace = startTrace(request);
+        String cacheKey = buildCacheKey(request, generation(request));
+        RagResponse cached = ragCache.getResult(cacheKey);
+        trace.resultCache(cached != null);
+        if (cached != null) {
+            log.info("命中结果缓存");
+            return CompletableFuture.completedFuture(complete(request, "async", cached, trace));
+        }
+        long enqueued = System.nanoTime();
+        CompletableFuture<RagResponse> future = ragCache.singleFlightAsync(cacheKey,
+                () -> queryLimiter.executeAsync(() -> {
+                    trace.queueWait(System.nanoTime() - enqueued);
+                    // 语义缓存需要计算查询向量，放在限流线程中执行
+                    RagResponse similar = getSimilarResult(request, trace);
+                    if (similar != null) {
+                        return similar;
+                    }
+                    return answerWithinLimit(request, cacheKey, null, deadline, trace);
+                }));
+        return trace.isEnabled() ? future.thenApply(response -> complete(request, "async", response, trace)) : future;
+    }
+
+    // 批量问题数量校验（接口层在开始写出响应前调用）
+    public void checkBatchSize(int size) {
+        int maxItems = properties.getBatch().getMaxItems();
+        if (size > maxItems) {
+            throw new InvalidRequestException("批量问题数量超过上限: " + size + " > " + maxItems);
+        }
+    }
+
+    // 批量问答：一次embedAll计算全部问题向量，逐条并行检索生成，每完成一条即回调（回调串行执行）
+    // 同时在途的条数不超过批量并行度与问答限流并发数，其余条目在调用线程等待窗口空出后再提交
+    public void askAll(List<RagRequest> requests, Consumer<BatchAnswer> consumer) {
+        checkBatchSize(requests.size());
+        log.info("批量问答开始, size={}", requests.size());
+        Map<String, Embedding> embeddings = embedQuestions(requests);
+        Object callbackLock = new Object();
+        Semaphore window = new Semaphore(Math.max(1,
+                Math.min(properties.getBatch().getParallelism(), queryLimiter.maxConcurrency())));
+        List<CompletableFuture<Void>> futures = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            int index = i;
+            RagRequest request = requests.get(i);
+            window.acquireUninterruptibly();
+            futures.add(batchExecutor.submit(() -> answerBatchItem(index, request, embeddings.get(request.question())),
+                            null)
+                    .handle((answer, error) -> answer != null ? answer : BatchAnswer.failed(index, request.question(), error))
+                    .thenAccept(answer -> {
+                        synchronized (callbackLock) {
+                            consumer.accept(answer);
+                        }
+                    })
+                    .whenComplete((ignored, error) -> window.release()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        log.info("批量问答完成, size={}", requests.size());
+    }
+
+    // 批量问答（按请求顺序返回全部结果）
+    public List<BatchAnswer> askAll(List<RagRequest> requests) {
+        BatchAnswer[] answers = new BatchAnswer[requests.size()];
+        askAll(requests, answer -> answers[answer.index()] = answer);
+        return List.of(answers);
+    }
+
+    private BatchAnswer answerBatchItem(int index, RagRequest request, Embedding queryEmbedding) {
+        RequestTrace trace = startTrace(request);
+        String cacheKey = buildCacheKey(request, generation(request));
+        RagResponse cached = ragCache.getResult(cacheKey);
+        trace.resultCache(cached != null);
+        if (cached == null && ragCache.isSemanticEnabled()) {
+            cached = ragCache.getSimilarResult(scopeOf(request, cacheKey), queryEmbedding);
+            trace.semanticCache(cached != null);
+        }
+        // 批量中每条请求从开始执行时计算截止时间
+        RagResponse response = cached != null
+                ? cached
+                : answer(request, cacheKey, queryEmbedding, defaultDeadline(), trace);
+        return new BatchAnswer(index, request.question(), complete(request, "batch", response, trace), null);
+    }
+
+    // 批量计算问题向量：去重且跳过已缓存的问题，只调用一次embedAll
+    private Map<String, Embedding> embedQuestions(List<RagRequest> requests) {
+        Map<String, Embedding> embeddings = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (RagRequest request : requests) {
+            String question = request.question();
+            if (question == null || embeddings.containsKey(question) || missing.contains(question)) {
+                continue;
+            }
+            Embedding cached = ragCache.getEmbeddingIfPresent(question);
+            if (cached != null) {
+                embeddings.put(question, cached);
+            } else {
+                missing.add(question);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<String> questions = List.copyOf(missing);
+            List<Embedding> computed = metrics.time(PipelineStage.EMBEDDING,
+                    () -> embeddingModel.embedAll(questions.stream().map(TextSegment::from).toList()).content());
+            for (int i = 0; i < questions.size(); i++) {
+                embeddings.put(questions.get(i), computed.get(i));
+                ragCache.putEmbedding(questions.get(i), computed.get(i));
+            }
+        }
+        log.info("批量嵌入完成, distinct={}, embedded={}", embeddings.size(), missing.size());
+        return embeddings;
+    }
+
+    // 相同问题的并发请求合并为一次执行，只占用一个限流槽位
+    private RagResponse answer(RagRequest request,
+                               String cacheKey,
+                               @Nullable Embedding queryEmbedding,
+                               Deadline deadline,
+                               RequestTrace trace) {
+        long enqueued = System.nanoTime();
+        return ragCache.singleFlight(cacheKey, () -> queryLimiter.execute(() -> {
+            trace.queueWait(System.nanoTime() - enqueued);
+            return answerWithinLimit(request, cacheKey, queryEmbedding, deadline, trace);
+        }));
+    }
+
+    // 在限流槽位内执行：二次检查缓存，检索生成并写入缓存
+    private RagResponse answerWithinLimit(RagRequest request,
+                                          String cacheKey,
+                                          @Nullable Embedding queryEmbedding,
+                                          Deadline deadline,
+                                          RequestTrace trace) {
+        // 二次检查缓存，减少并发抖动
+        RagResponse secondCheck = ragCache.getResult(cacheKey);
+        if (secondCheck != null) {
+            log.info("命中结果缓存（二次检查）");
+            trace.resultCache(true);
+            return secondCheck;
+        }
+        // 排队期间预算可能已耗尽
+        deadline.check("queue");
+        AskOutcome outcome = doAsk(request, queryEmbedding, deadline, trace);
+        RagResponse response = outcome.response();
+        if (outcome.degraded()) {
+            log.info("存在被丢弃的检索分支，本次结果不写入缓存");
+        } else {
+            cacheResult(request, cacheKey, response);
+        }
+        log.info("问答请求完成, answerLen={}, evidenceSize={}, sourceSize={}",
+                response.answer() == null ? 0 : response.answer().length(),
+                response.evidence() == null ? 0 : response.evidence().size(),
+                response.sources() == null ? 0 : response.sources().size());
+        return response;
+    }
+
+    // 流式问答入口：先推送证据与来源，再随生成逐段推送答案
+    // 检索与生成都在限流许可内执行（限流执行线程，不占用调用线程），许可在生成结束、失败或客户端断开后归还
+    public void askStream(RagRequest request, RagStreamHandler handler) {
+        askStream(request, defaultDeadline(), handler);
+    }
+
+    public void askStream(RagRequest request, Deadline deadline, RagStreamHandler handler) {
+        log.info("流式问答请求开始, questionLen={}, version={}, source={}, tags={}, keywords={}",
+                request.question() == null ? 0 : request.question().length(),
+                normalize(request.version()),
+                normalize(request.source()),
+                normalizeList(request.tags()),
+                normalizeList(request.keywords()));
+        RequestTrace trace = startTrace(request);
+        String cacheKey = buildCacheKey(request, generation(request));
+        RagResponse cached = ragCache.getResult(cacheKey);
+        trace.resultCache(cached != null);
+        if (cached != null) {
+            log.info("命中结果缓存");
+            handler.onEvidence(cached.evidence(), cached.sources());
+            handler.onToken(cached.answer());
+            handler.onComplete(complete(request, "stream", cached, trace));
+            return;
+        }
+        // 客户端断开或超时后停止生成，并结束等待以归还许可
+        AtomicBoolean cancelled = new AtomicBoolean();
+        CompletableFuture<Void> finished = new CompletableFuture<>();
+        handler.onCancel(() -> {
+            cancelled.set(true);
+            finished.complete(null);
+        });
+        long enqueued = System.nanoTime();
+        CompletableFuture<Void> future;
+        try {
+            future = queryLimiter.executeAsync(() -> {
+                trace.queueWait(System.nanoTime() - enqueued);
+                if (!cancelled.get()) {
+                    streamWithinLimit(request, cacheKey, deadline, trace, handler, cancelled, finished);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((ignored, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause()
+                        : error;
+                log.warn("流式问答失败: {}", cause.toString());
+                handler.onError(cause);
             }
-            RagResponse response = doAsk(request);
-            ragCache.putResult(cacheKey, response);
-            log.info("问答请求完成, answerLen={}, evidenceSize={}, sourceSize={}",
-                    response.answer() == null ? 0 : response.answer().length(),
-                    response.evidence() == null ? 0 : response.evidence().size(),
-                    response.sources() == null ? 0 : response.sources().size());
-            return response;
         });
     }
 
-    // 实际检索与生成逻辑，包含混合检索与重排
-    private RagResponse doAsk(RagRequest request) {
+    private void streamWithinLimit(RagRequest request,
+                                   String cacheKey,
+                                   Deadline deadline,
+                                   RequestTrace trace,
+                                   RagStreamHandler handler,
+                                   AtomicBoolean cancelled,
+                                   CompletableFuture<Void> finished) {
+        RagResponse similar = getSimilarResult(request, trace);
+        if (similar != null) {
+            handler.onEvidence(similar.evidence(), similar.sources());
+            handler.onToken(similar.answer());
+            handler.onComplete(complete(request, "stream", similar, trace));
+            return;
+        }
+        EvidenceOutcome outcome = retrieveEvidence(request, null, deadline, trace);
+        handler.onEvidence(outcome.evidence(), outcome.sources());
+        if (outcome.evidence().isEmpty()) {
+            log.info("证据为空，直接返回 NO_MATCH");
+            completeStream(request, cacheKey, new RagResponse(NO_MATCH, List.of(), List.of()), outcome.degraded(),
+                    trace, handler);
+            return;
+        }
+        if (streamingChatModel == null) {
+            RagResponse response = buildAnswer(request, outcome.evidence(), outcome.sources(), deadline, trace);
+            handler.onToken(response.answer());
+            completeStream(request, cacheKey, response, outcome.degraded(), trace, handler);
+            return;
+        }
+        checkGenerationBudget(deadline);
+        if (cancelled.get()) {
+            return;
+        }
+        List<ChatMessage> messages = promptBuilder.build(request.question(), outcome.evidence(), trace);
+        RagMetrics streamMetrics = metrics.withTrace(trace);
+        long generationStart = System.nanoTime();
+        streamingChatModel.chat(messages, new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                if (cancelled.get()) {
+                    context.streamingHandle().cancel();
+                    return;
+                }
+                onPartialResponse(partialResponse.text());
+            }
+
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                if (!cancelled.get()) {
+                    handler.onToken(partialResponse);
+                }
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                String answer = completeResponse == null || completeResponse.aiMessage() == null
+                        ? null
+                        : completeResponse.aiMessage().text();
+                streamMetrics.record(PipelineStage.GENERATION, System.nanoTime() - generationStart, true);
+                log.info("流式生成完成, answerLen={}, sources={}",
+                        answer == null ? 0 : answer.length(), outcome.sources().size());
+                if (!cancelled.get()) {
+                    completeStream(request, cacheKey, new RagResponse(answer, outcome.evidence(), outcome.sources()),
+                            outcome.degraded(), trace, handler);
+                }
+                finished.complete(null);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                streamMetrics.record(PipelineStage.GENERATION, System.nanoTime() - generationStart, false);
+                log.warn("流式生成失败: {}", error.toString());
+                if (!cancelled.get()) {
+                    handler.onError(error);
+                }
+                finished.complete(null);
+            }
+        });
+        awaitStream(finished, deadline, cancelled);
+    }
+
+    // 在限流执行线程内等待生成结束，许可覆盖整个生成过程；超过截止时间时停止生成
+    private void awaitStream(CompletableFuture<Void> finished, Deadline deadline, AtomicBoolean cancelled) {
+        try {
+            Duration remaining = deadline.remaining();
+            if (remaining == null) {
+                finished.get();
+            } else {
+                finished.get(remaining.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException e) {
+            cancelled.set(true);
+            throw new DeadlineExceededException("请求已超过截止时间，终止于阶段: generation");
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待流式生成被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("流式生成失败", e.getCause());
+        }
+    }
+
+    private void completeStream(RagRequest request,
+                                String cacheKey,
+                                RagResponse response,
+                                boolean degraded,
+                                RequestTrace trace,
+                                RagStreamHandler handler) {
+        if (!degraded) {
+            cacheResult(request, cacheKey, response);
+        }
+        handler.onComplete(complete(request, "stream", response, trace));
+    }
+
+    // 启用查询日志时非调试请求也采集耗时（只写日志，不返回）
+    private RequestTrace startTrace(RagRequest request) {
+        return RequestTrace.of(request.debug(), queryLog != null);
+    }
+
+    // 请求完成：写查询日志；调试模式下附带耗时明细，缓存中保存的始终是不含明细的结果
+    private RagResponse complete(RagRequest request, String mode, RagResponse response, RequestTrace trace) {
+        if (!trace.isEnabled()) {
+            return response;
+        }
+        RequestTimings timings = trace.toTimings();
+        if (queryLog != null) {
+            queryLog.record(toQueryLogRecord(request, mode, response, timings));
+        }
+        return trace.isDebug() ? response.withTimings(timings) : response;
+    }
+
+    private QueryLogRecord toQueryLogRecord(RagRequest request, String mode, RagResponse response,
+                                            RequestTimings timings) {
+        Map<String, Boolean> cacheHits = timings.cacheHits();
+        String cache = Boolean.TRUE.equals(cacheHits.get("result"))
+                ? "result"
+                : Boolean.TRUE.equals(cacheHits.get("semantic")) ? "semantic" : "miss";
+        List<String> evidenceIds = response.evidence() == null
+                ? List.of()
+                : response.evidence().stream()
+                .map(text -> String.format("%016x", CacheKey.of(text).high()))
+                .toList();
+        return new QueryLogRecord(System.currentTimeMillis(), normalize(request.question()), request.version(),
+                request.source(), request.tags(), request.keywords(), request.topK(), request.minScore(), mode,
+                cache, timings.totalNanos(), timings.stageNanos(), timings.queueWaitNanos(), evidenceIds);
+    }
+
+    // 写入精确结果缓存，启用语义缓存时同时登记查询向量
+    private void cacheResult(RagRequest request, String cacheKey, RagResponse response) {
+        ragCache.putResult(cacheKey, response);
+        if (ragCache.isSemanticEnabled()) {
+            ragCache.putSimilarResult(cacheKey, scopeOf(request, cacheKey),
+                    embedQuestion(request.question(), RequestTrace.NOOP), response);
+        }
+    }
+
+    // 语义缓存查询：复用与检索相同的查询向量缓存，不额外调用Embedding模型
+    private RagResponse getSimilarResult(RagRequest request, RequestTrace trace) {
+        if (!ragCache.isSemanticEnabled()) {
+            return null;
+        }
+        RagResponse similar = ragCache.getSimilarResult(buildScopeKey(request, generation(request)),
+                embedQuestion(request.question(), trace));
+        trace.semanticCache(similar != null);
+        if (similar != null) {
+            SemanticResultCache.Stats stats = ragCache.semanticStats();
+            log.info("命中语义缓存, hitRate={}, threshold={}", String.format(Locale.ROOT, "%.4f", stats.hitRate()),
+                    stats.threshold());
+        }
+        return similar;
+    }
+
+    private Embedding embedQuestion(String question, RequestTrace trace) {
+        return ragCache.getEmbedding(question, () -> metrics.withTrace(trace)
+                .time(PipelineStage.EMBEDDING, () -> embeddingModel.embed(question).content()));
+    }
+
+    // 实际检索与生成逻辑
+    private AskOutcome doAsk(RagRequest request,
+                             @Nullable Embedding queryEmbedding,
+                             Deadline deadline,
+                             RequestTrace trace) {
+        EvidenceOutcome outcome = retrieveEvidence(request, queryEmbedding, deadline, trace);
+        if (outcome.evidence().isEmpty()) {
+            log.info("证据为空，直接返回 NO_MATCH");
+            return new AskOutcome(new RagResponse(NO_MATCH, List.of(), List.of()), outcome.degraded());
+        }
+        return new AskOutcome(buildAnswer(request, outcome.evidence(), outcome.sources(), deadline, trace),
+                outcome.degraded());
+    }
+
+    // 检索证据：三路检索并行启动，汇合后融合与重排（queryEmbedding为预先计算的查询向量，可为空）
+    // 各分支超时受剩余预算约束，预算不足时跳过DUAL侧车检索与交叉重排
+    private EvidenceOutcome retrieveEvidence(RagRequest request,
+                                             @Nullable Embedding queryEmbedding,
+                                             Deadline deadline,
+                                             RequestTrace trace) {
         int topK = request.topK() == null ? properties.getRetrieval().getTopK() : request.topK();
         double minScore = request.minScore() == null ? properties.getRetrieval().getMinScore() : request.minScore();
         int candidateSize = Math.max(topK, properties.getRetrieval().getCandidateSize());
@@ -136,7 +658,20 @@ public class RagService {
         FullTextFilter fullTextFilter = buildFullTextFilter(request);
         RagProperties.Retrieval.Rerank rerank = properties.getRetrieval().getRerank();
         RagProperties.Retrieval.CrossEncoder crossEncoder = rerank.getCrossEncoder();
+        RagProperties.Retrieval.Parallel parallel = properties.getRetrieval().getParallel();
         RagProperties.LlamaIndex.Mode mode = properties.getLlamaindex().getMode();
+        RagProperties.Deadline budget = properties.getDeadline();
+        RagMetrics stageMetrics = metrics.withTrace(trace);
+        deadline.check("retrieval");
+
+        boolean skipSidecar = mode == RagProperties.LlamaIndex.Mode.DUAL && llamaIndexClient != null
+                && !deadline.hasAtLeast(budget.getSidecarMinBudget());
+        boolean skipCrossEncoder = crossEncoder.isEnabled() && scoringModel != null
+                && !deadline.hasAtLeast(budget.getCrossEncoderMinBudget());
+        if (skipSidecar || skipCrossEncoder) {
+            log.info("剩余预算不足，跳过可选阶段, remainingMs={}, skipSidecar={}, skipCrossEncoder={}",
+                    deadline.remaining().toMillis(), skipSidecar, skipCrossEncoder);
+        }
 
         // 参数日志：核心检索配置
         log.info("开始检索, topK={}, minScore={}, candidateSize={}, hybrid={}, crossEncoder={}, keywordRerank={}",
@@ -147,134 +682,140 @@ public class RagService {
                 crossEncoder.isEnabled(),
                 rerank.isKeywordEnabled());
 
-        LlamaIndexOutcome llamaIndexOutcome = retrieveWithLlamaIndex(request, topK, minScore, mode);
+        CompletableFuture<LlamaIndexOutcome> llamaIndexFuture =
+                mode == RagProperties.LlamaIndex.Mode.LANGCHAIN4J || llamaIndexClient == null || skipSidecar
+                        ? CompletableFuture.completedFuture(LlamaIndexOutcome.EMPTY)
+                        : retrievalExecutor.submit(() -> stageMetrics.time(PipelineStage.LLAMAINDEX,
+                                () -> retrieveWithLlamaIndex(request, topK, minScore)),
+                        deadline.cap(parallel.getLlamaIndexTimeout()));
         if (mode == RagProperties.LlamaIndex.Mode.LLAMAINDEX) {
-            if (llamaIndexOutcome.evidence().isEmpty()) {
-                log.info("LlamaIndex 无候选内容，直接返回 NO_MATCH");
-                return new RagResponse(NO_MATCH, List.of(), List.of());
+            LlamaIndexOutcome llamaIndexOutcome = retrievalExecutor.join("llamaindex", llamaIndexFuture,
+                    LlamaIndexOutcome.EMPTY);
+            trace.candidates(PipelineStage.LLAMAINDEX, llamaIndexOutcome.segments().size());
+            if (llamaIndexOutcome.segments().isEmpty()) {
+                log.info("LlamaIndex 无候选内容");
             }
-            return buildAnswer(request, llamaIndexOutcome.evidence(), llamaIndexOutcome.sources());
+            return new EvidenceOutcome(llamaIndexOutcome.segments(), llamaIndexOutcome.sources(),
+                    llamaIndexFuture.isCompletedExceptionally());
         }
 
-        RetrievalOutcome langchainOutcome = retrieveWithLangChain4j(
-                request,
-                topK,
-                minScore,
-                candidateSize,
-                filter,
-                fullTextFilter,
-                rerank,
-                crossEncoder
-        );
-
-        List<String> evidence = langchainOutcome.evidence();
-        List<String> sources = langchainOutcome.sources();
-
-        if (mode == RagProperties.LlamaIndex.Mode.DUAL && !llamaIndexOutcome.evidence().isEmpty()) {
-            evidence = mergeEvidence(llamaIndexOutcome.evidence(), evidence, topK);
-            sources = mergeSources(llamaIndexOutcome.sources(), sources);
-        }
-
-        if (evidence.isEmpty()) {
-            log.info("证据为空，直接返回 NO_MATCH");
-            return new RagResponse(NO_MATCH, List.of(), List.of());
-        }
-
-        return buildAnswer(request, evidence, sources);
-    }
-
-    private RetrievalOutcome retrieveWithLangChain4j(RagRequest request,
-                                                     int topK,
-                                                     double minScore,
-                                                     int candidateSize,
-                                                     Filter filter,
-                                                     FullTextFilter fullTextFilter,
-                                                     RagProperties.Retrieval.Rerank rerank,
-                                                     RagProperties.Retrieval.CrossEncoder crossEncoder) {
+        Query query = Query.from(request.question());
         VectorContentRetriever vectorRetriever = new VectorContentRetriever(
                 embeddingModel,
                 embeddingStore,
                 ragCache,
                 filter,
                 candidateSize,
-                minScore
+                minScore,
+                queryEmbedding,
+                stageMetrics
         );
-        List<Content> vectorContents = vectorRetriever.retrieve(Query.from(request.question()));
-        log.info("向量候选数: {}", vectorContents == null ? 0 : vectorContents.size());
+        CompletableFuture<List<RetrievalCandidate>> vectorFuture = retrievalExecutor.submit(
+                () -> vectorRetriever.search(query), deadline.cap(parallel.getVectorTimeout()));
 
-        List<Content> fused;
+        FullTextContentRetriever fullTextRetriever = null;
+        CompletableFuture<List<RetrievalCandidate>> fullTextFuture = CompletableFuture.completedFuture(List.of());
         if (properties.getRetrieval().getHybrid().isEnabled()) {
-            int fullTextTopK = properties.getRetrieval().getHybrid().getFullTextTopK();
-            FullTextContentRetriever fullTextRetriever = new FullTextContentRetriever(
+            FullTextContentRetriever retriever = new FullTextContentRetriever(
                     fullTextSearchService,
                     fullTextFilter,
-                    fullTextTopK
+                    properties.getRetrieval().getHybrid().getFullTextTopK()
             );
-            HybridRetrievalService hybridService = new HybridRetrievalService(vectorRetriever, fullTextRetriever);
-            fused = hybridService.retrieve(Query.from(request.question()), candidateSize);
+            fullTextRetriever = retriever;
+            fullTextFuture = retrievalExecutor.submit(
+                    () -> stageMetrics.time(PipelineStage.FULLTEXT_SEARCH, () -> retriever.search(query)),
+                    deadline.cap(parallel.getFullTextTimeout()));
+        }
+
+        // 汇合三路结果，超时或失败的分支按空结果处理
+        List<RetrievalCandidate> vectorCandidates = retrievalExecutor.join("vector", vectorFuture, List.of());
+        List<RetrievalCandidate> fullTextCandidates = retrievalExecutor.join("fulltext", fullTextFuture, List.of());
+        LlamaIndexOutcome llamaIndexOutcome = retrievalExecutor.join("llamaindex", llamaIndexFuture,
+                LlamaIndexOutcome.EMPTY);
+        if (mode == RagProperties.LlamaIndex.Mode.DUAL && llamaIndexClient != null && !skipSidecar) {
+            trace.candidates(PipelineStage.LLAMAINDEX, llamaIndexOutcome.segments().size());
+        }
+        boolean degraded = Stream.<CompletableFuture<?>>of(vectorFuture, fullTextFuture, llamaIndexFuture)
+                .anyMatch(CompletableFuture::isCompletedExceptionally)
+                || skipSidecar || skipCrossEncoder;
+
+        // 原始候选只检索一次，同一份列表同时交给融合与日志
+        RetrievalCandidates candidates;
+        if (fullTextRetriever == null) {
+            candidates = RetrievalCandidates.vectorOnly(vectorCandidates);
         } else {
-            fused = vectorContents;
+            candidates = stageMetrics.time(PipelineStage.FUSION,
+                    () -> HybridRetrievalService.fuseCandidates(vectorCandidates, fullTextCandidates, candidateSize));
         }
+        logCandidates(candidates);
+        trace.candidates(PipelineStage.VECTOR_SEARCH, vectorCandidates.size());
+        if (fullTextRetriever != null) {
+            trace.candidates(PipelineStage.FULLTEXT_SEARCH, fullTextCandidates.size());
+            trace.candidates(PipelineStage.FUSION, candidates.fused().size());
+        }
+        // 重排前折叠近重复候选，省去对重复内容的交叉重排
+        List<RetrievalCandidate> fused = stageMetrics.time(PipelineStage.DEDUP,
+                () -> dropNearDuplicates("fused", candidates.fused(), RetrievalCandidate::text));
+        trace.candidates(PipelineStage.DEDUP, fused.size());
 
-        log.info("融合候选数: {}", fused == null ? 0 : fused.size());
-        if (fused == null || fused.isEmpty()) {
-            return new RetrievalOutcome(List.of(), List.of());
+        RetrievalOutcome langchainOutcome = rankCandidates(request, topK, fused, rerank,
+                crossEncoder.isEnabled() && !skipCrossEncoder, stageMetrics, trace);
+
+        List<RetrievedSegment> segments = langchainOutcome.segments();
+        List<String> sources = langchainOutcome.sources();
+
+        if (mode == RagProperties.LlamaIndex.Mode.DUAL && !llamaIndexOutcome.segments().isEmpty()) {
+            segments = mergeEvidence(llamaIndexOutcome.segments(), segments, topK);
+            sources = mergeSources(llamaIndexOutcome.sources(), sources);
         }
+        return new EvidenceOutcome(segments, sources, degraded);
+    }
 
-        List<TextSegment> segments = fused.stream()
-                .map(Content::textSegment)
-                .toList();
+    // 对融合后的候选执行重排并截取TopK证据，各阶段得分随候选一起传递
+    private RetrievalOutcome rankCandidates(RagRequest request,
+                                            int topK,
+                                            List<RetrievalCandidate> fused,
+                                            RagProperties.Retrieval.Rerank rerank,
+                                            boolean useCrossEncoder,
+                                            RagMetrics stageMetrics,
+                                            RequestTrace trace) {
+        if (fused == null || fused.isEmpty()) {
+            return RetrievalOutcome.EMPTY;
+        }
 
-        List<TextSegment> rankedSegments = segments;
-        List<String> evidence;
-
-        if (crossEncoder.isEnabled() && scoringModel != null) {
-            CrossEncoderReranker reranker = new CrossEncoderReranker(scoringModel);
-            int rerankTopK = Math.min(crossEncoder.getTopK(), segments.size());
-            List<TextSegment> topCandidates = segments.subList(0, rerankTopK);
-            List<CrossEncoderReranker.ScoredSegment> reranked = reranker.rerank(request.question(), topCandidates);
-            List<TextSegment> merged = new ArrayList<>(segments.size());
-            for (CrossEncoderReranker.ScoredSegment scored : reranked) {
-                merged.add(scored.segment());
-            }
-            if (segments.size() > rerankTopK) {
-                merged.addAll(segments.subList(rerankTopK, segments.size()));
-            }
-            rankedSegments = merged;
-            evidence = rankedSegments.stream()
-                    .map(TextSegment::text)
-                    .limit(topK)
-                    .toList();
-            log.info("交叉重排完成, rerankTopK={}, evidenceSize={}", rerankTopK, evidence.size());
+        List<RetrievalCandidate> ranked;
+        if (useCrossEncoder && scoringModel != null) {
+            RagProperties.Retrieval.CrossEncoder crossEncoder = rerank.getCrossEncoder();
+            int rerankTopK = Math.min(crossEncoder.getTopK(), fused.size());
+            List<RetrievalCandidate> reranked = stageMetrics.time(PipelineStage.CROSS_ENCODER,
+                    () -> new CrossEncoderReranker(scoringModel)
+                            .rerankCandidates(request.question(), fused.subList(0, rerankTopK)));
+            // 未参与交叉重排的尾部候选保持融合顺序排在其后
+            ranked = new ArrayList<>(fused.size());
+            trace.candidates(PipelineStage.CROSS_ENCODER, reranked.size());
+            ranked.addAll(reranked);
+            ranked.addAll(fused.subList(rerankTopK, fused.size()));
+            log.info("交叉重排完成, rerankTopK={}, evidenceSize={}", rerankTopK, Math.min(topK, ranked.size()));
         } else if (rerank.isKeywordEnabled() && request.keywords() != null && !request.keywords().isEmpty()) {
-            List<KeywordReranker.CandidateSegment> candidates = new ArrayList<>(segments.size());
-            for (int i = 0; i < segments.size(); i++) {
-                double baseScore = 1.0 / (i + 1);
-                candidates.add(new KeywordReranker.CandidateSegment(segments.get(i).text(), baseScore));
-            }
-            List<KeywordReranker.RerankedSegment> reranked = keywordReranker
-                    .rerank(candidates, request.keywords(), rerank.getKeywordBoost());
-            evidence = reranked.stream()
-                    .map(KeywordReranker.RerankedSegment::text)
-                    .limit(topK)
-                    .toList();
-            rankedSegments = pickSegmentsByText(segments, evidence);
-            log.info("关键词重排完成, evidenceSize={}", evidence.size());
+            ranked = stageMetrics.time(PipelineStage.KEYWORD_RERANK,
+                    () -> keywordReranker.rerankCandidates(fused, request.keywords(), rerank.getKeywordBoost()));
+            trace.candidates(PipelineStage.KEYWORD_RERANK, ranked.size());
+            log.info("关键词重排完成, evidenceSize={}", Math.min(topK, ranked.size()));
         } else {
-            evidence = segments.stream()
-                    .map(TextSegment::text)
-                    .limit(topK)
-                    .toList();
-            log.info("未启用重排, evidenceSize={}", evidence.size());
+            ranked = fused;
+            log.info("未启用重排, evidenceSize={}", Math.min(topK, ranked.size()));
         }
 
+        List<RetrievedSegment> evidence = ranked.stream()
+                .limit(topK)
+                .map(this::toRetrievedSegment)
+                .toList();
         if (evidence.isEmpty()) {
-            return new RetrievalOutcome(List.of(), List.of());
+            return RetrievalOutcome.EMPTY;
         }
 
-        List<String> sources = rankedSegments.stream()
-                .map(TextSegment::metadata)
-                .map(this::toSource)
+        List<String> sources = ranked.stream()
+                .map(candidate -> toSource(candidate.segment().metadata()))
                 .filter(Objects::nonNull)
                 .distinct()
                 .collect(Collectors.toList());
@@ -282,25 +823,43 @@ public class RagService {
         return new RetrievalOutcome(evidence, sources);
     }
 
-    private LlamaIndexOutcome retrieveWithLlamaIndex(RagRequest request,
-                                                     int topK,
-                                                     double minScore,
-                                                     RagProperties.LlamaIndex.Mode mode) {
-        if (mode == RagProperties.LlamaIndex.Mode.LANGCHAIN4J || llamaIndexClient == null) {
-            return new LlamaIndexOutcome(List.of(), List.of());
-        }
+    private RetrievedSegment toRetrievedSegment(RetrievalCandidate candidate) {
+        Metadata metadata = candidate.segment().metadata();
+        StageScores scores = new StageScores(candidate.vectorScore(), candidate.bm25Score(), candidate.rrfScore(),
+                candidate.keywordScore(), candidate.crossEncoderScore());
+        return new RetrievedSegment(candidate.text(), candidate.score(), toSource(metadata),
+                metadata == null ? Map.of() : metadata.toMap(), candidate.id(), scores);
+    }
+
+    // 候选统计日志：各路原始候选数、融合候选数及两路重叠数
+    private void logCandidates(RetrievalCandidates candidates) {
+        Set<String> vectorTexts = candidates.vector().stream()
+                .map(RetrievalCandidate::text)
+                .collect(Collectors.toSet());
+        long overlap = candidates.fullText().stream()
+                .filter(candidate -> vectorTexts.contains(candidate.text()))
+                .count();
+        log.info("向量候选数: {}, 全文候选数: {}, 重叠数: {}, 融合候选数: {}",
+                candidates.vector().size(),
+                candidates.fullText().size(),
+                overlap,
+                candidates.fused().size());
+    }
+
+    private LlamaIndexOutcome retrieveWithLlamaIndex(RagRequest request, int topK, double minScore) {
         UploadOptions options = new UploadOptions(request.version(), request.tags(), request.source());
         LlamaIndexQueryResponse response = llamaIndexClient.query(request.question(), topK, options);
         if (response == null || response.items() == null || response.items().isEmpty()) {
-            return new LlamaIndexOutcome(List.of(), List.of());
+            return LlamaIndexOutcome.EMPTY;
         }
         List<LlamaIndexQueryItem> filtered = response.items().stream()
                 .filter(item -> item != null && item.score() >= minScore)
                 .limit(topK)
                 .toList();
-        List<String> evidence = filtered.stream()
-                .map(LlamaIndexQueryItem::text)
-                .filter(text -> text != null && !text.isBlank())
+        List<RetrievedSegment> segments = filtered.stream()
+                .filter(item -> item.text() != null && !item.text().isBlank())
+                .map(item -> new RetrievedSegment(item.text(), item.score(), toSource(item.metadata()),
+                        item.metadata() == null ? Map.of() : Map.copyOf(item.metadata())))
                 .toList();
         List<String> sources = filtered.stream()
                 .map(LlamaIndexQueryItem::metadata)
@@ -308,28 +867,85 @@ public class RagService {
                 .filter(Objects::nonNull)
                 .distinct()
                 .collect(Collectors.toList());
-        return new LlamaIndexOutcome(evidence, sources);
+        return new LlamaIndexOutcome(segments, sources);
     }
 
-    private RagResponse buildAnswer(RagRequest request, List<String> evidence, List<String> sources) {
-        String prompt = buildPrompt(request.question(), evidence);
-        String answer = chatModel.chat(prompt);
+    private RagResponse buildAnswer(RagRequest request,
+                                    List<String> evidence,
+                                    List<String> sources,
+                                    Deadline deadline,
+                                    RequestTrace trace) {
+        checkGenerationBudget(deadline);
+        List<ChatMessage> messages = promptBuilder.build(request.question(), evidence, trace);
+        String answer = metrics.withTrace(trace).time(PipelineStage.GENERATION, () -> generate(messages, deadline));
         log.info("生成完成, answerLen={}, sources={}", answer == null ? 0 : answer.length(), sources.size());
         return new RagResponse(answer, evidence, sources);
     }
 
-    private List<String> mergeEvidence(List<String> primary, List<String> secondary, int limit) {
-        Set<String> merged = new LinkedHashSet<>();
+    // 设有截止时间时在生成线程池中调用LLM并按剩余预算等待，超时中断生成线程并以504失败（结果不写缓存）
+    private String generate(List<ChatMessage> messages, Deadline deadline) {
+        if (!deadline.isBounded()) {
+            return chatModel.chat(messages).aiMessage().text();
+        }
+        CompletableFuture<String> future = generationExecutor.submit(
+                () -> chatModel.chat(messages).aiMessage().text(), deadline.cap(null));
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw new DeadlineExceededException("请求已超过截止时间，终止于阶段: generation");
+            }
+            if (cause instanceof RejectedExecutionException) {
+                throw new QueryRejectedException("生成线程池已满");
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("生成失败", cause);
+        }
+    }
+
+    // 剩余预算不足以完成生成时直接失败，不再调用LLM
+    private void checkGenerationBudget(Deadline deadline) {
+        deadline.check("generation");
+        if (!deadline.hasAtLeast(properties.getDeadline().getGenerationMinBudget())) {
+            throw new DeadlineExceededException("剩余预算不足以完成生成, remainingMs=" + deadline.remaining().toMillis());
+        }
+    }
+
+    private Deadline defaultDeadline() {
+        return Deadline.after(properties.getDeadline().getDefaultTimeout());
+    }
+
+    // 合并两路证据，按文本去重、折叠近重复并保持先后顺序
+    private List<RetrievedSegment> mergeEvidence(List<RetrievedSegment> primary,
+                                                 List<RetrievedSegment> secondary,
+                                                 int limit) {
+        Map<String, RetrievedSegment> merged = new LinkedHashMap<>();
         if (primary != null) {
-            merged.addAll(primary);
+            primary.forEach(segment -> merged.putIfAbsent(segment.text(), segment));
         }
         if (secondary != null) {
-            merged.addAll(secondary);
+            secondary.forEach(segment -> merged.putIfAbsent(segment.text(), segment));
         }
         if (merged.isEmpty()) {
             return List.of();
         }
-        return merged.stream().limit(limit).toList();
+        return dropNearDuplicates("merged", List.copyOf(merged.values()), RetrievedSegment::text).stream()
+                .limit(limit)
+                .toList();
+    }
+
+    private <T> List<T> dropNearDuplicates(String stage, List<T> items, Function<T, String> textOf) {
+        if (nearDuplicateFilter == null || items == null) {
+            return items;
+        }
+        List<T> kept = nearDuplicateFilter.filter(items, textOf);
+        if (kept.size() < items.size()) {
+            log.info("折叠近重复证据, stage={}, before={}, after={}", stage, items.size(), kept.size());
+        }
+        return kept;
     }
 
     private List<String> mergeSources(List<String> primary, List<String> secondary) {
@@ -395,7 +1011,7 @@ public class RagService {
         return source + ":" + path;
     }
 
-    private String toSource(java.util.Map<String, String> metadata) {
+    private String toSource(Map<String, String> metadata) {
         if (metadata == null || metadata.isEmpty()) {
             return null;
         }
@@ -410,22 +1026,26 @@ public class RagService {
         return source + ":" + path;
     }
 
-    private String buildPrompt(String question, List<String> evidence) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("你是企业知识库助手，请仅基于给定资料回答问题。");
-        sb.append("如果资料不足，请回答：").append(NO_MATCH).append("\\n\\n");
-        sb.append("问题：").append(question).append("\n\n");
-        sb.append("资料：\n");
-        for (int i = 0; i < evidence.size(); i++) {
-            sb.append(i + 1).append(". ").append(evidence.get(i)).append("\n");
-        }
-        return sb.toString();
+    // 请求过滤范围（版本/来源）的当前索引代数，入库后变化使旧缓存Key失效
+    private long generation(RagRequest request) {
+        return ragCache.generation(request.version(), request.source());
     }
 
-    // 缓存Key：问题+过滤条件+关键字+TopK/MinScore
-    private String buildCacheKey(RagRequest request) {
+    // 缓存Key：问题+索引代数+过滤条件+关键字+TopK/MinScore
+    // 包级可见，供基准测试直接调用
+    static String buildCacheKey(RagRequest request, long generation) {
+        return normalize(request.question()) + "|" + buildScopeKey(request, generation);
+    }
+
+    // 从缓存Key中取出范围部分：写入语义缓存时沿用读取时的代数，避免生成期间入库导致旧答案登记到新代数下
+    private static String scopeOf(RagRequest request, String cacheKey) {
+        return cacheKey.substring(normalize(request.question()).length() + 1);
+    }
+
+    // 缓存范围：除问题外的索引代数+过滤条件+关键字+TopK/MinScore，语义缓存只在同一范围内匹配
+    private static String buildScopeKey(RagRequest request, long generation) {
         StringBuilder sb = new StringBuilder();
-        sb.append(normalize(request.question())).append("|");
+        sb.append(generation).append("|");
         sb.append(normalize(request.version())).append("|");
         sb.append(normalize(request.source())).append("|");
         sb.append(normalizeList(request.tags())).append("|");
@@ -435,11 +1055,11 @@ public class RagService {
         return sb.toString();
     }
 
-    private String normalize(String value) {
+    private static String normalize(String value) {
         return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
     }
 
-    private String normalizeList(List<String> values) {
+    private static String normalizeList(List<String> values) {
         if (values == null || values.isEmpty()) {
             return "";
         }
@@ -450,29 +1070,21 @@ public class RagService {
                 .collect(Collectors.joining(","));
     }
 
-    // 将重排后的文本映射回原始分片
-    private List<TextSegment> pickSegmentsByText(List<TextSegment> segments, List<String> texts) {
-        if (segments == null || segments.isEmpty() || texts == null || texts.isEmpty()) {
-            return List.of();
-        }
-        List<TextSegment> selected = new ArrayList<>();
-        for (String text : texts) {
-            if (text == null) {
-                continue;
-            }
-            for (TextSegment segment : segments) {
-                if (segment.text().equals(text)) {
-                    selected.add(segment);
-                    break;
-                }
-            }
-        }
-        return selected.isEmpty() ? segments : selected;
+    private record RetrievalOutcome(List<RetrievedSegment> segments, List<String> sources) {
+        private static final RetrievalOutcome EMPTY = new RetrievalOutcome(List.of(), List.of());
+    }
+
+    private record LlamaIndexOutcome(List<RetrievedSegment> segments, List<String> sources) {
+        private static final LlamaIndexOutcome EMPTY = new LlamaIndexOutcome(List.of(), List.of());
     }
 
-    private record RetrievalOutcome(List<String> evidence, List<String> sources) {
+    private record AskOutcome(RagResponse response, boolean degraded) {
     }
 
-    private record LlamaIndexOutcome(List<String> evidence, List<String> sources) {
+    private record EvidenceOutcome(List<RetrievedSegment> segments, List<String> sources, boolean degraded) {
+
+        List<String> evidence() {
+            return segments.stream().map(RetrievedSegment::text).toList();
+        }
     }
 }
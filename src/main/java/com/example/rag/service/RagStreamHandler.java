@@ -0,0 +1,32 @@
+package com.example.rag.service;
+
+import com.example.rag.service.dto.RagResponse;
+
+import java.util.List;
+
+/**
+ * 流式问答回调
+ * 
+ * 调用顺序：onEvidence 一次 → onToken 零或多次 → onComplete 或 onError 一次
+ * 回调可能在限流执行线程或模型回调线程上执行；取消后不再收到后续回调
+ * 
+ * @see RagService#askStream 流式问答入口
+ */
+public interface RagStreamHandler {
+
+    // 检索完成，推送证据与来源
+    void onEvidence(List<String> evidence, List<String> sources);
+
+    // 推送一段增量答案
+    void onToken(String token);
+
+    // 生成结束，携带完整结果
+    void onComplete(RagResponse response);
+
+    // 检索或生成失败
+    void onError(Throwable error);
+
+    // 注册取消回调：客户端断开或连接超时时调用，生成随之停止；默认不支持取消
+    default void onCancel(Runnable callback) {
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.rag.service.dto;
+
+import java.util.concurrent.CompletionException;
+
+// 批量问答单条结果：index为请求中的位置，失败时response为空、error为原因
+public record BatchAnswer(
+        int index,
+        String question,
+        RagResponse response,
+        String error
+) {
+
+    public static BatchAnswer failed(int index, String question, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                ? error.getCause()
+                : error;
+        return new BatchAnswer(index, question, null, cause == null ? "未知错误" : cause.getMessage());
+    }
+}
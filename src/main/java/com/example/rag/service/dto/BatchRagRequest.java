@@ -0,0 +1,12 @@
+package com.example.rag.service.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+// 批量问答请求
+public record BatchRagRequest(
+        @NotEmpty List<@Valid RagRequest> requests
+) {
+}
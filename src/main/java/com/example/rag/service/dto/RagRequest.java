@@ -11,6 +11,18 @@ public record RagRequest(
         String version,
         List<String> tags,
         String source,
-        List<String> keywords
+        List<String> keywords,
+        // 为true时在响应中返回耗时明细（timings），不参与缓存Key
+        Boolean debug
 ) {
+
+    public RagRequest(String question,
+                      Integer topK,
+                      Double minScore,
+                      String version,
+                      List<String> tags,
+                      String source,
+                      List<String> keywords) {
+        this(question, topK, minScore, version, tags, source, keywords, null);
+    }
 }
@@ -1,10 +1,22 @@
 package com.example.rag.service.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 
 public record RagResponse(
         String answer,
         List<String> evidence,
-        List<String> sources
+        List<String> sources,
+        @JsonInclude(JsonInclude.Include.NON_NULL) RequestTimings timings
 ) {
+
+    public RagResponse(String answer, List<String> evidence, List<String> sources) {
+        this(answer, evidence, sources, null);
+    }
+
+    // 附带本次请求的耗时明细，缓存中保存的结果不含明细
+    public RagResponse withTimings(RequestTimings requestTimings) {
+        return new RagResponse(answer, evidence, sources, requestTimings);
+    }
 }
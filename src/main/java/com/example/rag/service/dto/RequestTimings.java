@@ -0,0 +1,26 @@
+package com.example.rag.service.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Map;
+
+/**
+ * 单请求耗时明细（仅在请求开启 debug 时返回）
+ *
+ * @param totalNanos     服务端总耗时
+ * @param stageNanos     各阶段耗时（纳秒），未执行的阶段不输出
+ * @param candidates     各阶段输出的候选数
+ * @param cacheHits      结果缓存与语义缓存是否命中
+ * @param queueWaitNanos 限流器排队等待时间，未进入限流器时为空
+ * @param promptTokens   提示词Token数，未启用打包或未生成时为空
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record RequestTimings(
+        long totalNanos,
+        Map<String, Long> stageNanos,
+        Map<String, Integer> candidates,
+        Map<String, Boolean> cacheHits,
+        Long queueWaitNanos,
+        Integer promptTokens
+) {
+}
@@ -0,0 +1,10 @@
+package com.example.rag.service.dto;
+
+import java.util.List;
+
+// 仅检索接口返回结果（不调用LLM生成）
+public record RetrieveResponse(
+        List<RetrievedSegment> segments,
+        List<String> sources
+) {
+}
@@ -0,0 +1,19 @@
+package com.example.rag.service.dto;
+
+import java.util.Map;
+
+// 检索结果分片：文本、排序得分、来源、原始元数据、分片ID与各阶段得分
+public record RetrievedSegment(
+        String text,
+        double score,
+        String source,
+        Map<String, Object> metadata,
+        String id,
+        StageScores scores
+) {
+
+    // 无分阶段得分的分片（如 LlamaIndex 返回结果）
+    public RetrievedSegment(String text, double score, String source, Map<String, Object> metadata) {
+        this(text, score, source, metadata, null, null);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.rag.service.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// 分片在各检索阶段的得分，未经过的阶段为空且不输出
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record StageScores(
+        Double vector,
+        Double bm25,
+        Double rrf,
+        Double keyword,
+        Double crossEncoder
+) {
+}
@@ -1,17 +1,45 @@
 package com.example.rag.web;
 
+import com.example.rag.perf.DeadlineExceededException;
+import com.example.rag.perf.QueryRejectedException;
+import com.example.rag.service.InvalidRequestException;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.ServletRequestBindingException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String, String>> handle(Exception ex) {
+        Throwable error = ex;
+        // 异步接口的异常可能被 CompletionException 包装
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        // 限流拒绝返回429，便于客户端退避重试与压测统计拒绝率
+        if (error instanceof QueryRejectedException || error instanceof BulkheadFullException) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body(Map.of("error", String.valueOf(error.getMessage())));
+        }
+        // 超过请求截止时间返回504，与服务内部错误区分
+        if (error instanceof DeadlineExceededException) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                    .body(Map.of("error", String.valueOf(error.getMessage())));
+        }
+        // 请求参数不合法（如超时请求头非数字或非正数、批量数量超限）返回400；其他IllegalArgumentException属于服务端错误
+        if (error instanceof InvalidRequestException || error instanceof MethodArgumentTypeMismatchException
+                || error instanceof ServletRequestBindingException) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", String.valueOf(error.getMessage())));
+        }
         // 统一异常返回，避免直接抛出到客户端
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(Map.of("error", ex.getMessage()));
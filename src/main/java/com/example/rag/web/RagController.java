@@ -1,18 +1,47 @@
 package com.example.rag.web;
 
+import com.example.rag.config.RagProperties;
+import com.example.rag.perf.Deadline;
+import com.example.rag.service.InvalidRequestException;
 import com.example.rag.service.RagService;
+import com.example.rag.service.dto.BatchAnswer;
+import com.example.rag.service.dto.BatchRagRequest;
 import com.example.rag.service.dto.RagRequest;
 import com.example.rag.service.dto.RagResponse;
+import com.example.rag.service.dto.RetrieveResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * RAG 问答检索 API 控制器
  * 
- * 接口：POST /api/qa
+ * 接口：
+ *   - POST /api/qa：问答，答案生成完毕后一次性返回（异步处理，不占用Servlet线程）
+ *   - POST /api/qa/stream：流式问答（Server-Sent Events）
+ *       事件 evidence：证据与来源（首个事件）
+ *       事件 token：增量答案片段
+ *       事件 done：完整结果
+ *       事件 error：失败原因
+ *   - POST /api/qa/batch：批量问答，结果按完成顺序以 NDJSON 逐行返回（每行一个 BatchAnswer）
+ *   - POST /api/retrieve：仅检索，返回带得分与元数据的分片，不调用LLM
+ * 
+ * 请求头：
+ *   - X-Request-Timeout-Ms：端到端预算（毫秒，可选，默认 rag.deadline.default-timeout），
+ *     预算不足时跳过可选阶段，耗尽时直接失败
  * 
  * 请求参数：
  *   - question：问题内容（必填）
@@ -30,14 +59,73 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api")
 public class RagController {
 
+    static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
     private final RagService ragService;
+    private final RagProperties properties;
+    private final ObjectMapper objectMapper;
 
-    public RagController(RagService ragService) {
+    public RagController(RagService ragService, RagProperties properties, ObjectMapper objectMapper) {
         this.ragService = ragService;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
     }
 
+    // 异步返回：等待LLM生成期间释放Servlet线程
     @PostMapping("/qa")
-    public RagResponse ask(@Valid @RequestBody RagRequest request) {
-        return ragService.ask(request);
+    public CompletableFuture<RagResponse> ask(@Valid @RequestBody RagRequest request,
+                                              @RequestHeader(value = TIMEOUT_HEADER, required = false) Long timeoutMs) {
+        return ragService.askAsync(request, deadline(timeoutMs));
+    }
+
+    // 流式问答：检索完成后立即推送证据，答案随生成逐段推送
+    @PostMapping(value = "/qa/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter askStream(@Valid @RequestBody RagRequest request,
+                                @RequestHeader(value = TIMEOUT_HEADER, required = false) Long timeoutMs) {
+        SseEmitter emitter = new SseEmitter(properties.getOllama().getStreamTimeout().toMillis());
+        ragService.askStream(request, deadline(timeoutMs), new SseRagStreamHandler(emitter));
+        return emitter;
+    }
+
+    // 批量问答：每完成一条即写出一行JSON，客户端无需等待整批结束
+    @PostMapping(value = "/qa/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody askAll(@Valid @RequestBody BatchRagRequest request) {
+        // 开始写出后无法再返回400，数量上限需在此之前校验
+        ragService.checkBatchSize(request.requests().size());
+        return out -> ragService.askAll(request.requests(), answer -> writeLine(out, answer));
+    }
+
+    // 仅检索：供评测、调试与外部重排使用
+    @PostMapping("/retrieve")
+    public RetrieveResponse retrieve(@Valid @RequestBody RagRequest request,
+                                     @RequestHeader(value = TIMEOUT_HEADER, required = false) Long timeoutMs) {
+        return ragService.retrieve(request, deadline(timeoutMs));
+    }
+
+    // 请求头优先，未传时使用配置的默认预算；请求头必须为正数，超过上限时截断
+    private Deadline deadline(Long timeoutMs) {
+        if (timeoutMs == null) {
+            return Deadline.after(properties.getDeadline().getDefaultTimeout());
+        }
+        if (timeoutMs <= 0) {
+            throw new InvalidRequestException(TIMEOUT_HEADER + " 必须为正数: " + timeoutMs);
+        }
+        Duration timeout = Duration.ofMillis(timeoutMs);
+        Duration maxTimeout = properties.getDeadline().getMaxTimeout();
+        if (maxTimeout != null && !maxTimeout.isZero() && !maxTimeout.isNegative()
+                && timeout.compareTo(maxTimeout) > 0) {
+            timeout = maxTimeout;
+        }
+        return Deadline.after(timeout);
+    }
+
+    private void writeLine(OutputStream out, BatchAnswer answer) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(answer));
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("批量结果写出失败", e);
+        }
     }
 }
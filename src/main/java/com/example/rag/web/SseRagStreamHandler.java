@@ -0,0 +1,89 @@
+package com.example.rag.web;
+
+import com.example.rag.service.RagStreamHandler;
+import com.example.rag.service.dto.RagResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// 将流式问答回调转换为SSE事件；连接完成、超时或出错后不再写出，并通知服务端停止生成
+class SseRagStreamHandler implements RagStreamHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(SseRagStreamHandler.class);
+
+    private final SseEmitter emitter;
+    private final List<Runnable> cancelCallbacks = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    SseRagStreamHandler(SseEmitter emitter) {
+        this.emitter = emitter;
+        emitter.onCompletion(this::close);
+        emitter.onTimeout(this::close);
+        emitter.onError(error -> close());
+    }
+
+    @Override
+    public void onCancel(Runnable callback) {
+        cancelCallbacks.add(callback);
+        if (closed) {
+            callback.run();
+        }
+    }
+
+    @Override
+    public void onEvidence(List<String> evidence, List<String> sources) {
+        send("evidence", Map.of("evidence", evidence, "sources", sources));
+    }
+
+    @Override
+    public void onToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return;
+        }
+        send("token", Map.of("text", token));
+    }
+
+    @Override
+    public void onComplete(RagResponse response) {
+        if (send("done", response)) {
+            emitter.complete();
+        }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        String message = error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage();
+        if (send("error", Map.of("error", message))) {
+            emitter.complete();
+        }
+    }
+
+    // 数据统一按JSON发送，避免答案中的换行破坏SSE帧
+    private boolean send(String event, Object data) {
+        if (closed) {
+            return false;
+        }
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.info("SSE连接已断开, event={}, error={}", event, e.toString());
+            close();
+            return false;
+        }
+    }
+
+    private void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cancelCallbacks.forEach(Runnable::run);
+    }
+}
@@ -3,6 +3,7 @@ package com.example.rag;
 import com.example.rag.config.RagProperties;
 import com.example.rag.perf.QueryLimiter;
 import com.example.rag.perf.RagCache;
+import com.example.rag.perf.RetrievalExecutor;
 import com.example.rag.retrieval.FullTextSearchService;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
@@ -72,4 +73,25 @@ public class TestBeansConfig {
     public QueryLimiter queryLimiter() {
         return QueryLimiter.disabled();
     }
+
+    @Bean
+    public QueryLimiter retrievalLimiter() {
+        return QueryLimiter.disabled();
+    }
+
+    @Bean
+    @Primary
+    public RetrievalExecutor retrievalExecutor() {
+        return RetrievalExecutor.direct();
+    }
+
+    @Bean
+    public RetrievalExecutor batchExecutor() {
+        return RetrievalExecutor.direct();
+    }
+
+    @Bean
+    public RetrievalExecutor generationExecutor() {
+        return RetrievalExecutor.direct();
+    }
 }
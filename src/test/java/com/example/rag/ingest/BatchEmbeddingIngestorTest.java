@@ -1,14 +1,20 @@
 package com.example.rag.ingest;
 
+import com.example.rag.perf.PersistentEmbeddingCache;
 import com.example.rag.service.BatchEmbeddingIngestor;
 import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.output.Response;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -28,7 +34,7 @@ class BatchEmbeddingIngestorTest {
         EmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
         BatchEmbeddingIngestor ingestor = new BatchEmbeddingIngestor(doc -> List.of(
                 TextSegment.from(doc.text(), doc.metadata())
-        ), model, store, 2);
+        ), model, store, 2, null);
 
         List<Document> docs = List.of(
                 Document.from("A"),
@@ -39,4 +45,28 @@ class BatchEmbeddingIngestorTest {
 
         assertEquals(2, calls.get());
     }
+
+    @Test
+    void ingest_shouldEmbedOnlySegmentsMissingFromPersistentCache(@TempDir Path tempDir) {
+        List<String> embedded = new ArrayList<>();
+        EmbeddingModel embeddingModel = segments -> {
+            segments.forEach(segment -> embedded.add(segment.text()));
+            return Response.from(segments.stream()
+                    .map(segment -> Embedding.from(new float[]{segment.text().length(), 1.0f}))
+                    .toList());
+        };
+        PersistentEmbeddingCache cache = new PersistentEmbeddingCache(tempDir.resolve("embeddings.bin"),
+                "model", 100, 4);
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        BatchEmbeddingIngestor ingestor = new BatchEmbeddingIngestor(DocumentSplitters.recursive(1000, 0),
+                embeddingModel, store, 10, cache);
+
+        ingestor.ingest(List.of(Document.from("第一篇"), Document.from("第二篇")));
+        embedded.clear();
+        int segments = ingestor.ingest(List.of(Document.from("第一篇"), Document.from("第三篇内容")));
+
+        assertEquals(2, segments);
+        assertEquals(List.of("第三篇内容"), embedded);
+        cache.close();
+    }
 }
@@ -0,0 +1,78 @@
+package com.example.rag.perf;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void limit_shouldGrowWhenSaturatedAndShrinkWhenLatencyRises() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 4, 1, 64, 0.5, 0.9, Duration.ofSeconds(10));
+
+        // 打满且耗时平稳：逐步上调
+        for (int i = 0; i < 20; i++) {
+            saturate(limiter);
+            limiter.release(100 * MS, false);
+            drain(limiter);
+        }
+        int grown = limiter.getLimit();
+        assertTrue(grown > 4, "limit=" + grown);
+
+        // 耗时突增到 4 倍：按梯度收缩
+        for (int i = 0; i < 5; i++) {
+            saturate(limiter);
+            limiter.release(400 * MS, false);
+            drain(limiter);
+        }
+        assertTrue(limiter.getLimit() < grown, "limit=" + limiter.getLimit());
+    }
+
+    @Test
+    void acquire_shouldRejectEarlyWhenEstimatedWaitExceedsBudget() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 1, 1, 1, 0.2, 0.9, Duration.ofMillis(100));
+        limiter.acquire().join();
+        limiter.release(500 * MS, false);
+
+        limiter.acquire().join();
+        CompletableFuture<Void> rejected = limiter.acquire();
+        ExecutionException error = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(QueryRejectedException.class, error.getCause());
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    void release_shouldWakeQueuedWaiter() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 1, 1, 1, 0.2, 0.9, Duration.ofSeconds(5));
+        limiter.acquire().join();
+        CompletableFuture<Void> waiter = limiter.acquire();
+        assertEquals(1, limiter.getQueued());
+
+        limiter.release(10 * MS, false);
+
+        waiter.get(1, TimeUnit.SECONDS);
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    private void saturate(AdaptiveLimiter limiter) {
+        while (limiter.getInFlight() < limiter.getLimit()) {
+            limiter.acquire().join();
+        }
+    }
+
+    private void drain(AdaptiveLimiter limiter) {
+        while (limiter.getInFlight() > 0) {
+            limiter.release(0, false);
+        }
+    }
+}
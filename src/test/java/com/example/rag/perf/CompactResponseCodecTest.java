@@ -0,0 +1,65 @@
+package com.example.rag.perf;
+
+import com.example.rag.service.dto.RagResponse;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactResponseCodecTest {
+
+    @Test
+    void decode_shouldRestoreEncodedResponse() {
+        CompactResponseCodec codec = new CompactResponseCodec(true, 64);
+        String evidence = "入库流程：上传文档后按800字符切分，写入向量库与全文索引。".repeat(20);
+        RagResponse response = new RagResponse("答案", List.of(evidence, "短证据"), List.of("guide.md"));
+
+        byte[] bytes = codec.encode(response);
+
+        assertEquals(response, codec.decode(bytes));
+        // 重复度高的中文证据压缩后明显小于UTF-8原文
+        assertTrue(bytes.length < evidence.getBytes(StandardCharsets.UTF_8).length / 2);
+    }
+
+    @Test
+    void encode_shouldKeepSmallResponsesUncompressedAndHandleNulls() {
+        CompactResponseCodec codec = new CompactResponseCodec(true, 512);
+        RagResponse response = new RagResponse(null, List.of("证据"), null);
+
+        byte[] bytes = codec.encode(response);
+        RagResponse decoded = codec.decode(bytes);
+
+        assertEquals(0, bytes[0]);
+        assertNull(decoded.answer());
+        assertEquals(List.of("证据"), decoded.evidence());
+        assertNull(decoded.sources());
+    }
+
+    @Test
+    void cacheKey_shouldMatchMurmur3ReferenceVector() {
+        CacheKey key = CacheKey.of("The quick brown fox jumps over the lazy dog");
+
+        assertEquals(0xe34bbc7bbc071b6cL, key.high());
+        assertEquals(0x7a433ca9c49a9347L, key.low());
+        assertEquals(new CacheKey(0, 0), CacheKey.of(""));
+        assertEquals(CacheKey.of("如何入库|v1|"), CacheKey.of("如何入库|v1|"));
+        assertNotEquals(CacheKey.of("如何入库|v1|"), CacheKey.of("如何入库|v2|"));
+    }
+
+    @Test
+    void decode_shouldNotShareBufferWithEncodedBytes() {
+        CompactResponseCodec codec = new CompactResponseCodec(false, 0);
+        byte[] bytes = codec.encode(new RagResponse("答案", List.of(), List.of()));
+        byte[] copy = Arrays.copyOf(bytes, bytes.length);
+
+        codec.decode(bytes);
+
+        assertTrue(Arrays.equals(copy, bytes));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.rag.perf;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class IndexGenerationsTest {
+
+    @Test
+    void bump_shouldChangeMatchingAndWiderScopesOnly() {
+        IndexGenerations generations = new IndexGenerations();
+        long exact = generations.current("v1", "upload");
+        long version = generations.current("v1", null);
+        long source = generations.current(null, "upload");
+        long any = generations.current(null, null);
+        long otherVersion = generations.current("v2", null);
+        long otherPair = generations.current("v1", "pdf");
+
+        generations.bump("v1", "upload");
+
+        assertNotEquals(exact, generations.current("v1", "upload"));
+        assertNotEquals(version, generations.current("v1", null));
+        assertNotEquals(source, generations.current(null, "upload"));
+        assertNotEquals(any, generations.current(null, null));
+        assertEquals(otherVersion, generations.current("v2", null));
+        assertEquals(otherPair, generations.current("v1", "pdf"));
+    }
+
+    @Test
+    void bump_shouldNormalizeScope() {
+        IndexGenerations generations = new IndexGenerations();
+        long before = generations.current("V1", " Upload ");
+
+        generations.bump("v1", "upload");
+
+        assertNotEquals(before, generations.current("V1", " Upload "));
+        // 空白过滤条件等同于不过滤
+        assertEquals(generations.current(null, null), generations.current(" ", ""));
+    }
+
+    @Test
+    void bumpAll_shouldChangeEveryScope() {
+        IndexGenerations generations = new IndexGenerations();
+        generations.bump("v1", "upload");
+        long exact = generations.current("v1", "upload");
+        long untouched = generations.current("v2", "pdf");
+
+        generations.bumpAll();
+
+        assertNotEquals(exact, generations.current("v1", "upload"));
+        assertNotEquals(untouched, generations.current("v2", "pdf"));
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.rag.perf;
+
+import dev.langchain4j.data.embedding.Embedding;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistentEmbeddingCacheTest {
+
+    @Test
+    void put_shouldSurviveReopen(@TempDir Path tempDir) {
+        Path file = tempDir.resolve("embeddings.bin");
+        PersistentEmbeddingCache cache = new PersistentEmbeddingCache(file, "model-a", 64, 4);
+        assertNull(cache.get("如何入库？"));
+        // 首次写入前不创建文件
+        assertFalse(Files.exists(file));
+
+        cache.put("如何入库？", Embedding.from(new float[]{0.1f, -0.2f, 0.3f}));
+        cache.close();
+
+        PersistentEmbeddingCache reopened = new PersistentEmbeddingCache(file, "model-a", 64, 4);
+        Embedding embedding = reopened.get("如何入库？");
+        assertNotNull(embedding);
+        assertArrayEquals(new float[]{0.1f, -0.2f, 0.3f}, embedding.vector());
+        assertNull(reopened.get("其他问题"));
+        assertEquals(1, reopened.hits());
+        assertEquals(1, reopened.misses());
+        reopened.close();
+    }
+
+    @Test
+    void open_shouldIgnoreFileOfOtherModel(@TempDir Path tempDir) {
+        Path file = tempDir.resolve("embeddings.bin");
+        PersistentEmbeddingCache cache = new PersistentEmbeddingCache(file, "model-a", 64, 4);
+        cache.put("问题", Embedding.from(new float[]{1f, 2f}));
+        cache.close();
+
+        PersistentEmbeddingCache other = new PersistentEmbeddingCache(file, "model-b", 64, 4);
+        assertNull(other.get("问题"));
+        // 写入时按新模型重建文件
+        other.put("问题", Embedding.from(new float[]{3f, 4f, 5f}));
+        assertArrayEquals(new float[]{3f, 4f, 5f}, other.get("问题").vector());
+        other.close();
+    }
+
+    @Test
+    void put_shouldRebuildWhenDimensionChanges(@TempDir Path tempDir) {
+        PersistentEmbeddingCache cache = new PersistentEmbeddingCache(tempDir.resolve("embeddings.bin"),
+                "model-a", 64, 4);
+        cache.put("a", Embedding.from(new float[]{1f, 2f}));
+        cache.put("b", Embedding.from(new float[]{1f, 2f, 3f}));
+
+        assertNull(cache.get("a"));
+        assertArrayEquals(new float[]{1f, 2f, 3f}, cache.get("b").vector());
+        cache.close();
+    }
+
+    @Test
+    void put_shouldEvictLeastRecentlyUsedWithinSet(@TempDir Path tempDir) {
+        // 单组两路：第三条写入时淘汰最久未访问的一条
+        PersistentEmbeddingCache cache = new PersistentEmbeddingCache(tempDir.resolve("embeddings.bin"),
+                "model-a", 2, 2);
+        cache.put("a", Embedding.from(new float[]{1f}));
+        cache.put("b", Embedding.from(new float[]{2f}));
+        assertNotNull(cache.get("a"));
+
+        cache.put("c", Embedding.from(new float[]{3f}));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        cache.close();
+    }
+
+    @Test
+    void get_shouldTreatTornSlotAsMiss(@TempDir Path tempDir) throws Exception {
+        // 单组单路：唯一槽位位于文件头之后，向量从槽位头（24字节）之后开始
+        Path file = tempDir.resolve("embeddings.bin");
+        PersistentEmbeddingCache cache = new PersistentEmbeddingCache(file, "model-a", 1, 1);
+        cache.put("问题", Embedding.from(new float[]{1f, 2f, 3f}));
+        cache.close();
+
+        // 模拟崩溃后只有部分页面落盘：Key 已写入而向量不完整
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(Float.BYTES).order(ByteOrder.LITTLE_ENDIAN).putFloat(0, 9f);
+            channel.write(torn, 64 + 24 + Float.BYTES);
+        }
+
+        PersistentEmbeddingCache reopened = new PersistentEmbeddingCache(file, "model-a", 1, 1);
+        assertNull(reopened.get("问题"));
+        assertEquals(1, reopened.misses());
+        // 校验失败的槽位被清空，重新写入后可正常读取
+        reopened.put("问题", Embedding.from(new float[]{4f, 5f, 6f}));
+        assertArrayEquals(new float[]{4f, 5f, 6f}, reopened.get("问题").vector());
+        reopened.close();
+    }
+
+    @Test
+    void put_shouldKeepFileSizeFixed(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("embeddings.bin");
+        PersistentEmbeddingCache cache = new PersistentEmbeddingCache(file, "model-a", 16, 4);
+        cache.put("q0", Embedding.from(new float[]{0f, 0f, 0f, 0f}));
+        long size = Files.size(file);
+        for (int i = 1; i < 200; i++) {
+            cache.put("q" + i, Embedding.from(new float[]{i, i, i, i}));
+        }
+        assertEquals(size, Files.size(file));
+        int present = 0;
+        for (int i = 0; i < 200; i++) {
+            Embedding embedding = cache.get("q" + i);
+            if (embedding != null) {
+                assertEquals((float) i, embedding.vector()[0]);
+                present++;
+            }
+        }
+        assertTrue(present > 0 && present <= 16, "present=" + present);
+        cache.close();
+    }
+}
@@ -1,12 +1,21 @@
 package com.example.rag.perf;
 
+import dev.langchain4j.exception.TimeoutException;
 import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 
+import java.net.SocketTimeoutException;
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -32,6 +41,119 @@ class QueryLimiterTest {
         first.get(2, TimeUnit.SECONDS);
     }
 
+    @Test
+    void executeAsync_shouldReturnBeforeTaskCompletes() throws Exception {
+        QueryLimiter limiter = QueryLimiter.threadPool("test-async", 1, 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> future = limiter.executeAsync(() -> {
+            await(release);
+            return "ok";
+        });
+
+        assertFalse(future.isDone());
+        release.countDown();
+        assertEquals("ok", future.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void semaphore_shouldRunSyncOnCallerThreadAndRejectWhenFull() throws Exception {
+        QueryLimiter limiter = QueryLimiter.semaphore("test-semaphore", 1, Duration.ZERO);
+        Thread caller = Thread.currentThread();
+        assertSame(caller, limiter.execute(Thread::currentThread));
+
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> first = limiter.executeAsync(() -> {
+            entered.countDown();
+            await(release);
+            return "ok";
+        });
+        assertTrue(entered.await(2, TimeUnit.SECONDS));
+
+        CompletableFuture<String> rejected = limiter.executeAsync(() -> "second");
+        ExecutionException error = assertThrows(ExecutionException.class, () -> rejected.get(2, TimeUnit.SECONDS));
+        assertInstanceOf(BulkheadFullException.class, error.getCause());
+
+        release.countDown();
+        assertEquals("ok", first.get(2, TimeUnit.SECONDS));
+        // 许可已释放，可以再次执行
+        assertEquals("third", limiter.executeAsync(() -> "third").get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void semaphore_shouldWaitUpToMaxWaitInAsyncMode() throws Exception {
+        try (QueryLimiter limiter = QueryLimiter.semaphore("test-semaphore-wait", 1, Duration.ofSeconds(2))) {
+            CountDownLatch entered = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<String> first = limiter.executeAsync(() -> {
+                entered.countDown();
+                await(release);
+                return "first";
+            });
+            assertTrue(entered.await(2, TimeUnit.SECONDS));
+
+            // 与同步调用相同，许可被占用时在maxWait内等待而不是立即拒绝
+            CompletableFuture<String> waiting = limiter.executeAsync(() -> "second");
+            Thread.sleep(50);
+            assertFalse(waiting.isDone());
+            release.countDown();
+
+            assertEquals("first", first.get(2, TimeUnit.SECONDS));
+            assertEquals("second", waiting.get(2, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void adaptive_shouldOnlyBackOffOnDownstreamOverload() {
+        AdaptiveLimiter adaptiveLimiter = new AdaptiveLimiter("test-overload", 10, 1, 20, 1.0, 0.5,
+                Duration.ofSeconds(1));
+        try (QueryLimiter limiter = QueryLimiter.adaptive("test-overload", adaptiveLimiter)) {
+            // 客户端截止时间过短与参数错误不影响其他请求的并发上限
+            for (int i = 0; i < 5; i++) {
+                assertThrows(DeadlineExceededException.class, () -> limiter.execute(() -> {
+                    throw new DeadlineExceededException("截止时间过短");
+                }));
+                assertThrows(IllegalArgumentException.class, () -> limiter.execute(() -> {
+                    throw new IllegalArgumentException("参数错误");
+                }));
+            }
+            assertEquals(10, adaptiveLimiter.getLimit());
+            assertEquals(0, adaptiveLimiter.getInFlight());
+
+            assertThrows(TimeoutException.class, () -> limiter.execute(() -> {
+                throw new TimeoutException(new SocketTimeoutException("read timed out"));
+            }));
+            assertEquals(5, adaptiveLimiter.getLimit());
+            assertEquals(0, adaptiveLimiter.getInFlight());
+        }
+    }
+
+    @Test
+    void bindTo_shouldExposeActiveAndQueuedGauges() throws Exception {
+        QueryLimiter limiter = QueryLimiter.threadPool("test-metrics", 1, 1, 1);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        limiter.bindTo(registry);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> running = limiter.executeAsync(() -> {
+            entered.countDown();
+            await(release);
+            return "running";
+        });
+        assertTrue(entered.await(2, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = limiter.executeAsync(() -> "queued");
+
+        assertEquals(1.0, registry.get("rag.limiter.active").tag("name", "test-metrics").gauge().value());
+        assertEquals(1.0, registry.get("rag.limiter.queued").tag("name", "test-metrics").gauge().value());
+        assertEquals(1.0, registry.get("rag.limiter.limit").tag("mode", "thread_pool").gauge().value());
+
+        release.countDown();
+        assertEquals("running", running.get(2, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(2, TimeUnit.SECONDS));
+    }
+
     private void await(CountDownLatch latch) {
         try {
             latch.await(2, TimeUnit.SECONDS);
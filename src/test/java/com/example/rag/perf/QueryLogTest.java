@@ -0,0 +1,75 @@
+package com.example.rag.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryLogTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void record_shouldAppendNdjsonLines(@TempDir Path tempDir) throws Exception {
+        QueryLog queryLog = new QueryLog(tempDir, 64, 1024 * 1024, 5, objectMapper);
+        queryLog.record(record("如何入库？", "miss"));
+        queryLog.record(record("如何入库？", "result"));
+        queryLog.close();
+
+        List<Path> files = QueryLog.listFiles(tempDir);
+        assertEquals(1, files.size());
+        List<String> lines = Files.readAllLines(files.get(0));
+        assertEquals(2, lines.size());
+        QueryLogRecord first = objectMapper.readValue(lines.get(0), QueryLogRecord.class);
+        assertEquals("如何入库？", first.question());
+        assertEquals("miss", first.cache());
+        assertEquals(120L, first.stageNanos().get("embedding"));
+        // 空值字段不输出
+        assertFalse(lines.get(1).contains("keywords"));
+        assertEquals(2, queryLog.written());
+    }
+
+    @Test
+    void record_shouldRotateBySizeAndKeepNewestFiles(@TempDir Path tempDir) throws Exception {
+        // 单条约200字节，文件上限300字节：每个文件一条，只保留最新3个
+        QueryLog queryLog = new QueryLog(tempDir, 64, 300, 3, objectMapper);
+        for (int i = 0; i < 6; i++) {
+            queryLog.record(record("问题" + i, "miss"));
+        }
+        queryLog.close();
+
+        List<Path> files = QueryLog.listFiles(tempDir);
+        assertEquals(3, files.size());
+        List<String> questions = new ArrayList<>();
+        for (Path file : files) {
+            for (String line : Files.readAllLines(file)) {
+                questions.add(objectMapper.readValue(line, QueryLogRecord.class).question());
+            }
+        }
+        assertEquals(List.of("问题3", "问题4", "问题5"), questions);
+    }
+
+    @Test
+    void record_shouldDropAfterClose(@TempDir Path tempDir) {
+        QueryLog queryLog = new QueryLog(tempDir, 64, 1024, 5, objectMapper);
+        queryLog.close();
+
+        assertFalse(queryLog.record(record("问题", "miss")));
+        assertEquals(1, queryLog.dropped());
+        assertTrue(QueryLog.listFiles(tempDir).isEmpty());
+    }
+
+    private QueryLogRecord record(String question, String cache) {
+        return new QueryLogRecord(System.currentTimeMillis(), question, "v1", null, List.of("faq"), null, 5, null,
+                "ask", cache, 1_000L, Map.of("embedding", 120L), null, List.of("0123456789abcdef"));
+    }
+}
@@ -1,13 +1,27 @@
 package com.example.rag.perf;
 
 import com.example.rag.config.RagProperties;
+import com.example.rag.service.dto.RagResponse;
 import dev.langchain4j.data.embedding.Embedding;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
 
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoublePredicate;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class RagCacheTest {
 
@@ -33,4 +47,140 @@ class RagCacheTest {
         assertEquals(1, calls.get());
         assertEquals(first, second);
     }
+
+    @Test
+    void getEmbedding_shouldFallBackToPersistentCacheAfterRestart(@TempDir Path tempDir) {
+        RagProperties properties = new RagProperties();
+        Path file = tempDir.resolve("embeddings.bin");
+        PersistentEmbeddingCache firstStore = new PersistentEmbeddingCache(file, "model", 100, 4);
+        RagCache first = new RagCache(properties, firstStore);
+        first.getEmbedding("q", () -> Embedding.from(new float[]{1.0f, 2.0f}));
+        firstStore.close();
+
+        // 新实例的一级缓存为空，从持久化文件命中，不再调用模型；Key 与一级一致，大小写与首尾空白不影响命中
+        PersistentEmbeddingCache restartedStore = new PersistentEmbeddingCache(file, "model", 100, 4);
+        RagCache restarted = new RagCache(properties, restartedStore);
+        AtomicInteger calls = new AtomicInteger();
+        Embedding embedding = restarted.getEmbedding(" Q ", () -> {
+            calls.incrementAndGet();
+            return Embedding.from(new float[]{0.0f, 0.0f});
+        });
+
+        assertEquals(0, calls.get());
+        assertArrayEquals(new float[]{1.0f, 2.0f}, embedding.vector());
+        assertArrayEquals(new float[]{1.0f, 2.0f}, restarted.getEmbeddingIfPresent("q").vector());
+        restartedStore.close();
+    }
+
+    @Test
+    void singleFlight_shouldShareOneExecutionAcrossConcurrentCallers() throws Exception {
+        RagCache cache = new RagCache(new RagProperties());
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RagResponse expected = new RagResponse("答案", List.of(), List.of());
+
+        CompletableFuture<RagResponse> leader = CompletableFuture.supplyAsync(() -> cache.singleFlight("q", () -> {
+            calls.incrementAndGet();
+            entered.countDown();
+            await(release);
+            return expected;
+        }));
+        assertTrue(entered.await(2, TimeUnit.SECONDS));
+
+        CompletableFuture<RagResponse> follower = CompletableFuture.supplyAsync(() -> cache.singleFlight("q", () -> {
+            calls.incrementAndGet();
+            return new RagResponse("重复执行", List.of(), List.of());
+        }));
+        Thread.sleep(50);
+        release.countDown();
+
+        assertSame(expected, leader.get(2, TimeUnit.SECONDS));
+        assertSame(expected, follower.get(2, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void result_shouldRoundTripThroughCompactEncoding() {
+        RagCache cache = new RagCache(new RagProperties());
+        RagResponse response = new RagResponse("答案", List.of("证据".repeat(400)), List.of("guide.md"));
+
+        cache.putResult("如何入库？|v1|", response);
+
+        RagResponse cached = cache.getResult("如何入库？|v1|");
+        assertEquals(response, cached);
+        assertNull(cache.getResult("如何入库？|v2|"));
+    }
+
+    @Test
+    void result_shouldBeBoundedByEncodedBytes() throws Exception {
+        RagProperties properties = new RagProperties();
+        properties.getCache().getResult().setMaxMemory(DataSize.ofKilobytes(8));
+        properties.getCache().getResult().setCompression(RagProperties.Cache.Result.Compression.NONE);
+        RagCache cache = new RagCache(properties);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+
+        // 单条小结果按编码字节数计入占用（淘汰维护为异步执行，轮询等待）
+        cache.putResult("small", new RagResponse("答案", List.of("证据"), List.of()));
+        double small = awaitGauge(registry, bytes -> bytes > 0);
+        assertTrue(small > 0 && small < 1024, "bytes=" + small);
+
+        // 每条约3KB（1000个中文字符），8KB 只能容纳两条；W-TinyLFU 可能拒绝新条目，只断言上限
+        for (int i = 0; i < 20; i++) {
+            cache.putResult("q" + i, new RagResponse("答案" + i, List.of("证".repeat(1000)), List.of()));
+        }
+        double bytes = awaitGauge(registry, value -> value <= 8 * 1024);
+        assertTrue(bytes <= 8 * 1024, "bytes=" + bytes);
+    }
+
+    private double awaitGauge(SimpleMeterRegistry registry, DoublePredicate condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        double value;
+        do {
+            value = registry.get("rag.cache.result.bytes").gauge().value();
+        } while (!condition.test(value) && System.nanoTime() < deadline);
+        return value;
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void bindTo_shouldExposeCacheHitsAndMisses() {
+        RagProperties properties = new RagProperties();
+        properties.getCache().setEnabled(true);
+        RagCache cache = new RagCache(properties);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+
+        cache.getResult("missing");
+        cache.putResult("q", new RagResponse("答案", List.of(), List.of()));
+        cache.getResult("q");
+
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "rag-result").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "rag-result").tag("result", "miss")
+                .functionCounter().count());
+        assertEquals(0.0, registry.get("rag.cache.inflight").gauge().value());
+    }
+
+    @Test
+    void bindTo_shouldExposeSemanticThreshold() {
+        RagProperties properties = new RagProperties();
+        properties.getCache().getSemantic().setEnabled(true);
+        properties.getCache().getSemantic().setThreshold(0.9);
+        RagCache cache = new RagCache(properties);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+
+        assertEquals(0.9, registry.get("rag.cache.semantic.threshold").gauge().value());
+        assertEquals(0.0, registry.get("cache.gets").tag("cache", "rag-semantic").tag("result", "hit")
+                .functionCounter().count());
+    }
 }
@@ -0,0 +1,43 @@
+package com.example.rag.perf;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RagMetricsTest {
+
+    @Test
+    void time_shouldRecordStageWithOutcome() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RagMetrics metrics = new RagMetrics(registry);
+
+        assertEquals("ok", metrics.time(PipelineStage.GENERATION, () -> "ok"));
+        assertThrows(IllegalStateException.class, () -> metrics.time(PipelineStage.GENERATION, () -> {
+            throw new IllegalStateException("失败");
+        }));
+
+        assertEquals(1, registry.get(RagMetrics.STAGE_TIMER)
+                .tag("stage", "generation").tag("outcome", "success").timer().count());
+        assertEquals(1, registry.get(RagMetrics.STAGE_TIMER)
+                .tag("stage", "generation").tag("outcome", "error").timer().count());
+    }
+
+    @Test
+    void countIngest_shouldSkipUnknownSegmentCount() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RagMetrics metrics = new RagMetrics(registry);
+
+        metrics.countIngest("upload", 2, 10);
+        metrics.countIngest("upload", 1, -1);
+
+        assertEquals(3.0, registry.get("rag.ingest.documents").tag("mode", "upload").counter().count());
+        assertEquals(10.0, registry.get("rag.ingest.segments").tag("mode", "upload").counter().count());
+    }
+
+    @Test
+    void disabled_shouldOnlyRunSupplier() {
+        assertEquals(1, RagMetrics.disabled().time(PipelineStage.FUSION, () -> 1));
+    }
+}
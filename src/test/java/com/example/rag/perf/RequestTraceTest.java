@@ -0,0 +1,73 @@
+package com.example.rag.perf;
+
+import com.example.rag.service.dto.RequestTimings;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestTraceTest {
+
+    @Test
+    void of_shouldReturnNoopUnlessDebug() {
+        assertSame(RequestTrace.NOOP, RequestTrace.of(null));
+        assertSame(RequestTrace.NOOP, RequestTrace.of(false));
+        assertTrue(RequestTrace.of(true).isEnabled());
+
+        RequestTrace.NOOP.addStage(PipelineStage.EMBEDDING, 10);
+        assertNull(RequestTrace.NOOP.toTimings());
+    }
+
+    @Test
+    void of_shouldCaptureWithoutDebugForQueryLog() {
+        RequestTrace captured = RequestTrace.of(false, true);
+        assertTrue(captured.isEnabled());
+        assertFalse(captured.isDebug());
+        captured.addStage(PipelineStage.EMBEDDING, 10);
+        assertEquals(10L, captured.toTimings().stageNanos().get("embedding"));
+
+        assertTrue(RequestTrace.of(true, false).isDebug());
+        assertSame(RequestTrace.NOOP, RequestTrace.of(null, false));
+    }
+
+    @Test
+    void toTimings_shouldIgnoreLateWritesFromAbandonedBranches() {
+        RequestTrace trace = RequestTrace.start();
+        trace.addStage(PipelineStage.VECTOR_SEARCH, 100);
+        RequestTimings timings = trace.toTimings();
+
+        // 超时被丢弃的分支在输出后才写入
+        trace.addStage(PipelineStage.VECTOR_SEARCH, 50);
+        trace.candidates(PipelineStage.VECTOR_SEARCH, 3);
+
+        assertEquals(100L, timings.stageNanos().get("vector_search"));
+        assertEquals(100L, trace.toTimings().stageNanos().get("vector_search"));
+        assertNull(trace.toTimings().candidates().get("vector_search"));
+    }
+
+    @Test
+    void toTimings_shouldContainOnlyRecordedValues() {
+        RequestTrace trace = RequestTrace.start();
+        trace.addStage(PipelineStage.EMBEDDING, 100);
+        trace.addStage(PipelineStage.EMBEDDING, 50);
+        trace.addStage(PipelineStage.GENERATION, 300);
+        trace.candidates(PipelineStage.VECTOR_SEARCH, 0);
+        trace.resultCache(false);
+        trace.promptTokens(42);
+
+        RequestTimings timings = trace.toTimings();
+
+        // 同一阶段多次执行时累加
+        assertEquals(150L, timings.stageNanos().get("embedding"));
+        assertEquals(300L, timings.stageNanos().get("generation"));
+        assertFalse(timings.stageNanos().containsKey("vector_search"));
+        assertEquals(0, timings.candidates().get("vector_search"));
+        assertEquals(false, timings.cacheHits().get("result"));
+        assertFalse(timings.cacheHits().containsKey("semantic"));
+        assertNull(timings.queueWaitNanos());
+        assertEquals(42, timings.promptTokens());
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.rag.perf;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetrievalExecutorTest {
+
+    @Test
+    void join_shouldDropTimedOutAndFailedBranches() {
+        try (RetrievalExecutor executor = RetrievalExecutor.threadPool("test-retrieval", 3, 10)) {
+            CountDownLatch release = new CountDownLatch(1);
+
+            CompletableFuture<List<String>> slow = executor.submit(() -> {
+                await(release);
+                return List.of("slow");
+            }, Duration.ofMillis(50));
+            CompletableFuture<List<String>> failed = executor.submit(() -> {
+                throw new IllegalStateException("模拟失败");
+            }, Duration.ofSeconds(2));
+            CompletableFuture<List<String>> fast = executor.submit(() -> List.of("fast"), Duration.ofSeconds(2));
+
+            assertEquals(List.of(), executor.join("slow", slow, List.of()));
+            assertEquals(List.of(), executor.join("failed", failed, List.of()));
+            assertEquals(List.of("fast"), executor.join("fast", fast, List.of()));
+            assertTrue(slow.isCompletedExceptionally());
+            assertTrue(failed.isCompletedExceptionally());
+
+            release.countDown();
+        }
+    }
+
+    @Test
+    void submit_shouldInterruptTimedOutTaskAndRejectWhenQueueFull() throws InterruptedException {
+        try (RetrievalExecutor executor = RetrievalExecutor.threadPool("test-bounded", 1, 1)) {
+            CountDownLatch interrupted = new CountDownLatch(1);
+            CompletableFuture<List<String>> slow = executor.submit(() -> {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    Thread.currentThread().interrupt();
+                }
+                return List.of("slow");
+            }, Duration.ofMillis(50));
+
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<List<String>> queued = executor.submit(() -> {
+                await(release);
+                return List.of("queued");
+            }, null);
+            CompletableFuture<List<String>> rejected = executor.submit(() -> List.of("rejected"), null);
+
+            assertEquals(List.of(), executor.join("rejected", rejected, List.of()));
+            assertEquals(List.of(), executor.join("slow", slow, List.of()));
+            // 超时后任务被中断，线程归还给排队的分支
+            assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+            release.countDown();
+            assertEquals(List.of("queued"), executor.join("queued", queued, List.of()));
+        }
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.rag.perf;
+
+import com.example.rag.service.dto.RagResponse;
+import dev.langchain4j.data.embedding.Embedding;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SemanticResultCacheTest {
+
+    private static final CompactResponseCodec CODEC = new CompactResponseCodec(true, 512);
+
+    @Test
+    void get_shouldMatchSimilarQueryWithinSameScope() {
+        SemanticResultCache cache = new SemanticResultCache(0, 10, Duration.ofMinutes(10), 0.95, CODEC);
+        RagResponse response = new RagResponse("答案", List.of("证据"), List.of());
+        cache.put("如何入库文档|v1", "v1", Embedding.from(new float[]{1.0f, 0.1f, 0.0f}), response);
+
+        assertEquals(response, cache.get("v1", Embedding.from(new float[]{0.98f, 0.12f, 0.01f})));
+        assertNull(cache.get("v2", Embedding.from(new float[]{0.98f, 0.12f, 0.01f})));
+        assertNull(cache.get("v1", Embedding.from(new float[]{0.0f, 1.0f, 0.0f})));
+
+        SemanticResultCache.Stats stats = cache.stats();
+        assertEquals(3, stats.lookups());
+        assertEquals(1, stats.hits());
+        assertEquals(0.95, stats.threshold());
+    }
+
+    @Test
+    void get_shouldMissAfterEntryEvicted() {
+        SemanticResultCache cache = new SemanticResultCache(0, 1, Duration.ofMinutes(10), 0.9, CODEC);
+        RagResponse first = new RagResponse("答案1", List.of(), List.of());
+        RagResponse second = new RagResponse("答案2", List.of(), List.of());
+
+        cache.put("q1", "scope", Embedding.from(new float[]{1.0f, 0.0f}), first);
+        cache.put("q2", "scope", Embedding.from(new float[]{0.0f, 1.0f}), second);
+
+        RagResponse hit1 = cache.get("scope", Embedding.from(new float[]{1.0f, 0.0f}));
+        RagResponse hit2 = cache.get("scope", Embedding.from(new float[]{0.0f, 1.0f}));
+        assertEquals(1, (hit1 == null ? 0 : 1) + (hit2 == null ? 0 : 1));
+    }
+
+    @Test
+    void put_shouldBoundEntriesByEncodedBytes() {
+        SemanticResultCache cache = new SemanticResultCache(8 * 1024, 1000, Duration.ofMinutes(10), 0.99, CODEC);
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            float[] vector = new float[64];
+            for (int j = 0; j < vector.length; j++) {
+                vector[j] = (float) random.nextGaussian();
+            }
+            cache.put("q" + i, "scope", Embedding.from(vector),
+                    new RagResponse("答案" + i, List.of("证据" + i), List.of("来源" + i)));
+        }
+
+        // 每条约 0.7KB（两份64维向量+编码结果），8KB 限额下只能保留十余条
+        assertTrue(cache.stats().size() < 20, "size=" + cache.stats().size());
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.rag.prompt;
+
+import com.example.rag.config.RagProperties;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromptBuilderTest {
+
+    @Test
+    void stablePrefix_shouldKeepSystemMessageIdenticalAndPutQuestionLast() {
+        PromptBuilder builder = new PromptBuilder(RagProperties.Prompt.Layout.STABLE_PREFIX, "无", null);
+
+        List<ChatMessage> first = builder.build("问题一", List.of("证据A"));
+        List<ChatMessage> second = builder.build("问题二", List.of("证据B", "证据C"));
+
+        assertThat(first.get(0)).isInstanceOf(SystemMessage.class).isEqualTo(second.get(0));
+        String user = ((UserMessage) second.get(1)).singleText();
+        assertThat(user).startsWith("资料：\n1. 证据B\n2. 证据C\n").endsWith("问题：问题二");
+    }
+
+    @Test
+    void legacy_shouldSendSingleUserMessageWithQuestionFirst() {
+        PromptBuilder builder = new PromptBuilder(RagProperties.Prompt.Layout.LEGACY, "无", null);
+
+        List<ChatMessage> messages = builder.build("问题", List.of("证据"));
+
+        assertThat(messages).hasSize(1);
+        String text = ((UserMessage) messages.get(0)).singleText();
+        assertThat(text.indexOf("问题：问题")).isLessThan(text.indexOf("资料："));
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.rag.prompt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PromptPackerTest {
+
+    // 每个字符计1个Token，便于构造预算
+    private final TokenCounter charCounter = text -> text == null ? 0 : text.length();
+
+    @Test
+    void pack_shouldFillBudgetInRankOrderAndTrimAtSentenceBoundary() {
+        PromptPacker packer = new PromptPacker(charCounter, 30, 3);
+
+        PromptPacker.PackedEvidence packed = packer.pack("问题：", List.of(
+                "第一条证据内容。",
+                "第二句很长。第二句后半段会被截掉。",
+                "第三条不会放入。"));
+
+        assertEquals(List.of("第一条证据内容。", "第二句很长。"), packed.evidence());
+        assertTrue(packed.truncated());
+        assertEquals(1, packed.dropped());
+        // 每条证据额外计入 "N. " 与换行共4个字符
+        assertEquals(3 + (8 + 4) + (6 + 4), packed.tokens());
+    }
+
+    @Test
+    void pack_shouldDropChunkWhenNoSentenceFits() {
+        PromptPacker packer = new PromptPacker(charCounter, 16, 3);
+
+        PromptPacker.PackedEvidence packed = packer.pack("", List.of("短句。", "这一整句没有任何可用的截断位置"));
+
+        assertEquals(List.of("短句。"), packed.evidence());
+        assertFalse(packed.truncated());
+        assertEquals(1, packed.dropped());
+    }
+
+    @Test
+    void pack_shouldCountNumberingAndSeparatorsAgainstBudget() {
+        // 证据正文恰好等于预算，但加上编号与换行后超出，必须截断
+        PromptPacker packer = new PromptPacker(charCounter, 12, 3);
+
+        PromptPacker.PackedEvidence packed = packer.pack("", List.of("前半句。后半句内容。"));
+
+        assertEquals(List.of("前半句。"), packed.evidence());
+        assertTrue(packed.truncated());
+        assertEquals(4 + 4, packed.tokens());
+        String prompt = PromptPacker.item(0, packed.evidence().get(0));
+        assertTrue(charCounter.count(prompt) <= 12);
+    }
+
+    @Test
+    void approximate_shouldCountCjkPerCharacter() {
+        TokenCounter counter = TokenCounter.approximate();
+        assertEquals(4, counter.count("入库流程"));
+        assertEquals(2, counter.count("hello!!"));
+    }
+}
@@ -1,10 +1,13 @@
 package com.example.rag.rerank;
 
+import com.example.rag.retrieval.RetrievalCandidate;
+import dev.langchain4j.data.segment.TextSegment;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class KeywordRerankerTest {
 
@@ -37,4 +40,21 @@ class KeywordRerankerTest {
         assertEquals("A", output.get(0).text());
         assertEquals("B", output.get(1).text());
     }
+
+    @Test
+    void rerankCandidates_shouldKeepSegmentAndEarlierScores() {
+        TextSegment boot = TextSegment.from("Spring Boot 快速入门");
+        List<RetrievalCandidate> input = List.of(
+                RetrievalCandidate.vector("v1", TextSegment.from("纯向量检索策略"), 0.90).withRrfScore(0.03),
+                RetrievalCandidate.vector("v2", boot, 0.60).withRrfScore(0.02)
+        );
+
+        List<RetrievalCandidate> output = new KeywordReranker()
+                .rerankCandidates(input, List.of("boot"), 0.10);
+
+        assertSame(boot, output.get(0).segment());
+        assertEquals(0.60, output.get(0).vectorScore());
+        assertEquals(0.02 + 1.10, output.get(0).keywordScore(), 1e-9);
+        assertEquals(0.03, output.get(1).keywordScore(), 1e-9);
+    }
 }
@@ -0,0 +1,378 @@
+package com.example.rag.retrieval;
+
+import com.example.rag.eval.EvaluationCase;
+import com.example.rag.eval.EvaluationDataset;
+import com.example.rag.eval.EvaluationReport;
+import com.example.rag.eval.EvaluationService;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.MetadataFilterBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlatEmbeddingStoreTest {
+
+    private static final int DIMENSION = 24;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void search_shouldReturnExactTopKWithParallelScan() {
+        Random random = new Random(7);
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            embeddings.add(Embedding.from(randomVector(random)));
+            segments.add(TextSegment.from("分片" + i, new Metadata().put("version", "v" + (i % 3))));
+        }
+        float[] query = randomVector(random);
+        List<Integer> expected = IntStream.range(0, embeddings.size()).boxed()
+                .sorted(Comparator.comparingDouble(i -> -cosine(query, embeddings.get(i).vector())))
+                .limit(10)
+                .toList();
+
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, DIMENSION, 4, 1)) {
+            store.addAll(embeddings, segments);
+            List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(query))
+                    .maxResults(10)
+                    .minScore(0.0)
+                    .build()).matches();
+
+            assertEquals(expected.stream().map(i -> "分片" + i).toList(),
+                    matches.stream().map(match -> match.embedded().text()).toList());
+            double best = cosine(query, embeddings.get(expected.get(0)).vector());
+            assertEquals(RelevanceScore.fromCosineSimilarity(best), matches.get(0).score(), 1e-5);
+            assertEquals(embeddings.get(expected.get(0)), matches.get(0).embedding());
+        }
+    }
+
+    @Test
+    void search_shouldApplyMetadataFilters() {
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, 2, 1, 1)) {
+            store.addAll(List.of(
+                            Embedding.from(new float[]{1.0f, 0.0f}),
+                            Embedding.from(new float[]{0.9f, 0.1f}),
+                            Embedding.from(new float[]{0.8f, 0.2f}),
+                            Embedding.from(new float[]{0.7f, 0.3f})),
+                    List.of(segment("a", "pdf", "v1", "guide,api"),
+                            segment("b", "markdown", "v1", "ops"),
+                            segment("c", "pdf", "v2", "faq"),
+                            TextSegment.from("d")));
+
+            Filter scoped = MetadataFilterBuilder.metadataKey("version").isEqualTo("v1")
+                    .and(MetadataFilterBuilder.metadataKey("source").isEqualTo("pdf"))
+                    .and(MetadataFilterBuilder.metadataKey("tags").containsString("api"));
+            assertEquals(List.of("a"), texts(store, scoped));
+
+            Filter tags = MetadataFilterBuilder.metadataKey("tags").containsString("ops")
+                    .or(MetadataFilterBuilder.metadataKey("tags").containsString("faq"));
+            assertEquals(List.of("b", "c"), texts(store, tags));
+
+            // 没有 source 的分片也满足 NOT
+            Filter notPdf = Filter.not(MetadataFilterBuilder.metadataKey("source").isEqualTo("pdf"));
+            assertEquals(List.of("b", "d"), texts(store, notPdf));
+        }
+    }
+
+    @Test
+    void store_shouldReplayRecordsAfterReopen() throws IOException {
+        List<String> ids;
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, 2, 1, 1)) {
+            ids = store.addAll(List.of(
+                            Embedding.from(new float[]{1.0f, 0.0f}),
+                            Embedding.from(new float[]{0.9f, 0.1f}),
+                            Embedding.from(new float[]{0.8f, 0.2f})),
+                    List.of(TextSegment.from("a", new Metadata().put("version", "v1").put("index", 1)),
+                            segment("b", "pdf", "v2", "api"),
+                            segment("c", "pdf", "v3", "api")));
+            store.removeAll(MetadataFilterBuilder.metadataKey("version").isEqualTo("v2"));
+            store.remove(ids.get(2));
+        }
+        // 模拟写入记录时进程崩溃：日志末尾残留半条记录
+        Files.write(tempDir.resolve(FlatEmbeddingStore.RECORD_FILE), new byte[]{0, 0, 0, 42, 1},
+                StandardOpenOption.APPEND);
+
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, 2, 1, 1)) {
+            assertEquals(1, store.size());
+            List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(new float[]{1.0f, 0.0f}))
+                    .maxResults(5)
+                    .build()).matches();
+            assertEquals(1, matches.size());
+            assertEquals(ids.get(0), matches.get(0).embeddingId());
+            assertEquals(1, matches.get(0).embedded().metadata().getInteger("index"));
+
+            store.add(Embedding.from(new float[]{0.0f, 1.0f}), TextSegment.from("e"));
+            assertEquals(List.of("a", "e"), texts(store, null));
+
+            store.removeAll();
+            assertEquals(0, store.size());
+            assertTrue(texts(store, null).isEmpty());
+        }
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, 2, 1, 1)) {
+            assertEquals(0, store.size());
+        }
+    }
+
+    @Test
+    void removeAll_shouldDeleteByIdWithoutScanningRecords() {
+        // "Aa" 与 "BB" 的 hashCode 相同，同一ID重复写入的两行都应删除
+        List<String> ids = new ArrayList<>(List.of("Aa", "BB", "dup", "dup"));
+        for (int i = 0; i < 100; i++) {
+            ids.add("id-" + i);
+        }
+        List<Embedding> embeddings = ids.stream()
+                .map(id -> Embedding.from(new float[]{1.0f, id.length()}))
+                .toList();
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, 2, 1, 1)) {
+            store.addAll(ids, embeddings, ids.stream().map(TextSegment::from).toList());
+        }
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, 2, 1, 1)) {
+            store.removeAll(List.of("Aa", "dup", "id-7", "missing"));
+
+            assertEquals(ids.size() - 4, store.size());
+            List<String> remaining = store.search(EmbeddingSearchRequest.builder()
+                            .queryEmbedding(Embedding.from(new float[]{1.0f, 0.0f}))
+                            .maxResults(ids.size())
+                            .minScore(0.0)
+                            .build()).matches().stream()
+                    .map(match -> match.embedded().text())
+                    .toList();
+            assertEquals(ids.size() - 4, remaining.size());
+            assertTrue(remaining.contains("BB"));
+            assertTrue(remaining.contains("id-8"));
+            assertTrue(!remaining.contains("Aa") && !remaining.contains("dup") && !remaining.contains("id-7"));
+        }
+    }
+
+    @Test
+    void search_shouldRecoverAfterInterruptedRecordRead() {
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, 2, 1, 1)) {
+            store.add(Embedding.from(new float[]{1.0f, 0.0f}), TextSegment.from("x"));
+
+            // 模拟超时分支被 cancel(true)：读记录时线程已被中断，通道被 JDK 关闭
+            Thread.currentThread().interrupt();
+            try {
+                assertThrows(IllegalStateException.class, () -> nearest(store, new float[]{1.0f, 0.0f}));
+            } finally {
+                Thread.interrupted();
+            }
+
+            assertEquals(List.of("x"), nearest(store, new float[]{1.0f, 0.0f}));
+            store.add(Embedding.from(new float[]{0.0f, 1.0f}), TextSegment.from("y"));
+            assertEquals(List.of("y"), nearest(store, new float[]{0.0f, 1.0f}));
+        }
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, 2, 1, 1)) {
+            assertEquals(2, store.size());
+        }
+    }
+
+    @Test
+    void open_shouldRejectDimensionMismatch() {
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, 2, 1, 1)) {
+            store.add(Embedding.from(new float[]{1.0f, 0.0f}));
+        }
+        assertThrows(IllegalStateException.class, () -> new FlatEmbeddingStore(tempDir, 3, 1, 1));
+    }
+
+    @Test
+    void scorers_shouldAgreeWithScalar() {
+        Random random = new Random(11);
+        VectorScorer scalar = new ScalarVectorScorer();
+        VectorScorer best = VectorScorer.create();
+        for (int length : new int[]{1, 7, 16, 33, 384}) {
+            // 与映射文件相同：直接缓冲区、小端，行从偏移5处开始
+            float[] a = new float[length];
+            ByteBuffer b = ByteBuffer.allocateDirect((length + 5) * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            double expected = 0;
+            for (int i = 0; i < a.length; i++) {
+                a[i] = random.nextFloat() - 0.5f;
+            }
+            for (int i = 0; i < length + 5; i++) {
+                b.putFloat(i * Float.BYTES, random.nextFloat() - 0.5f);
+            }
+            for (int i = 0; i < length; i++) {
+                expected += a[i] * b.getFloat((5 + i) * Float.BYTES);
+            }
+            assertEquals(expected, scalar.dot(a, b, 5 * Float.BYTES, length), 1e-4);
+            assertEquals(scalar.dot(a, b, 5 * Float.BYTES, length), best.dot(a, b, 5 * Float.BYTES, length), 1e-4,
+                    best.name());
+
+            byte[] codesA = new byte[length];
+            byte[] codesB = new byte[length + 5];
+            random.nextBytes(codesA);
+            random.nextBytes(codesB);
+            ByteBuffer mapped = ByteBuffer.allocateDirect(codesB.length).put(codesB);
+            int expectedCodes = 0;
+            for (int i = 0; i < length; i++) {
+                expectedCodes += codesA[i] * codesB[5 + i];
+            }
+            assertEquals(expectedCodes, scalar.dot(codesA, mapped, 5, length));
+            assertEquals(expectedCodes, best.dot(codesA, mapped, 5, length), best.name());
+        }
+    }
+
+    @Test
+    void int8_shouldKeepRecallOfExactScan() {
+        Random random = new Random(13);
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            embeddings.add(Embedding.from(randomVector(random)));
+            segments.add(TextSegment.from("<" + i + ">"));
+        }
+        List<float[]> queries = new ArrayList<>();
+        List<EvaluationCase> cases = new ArrayList<>();
+        for (int q = 0; q < 100; q++) {
+            float[] query = randomVector(random);
+            int nearest = IntStream.range(0, embeddings.size()).boxed()
+                    .max(Comparator.comparingDouble(i -> cosine(query, embeddings.get(i).vector())))
+                    .orElseThrow();
+            queries.add(query);
+            cases.add(new EvaluationCase(String.valueOf(q), List.of("<" + nearest + ">")));
+        }
+
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, DIMENSION, 2, 1, true, 5, 1000)) {
+            // 分批写入：前1000行达到样本数时标定，其余批次只编码新行
+            for (int i = 0; i < embeddings.size(); i += 500) {
+                store.addAll(embeddings.subList(i, i + 500), segments.subList(i, i + 500));
+            }
+            assertNotNull(store.calibration());
+            EvaluationReport report = new EvaluationService().evaluate(new EvaluationDataset(cases),
+                    (question, topK) -> store.search(EmbeddingSearchRequest.builder()
+                                    .queryEmbedding(Embedding.from(queries.get(Integer.parseInt(question))))
+                                    .maxResults(topK)
+                                    .minScore(0.0)
+                                    .build()).matches().stream()
+                            .map(EmbeddingMatch::embedded)
+                            .toList(), 10);
+
+            assertTrue(report.hitRate() >= 0.95, "int8 recall@10=" + report.hitRate());
+            // 重排后得分为精确值
+            float[] query = queries.get(0);
+            EmbeddingMatch<TextSegment> top = store.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(query))
+                    .maxResults(1)
+                    .build()).matches().get(0);
+            int row = Integer.parseInt(top.embedded().text().replaceAll("[<>]", ""));
+            assertEquals(RelevanceScore.fromCosineSimilarity(cosine(query, embeddings.get(row).vector())),
+                    top.score(), 1e-5);
+        }
+    }
+
+    @Test
+    void calibrate_shouldRunOnceWhenSampleIsReachedAndPersist() {
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, 2, 1, 1, true, 4, 2)) {
+            // 样本不足时不标定，检索走精确扫描
+            store.add(Embedding.from(new float[]{1.0f, 0.0f}), TextSegment.from("x"));
+            assertEquals(null, store.calibration());
+            assertEquals(List.of("x"), nearest(store, new float[]{1.0f, 0.1f}));
+
+            store.add(Embedding.from(new float[]{0.0f, 1.0f}), TextSegment.from("y"));
+            assertArrayEquals(new float[]{-0.1f, -0.1f}, store.calibration()[0], 1e-6f);
+            assertArrayEquals(new float[]{1.1f, 1.1f}, store.calibration()[1], 1e-6f);
+
+            // 之后的写入不再改变标定，超出范围的分量被截断，由精确重排保证结果
+            store.addAll(List.of(Embedding.from(new float[]{-1.0f, 0.2f})), List.of(TextSegment.from("z")));
+            assertArrayEquals(new float[]{-0.1f, -0.1f}, store.calibration()[0], 1e-6f);
+            assertEquals(List.of("z"), nearest(store, new float[]{-1.0f, 0.2f}));
+        }
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, 2, 1, 1, true, 4, 2)) {
+            assertArrayEquals(new float[]{-0.1f, -0.1f}, store.calibration()[0], 1e-6f);
+            assertEquals(List.of("x"), nearest(store, new float[]{1.0f, 0.1f}));
+            store.removeAll();
+            assertEquals(null, store.calibration());
+        }
+    }
+
+    @Test
+    void open_shouldEncodeExistingRowsWhenQuantizationEnabled() {
+        Random random = new Random(17);
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            embeddings.add(Embedding.from(randomVector(random)));
+            segments.add(TextSegment.from("<" + i + ">"));
+        }
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, DIMENSION, 1, 1)) {
+            store.addAll(embeddings, segments);
+        }
+        assertTrue(Files.notExists(tempDir.resolve(FlatEmbeddingStore.CODE_FILE)));
+
+        try (FlatEmbeddingStore store = new FlatEmbeddingStore(tempDir, DIMENSION, 1, 1, true, 5, 100)) {
+            assertNotNull(store.calibration());
+            assertEquals(List.of("<42>"), nearest(store, embeddings.get(42).vector()));
+        }
+    }
+
+    private static List<String> texts(FlatEmbeddingStore store, Filter filter) {
+        return store.search(EmbeddingSearchRequest.builder()
+                        .queryEmbedding(Embedding.from(new float[]{1.0f, 0.0f}))
+                        .maxResults(10)
+                        .filter(filter)
+                        .build()).matches().stream()
+                .map(match -> match.embedded().text())
+                .toList();
+    }
+
+    private static List<String> nearest(FlatEmbeddingStore store, float[] query) {
+        return store.search(EmbeddingSearchRequest.builder()
+                        .queryEmbedding(Embedding.from(query))
+                        .maxResults(1)
+                        .build()).matches().stream()
+                .map(match -> match.embedded().text())
+                .toList();
+    }
+
+    private static TextSegment segment(String text, String source, String version, String tags) {
+        return TextSegment.from(text, new Metadata()
+                .put("source", source)
+                .put("version", version)
+                .put("tags", tags));
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
@@ -7,8 +7,11 @@ import dev.langchain4j.rag.query.Query;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class HybridRetrievalServiceTest {
@@ -33,4 +36,51 @@ class HybridRetrievalServiceTest {
         assertTrue(result.stream().anyMatch(c -> c.textSegment().text().equals("A")));
         assertTrue(result.stream().anyMatch(c -> c.textSegment().text().equals("C")));
     }
+
+    @Test
+    void retrieveCandidates_shouldRunEachSourceOnce() {
+        AtomicInteger vectorCalls = new AtomicInteger();
+        AtomicInteger fullTextCalls = new AtomicInteger();
+        ContentRetriever vectorRetriever = query -> {
+            vectorCalls.incrementAndGet();
+            return List.of(Content.from(TextSegment.from("A")));
+        };
+        ContentRetriever fullTextRetriever = query -> {
+            fullTextCalls.incrementAndGet();
+            return List.of(Content.from(TextSegment.from("B")));
+        };
+
+        HybridRetrievalService service = new HybridRetrievalService(vectorRetriever, fullTextRetriever);
+
+        RetrievalCandidates candidates = service.retrieveCandidates(Query.from("test"), 5);
+
+        assertEquals(1, vectorCalls.get());
+        assertEquals(1, fullTextCalls.get());
+        assertEquals("A", candidates.vector().get(0).text());
+        assertEquals("B", candidates.fullText().get(0).text());
+        assertEquals(2, candidates.fused().size());
+    }
+
+    @Test
+    void fuseCandidates_shouldKeepPerStageScores() {
+        TextSegment shared = TextSegment.from("B");
+        List<RetrievalCandidate> vector = List.of(
+                RetrievalCandidate.vector("id-a", TextSegment.from("A"), 0.91),
+                RetrievalCandidate.vector("id-b", shared, 0.85)
+        );
+        List<RetrievalCandidate> fullText = List.of(
+                RetrievalCandidate.fullText(TextSegment.from("B"), 7.5)
+        );
+
+        List<RetrievalCandidate> fused = HybridRetrievalService.fuseCandidates(vector, fullText, 5).fused();
+
+        RetrievalCandidate first = fused.get(0);
+        assertEquals("id-b", first.id());
+        assertSame(shared, first.segment());
+        assertEquals(0.85, first.vectorScore());
+        assertEquals(7.5, first.bm25Score());
+        assertEquals(1.0 / 62 + 1.0 / 61, first.rrfScore(), 1e-9);
+        assertEquals(first.rrfScore(), first.score());
+        assertNull(fused.get(1).bm25Score());
+    }
 }
@@ -0,0 +1,127 @@
+package com.example.rag.retrieval;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.MetadataFilterBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LuceneEmbeddingStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void search_shouldApplyMetadataFilterBeforeKnn() {
+        try (LuceneEmbeddingStore store = new LuceneEmbeddingStore(tempDir, 16, 100, 2)) {
+            List<Embedding> embeddings = new ArrayList<>();
+            List<TextSegment> segments = new ArrayList<>();
+            // 与查询最接近的一批分片都不满足过滤条件，后置过滤会返回空结果
+            for (int i = 0; i < 50; i++) {
+                embeddings.add(Embedding.from(new float[]{1.0f, 0.01f * i, 0.0f}));
+                segments.add(segment("干扰" + i, "markdown", "v2", "api"));
+            }
+            embeddings.add(Embedding.from(new float[]{0.0f, 1.0f, 0.0f}));
+            segments.add(segment("产品A 使用指南", "pdf", "v1", "guide,api"));
+            embeddings.add(Embedding.from(new float[]{0.0f, 0.0f, 1.0f}));
+            segments.add(segment("运维手册", "pdf", "v1", "ops"));
+            store.addAll(embeddings, segments);
+
+            Filter filter = MetadataFilterBuilder.metadataKey("version").isEqualTo("v1")
+                    .and(MetadataFilterBuilder.metadataKey("source").isEqualTo("pdf"))
+                    .and(MetadataFilterBuilder.metadataKey("tags").containsString("guide"));
+            List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(new float[]{1.0f, 0.0f, 0.0f}))
+                    .maxResults(2)
+                    .filter(filter)
+                    .build()).matches();
+
+            assertEquals(1, matches.size());
+            assertEquals("产品A 使用指南", matches.get(0).embedded().text());
+            assertEquals("guide,api", matches.get(0).embedded().metadata().getString("tags"));
+            assertEquals(RelevanceScore.fromCosineSimilarity(0.0), matches.get(0).score(), 1e-6);
+            assertNotNull(matches.get(0).embedding());
+        }
+    }
+
+    @Test
+    void search_shouldSupportOrAndNotFilters() {
+        try (LuceneEmbeddingStore store = new LuceneEmbeddingStore(tempDir, 16, 100, 10)) {
+            store.addAll(List.of(
+                            Embedding.from(new float[]{1.0f, 0.0f}),
+                            Embedding.from(new float[]{0.9f, 0.1f}),
+                            Embedding.from(new float[]{0.8f, 0.2f})),
+                    List.of(segment("a", "pdf", "v1", "guide"),
+                            segment("b", "markdown", "v1", "ops"),
+                            segment("c", "html", "v2", "faq")));
+
+            Filter tags = MetadataFilterBuilder.metadataKey("tags").containsString("guide")
+                    .or(MetadataFilterBuilder.metadataKey("tags").containsString("faq"));
+            assertEquals(List.of("a", "c"), texts(store, tags));
+
+            Filter notPdf = Filter.not(MetadataFilterBuilder.metadataKey("source").isEqualTo("pdf"));
+            assertEquals(List.of("b", "c"), texts(store, notPdf));
+
+            Filter versions = MetadataFilterBuilder.metadataKey("version").isIn("v2", "v3");
+            assertEquals(List.of("c"), texts(store, versions));
+        }
+    }
+
+    @Test
+    void store_shouldPersistAcrossReopenAndRemoveByFilter() {
+        Embedding query = Embedding.from(new float[]{1.0f, 0.0f});
+        try (LuceneEmbeddingStore store = new LuceneEmbeddingStore(tempDir, 16, 100, 10)) {
+            TextSegment indexed = TextSegment.from("第一段", new Metadata()
+                    .put("version", "v1")
+                    .put("index", 3));
+            store.add(Embedding.from(new float[]{1.0f, 0.0f}), indexed);
+            store.add(Embedding.from(new float[]{0.0f, 1.0f}), segment("第二段", "pdf", "v2", "api"));
+        }
+
+        try (LuceneEmbeddingStore store = new LuceneEmbeddingStore(tempDir, 16, 100, 10)) {
+            List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(query)
+                    .maxResults(5)
+                    .minScore(0.9)
+                    .build()).matches();
+            assertEquals(1, matches.size());
+            assertEquals(3, matches.get(0).embedded().metadata().getInteger("index"));
+
+            store.removeAll(MetadataFilterBuilder.metadataKey("version").isEqualTo("v1"));
+            assertEquals(List.of("第二段"), texts(store, null));
+
+            store.removeAll();
+            assertTrue(texts(store, null).isEmpty());
+        }
+    }
+
+    private static List<String> texts(LuceneEmbeddingStore store, Filter filter) {
+        return store.search(EmbeddingSearchRequest.builder()
+                        .queryEmbedding(Embedding.from(new float[]{1.0f, 0.0f}))
+                        .maxResults(10)
+                        .filter(filter)
+                        .build()).matches().stream()
+                .map(match -> match.embedded().text())
+                .toList();
+    }
+
+    private static TextSegment segment(String text, String source, String version, String tags) {
+        return TextSegment.from(text, new Metadata()
+                .put("source", source)
+                .put("version", version)
+                .put("tags", tags));
+    }
+}
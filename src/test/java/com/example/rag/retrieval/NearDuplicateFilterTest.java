@@ -0,0 +1,51 @@
+package com.example.rag.retrieval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NearDuplicateFilterTest {
+
+    private static final String PARAGRAPH = "企业知识库支持按版本、来源和标签过滤检索结果，"
+            + "上传文档后系统会自动切分为若干分片并写入向量库与全文索引，"
+            + "问答时先召回候选分片，再经过重排选出证据交给大模型生成答案。";
+
+    @Test
+    void filter_shouldCollapseNearDuplicatesAndKeepFirst() {
+        NearDuplicateFilter filter = new NearDuplicateFilter(6, 3, 100);
+        // 仅标点、空白与个别用词不同的另一版本
+        String revised = PARAGRAPH.replace("，", ", ").replace("大模型", "LLM");
+        String other = "Ollama 部署时建议开启 keep_alive，避免模型频繁卸载导致首个请求耗时过长。";
+
+        List<String> kept = filter.filter(List.of(PARAGRAPH, other, revised, PARAGRAPH), Function.identity());
+
+        assertThat(kept).containsExactly(PARAGRAPH, other);
+    }
+
+    @Test
+    void filter_shouldKeepDistinctSegments() {
+        NearDuplicateFilter filter = new NearDuplicateFilter(6, 3, 100);
+        List<String> input = List.of(
+                "如何上传文档到知识库",
+                "如何删除知识库中的文档",
+                "段落1",
+                "段落2"
+        );
+
+        assertThat(filter.filter(input, Function.identity())).containsExactlyElementsOf(input);
+    }
+
+    @Test
+    void signature_shouldIgnoreCaseAndPunctuation() {
+        NearDuplicateFilter filter = new NearDuplicateFilter(0, 3, 100);
+
+        assertThat(filter.signature("Spring Boot, 快速入门!"))
+                .isEqualTo(filter.signature("spring boot 快速入门"));
+        assertThat(NearDuplicateFilter.hammingDistance(
+                filter.signature(PARAGRAPH), filter.signature("完全不同的一段关于缓存淘汰策略的说明文字")))
+                .isGreaterThan(6);
+    }
+}
@@ -42,7 +42,9 @@ class IngestServiceLlamaIndexTest {
                 fullTextSearchService,
                 splitter,
                 metadataService,
-                llamaIndexClient
+                llamaIndexClient,
+                null,
+                null
         );
 
         MockMultipartFile file = new MockMultipartFile(
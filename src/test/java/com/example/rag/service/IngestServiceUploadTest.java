@@ -1,6 +1,7 @@
 package com.example.rag.service;
 
 import com.example.rag.config.RagProperties;
+import com.example.rag.perf.RagCache;
 import com.example.rag.retrieval.FullTextSearchService;
 import com.example.rag.service.dto.UploadOptions;
 import com.example.rag.service.dto.UploadResult;
@@ -24,6 +25,7 @@ import java.nio.file.Path;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class IngestServiceUploadTest {
@@ -48,6 +50,8 @@ class IngestServiceUploadTest {
                 fullTextSearchService,
                 splitter,
                 metadataService,
+                null,
+                null,
                 null
         );
 
@@ -64,6 +68,39 @@ class IngestServiceUploadTest {
         Mockito.verify(ingestor).ingest(Mockito.anyList());
     }
 
+    @Test
+    void upload_shouldInvalidateCachedScope(@TempDir Path tempDir) {
+        RagProperties properties = new RagProperties();
+        properties.getIngest().setUploadDir(tempDir.toString());
+        properties.getIngest().setBatchEnabled(false);
+        properties.getFulltext().setEnabled(false);
+        RagCache ragCache = new RagCache(properties);
+
+        IngestService ingestService = new IngestService(
+                properties,
+                Mockito.mock(EmbeddingStoreIngestor.class),
+                Mockito.mock(BatchEmbeddingIngestor.class),
+                Mockito.mock(FullTextSearchService.class),
+                Mockito.mock(DocumentSplitter.class),
+                Mockito.mock(DocumentMetadataService.class),
+                null,
+                null,
+                ragCache
+        );
+        long v2Before = ragCache.generation("v2", "manual");
+        long otherBefore = ragCache.generation("v3", null);
+        long anyBefore = ragCache.generation(null, null);
+
+        MockMultipartFile file = new MockMultipartFile(
+                "files", "a.txt", "text/plain", "hello".getBytes()
+        );
+        ingestService.ingestUploads(List.of(file), new UploadOptions("v2", List.of(), "manual"));
+
+        assertNotEquals(v2Before, ragCache.generation("v2", "manual"));
+        assertNotEquals(anyBefore, ragCache.generation(null, null));
+        assertEquals(otherBefore, ragCache.generation("v3", null));
+    }
+
     @Test
     void upload_docx_and_html_shouldBeParsed(@TempDir Path tempDir) throws Exception {
         RagProperties properties = new RagProperties();
@@ -84,6 +121,8 @@ class IngestServiceUploadTest {
                 fullTextSearchService,
                 splitter,
                 metadataService,
+                null,
+                null,
                 null
         );
 
@@ -142,6 +181,8 @@ class IngestServiceUploadTest {
                 fullTextSearchService,
                 splitter,
                 metadataService,
+                null,
+                null,
                 null
         );
 
@@ -0,0 +1,87 @@
+package com.example.rag.service;
+
+import com.example.rag.config.RagProperties;
+import com.example.rag.perf.AdaptiveLimiter;
+import com.example.rag.perf.QueryLimiter;
+import com.example.rag.perf.QueryRejectedException;
+import com.example.rag.service.dto.RagRequest;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RagServiceAdaptiveLimitTest {
+
+    @Test
+    void ask_shouldRejectEarlyWhenSlowModelMakesQueueWaitExceedBudget() throws Exception {
+        RagProperties properties = new RagProperties();
+        properties.getCache().setEnabled(false);
+        properties.getRetrieval().getHybrid().setEnabled(false);
+        properties.getRetrieval().getRerank().setKeywordEnabled(false);
+        properties.getFulltext().setEnabled(false);
+
+        EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[]{1.0f, 0.0f}))
+                .toList());
+        InMemoryEmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        embeddingStore.add(Embedding.from(new float[]{1.0f, 0.0f}), TextSegment.from("证据"));
+
+        // 模拟慢速LLM：首次调用耗时200ms，之后阻塞到放行
+        CountDownLatch entered = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        ChatModel slowChatModel = new ChatModel() {
+            @Override
+            public ChatResponse chat(dev.langchain4j.model.chat.request.ChatRequest request) {
+                entered.countDown();
+                try {
+                    if (entered.getCount() == 1) {
+                        Thread.sleep(200);
+                    } else {
+                        release.await(2, TimeUnit.SECONDS);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ChatResponse.builder()
+                        .aiMessage(dev.langchain4j.data.message.AiMessage.from("答案"))
+                        .build();
+            }
+        };
+
+        AdaptiveLimiter adaptiveLimiter = new AdaptiveLimiter("test", 1, 1, 1, 0.2, 0.9, Duration.ofMillis(100));
+        RagService ragService = RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(embeddingStore).chatModel(slowChatModel)
+                .queryLimiter(QueryLimiter.adaptive("test", adaptiveLimiter))
+                .build();
+
+        // 预热：得到约200ms的阶段耗时
+        assertEquals("答案", ragService.ask(new RagRequest("问题1", null, null, null, null, null, null)).answer());
+        assertTrue(adaptiveLimiter.getLongRtt().toMillis() >= 200);
+
+        CompletableFuture<String> holder = CompletableFuture.supplyAsync(
+                () -> ragService.ask(new RagRequest("问题2", null, null, null, null, null, null)).answer());
+        assertTrue(entered.await(2, TimeUnit.SECONDS));
+
+        // 唯一的许可被占用，预估排队 ≈ 200ms > 100ms 预算，立即拒绝
+        long start = System.nanoTime();
+        assertThrows(QueryRejectedException.class,
+                () -> ragService.ask(new RagRequest("问题3", null, null, null, null, null, null)));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+
+        release.countDown();
+        assertEquals("答案", holder.get(2, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.rag.service;
+
+import com.example.rag.config.RagProperties;
+import com.example.rag.perf.QueryLimiter;
+import com.example.rag.perf.RetrievalExecutor;
+import com.example.rag.service.dto.BatchAnswer;
+import com.example.rag.service.dto.RagRequest;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RagServiceBatchTest {
+
+    @Test
+    void askAll_shouldEmbedAllQuestionsOnceAndReuseResultCache() {
+        RagProperties properties = new RagProperties();
+        properties.getRetrieval().getHybrid().setEnabled(false);
+        properties.getRetrieval().getRerank().setKeywordEnabled(false);
+        properties.getFulltext().setEnabled(false);
+
+        AtomicInteger embedCalls = new AtomicInteger();
+        EmbeddingModel embeddingModel = segments -> {
+            embedCalls.incrementAndGet();
+            return Response.from(segments.stream()
+                    .map(segment -> Embedding.from(new float[]{1.0f, 0.0f}))
+                    .toList());
+        };
+
+        AtomicInteger chatCalls = new AtomicInteger();
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse chat(dev.langchain4j.model.chat.request.ChatRequest request) {
+                chatCalls.incrementAndGet();
+                return ChatResponse.builder()
+                        .aiMessage(dev.langchain4j.data.message.AiMessage.from("答案"))
+                        .build();
+            }
+        };
+
+        InMemoryEmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        embeddingStore.add(Embedding.from(new float[]{1.0f, 0.0f}), TextSegment.from("证据"));
+
+        RetrievalExecutor batchExecutor = RetrievalExecutor.threadPool("test-batch", 4, 100);
+        RagService ragService = RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(embeddingStore).chatModel(chatModel)
+                .batchExecutor(batchExecutor)
+                .build();
+
+        List<RagRequest> requests = List.of(
+                new RagRequest("问题1", null, null, null, null, null, null),
+                new RagRequest("问题2", null, null, null, null, null, null),
+                new RagRequest("问题3", null, null, null, null, null, null));
+        List<BatchAnswer> first = ragService.askAll(requests);
+        List<BatchAnswer> second = ragService.askAll(requests);
+        batchExecutor.close();
+
+        assertEquals(3, first.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(i, first.get(i).index());
+            assertEquals("答案", first.get(i).response().answer());
+            assertNull(first.get(i).error());
+        }
+        // 三个问题只调用一次embedAll；第二批全部命中结果缓存
+        assertEquals(1, embedCalls.get());
+        assertEquals(3, chatCalls.get());
+        assertEquals(3, second.size());
+    }
+
+    @Test
+    void askAll_shouldQueueItemsBeyondLimiterCapacityInsteadOfRejecting() {
+        RagProperties properties = new RagProperties();
+        properties.getRetrieval().getHybrid().setEnabled(false);
+        properties.getRetrieval().getRerank().setKeywordEnabled(false);
+        properties.getFulltext().setEnabled(false);
+
+        EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[]{1.0f, 0.0f}))
+                .toList());
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse chat(dev.langchain4j.model.chat.request.ChatRequest request) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ChatResponse.builder()
+                        .aiMessage(dev.langchain4j.data.message.AiMessage.from("答案"))
+                        .build();
+            }
+        };
+        InMemoryEmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        embeddingStore.add(Embedding.from(new float[]{1.0f, 0.0f}), TextSegment.from("证据"));
+
+        // 舱壁只允许1个并发且不等待，批量并行度为4
+        QueryLimiter limiter = QueryLimiter.semaphore("test-batch-limit", 1, Duration.ZERO);
+        RetrievalExecutor batchExecutor = RetrievalExecutor.threadPool("test-batch", 4, 100);
+        RagService ragService = RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(embeddingStore).chatModel(chatModel)
+                .queryLimiter(limiter).batchExecutor(batchExecutor)
+                .build();
+
+        List<BatchAnswer> answers = ragService.askAll(IntStream.range(0, 8)
+                .mapToObj(i -> new RagRequest("问题" + i, null, null, null, null, null, null))
+                .toList());
+        batchExecutor.close();
+
+        assertEquals(8, answers.size());
+        answers.forEach(answer -> assertNull(answer.error()));
+    }
+}
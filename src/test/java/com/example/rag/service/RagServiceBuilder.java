@@ -0,0 +1,120 @@
+package com.example.rag.service;
+
+import com.example.rag.config.RagProperties;
+import com.example.rag.llamaindex.LlamaIndexClient;
+import com.example.rag.perf.QueryLimiter;
+import com.example.rag.perf.QueryLog;
+import com.example.rag.perf.RagCache;
+import com.example.rag.perf.RagMetrics;
+import com.example.rag.perf.RetrievalExecutor;
+import com.example.rag.prompt.TokenCounter;
+import com.example.rag.retrieval.FullTextSearchService;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.scoring.ScoringModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+// 测试用 RagService 构造：未设置的依赖使用直连执行器、不限流与按 properties 新建的缓存/全文检索
+final class RagServiceBuilder {
+
+    private final RagProperties properties;
+    private EmbeddingModel embeddingModel;
+    private EmbeddingStore<TextSegment> embeddingStore;
+    private ChatModel chatModel;
+    private StreamingChatModel streamingChatModel;
+    private FullTextSearchService fullTextSearchService;
+    private RagCache ragCache;
+    private QueryLimiter queryLimiter = QueryLimiter.disabled();
+    private QueryLimiter retrievalLimiter = QueryLimiter.disabled();
+    private ScoringModel scoringModel;
+    private LlamaIndexClient llamaIndexClient;
+    private RetrievalExecutor retrievalExecutor = RetrievalExecutor.direct();
+    private RetrievalExecutor batchExecutor = RetrievalExecutor.direct();
+    private RetrievalExecutor generationExecutor = RetrievalExecutor.direct();
+    private TokenCounter tokenCounter;
+    private RagMetrics metrics;
+    private QueryLog queryLog;
+
+    private RagServiceBuilder(RagProperties properties) {
+        this.properties = properties;
+    }
+
+    static RagServiceBuilder with(RagProperties properties) {
+        return new RagServiceBuilder(properties);
+    }
+
+    RagServiceBuilder embeddingModel(EmbeddingModel embeddingModel) {
+        this.embeddingModel = embeddingModel;
+        return this;
+    }
+
+    RagServiceBuilder embeddingStore(EmbeddingStore<TextSegment> embeddingStore) {
+        this.embeddingStore = embeddingStore;
+        return this;
+    }
+
+    RagServiceBuilder chatModel(ChatModel chatModel) {
+        this.chatModel = chatModel;
+        return this;
+    }
+
+    RagServiceBuilder streamingChatModel(StreamingChatModel streamingChatModel) {
+        this.streamingChatModel = streamingChatModel;
+        return this;
+    }
+
+    RagServiceBuilder fullTextSearchService(FullTextSearchService fullTextSearchService) {
+        this.fullTextSearchService = fullTextSearchService;
+        return this;
+    }
+
+    RagServiceBuilder ragCache(RagCache ragCache) {
+        this.ragCache = ragCache;
+        return this;
+    }
+
+    RagServiceBuilder queryLimiter(QueryLimiter queryLimiter) {
+        this.queryLimiter = queryLimiter;
+        return this;
+    }
+
+    RagServiceBuilder scoringModel(ScoringModel scoringModel) {
+        this.scoringModel = scoringModel;
+        return this;
+    }
+
+    RagServiceBuilder llamaIndexClient(LlamaIndexClient llamaIndexClient) {
+        this.llamaIndexClient = llamaIndexClient;
+        return this;
+    }
+
+    RagServiceBuilder batchExecutor(RetrievalExecutor batchExecutor) {
+        this.batchExecutor = batchExecutor;
+        return this;
+    }
+
+    RagServiceBuilder generationExecutor(RetrievalExecutor generationExecutor) {
+        this.generationExecutor = generationExecutor;
+        return this;
+    }
+
+    RagServiceBuilder metrics(RagMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    RagServiceBuilder queryLog(QueryLog queryLog) {
+        this.queryLog = queryLog;
+        return this;
+    }
+
+    RagService build() {
+        return new RagService(embeddingModel, embeddingStore, chatModel, properties,
+                fullTextSearchService == null ? new FullTextSearchService(properties) : fullTextSearchService,
+                ragCache == null ? new RagCache(properties) : ragCache,
+                queryLimiter, scoringModel, llamaIndexClient, retrievalExecutor, streamingChatModel,
+                retrievalLimiter, batchExecutor, generationExecutor, tokenCounter, metrics, queryLog);
+    }
+}
@@ -1,10 +1,16 @@
 package com.example.rag.service;
 
 import com.example.rag.config.RagProperties;
+import com.example.rag.perf.PipelineStage;
 import com.example.rag.perf.QueryLimiter;
+import com.example.rag.perf.QueryLog;
+import com.example.rag.perf.QueryLogRecord;
 import com.example.rag.perf.RagCache;
 import com.example.rag.retrieval.FullTextSearchService;
 import com.example.rag.service.dto.RagRequest;
+import com.example.rag.service.dto.RagResponse;
+import com.example.rag.service.dto.RequestTimings;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.ChatModel;
@@ -16,11 +22,19 @@ import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingSearchResult;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class RagServiceCacheIntegrationTest {
 
@@ -57,8 +71,198 @@ class RagServiceCacheIntegrationTest {
             }
         };
 
-        TextSegment segment = TextSegment.from("证据");
-        EmbeddingStore<TextSegment> embeddingStore = new EmbeddingStore<>() {
+        EmbeddingStore<TextSegment> embeddingStore = singleMatchStore(TextSegment.from("证据"));
+
+        RagCache cache = new RagCache(properties);
+        QueryLimiter limiter = QueryLimiter.disabled();
+        FullTextSearchService fullTextSearchService = new FullTextSearchService(properties);
+
+        RagService ragService = RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(embeddingStore).chatModel(chatModel)
+                .fullTextSearchService(fullTextSearchService).ragCache(cache).queryLimiter(limiter)
+                .build();
+
+        RagRequest request = new RagRequest("问题", null, null, null, null, null, null);
+
+        ragService.ask(request);
+        ragService.ask(request);
+
+        assertEquals(1, embedCalls.get());
+        assertEquals(1, chatCalls.get());
+    }
+
+    @Test
+    void ask_shouldLookUpSemanticCacheInsideLimiter() {
+        RagProperties properties = new RagProperties();
+        properties.getCache().setEnabled(true);
+        properties.getCache().getSemantic().setEnabled(true);
+        properties.getRetrieval().getHybrid().setEnabled(false);
+        properties.getRetrieval().getRerank().setKeywordEnabled(false);
+        properties.getFulltext().setEnabled(false);
+        Set<Thread> embedThreads = ConcurrentHashMap.newKeySet();
+        EmbeddingModel embeddingModel = segments -> {
+            embedThreads.add(Thread.currentThread());
+            return Response.from(segments.stream()
+                    .map(segment -> Embedding.from(new float[]{1.0f}))
+                    .toList());
+        };
+        AtomicInteger chatCalls = new AtomicInteger();
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse chat(dev.langchain4j.model.chat.request.ChatRequest request) {
+                chatCalls.incrementAndGet();
+                return ChatResponse.builder()
+                        .aiMessage(dev.langchain4j.data.message.AiMessage.from("答案"))
+                        .build();
+            }
+        };
+        try (QueryLimiter limiter = QueryLimiter.threadPool("test-semantic", 1, 1, 1)) {
+            RagService ragService = RagServiceBuilder.with(properties)
+                    .embeddingModel(embeddingModel).embeddingStore(singleMatchStore(TextSegment.from("证据")))
+                    .chatModel(chatModel).queryLimiter(limiter)
+                    .build();
+
+            ragService.ask(new RagRequest("如何入库", null, null, null, null, null, null));
+            RagResponse similar = ragService.ask(new RagRequest("如何入库？", null, null, null, null, null, null));
+
+            assertEquals("答案", similar.answer());
+            assertEquals(1, chatCalls.get());
+            // 查询向量在限流线程中计算，不占用调用线程
+            assertTrue(!embedThreads.isEmpty() && !embedThreads.contains(Thread.currentThread()));
+        }
+    }
+
+    @Test
+    void ask_shouldRecomputeAfterScopeInvalidated() {
+        RagProperties properties = new RagProperties();
+        properties.getCache().setEnabled(true);
+        properties.getRetrieval().getHybrid().setEnabled(false);
+        properties.getRetrieval().getRerank().setKeywordEnabled(false);
+        properties.getFulltext().setEnabled(false);
+        EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[]{1.0f}))
+                .toList());
+        AtomicInteger chatCalls = new AtomicInteger();
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse chat(dev.langchain4j.model.chat.request.ChatRequest request) {
+                chatCalls.incrementAndGet();
+                return ChatResponse.builder()
+                        .aiMessage(dev.langchain4j.data.message.AiMessage.from("答案"))
+                        .build();
+            }
+        };
+        RagCache cache = new RagCache(properties);
+        RagService ragService = RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(singleMatchStore(TextSegment.from("证据")))
+                .chatModel(chatModel).ragCache(cache)
+                .build();
+        RagRequest request = new RagRequest("问题", null, null, "v1", null, null, null);
+
+        ragService.ask(request);
+        // 其他版本入库不影响 v1 范围的缓存
+        cache.invalidate("v2", "upload");
+        ragService.ask(request);
+        assertEquals(1, chatCalls.get());
+
+        // v1 范围入库后旧结果不再命中，重新生成并缓存
+        cache.invalidate("v1", "upload");
+        ragService.ask(request);
+        ragService.ask(request);
+        assertEquals(2, chatCalls.get());
+
+        cache.invalidateAll();
+        ragService.ask(request);
+        assertEquals(3, chatCalls.get());
+    }
+
+    @Test
+    void ask_shouldAttachTimingsOnlyInDebugMode() {
+        RagProperties properties = new RagProperties();
+        properties.getCache().setEnabled(true);
+        properties.getRetrieval().getHybrid().setEnabled(false);
+        properties.getRetrieval().getRerank().setKeywordEnabled(false);
+        properties.getFulltext().setEnabled(false);
+        EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[]{1.0f}))
+                .toList());
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse chat(dev.langchain4j.model.chat.request.ChatRequest request) {
+                return ChatResponse.builder()
+                        .aiMessage(dev.langchain4j.data.message.AiMessage.from("答案"))
+                        .build();
+            }
+        };
+        RagService ragService = RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(singleMatchStore(TextSegment.from("证据")))
+                .chatModel(chatModel)
+                .build();
+
+        RagResponse first = ragService.ask(new RagRequest("问题", null, null, null, null, null, null, true));
+        RequestTimings timings = first.timings();
+        assertNotNull(timings);
+        assertEquals(false, timings.cacheHits().get("result"));
+        assertTrue(timings.stageNanos().containsKey(PipelineStage.VECTOR_SEARCH.tag()));
+        assertTrue(timings.stageNanos().containsKey(PipelineStage.GENERATION.tag()));
+        assertEquals(1, timings.candidates().get(PipelineStage.VECTOR_SEARCH.tag()));
+        assertNotNull(timings.queueWaitNanos());
+        assertTrue(timings.totalNanos() > 0);
+
+        // 命中结果缓存：调试请求标记命中，缓存中的结果本身不带耗时
+        RagResponse cachedDebug = ragService.ask(new RagRequest("问题", null, null, null, null, null, null, true));
+        assertEquals(true, cachedDebug.timings().cacheHits().get("result"));
+        assertNull(ragService.ask(new RagRequest("问题", null, null, null, null, null, null)).timings());
+    }
+
+    @Test
+    void ask_shouldRecordQueryLogWithoutReturningTimings(@TempDir Path tempDir) throws Exception {
+        RagProperties properties = new RagProperties();
+        properties.getCache().setEnabled(true);
+        properties.getRetrieval().getHybrid().setEnabled(false);
+        properties.getRetrieval().getRerank().setKeywordEnabled(false);
+        properties.getFulltext().setEnabled(false);
+        EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[]{1.0f}))
+                .toList());
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse chat(dev.langchain4j.model.chat.request.ChatRequest request) {
+                return ChatResponse.builder()
+                        .aiMessage(dev.langchain4j.data.message.AiMessage.from("答案"))
+                        .build();
+            }
+        };
+        ObjectMapper objectMapper = new ObjectMapper();
+        QueryLog queryLog = new QueryLog(tempDir, 64, 1024 * 1024, 5, objectMapper);
+        RagService ragService = RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(singleMatchStore(TextSegment.from("证据")))
+                .chatModel(chatModel).queryLog(queryLog)
+                .build();
+
+        RagRequest request = new RagRequest(" 如何入库？ ", 5, null, "v1", List.of("faq"), null, null);
+        assertNull(ragService.ask(request).timings());
+        assertNull(ragService.ask(request).timings());
+        queryLog.close();
+
+        List<String> lines = Files.readAllLines(QueryLog.listFiles(tempDir).get(0));
+        assertEquals(2, lines.size());
+        QueryLogRecord miss = objectMapper.readValue(lines.get(0), QueryLogRecord.class);
+        QueryLogRecord hit = objectMapper.readValue(lines.get(1), QueryLogRecord.class);
+        assertEquals("如何入库？", miss.question());
+        assertEquals("v1", miss.version());
+        assertEquals(List.of("faq"), miss.tags());
+        assertEquals(5, miss.topK());
+        assertEquals("ask", miss.mode());
+        assertEquals("miss", miss.cache());
+        assertTrue(miss.stageNanos().containsKey(PipelineStage.GENERATION.tag()));
+        assertEquals(1, miss.evidenceIds().size());
+        assertEquals("result", hit.cache());
+        assertEquals(miss.evidenceIds(), hit.evidenceIds());
+    }
+
+    private EmbeddingStore<TextSegment> singleMatchStore(TextSegment segment) {
+        return new EmbeddingStore<>() {
             @Override
             public String add(Embedding embedding) {
                 throw new UnsupportedOperationException();
@@ -86,20 +290,5 @@ class RagServiceCacheIntegrationTest {
                 ));
             }
         };
-
-        RagCache cache = new RagCache(properties);
-        QueryLimiter limiter = QueryLimiter.disabled();
-        FullTextSearchService fullTextSearchService = new FullTextSearchService(properties);
-
-        RagService ragService = new RagService(embeddingModel, embeddingStore, chatModel, properties,
-                fullTextSearchService, cache, limiter, null, null);
-
-        RagRequest request = new RagRequest("问题", null, null, null, null, null, null);
-
-        ragService.ask(request);
-        ragService.ask(request);
-
-        assertEquals(1, embedCalls.get());
-        assertEquals(1, chatCalls.get());
     }
 }
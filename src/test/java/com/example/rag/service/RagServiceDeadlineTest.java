@@ -0,0 +1,125 @@
+package com.example.rag.service;
+
+import com.example.rag.config.RagProperties;
+import com.example.rag.perf.Deadline;
+import com.example.rag.perf.DeadlineExceededException;
+import com.example.rag.perf.RetrievalExecutor;
+import com.example.rag.service.dto.RagRequest;
+import com.example.rag.service.dto.RagResponse;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.scoring.ScoringModel;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RagServiceDeadlineTest {
+
+    private final AtomicInteger scoreCalls = new AtomicInteger();
+    private final AtomicInteger chatCalls = new AtomicInteger();
+    private volatile long chatDelayMillis;
+
+    @Test
+    void ask_shouldSkipCrossEncoderWhenBudgetIsShort() {
+        RagProperties properties = properties();
+        RagService ragService = ragService(properties);
+
+        RagRequest request = new RagRequest("问题", null, null, null, null, null, null);
+        RagResponse shortBudget = ragService.ask(request, Deadline.after(Duration.ofMillis(1500)));
+        assertEquals("答案", shortBudget.answer());
+        assertEquals(0, scoreCalls.get());
+
+        // 跳过重排的结果不写入缓存，预算充足时重新执行并启用重排
+        ragService.ask(request, Deadline.after(Duration.ofSeconds(30)));
+        assertEquals(1, scoreCalls.get());
+        assertEquals(2, chatCalls.get());
+    }
+
+    @Test
+    void ask_shouldNotCallModelWhenBudgetIsExhausted() {
+        RagService ragService = ragService(properties());
+
+        assertThrows(DeadlineExceededException.class,
+                () -> ragService.ask(new RagRequest("问题", null, null, null, null, null, null),
+                        Deadline.after(Duration.ofMillis(500))));
+        assertEquals(0, chatCalls.get());
+    }
+
+    @Test
+    void ask_shouldStopGenerationWhenBudgetRunsOut() {
+        RagProperties properties = properties();
+        try (RetrievalExecutor generationExecutor = RetrievalExecutor.threadPool("test-generation", 1, 1)) {
+            RagService ragService = ragService(properties, generationExecutor);
+            RagRequest request = new RagRequest("问题", null, null, null, null, null, null);
+            chatDelayMillis = 5000;
+
+            long start = System.nanoTime();
+            assertThrows(DeadlineExceededException.class,
+                    () -> ragService.ask(request, Deadline.after(Duration.ofMillis(1500))));
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(3)) < 0);
+
+            // 超时的生成结果不写入缓存，下次请求重新生成
+            chatDelayMillis = 0;
+            assertEquals("答案", ragService.ask(request, Deadline.after(Duration.ofMillis(1500))).answer());
+            assertEquals(2, chatCalls.get());
+        }
+    }
+
+    private RagProperties properties() {
+        RagProperties properties = new RagProperties();
+        properties.getRetrieval().getHybrid().setEnabled(false);
+        properties.getRetrieval().getRerank().setKeywordEnabled(false);
+        properties.getRetrieval().getRerank().getCrossEncoder().setEnabled(true);
+        properties.getFulltext().setEnabled(false);
+        return properties;
+    }
+
+    private RagService ragService(RagProperties properties) {
+        return ragService(properties, RetrievalExecutor.direct());
+    }
+
+    private RagService ragService(RagProperties properties, RetrievalExecutor generationExecutor) {
+        EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[]{1.0f, 0.0f}))
+                .toList());
+        InMemoryEmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        embeddingStore.add(Embedding.from(new float[]{1.0f, 0.0f}), TextSegment.from("证据"));
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse chat(dev.langchain4j.model.chat.request.ChatRequest request) {
+                chatCalls.incrementAndGet();
+                try {
+                    Thread.sleep(chatDelayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("生成被中断", e);
+                }
+                return ChatResponse.builder()
+                        .aiMessage(dev.langchain4j.data.message.AiMessage.from("答案"))
+                        .build();
+            }
+        };
+        ScoringModel scoringModel = new ScoringModel() {
+            @Override
+            public Response<List<Double>> scoreAll(List<TextSegment> segments, String query) {
+                scoreCalls.incrementAndGet();
+                return Response.from(segments.stream().map(segment -> 1.0).toList());
+            }
+        };
+        return RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(embeddingStore).chatModel(chatModel)
+                .scoringModel(scoringModel).generationExecutor(generationExecutor)
+                .build();
+    }
+}
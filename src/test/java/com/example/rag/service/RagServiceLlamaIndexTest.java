@@ -79,8 +79,11 @@ class RagServiceLlamaIndexTest {
         QueryLimiter limiter = QueryLimiter.disabled();
         FullTextSearchService fullTextSearchService = new FullTextSearchService(properties);
 
-        RagService ragService = new RagService(embeddingModel, embeddingStore, chatModel, properties,
-                fullTextSearchService, cache, limiter, null, llamaIndexClient);
+        RagService ragService = RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(embeddingStore).chatModel(chatModel)
+                .fullTextSearchService(fullTextSearchService).ragCache(cache).queryLimiter(limiter)
+                .llamaIndexClient(llamaIndexClient)
+                .build();
 
         RagResponse response = ragService.ask(new RagRequest("问题", null, null, null, null, null, null));
 
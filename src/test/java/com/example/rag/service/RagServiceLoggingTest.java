@@ -86,8 +86,10 @@ class RagServiceLoggingTest {
         RagCache cache = new RagCache(properties);
         QueryLimiter limiter = QueryLimiter.disabled();
         FullTextSearchService fullTextSearchService = new FullTextSearchService(properties);
-        RagService ragService = new RagService(embeddingModel, embeddingStore, chatModel, properties,
-                fullTextSearchService, cache, limiter, null, null);
+        RagService ragService = RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(embeddingStore).chatModel(chatModel)
+                .fullTextSearchService(fullTextSearchService).ragCache(cache).queryLimiter(limiter)
+                .build();
 
         Logger logger = (Logger) LoggerFactory.getLogger(RagService.class);
         ListAppender<ILoggingEvent> appender = new ListAppender<>();
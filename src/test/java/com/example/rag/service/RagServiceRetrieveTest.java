@@ -0,0 +1,105 @@
+package com.example.rag.service;
+
+import com.example.rag.config.RagProperties;
+import com.example.rag.perf.PipelineStage;
+import com.example.rag.perf.RagMetrics;
+import com.example.rag.service.dto.RagRequest;
+import com.example.rag.service.dto.RetrieveResponse;
+import com.example.rag.service.dto.RetrievedSegment;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RagServiceRetrieveTest {
+
+    @Test
+    void retrieve_shouldReturnScoredSegmentsWithoutCallingChatModel() {
+        RagProperties properties = new RagProperties();
+        properties.getRetrieval().getHybrid().setEnabled(false);
+        properties.getRetrieval().getRerank().setKeywordEnabled(false);
+        properties.getFulltext().setEnabled(false);
+
+        AtomicInteger embedCalls = new AtomicInteger();
+        EmbeddingModel embeddingModel = segments -> {
+            embedCalls.incrementAndGet();
+            return Response.from(segments.stream()
+                    .map(segment -> Embedding.from(new float[]{1.0f, 0.0f}))
+                    .toList());
+        };
+
+        AtomicInteger chatCalls = new AtomicInteger();
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse chat(dev.langchain4j.model.chat.request.ChatRequest request) {
+                chatCalls.incrementAndGet();
+                throw new IllegalStateException("仅检索不应调用LLM");
+            }
+        };
+
+        InMemoryEmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        Metadata metadata = new Metadata().put("source", "guide.md").put("version", "v1");
+        embeddingStore.add(Embedding.from(new float[]{1.0f, 0.0f}), TextSegment.from("入库流程说明", metadata));
+
+        RagService ragService = RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(embeddingStore).chatModel(chatModel)
+                .build();
+
+        RagRequest request = new RagRequest("入库流程是什么？", null, null, null, null, null, null);
+        RetrieveResponse first = ragService.retrieve(request);
+        RetrieveResponse second = ragService.retrieve(request);
+
+        assertEquals(1, first.segments().size());
+        RetrievedSegment segment = first.segments().get(0);
+        assertEquals("入库流程说明", segment.text());
+        assertEquals("guide.md", segment.source());
+        assertEquals("v1", segment.metadata().get("version"));
+        // 仅向量检索时最终得分即向量相似度，分片ID与分阶段得分一并返回
+        assertEquals(1.0, segment.score(), 1e-6);
+        assertEquals(1.0, segment.scores().vector(), 1e-6);
+        assertNull(segment.scores().bm25());
+        assertNotNull(segment.id());
+        assertEquals(0, chatCalls.get());
+        // 第二次命中检索缓存，不再嵌入与检索
+        assertSame(first, second);
+        assertEquals(1, embedCalls.get());
+    }
+
+    @Test
+    void retrieve_shouldRecordStageTimers() {
+        RagProperties properties = new RagProperties();
+        properties.getRetrieval().getHybrid().setEnabled(false);
+        properties.getFulltext().setEnabled(false);
+        EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[]{1.0f, 0.0f}))
+                .toList());
+        InMemoryEmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        embeddingStore.add(Embedding.from(new float[]{1.0f, 0.0f}), TextSegment.from("入库流程说明"));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        RagService ragService = RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(embeddingStore)
+                .metrics(new RagMetrics(registry))
+                .build();
+
+        ragService.retrieve(new RagRequest("入库流程是什么？", null, null, null, null, null, null));
+
+        assertEquals(1, registry.get(RagMetrics.STAGE_TIMER)
+                .tag("stage", PipelineStage.EMBEDDING.tag()).tag("outcome", "success").timer().count());
+        assertEquals(1, registry.get(RagMetrics.STAGE_TIMER)
+                .tag("stage", PipelineStage.VECTOR_SEARCH.tag()).tag("outcome", "success").timer().count());
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.rag.service;
+
+import com.example.rag.config.RagProperties;
+import com.example.rag.perf.QueryLimiter;
+import com.example.rag.perf.RagCache;
+import com.example.rag.service.dto.RagRequest;
+import com.example.rag.service.dto.RagResponse;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RagServiceStreamTest {
+
+    @Test
+    void askStream_shouldSendEvidenceThenTokensAndCacheAnswer() {
+        RagProperties properties = new RagProperties();
+        properties.getCache().setEnabled(true);
+        properties.getRetrieval().getHybrid().setEnabled(false);
+        properties.getRetrieval().getRerank().setKeywordEnabled(false);
+        properties.getRetrieval().setMinScore(0.0);
+        properties.getFulltext().setEnabled(false);
+
+        EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[]{1.0f, 0.0f}))
+                .toList());
+        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        embeddingStore.add(Embedding.from(new float[]{1.0f, 0.0f}), TextSegment.from("证据"));
+
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse chat(ChatRequest request) {
+                throw new AssertionError("流式问答不应调用阻塞模型");
+            }
+        };
+        List<List<ChatMessage>> prompts = new ArrayList<>();
+        StreamingChatModel streamingChatModel = new StreamingChatModel() {
+            @Override
+            public void chat(ChatRequest request, StreamingChatResponseHandler handler) {
+                prompts.add(request.messages());
+                handler.onPartialResponse("答");
+                handler.onPartialResponse("案");
+                handler.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from("答案")).build());
+            }
+        };
+
+        RagCache cache = new RagCache(properties);
+        RagService ragService = RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(embeddingStore).chatModel(chatModel)
+                .streamingChatModel(streamingChatModel).ragCache(cache)
+                .build();
+
+        List<String> events = new ArrayList<>();
+        ragService.askStream(new RagRequest("问题", null, null, null, null, null, null), new RagStreamHandler() {
+            @Override
+            public void onEvidence(List<String> evidence, List<String> sources) {
+                events.add("evidence:" + String.join(",", evidence));
+            }
+
+            @Override
+            public void onToken(String token) {
+                events.add("token:" + token);
+            }
+
+            @Override
+            public void onComplete(RagResponse response) {
+                events.add("done:" + response.answer());
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                events.add("error:" + error.getMessage());
+            }
+        });
+
+        assertThat(events).containsExactly("evidence:证据", "token:答", "token:案", "done:答案");
+        assertThat(prompts).hasSize(1);
+        assertThat(prompts.get(0).get(0)).isInstanceOf(SystemMessage.class);
+        assertThat(ragService.ask(new RagRequest("问题", null, null, null, null, null, null)).answer())
+                .isEqualTo("答案");
+    }
+
+    @Test
+    void askStream_shouldHoldPermitDuringGenerationAndStopWhenCancelled() throws InterruptedException {
+        RagProperties properties = new RagProperties();
+        properties.getRetrieval().getHybrid().setEnabled(false);
+        properties.getRetrieval().getRerank().setKeywordEnabled(false);
+        properties.getRetrieval().setMinScore(0.0);
+        properties.getFulltext().setEnabled(false);
+
+        EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[]{1.0f, 0.0f}))
+                .toList());
+        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        embeddingStore.add(Embedding.from(new float[]{1.0f, 0.0f}), TextSegment.from("证据"));
+
+        // 模拟 Ollama：开始生成后挂起，由测试线程推送后续分片
+        AtomicReference<StreamingChatResponseHandler> generation = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(1);
+        StreamingChatModel streamingChatModel = new StreamingChatModel() {
+            @Override
+            public void chat(ChatRequest request, StreamingChatResponseHandler handler) {
+                generation.set(handler);
+                started.countDown();
+            }
+        };
+        QueryLimiter limiter = QueryLimiter.semaphore("test-stream", 1, Duration.ZERO);
+        RagService ragService = RagServiceBuilder.with(properties)
+                .embeddingModel(embeddingModel).embeddingStore(embeddingStore)
+                .streamingChatModel(streamingChatModel).queryLimiter(limiter)
+                .build();
+
+        List<String> events = new CopyOnWriteArrayList<>();
+        List<Runnable> cancelCallbacks = new CopyOnWriteArrayList<>();
+        ragService.askStream(new RagRequest("问题", null, null, null, null, null, null), new RagStreamHandler() {
+            @Override
+            public void onEvidence(List<String> evidence, List<String> sources) {
+                events.add("evidence");
+            }
+
+            @Override
+            public void onToken(String token) {
+                events.add("token:" + token);
+            }
+
+            @Override
+            public void onComplete(RagResponse response) {
+                events.add("done");
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                events.add("error");
+            }
+
+            @Override
+            public void onCancel(Runnable callback) {
+                cancelCallbacks.add(callback);
+            }
+        });
+
+        assertThat(started.await(2, TimeUnit.SECONDS)).isTrue();
+        // 生成期间许可仍被占用
+        assertThatThrownBy(() -> limiter.execute(() -> "其他请求")).isInstanceOf(BulkheadFullException.class);
+
+        cancelCallbacks.forEach(Runnable::run);
+        AtomicBoolean handleCancelled = new AtomicBoolean();
+        generation.get().onPartialResponse(new PartialResponse("迟到"), new PartialResponseContext(new StreamingHandle() {
+            @Override
+            public void cancel() {
+                handleCancelled.set(true);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return handleCancelled.get();
+            }
+        }));
+
+        assertThat(handleCancelled).isTrue();
+        assertThat(events).containsExactly("evidence");
+        assertThat(acquiredWithin(limiter, Duration.ofSeconds(2))).isTrue();
+    }
+
+    private static boolean acquiredWithin(QueryLimiter limiter, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                return "ok".equals(limiter.execute(() -> "ok"));
+            } catch (BulkheadFullException e) {
+                Thread.sleep(10);
+            }
+        }
+        return false;
+    }
+}
@@ -1,9 +1,17 @@
 package com.example.rag.web;
 
+import com.example.rag.perf.Deadline;
+import com.example.rag.perf.DeadlineExceededException;
+import com.example.rag.perf.QueryRejectedException;
 import com.example.rag.service.RagService;
+import com.example.rag.service.RagStreamHandler;
+import com.example.rag.service.dto.BatchAnswer;
 import com.example.rag.service.dto.RagRequest;
 import com.example.rag.service.dto.RagResponse;
+import com.example.rag.service.dto.RetrieveResponse;
+import com.example.rag.service.dto.RetrievedSegment;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -12,11 +20,20 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(controllers = RagController.class)
@@ -37,11 +54,16 @@ class RagControllerTest {
                 List.of("证据1", "证据2"),
                 List.of("来源1", "来源2")
         );
-        Mockito.when(ragService.ask(Mockito.any(RagRequest.class))).thenReturn(response);
+        Mockito.when(ragService.askAsync(Mockito.any(RagRequest.class), Mockito.any(Deadline.class)))
+                .thenReturn(CompletableFuture.completedFuture(response));
 
-        mockMvc.perform(post("/api/qa")
+        MvcResult result = mockMvc.perform(post("/api/qa")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content("{\"question\":\"如何入库？\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.answer").value("答案"))
                 .andExpect(jsonPath("$.evidence[0]").value("证据1"));
@@ -49,12 +71,169 @@ class RagControllerTest {
 
     @Test
     void ask_shouldHandleError() throws Exception {
-        Mockito.when(ragService.ask(Mockito.any(RagRequest.class)))
-                .thenThrow(new IllegalStateException("模拟失败"));
+        Mockito.when(ragService.askAsync(Mockito.any(RagRequest.class), Mockito.any(Deadline.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("模拟失败")));
+
+        MvcResult result = mockMvc.perform(post("/api/qa")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\":\"如何入库？\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().is5xxServerError())
+                .andExpect(jsonPath("$.error").value("模拟失败"));
+    }
+
+    @Test
+    void ask_shouldReturnTooManyRequestsWhenRejected() throws Exception {
+        Mockito.when(ragService.askAsync(Mockito.any(RagRequest.class), Mockito.any(Deadline.class)))
+                .thenReturn(CompletableFuture.failedFuture(
+                        new CompletionException(new QueryRejectedException("排队等待超过预算"))));
+
+        MvcResult result = mockMvc.perform(post("/api/qa")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\":\"如何入库？\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(jsonPath("$.error").value("排队等待超过预算"));
+    }
+
+    @Test
+    void retrieve_shouldReturnScoredSegments() throws Exception {
+        RetrieveResponse response = new RetrieveResponse(
+                List.of(new RetrievedSegment("证据1", 0.87, "guide.md", Map.of("version", "v1"))),
+                List.of("guide.md")
+        );
+        Mockito.when(ragService.retrieve(Mockito.any(RagRequest.class), Mockito.any(Deadline.class))).thenReturn(response);
 
+        mockMvc.perform(post("/api/retrieve")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\":\"如何入库？\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.segments[0].text").value("证据1"))
+                .andExpect(jsonPath("$.segments[0].score").value(0.87))
+                .andExpect(jsonPath("$.segments[0].metadata.version").value("v1"))
+                .andExpect(jsonPath("$.sources[0]").value("guide.md"));
+        Mockito.verify(ragService, Mockito.never()).ask(Mockito.any(RagRequest.class));
+    }
+
+    @Test
+    void ask_shouldPassTimeoutHeaderAsDeadline() throws Exception {
+        Mockito.when(ragService.askAsync(Mockito.any(RagRequest.class), Mockito.any(Deadline.class)))
+                .thenReturn(CompletableFuture.completedFuture(new RagResponse("答案", List.of(), List.of())));
+
+        mockMvc.perform(post("/api/qa")
+                        .header("X-Request-Timeout-Ms", "1500")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\":\"如何入库？\"}"))
+                .andExpect(request().asyncStarted());
+
+        ArgumentCaptor<Deadline> deadline = ArgumentCaptor.forClass(Deadline.class);
+        Mockito.verify(ragService).askAsync(Mockito.any(RagRequest.class), deadline.capture());
+        assertThat(deadline.getValue().remaining()).isLessThanOrEqualTo(Duration.ofMillis(1500));
+    }
+
+    @Test
+    void ask_shouldRejectNonPositiveTimeoutAndClampLargeOne() throws Exception {
         mockMvc.perform(post("/api/qa")
+                        .header("X-Request-Timeout-Ms", "0")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content("{\"question\":\"如何入库？\"}"))
-                .andExpect(status().is5xxServerError());
+                .andExpect(status().isBadRequest());
+        Mockito.verify(ragService, Mockito.never()).askAsync(Mockito.any(RagRequest.class), Mockito.any(Deadline.class));
+
+        Mockito.when(ragService.askAsync(Mockito.any(RagRequest.class), Mockito.any(Deadline.class)))
+                .thenReturn(CompletableFuture.completedFuture(new RagResponse("答案", List.of(), List.of())));
+        mockMvc.perform(post("/api/qa")
+                        .header("X-Request-Timeout-Ms", String.valueOf(Duration.ofDays(1).toMillis()))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\":\"如何入库？\"}"))
+                .andExpect(request().asyncStarted());
+
+        ArgumentCaptor<Deadline> deadline = ArgumentCaptor.forClass(Deadline.class);
+        Mockito.verify(ragService).askAsync(Mockito.any(RagRequest.class), deadline.capture());
+        assertThat(deadline.getValue().remaining()).isLessThanOrEqualTo(Duration.ofSeconds(120));
+    }
+
+    @Test
+    void ask_shouldRejectNonNumericTimeoutButTreatInternalArgumentErrorsAsServerFaults() throws Exception {
+        mockMvc.perform(post("/api/qa")
+                        .header("X-Request-Timeout-Ms", "abc")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\":\"如何入库？\"}"))
+                .andExpect(status().isBadRequest());
+
+        Mockito.when(ragService.retrieve(Mockito.any(RagRequest.class), Mockito.any(Deadline.class)))
+                .thenThrow(new IllegalArgumentException("向量维度不一致"));
+        mockMvc.perform(post("/api/retrieve")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\":\"如何入库？\"}"))
+                .andExpect(status().isInternalServerError());
+    }
+
+    @Test
+    void ask_shouldReturnGatewayTimeoutWhenDeadlineExceeded() throws Exception {
+        Mockito.when(ragService.askAsync(Mockito.any(RagRequest.class), Mockito.any(Deadline.class)))
+                .thenReturn(CompletableFuture.failedFuture(
+                        new CompletionException(new DeadlineExceededException("请求已超过截止时间，终止于阶段: queue"))));
+
+        MvcResult result = mockMvc.perform(post("/api/qa")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\":\"如何入库？\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isGatewayTimeout())
+                .andExpect(jsonPath("$.error").value("请求已超过截止时间，终止于阶段: queue"));
+    }
+
+    @Test
+    void askStream_shouldSendEvidenceBeforeTokens() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            RagStreamHandler handler = invocation.getArgument(2);
+            handler.onEvidence(List.of("证据1"), List.of("来源1"));
+            handler.onToken("答");
+            handler.onToken("案\n");
+            handler.onComplete(new RagResponse("答案\n", List.of("证据1"), List.of("来源1")));
+            return null;
+        }).when(ragService).askStream(Mockito.any(RagRequest.class), Mockito.any(Deadline.class),
+                Mockito.any(RagStreamHandler.class));
+
+        MvcResult result = mockMvc.perform(post("/api/qa/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\":\"如何入库？\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = result.getResponse().getContentAsString(java.nio.charset.StandardCharsets.UTF_8);
+        assertThat(body).contains("event:evidence", "event:token", "event:done", "\"text\":\"案\\n\"");
+        assertThat(body.indexOf("event:evidence")).isLessThan(body.indexOf("event:token"));
+    }
+
+    @Test
+    void askAll_shouldStreamOneJsonLinePerAnswer() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            Consumer<BatchAnswer> consumer = invocation.getArgument(1);
+            consumer.accept(new BatchAnswer(1, "问题2", new RagResponse("答案2", List.of(), List.of()), null));
+            consumer.accept(new BatchAnswer(0, "问题1", null, "模拟失败"));
+            return null;
+        }).when(ragService).askAll(Mockito.anyList(), Mockito.any());
+
+        MvcResult result = mockMvc.perform(post("/api/qa/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"requests\":[{\"question\":\"问题1\"},{\"question\":\"问题2\"}]}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult();
+
+        String[] lines = result.getResponse().getContentAsString(java.nio.charset.StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).contains("\"index\":1", "\"answer\":\"答案2\"");
+        assertThat(lines[1]).contains("\"index\":0", "\"error\":\"模拟失败\"");
     }
 }